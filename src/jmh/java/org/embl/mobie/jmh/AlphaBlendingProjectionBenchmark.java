@@ -0,0 +1,157 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.jmh;
+
+import bdv.viewer.render.VolatileProjector;
+import net.imglib2.Cursor;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.view.Views;
+import org.embl.mobie.lib.bdv.blend.AccumulateAlphaBlendingProjectorARGB;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Blends ARGB screen images at full HD and 4K resolution,
+ * where half of the sources are transparent in the lower
+ * half of the screen (as for tiled data).
+ * Compares the line wise projector to the per pixel blending via cursors.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( value = 1, jvmArgs = { "-Xmx4g" } )
+public class AlphaBlendingProjectionBenchmark
+{
+	// width x height
+	@Param( { "1920x1080", "3840x2160" } )
+	public String resolution;
+
+	@Param( { "8", "10" } )
+	public int numSources;
+
+	private List< ArrayImg< ARGBType, IntArray > > sources;
+	private List< VolatileProjector > sourceProjectors;
+	private boolean[] alphaBlending;
+	private int[] order;
+	private ArrayImg< ARGBType, IntArray > target;
+
+	@Setup
+	public void setup()
+	{
+		final String[] dimensions = resolution.split( "x" );
+		final int width = Integer.parseInt( dimensions[ 0 ] );
+		final int height = Integer.parseInt( dimensions[ 1 ] );
+
+		final Random random = new Random( 42 );
+		sources = new ArrayList<>();
+		sourceProjectors = new ArrayList<>();
+		alphaBlending = new boolean[ numSources ];
+		order = new int[ numSources ];
+		for ( int s = 0; s < numSources; s++ )
+		{
+			final int[] data = new int[ width * height ];
+			final int numVisible = s % 2 == 0 ? data.length : data.length / 2;
+			for ( int i = 0; i < numVisible; i++ )
+				data[ i ] = random.nextInt();
+			sources.add( ArrayImgs.argbs( data, width, height ) );
+			sourceProjectors.add( new ValidProjector() );
+			alphaBlending[ s ] = s % 3 != 0;
+			order[ s ] = numSources - 1 - s;
+		}
+
+		target = ArrayImgs.argbs( width, height );
+	}
+
+	@Benchmark
+	public boolean project()
+	{
+		return new AccumulateAlphaBlendingProjectorARGB( sourceProjectors, alphaBlending, order, sources, target ).map( true );
+	}
+
+	@Benchmark
+	public ArrayImg< ARGBType, IntArray > projectPerPixel()
+	{
+		final Cursor< ARGBType >[] cursors = new Cursor[ numSources ];
+		for ( int s = 0; s < numSources; s++ )
+			cursors[ s ] = Views.flatIterable( sources.get( s ) ).cursor();
+		final Cursor< ARGBType > targetCursor = Views.flatIterable( target ).cursor();
+		while ( targetCursor.hasNext() )
+		{
+			for ( Cursor< ARGBType > cursor : cursors )
+				cursor.fwd();
+			targetCursor.next().set( AccumulateAlphaBlendingProjectorARGB.getArgbIndex( cursors, alphaBlending, order ) );
+		}
+		return target;
+	}
+
+	static class ValidProjector implements VolatileProjector
+	{
+		@Override
+		public boolean map( boolean clearUntouchedTargetPixels )
+		{
+			return true;
+		}
+
+		@Override
+		public boolean isValid()
+		{
+			return true;
+		}
+
+		@Override
+		public void cancel()
+		{
+		}
+
+		@Override
+		public long getLastFrameRenderNanoTime()
+		{
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,94 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.jmh;
+
+import org.embl.mobie.lib.annotation.DefaultAnnotationAdapter;
+import org.embl.mobie.lib.table.DefaultAnnData;
+import org.embl.mobie.lib.table.saw.TableSawAnnotatedSegment;
+import org.embl.mobie.lib.table.saw.TableSawAnnotationTableModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looks up the annotations of random labels, as it is done
+ * for every voxel when rendering an annotated label image.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( value = 1, jvmArgs = { "-Xmx8g" } )
+public class AnnotationLookupBenchmark
+{
+	public static final int NUM_LOOKUPS = 1024;
+
+	@Param( { "10000", "1000000" } )
+	public int numSegments;
+
+	private DefaultAnnotationAdapter< TableSawAnnotatedSegment > adapter;
+	private String source;
+	private int[] labels;
+
+	@Setup
+	public void setup()
+	{
+		final TableSawAnnotationTableModel< TableSawAnnotatedSegment > model = SyntheticData.createSegmentTableModel( SyntheticData.createSegmentTable( "segments", numSegments ) );
+		source = model.annotation( 0 ).source();
+		adapter = new DefaultAnnotationAdapter<>( new DefaultAnnData<>( model ) );
+		adapter.init();
+
+		final Random random = new Random( 42 );
+		labels = new int[ NUM_LOOKUPS ];
+		for ( int i = 0; i < NUM_LOOKUPS; i++ )
+			labels[ i ] = 1 + random.nextInt( numSegments );
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( NUM_LOOKUPS )
+	public void lookup( Blackhole blackhole )
+	{
+		for ( int label : labels )
+			blackhole.consume( adapter.getAnnotation( source, 0, label ) );
+	}
+}
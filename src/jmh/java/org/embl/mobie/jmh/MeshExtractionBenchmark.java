@@ -0,0 +1,102 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.jmh;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.integer.UnsignedIntType;
+import net.imglib2.view.Views;
+import org.embl.mobie.lib.volume.MeshExtractor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extracts the mesh of a spherical segment that fills
+ * a 256 x 256 x 256 label mask.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 2 )
+@Measurement( iterations = 5 )
+@Fork( value = 1, jvmArgs = { "-Xmx4g" } )
+public class MeshExtractionBenchmark
+{
+	public static final int SIZE = 256;
+	public static final int LABEL = 1;
+
+	private ArrayImg< UnsignedIntType, IntArray > labelMask;
+
+	@Setup
+	public void setup()
+	{
+		labelMask = ArrayImgs.unsignedInts( SIZE, SIZE, SIZE );
+		final double center = SIZE / 2.0;
+		final double radius = 0.45 * SIZE;
+		final Cursor< UnsignedIntType > cursor = labelMask.localizingCursor();
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			double distance = 0;
+			for ( int d = 0; d < 3; d++ )
+			{
+				final double delta = cursor.getDoublePosition( d ) - center;
+				distance += delta * delta;
+			}
+			if ( distance < radius * radius )
+				cursor.get().set( LABEL );
+		}
+	}
+
+	@Benchmark
+	public float[] extractMesh()
+	{
+		final MeshExtractor< UnsignedIntType > meshExtractor = new MeshExtractor<>(
+				Views.extendZero( labelMask ),
+				labelMask,
+				new AffineTransform3D(),
+				new int[]{ 1, 1, 1 },
+				() -> false );
+
+		return meshExtractor.extractMesh( new UnsignedIntType( LABEL ) );
+	}
+}
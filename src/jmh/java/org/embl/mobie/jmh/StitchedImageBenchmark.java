@@ -0,0 +1,106 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.jmh;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+import org.embl.mobie.lib.image.Image;
+import org.embl.mobie.lib.image.StitchedImage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Random access into the full resolution level of a
+ * {@code StitchedImage} of numTiles x numTiles tiles,
+ * as it happens when rendering a grid view at high zoom.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class StitchedImageBenchmark
+{
+	public static final int NUM_ACCESSES = 4096;
+	public static final long[] TILE_DIMENSIONS = { 256, 256, 1 };
+
+	@Param( { "4", "32" } )
+	public int numTiles;
+
+	private RandomAccess< UnsignedShortType > access;
+	private long[][] positions;
+
+	@Setup
+	public void setup()
+	{
+		final List< Image< UnsignedShortType > > tiles = new ArrayList<>();
+		for ( int tile = 0; tile < numTiles * numTiles; tile++ )
+			tiles.add( SyntheticData.createImage( "tile" + tile, TILE_DIMENSIONS, tile ) );
+
+		final StitchedImage< UnsignedShortType, VolatileUnsignedShortType > stitchedImage = new StitchedImage<>( tiles, tiles.get( 0 ), null, "stitched", 0.0 );
+		final RandomAccessibleInterval< UnsignedShortType > rai = stitchedImage.getSourcePair().getSource().getSource( 0, 0 );
+		access = rai.randomAccess();
+
+		final Random random = new Random( 42 );
+		positions = new long[ NUM_ACCESSES ][ 3 ];
+		for ( int i = 0; i < NUM_ACCESSES; i++ )
+			for ( int d = 0; d < 2; d++ )
+				positions[ i ][ d ] = rai.min( d ) + ( long ) ( random.nextDouble() * rai.dimension( d ) );
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( NUM_ACCESSES )
+	public void randomAccess( Blackhole blackhole )
+	{
+		for ( long[] position : positions )
+		{
+			access.setPosition( position );
+			blackhole.consume( access.get().get() );
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.jmh;
+
+import bdv.util.RandomAccessibleIntervalSource;
+import bdv.util.volatiles.VolatileViews;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgFactory;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgOptions;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.roi.geom.GeomMasks;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+import org.embl.mobie.lib.image.DefaultImage;
+import org.embl.mobie.lib.image.DefaultSourcePair;
+import org.embl.mobie.lib.image.Image;
+import org.embl.mobie.lib.table.ColumnNames;
+import org.embl.mobie.lib.table.saw.TableSawAnnotatedSegment;
+import org.embl.mobie.lib.table.saw.TableSawAnnotatedSegmentCreator;
+import org.embl.mobie.lib.table.saw.TableSawAnnotationTableModel;
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.IntColumn;
+import tech.tablesaw.api.Table;
+
+import java.util.Random;
+
+/**
+ * In-memory data for the benchmarks, such that they
+ * do not depend on files or on the network.
+ */
+public class SyntheticData
+{
+	public static final String[] DIMENSIONS = { "x", "y", "z" };
+
+	/**
+	 * @return a segment table in MoBIE format, with label ids 1 to numRows,
+	 * 			anchor and bounding box columns
+	 */
+	public static Table createSegmentTable( String name, int numRows )
+	{
+		final Random random = new Random( 42 );
+		final Table table = Table.create( name );
+		final int[] labels = new int[ numRows ];
+		for ( int row = 0; row < numRows; row++ )
+			labels[ row ] = row + 1;
+		table.addColumns( IntColumn.create( ColumnNames.LABEL_ID, labels ) );
+
+		for ( String dim : DIMENSIONS )
+		{
+			final double[] anchor = new double[ numRows ];
+			final double[] min = new double[ numRows ];
+			final double[] max = new double[ numRows ];
+			for ( int row = 0; row < numRows; row++ )
+			{
+				anchor[ row ] = 1000 * random.nextDouble();
+				min[ row ] = anchor[ row ] - 5;
+				max[ row ] = anchor[ row ] + 5;
+			}
+			table.addColumns(
+					DoubleColumn.create( "anchor_" + dim, anchor ),
+					DoubleColumn.create( "bb_min_" + dim, min ),
+					DoubleColumn.create( "bb_max_" + dim, max ) );
+		}
+
+		return table;
+	}
+
+	/**
+	 * @return a table with label ids 1 to numRows and numColumns feature columns,
+	 * 			as it could be an additional table chunk
+	 */
+	public static Table createFeatureTable( String name, int numRows, int numColumns )
+	{
+		final Random random = new Random( 43 );
+		final Table table = Table.create( name );
+		final int[] labels = new int[ numRows ];
+		for ( int row = 0; row < numRows; row++ )
+			labels[ row ] = row + 1;
+		table.addColumns( IntColumn.create( ColumnNames.LABEL_ID, labels ) );
+
+		for ( int column = 0; column < numColumns; column++ )
+		{
+			final double[] values = new double[ numRows ];
+			for ( int row = 0; row < numRows; row++ )
+				values[ row ] = random.nextDouble();
+			table.addColumns( DoubleColumn.create( "feature_" + column, values ) );
+		}
+
+		return table;
+	}
+
+	public static TableSawAnnotationTableModel< TableSawAnnotatedSegment > createSegmentTableModel( Table table )
+	{
+		return new TableSawAnnotationTableModel<>( table.name(), new TableSawAnnotatedSegmentCreator( table ), null, null, table );
+	}
+
+	/**
+	 * @return a lazily computed 16-bit image in which every
+	 * 			voxel has the given value
+	 */
+	public static Image< UnsignedShortType > createImage( String name, long[] dimensions, int value )
+	{
+		final int[] cellDimensions = { 64, 64, 1 };
+		final CachedCellImg< UnsignedShortType, ? > img = new ReadOnlyCachedCellImgFactory( ReadOnlyCachedCellImgOptions.options().cellDimensions( cellDimensions ) )
+				.create( dimensions, new UnsignedShortType(), cell -> cell.forEach( pixel -> pixel.set( value ) ) );
+		final RandomAccessibleInterval< VolatileUnsignedShortType > volatileImg = VolatileViews.wrapAsVolatile( img );
+
+		final RandomAccessibleIntervalSource< UnsignedShortType > source = new RandomAccessibleIntervalSource<>( img, new UnsignedShortType(), new AffineTransform3D(), name );
+		final RandomAccessibleIntervalSource< VolatileUnsignedShortType > volatileSource = new RandomAccessibleIntervalSource<>( volatileImg, new VolatileUnsignedShortType(), new AffineTransform3D(), name );
+
+		final double[] min = new double[ 3 ];
+		final double[] max = new double[ 3 ];
+		for ( int d = 0; d < 3; d++ )
+		{
+			min[ d ] = -0.5;
+			max[ d ] = dimensions[ d ] - 0.5;
+		}
+
+		return new DefaultImage<>( name, new DefaultSourcePair<>( source, volatileSource ), GeomMasks.closedBox( min, max ) );
+	}
+}
@@ -0,0 +1,102 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.jmh;
+
+import org.embl.mobie.lib.io.StorageLocation;
+import org.embl.mobie.lib.table.TableDataFormat;
+import org.embl.mobie.lib.table.saw.TableSawAnnotatedSegment;
+import org.embl.mobie.lib.table.saw.TableSawAnnotatedSegmentCreator;
+import org.embl.mobie.lib.table.saw.TableSawAnnotationTableModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tech.tablesaw.api.Table;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Joins an additional table chunk with feature columns
+ * into a segment table, as it is done when the user
+ * loads further columns in the table view.
+ *
+ * The chunk is kept in memory, such that the benchmark
+ * measures the join rather than the parsing of the file.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 10 )
+@Fork( value = 1, jvmArgs = { "-Xmx8g" } )
+public class TableChunkJoinBenchmark
+{
+	public static final String CHUNK = "features.tsv";
+
+	@Param( { "10000", "1000000" } )
+	public int numRows;
+
+	@Param( { "10" } )
+	public int numColumns;
+
+	private StorageLocation storageLocation;
+	private TableSawAnnotationTableModel< TableSawAnnotatedSegment > model;
+
+	@Setup( Level.Trial )
+	public void createChunk()
+	{
+		storageLocation = new StorageLocation();
+		storageLocation.defaultChunk = CHUNK;
+		storageLocation.data = SyntheticData.createFeatureTable( "features", numRows, numColumns );
+	}
+
+	@Setup( Level.Invocation )
+	public void createModel()
+	{
+		final Table table = SyntheticData.createSegmentTable( "segments", numRows );
+		model = new TableSawAnnotationTableModel<>( table.name(), new TableSawAnnotatedSegmentCreator( table ), storageLocation, TableDataFormat.Table, table );
+	}
+
+	@Benchmark
+	public List< String > join()
+	{
+		model.loadTableChunk( CHUNK );
+		// waits for the chunk to be joined
+		return model.columnNames();
+	}
+}
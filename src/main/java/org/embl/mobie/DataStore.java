@@ -238,6 +238,7 @@ public abstract class DataStore
 			}
 		}
 
+		virtualStack.setSlicesPerFrame( nZ );
 		final ImagePlus imagePlus = new ImagePlus( site.getId(), virtualStack );
 
 		final Calibration calibration = new Calibration();
@@ -51,6 +51,9 @@ import org.embl.mobie.lib.image.SpimDataImage;
 import org.embl.mobie.lib.io.DataFormats;
 import org.embl.mobie.lib.io.StorageLocation;
 import org.embl.mobie.lib.serialize.*;
+import org.embl.mobie.lib.serialize.display.AbstractAnnotationDisplay;
+import org.embl.mobie.lib.serialize.display.Display;
+import org.embl.mobie.lib.table.AnnotationTableModel;
 import org.embl.mobie.lib.table.TableDataFormat;
 import org.embl.mobie.lib.table.saw.TableOpener;
 import org.embl.mobie.lib.transform.GridType;
@@ -115,13 +118,20 @@ public class MoBIE
 			IJ.log("\n# MoBIE" );
 			IJ.log("Opening collection table: " + uri );
 
-			final Table table = TableOpener.openDelimitedTextFile( uri );
+			final Table table;
+			try ( BenchmarkRecorder.Phase phase = benchmarkPhase( "openCollectionTable" ) )
+			{
+				table = TableOpener.openDelimitedTextFile( uri );
+			}
 
 			initImageJAndMoBIE();
 			initProject( IOHelper.getFileName( uri ) );
 
-			CollectionTableDataSetter dataSetter = new CollectionTableDataSetter( table, settings.values.getDataRoot() );
-			dataSetter.addToDataset( dataset );
+			try ( BenchmarkRecorder.Phase phase = benchmarkPhase( "createDataset" ) )
+			{
+				CollectionTableDataSetter dataSetter = new CollectionTableDataSetter( table, settings.values.getDataRoot() );
+				dataSetter.addToDataset( dataset );
+			}
 			dataset.is2D( false ); // TODO: determine from data?!
 
 			initUiAndShowView( dataset.views().values().iterator().next().getName() );
@@ -166,7 +176,11 @@ public class MoBIE
 
 		this.settings = settings;
 
-		final GridSourcesFromPathsCreator sourcesCreator = new GridSourcesFromPathsCreator( imagePaths, labelPaths, labelTablePaths, root, grid );
+		final GridSourcesFromPathsCreator sourcesCreator;
+		try ( BenchmarkRecorder.Phase phase = benchmarkPhase( "createSources" ) )
+		{
+			sourcesCreator = new GridSourcesFromPathsCreator( imagePaths, labelPaths, labelTablePaths, root, grid );
+		}
 
 		final List< ImageGridSources > imageSources = sourcesCreator.getImageSources();
 		final List< LabelGridSources > labelSources = sourcesCreator.getLabelSources();
@@ -190,7 +204,11 @@ public class MoBIE
 		//   Old table: image_path, segmentation_path (one-to-one relation of an image and a segmentation)
 		//   New Table: path, image_type (no relation of an image and a segmentation needed, could be defined by having the same view_id)
 		//   Both can be useful and I guess we should keep on supporting both
-		final SourcesFromTableCreator sourcesCreator = new SourcesFromTableCreator( tablePath, imageColumns, labelColumns, root, pathMapping, grid );
+		final SourcesFromTableCreator sourcesCreator;
+		try ( BenchmarkRecorder.Phase phase = benchmarkPhase( "createSources" ) )
+		{
+			sourcesCreator = new SourcesFromTableCreator( tablePath, imageColumns, labelColumns, root, pathMapping, grid );
+		}
 
 		final List< ImageGridSources > imageSources = sourcesCreator.getImageSources();
 		final List< LabelGridSources > labelSources = sourcesCreator.getLabelSources();
@@ -213,7 +231,10 @@ public class MoBIE
 
 		setProjectImageAndTableRootLocations();
 		registerProjectPlugins( projectLocation );
-		project = new ProjectJsonParser().parseProject( combinePath( projectRoot, "project.json" ) );
+		try ( BenchmarkRecorder.Phase phase = benchmarkPhase( "parseProject" ) )
+		{
+			project = new ProjectJsonParser().parseProject( combinePath( projectRoot, "project.json" ) );
+		}
 		if ( project.getName() == null ) project.setName( getFileName( projectLocation ) );
 		settings.addTableDataFormat( TableDataFormat.TSV );
 		openAndViewDataset();
@@ -226,7 +247,10 @@ public class MoBIE
 
 		initProject( "" );
 
-		new GridSourcesDataSetter( images, labels, regionTable ).addDataAndDisplaysAndViews( dataset );
+		try ( BenchmarkRecorder.Phase phase = benchmarkPhase( "createDataset" ) )
+		{
+			new GridSourcesDataSetter( images, labels, regionTable ).addDataAndDisplaysAndViews( dataset );
+		}
 
 		initUiAndShowView( null ); //dataset.views().keySet().iterator().next() );
 	}
@@ -256,7 +280,8 @@ public class MoBIE
 		{
 			// TODO: if possible init the SciJava Services by different means
 			imageJ = new ImageJ(); // Init SciJava Services
-			imageJ.ui().showUI(); // Enable SciJava Command rendering
+			if ( ! settings.values.isHeadless() )
+				imageJ.ui().showUI(); // Enable SciJava Command rendering
 		}
 
 		if ( moBIE != null )
@@ -272,13 +297,26 @@ public class MoBIE
 	private void openHCSDataset( double wellMargin, double siteMargin, @Nullable VoxelDimensions voxelDimensions ) throws IOException
 	{
 		initProject( "HCS" );
-		final Plate plate = new Plate( projectLocation, voxelDimensions );
-		new HCSDataSetter( plate, wellMargin, siteMargin ).addPlateToDataset( dataset );
+		final Plate plate;
+		try ( BenchmarkRecorder.Phase phase = benchmarkPhase( "scanPlate" ) )
+		{
+			plate = new Plate( projectLocation, voxelDimensions );
+		}
+		try ( BenchmarkRecorder.Phase phase = benchmarkPhase( "createDataset" ) )
+		{
+			new HCSDataSetter( plate, wellMargin, siteMargin ).addPlateToDataset( dataset );
+		}
 		initUiAndShowView( dataset.views().keySet().iterator().next() );
 	}
 
 	private void initUiAndShowView( @Nullable String view )
 	{
+		if ( settings.values.isHeadless() )
+		{
+			initViewHeadless( view );
+			return;
+		}
+
 		buildUI();
 
 		if ( view == null )
@@ -395,7 +433,10 @@ public class MoBIE
 	{
 		IJ.log("Dataset: " + datasetName );
 		final String datasetJsonPath = combinePath( projectRoot, datasetName, "dataset.json" );
-		dataset = new DatasetJsonParser().parseDataset( datasetJsonPath );
+		try ( BenchmarkRecorder.Phase phase = benchmarkPhase( "parseDataset" ) )
+		{
+			dataset = new DatasetJsonParser().parseDataset( datasetJsonPath );
+		}
 		dataset.setName( datasetName );
 
 		// set data source names
@@ -407,11 +448,56 @@ public class MoBIE
 		for ( String view : getViews().keySet() )
 			System.out.println( view );
 
+		if ( settings.values.isHeadless() )
+		{
+			initViewHeadless( viewName );
+			return;
+		}
+
 		// build UI and show view
 		buildUI();
 		viewManager.show( getView( viewName, dataset ) );
 	}
 
+	// Loads the data of the view, including the tables,
+	// as done when showing it, but without building any UI;
+	// this is used to measure the performance of opening data.
+	// Without a view, the default view (or else the first view) is loaded.
+	private void initViewHeadless( @Nullable String view )
+	{
+		if ( view == null )
+			view = getViews().containsKey( View.DEFAULT ) ? View.DEFAULT : getViews().keySet().iterator().next();
+
+		IJ.log( "Loading data of view \"" + view + "\"..." );
+		final View currentView = getView( view, dataset );
+		if ( currentView.isExclusive() )
+			DataStore.clearImages();
+
+		ViewManager.initData( this, currentView );
+
+		try ( BenchmarkRecorder.Phase phase = benchmarkPhase( "tables" ) )
+		{
+			for ( Display< ? > display : currentView.displays() )
+			{
+				if ( ! ( display instanceof AbstractAnnotationDisplay ) ) continue;
+
+				final AbstractAnnotationDisplay< ? > annotationDisplay = ( AbstractAnnotationDisplay< ? > ) display;
+				annotationDisplay.images().clear();
+				ViewManager.initAnnotationData( annotationDisplay );
+
+				// force loading of the table(s)
+				final AnnotationTableModel< ? > tableModel = annotationDisplay.getAnnData().getTable();
+				tableModel.columnNames();
+				tableModel.numAnnotations();
+			}
+		}
+	}
+
+	public BenchmarkRecorder.Phase benchmarkPhase( String name )
+	{
+		return BenchmarkRecorder.phase( settings.values.getBenchmarkRecorder(), name );
+	}
+
 	private void buildUI()
 	{
 		userInterface = new UserInterface( this );
@@ -464,7 +550,8 @@ public class MoBIE
 			IJ.log( "Closing I/O threads..." );
 			S3Utils.setS3AccessAndSecretKey( null );
 			ThreadHelper.resetIOThreads();
-			viewManager.close();
+			if ( viewManager != null )
+				viewManager.close();
 			IJ.log( "MoBIE closed." );
 			if ( settings.values.isOpenedFromCLI() )
 				System.exit( 0 );
@@ -29,10 +29,12 @@
 package org.embl.mobie;
 
 import mpicbg.spim.data.sequence.VoxelDimensions;
+import org.embl.mobie.lib.BenchmarkRecorder;
 import org.embl.mobie.lib.io.DataFormats;
 import org.embl.mobie.lib.serialize.View;
 import org.embl.mobie.lib.table.TableDataFormat;
 
+import javax.annotation.Nullable;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -114,6 +116,18 @@ public class MoBIESettings
 		return this;
 	}
 
+	public MoBIESettings headless( Boolean headless )
+	{
+		this.values.headless = headless;
+		return this;
+	}
+
+	public MoBIESettings benchmarkRecorder( BenchmarkRecorder benchmarkRecorder )
+	{
+		this.values.benchmarkRecorder = benchmarkRecorder;
+		return this;
+	}
+
 	public MoBIESettings projectType( ProjectType projectType )
 	{
 		this.values.projectType = projectType;
@@ -140,6 +154,8 @@ public class MoBIESettings
 		private String view = View.DEFAULT;
 		private VoxelDimensions voxelDimensions = null;
 		private Boolean openedFromCLI = false; // started from CLI
+		private Boolean headless = false; // only load the data, without UI
+		private BenchmarkRecorder benchmarkRecorder = null;
 		private ProjectType projectType = ProjectType.MoBIEJSON;
 		private String dataRoot = null;
 
@@ -212,5 +228,16 @@ public class MoBIESettings
 		{
 			return projectType;
 		}
+
+		public Boolean isHeadless()
+		{
+			return headless;
+		}
+
+		@Nullable
+		public BenchmarkRecorder getBenchmarkRecorder()
+		{
+			return benchmarkRecorder;
+		}
 	}
 }
@@ -0,0 +1,128 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.cmd;
+
+import org.embl.mobie.MoBIESettings;
+import org.embl.mobie.lib.BenchmarkRecorder;
+import picocli.CommandLine.Option;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Options, shared by the command line tools, to open the data without
+ * any UI and to write the time that this took to a JSON file.
+ */
+public class BenchmarkOptions
+{
+	public static final String TOTAL = "total";
+	public static final String HEAP_MB = "heapMB";
+
+	@Option(names = {"--headless"}, required = false, description = "only load the data, including the tables, without showing a viewer; useful for measuring the performance on machines without a display")
+	public boolean headless = false;
+
+	@Option(names = {"--benchmark"}, required = false, description = "JSON file to which the duration of the phases of opening the data, the queue depths of the thread pools and the peak heap are written")
+	public String benchmark;
+
+	@Option(names = {"--budget"}, required = false, description = "maximal duration of a phase in milliseconds, e.g. \"total=60000\" or \"tables=5000\", or maximal peak heap, e.g. \"" + HEAP_MB + "=4096\"; if a budget is exceeded the exit code is 2; repeat to specify several budgets; requires --headless")
+	public Map< String, Long > budgets = new LinkedHashMap<>();
+
+	private BenchmarkRecorder recorder;
+
+	public MoBIESettings configure( MoBIESettings settings )
+	{
+		// with a viewer the command returns before the data is loaded
+		// and its exit code is not used, thus the budgets could not be checked
+		if ( ! budgets.isEmpty() && ! headless )
+			throw new IllegalArgumentException( "--budget requires --headless." );
+
+		if ( headless )
+			System.setProperty( "java.awt.headless", "true" );
+
+		if ( benchmark != null || ! budgets.isEmpty() )
+		{
+			recorder = new BenchmarkRecorder();
+			settings.benchmarkRecorder( recorder );
+		}
+
+		return settings.headless( headless );
+	}
+
+	/**
+	 * Writes the benchmark and checks the budgets.
+	 *
+	 * @return the exit code
+	 */
+	public int finish() throws IOException
+	{
+		if ( recorder == null )
+			return 0;
+
+		recorder.stop();
+
+		if ( benchmark != null )
+		{
+			recorder.write( benchmark );
+			System.out.println( "Benchmark written to " + benchmark );
+		}
+
+		final Map< String, Long > measured = recorder.getPhaseMillis();
+		measured.put( TOTAL, recorder.getTotalMillis() );
+		measured.put( HEAP_MB, recorder.getPeakHeapBytes() / ( 1024 * 1024 ) );
+
+		int exitCode = 0;
+		for ( Map.Entry< String, Long > budget : budgets.entrySet() )
+		{
+			final Long value = measured.get( budget.getKey() );
+			if ( value == null )
+			{
+				System.err.println( "Budget for unknown phase: " + budget.getKey() + "; known phases: " + measured.keySet() );
+				exitCode = 2;
+			}
+			else if ( value > budget.getValue() )
+			{
+				System.err.println( "Budget exceeded: " + budget.getKey() + " = " + value + " > " + budget.getValue() );
+				exitCode = 2;
+			}
+		}
+
+		return exitCode;
+	}
+
+	/**
+	 * @return whether the JVM should be exited after running the command,
+	 * 			because there is no viewer that keeps it alive
+	 * 			(budgets are rejected without --headless)
+	 */
+	public boolean exitAfterCall()
+	{
+		return headless || ! budgets.isEmpty();
+	}
+}
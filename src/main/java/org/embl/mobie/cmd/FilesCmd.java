@@ -41,7 +41,7 @@ import java.util.List;
 import java.util.concurrent.Callable;
 
 @CommandLine.Command(name = "mobie-files", mixinStandardHelpOptions = true, version = "4.0.3", description = "Visualise multi-modal big image data files, see https://mobie.github.io/")
-public class FilesCmd implements Callable< Void > {
+public class FilesCmd implements Callable< Integer > {
 
 	public static final String RC = "-rc";
 	public static final String REMOVE_CALIBRATION = "--remove-calibration";
@@ -69,8 +69,11 @@ public class FilesCmd implements Callable< Void > {
 	@Option(names = { RC, REMOVE_CALIBRATION }, required = false, description = "flag to remove spatial calibration from all images; this can be useful if only some images have a spatial calibration metadata and thus overlaying several images would fail")
 	public SpatialCalibration spatialCalibration = SpatialCalibration.FromImage;
 
+	@CommandLine.Mixin
+	public BenchmarkOptions benchmarkOptions = new BenchmarkOptions();
+
 	@Override
-	public Void call() throws Exception {
+	public Integer call() throws Exception {
 
 		final MoBIESettings settings = new MoBIESettings();
 
@@ -87,9 +90,11 @@ public class FilesCmd implements Callable< Void > {
 		List< String > tablesList = tables != null ?
 				Arrays.asList( tables ) : new ArrayList<>();
 
+		benchmarkOptions.configure( settings );
+
 		new MoBIE( imageList, labelsList, tablesList, root, gridType, settings );
 
-		return null;
+		return benchmarkOptions.finish();
 	}
 
 	public static final void main( final String... args ) {
@@ -99,6 +104,10 @@ public class FilesCmd implements Callable< Void > {
 		if ( args == null || args.length == 0 )
 			new CommandLine( moBIECmd ).execute( "--help" );
 		else
-			new CommandLine( moBIECmd ).setCaseInsensitiveEnumValuesAllowed( true ).execute( args );
+		{
+			final int exitCode = new CommandLine( moBIECmd ).setCaseInsensitiveEnumValuesAllowed( true ).execute( args );
+			if ( moBIECmd.benchmarkOptions.exitAfterCall() )
+				System.exit( exitCode );
+		}
 	}
 }
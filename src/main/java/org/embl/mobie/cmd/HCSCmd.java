@@ -37,7 +37,7 @@ import picocli.CommandLine.Option;
 import java.util.concurrent.Callable;
 
 @CommandLine.Command(name = "mobie-hcs", mixinStandardHelpOptions = true, version = "4.0.3", description = "Visualise high content screening image data, see https://mobie.github.io/tutorials/hcs.html")
-public class HCSCmd implements Callable< Void > {
+public class HCSCmd implements Callable< Integer > {
 
 	static { net.imagej.patcher.LegacyInjector.preinit(); }
 
@@ -54,8 +54,11 @@ public class HCSCmd implements Callable< Void > {
 	@Option(names = {"--remove-spatial-calibration"}, required = false, description = "removes spatial calibration from all images; this is useful if only some images have a spatial calibration and thus the overlay would fail.")
 	public Boolean removeSpatialCalibration = false;
 
+	@CommandLine.Mixin
+	public BenchmarkOptions benchmarkOptions = new BenchmarkOptions();
+
 	@Override
-	public Void call() throws Exception {
+	public Integer call() throws Exception {
 
 		final MoBIESettings settings = new MoBIESettings();
 
@@ -63,9 +66,11 @@ public class HCSCmd implements Callable< Void > {
 
 		settings.setVoxelDimensions( null ); // FIXME
 
+		benchmarkOptions.configure( settings );
+
 		new MoBIE( hcs, settings, wellMargin, siteMargin, null );
 
-		return null;
+		return benchmarkOptions.finish();
 	}
 
 	public static final void main( final String... args ) {
@@ -75,6 +80,10 @@ public class HCSCmd implements Callable< Void > {
 		if ( args == null || args.length == 0 )
 			new CommandLine( moBIECmd ).execute( "--help" );
 		else
-			new CommandLine( moBIECmd ).setCaseInsensitiveEnumValuesAllowed( true ).execute( args );
+		{
+			final int exitCode = new CommandLine( moBIECmd ).setCaseInsensitiveEnumValuesAllowed( true ).execute( args );
+			if ( moBIECmd.benchmarkOptions.exitAfterCall() )
+				System.exit( exitCode );
+		}
 	}
 }
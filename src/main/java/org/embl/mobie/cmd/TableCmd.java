@@ -47,7 +47,7 @@ import static org.embl.mobie.cmd.FilesCmd.ROOT;
 
 // TODO: Derive this class from a base class (common with mobie-files and mobie-hcs)
 @CommandLine.Command(name = "mobie-table", mixinStandardHelpOptions = true, version = "4.0.3", description = "Visualise images and labels masks from a dataset table, see https://mobie.github.io/")
-public class TableCmd implements Callable< Void > {
+public class TableCmd implements Callable< Integer > {
 
 	static { net.imagej.patcher.LegacyInjector.preinit(); }
 
@@ -69,8 +69,11 @@ public class TableCmd implements Callable< Void > {
 	@Option(names = {RC, REMOVE_CALIBRATION}, required = false, description = "removes spatial calibration from all images; this is useful if only some images have a spatial calibration and thus the overlay would fail.")
 	public SpatialCalibration spatialCalibration = SpatialCalibration.FromImage;
 
+	@CommandLine.Mixin
+	public BenchmarkOptions benchmarkOptions = new BenchmarkOptions();
+
 	@Override
-	public Void call() throws Exception {
+	public Integer call() throws Exception {
 
 		final MoBIESettings settings = new MoBIESettings();
 
@@ -84,9 +87,11 @@ public class TableCmd implements Callable< Void > {
 		List< String > labelsList = labels != null ?
 				Arrays.asList( labels ) : new ArrayList<>();
 
+		benchmarkOptions.configure( settings );
+
 		new MoBIE( table, imageList, labelsList, root, null, gridType, settings );
 
-		return null;
+		return benchmarkOptions.finish();
 	}
 
 	public static final void main( final String... args ) {
@@ -96,6 +101,10 @@ public class TableCmd implements Callable< Void > {
 		if ( args == null || args.length == 0 )
 			new CommandLine( moBIECmd ).execute( "--help" );
 		else
-			new CommandLine( moBIECmd ).setCaseInsensitiveEnumValuesAllowed( true ).execute( args );
+		{
+			final int exitCode = new CommandLine( moBIECmd ).setCaseInsensitiveEnumValuesAllowed( true ).execute( args );
+			if ( moBIECmd.benchmarkOptions.exitAfterCall() )
+				System.exit( exitCode );
+		}
 	}
 }
@@ -31,6 +31,7 @@ package org.embl.mobie.command.context;
 import org.embl.mobie.MoBIE;
 import org.embl.mobie.command.CommandConstants;
 import org.embl.mobie.command.MoBIEManualTransformationEditor;
+import org.embl.mobie.lib.bdv.view.SliceViewer;
 import org.embl.mobie.lib.serialize.display.Display;
 import org.embl.mobie.lib.view.ViewManager;
 import org.embl.mobie.ui.UserInterfaceHelper;
@@ -81,12 +82,26 @@ public class ManualTransformationCommand extends AbstractTransformationCommand
 
 		transformationEditor = new MoBIEManualTransformationEditor( bdvHandle.getViewerPanel(), bdvHandle.getKeybindings() );
 		transformationEditor.setTransformableSources( movingSacs );
+		addSourceBoundsIndexListener();
 		transformationEditor.setActive( true );
 
 		getInfo().getMutableInput( "status", String.class )
 				.setValue( this, "Transforming: " + String.join( ",", selectedImages.getNames() ));
 	}
 
+	// the editor moves the sources without notifying anyone,
+	// thus the index of the source bounds needs to be told
+	private void addSourceBoundsIndexListener()
+	{
+		final MoBIE moBIE = MoBIE.getInstance();
+		if ( moBIE == null ) return;
+
+		final SliceViewer sliceViewer = moBIE.getViewManager().getSliceViewer();
+		if ( sliceViewer.getBdvHandle() != bdvHandle ) return;
+
+		transformationEditor.manualTransformActiveListeners().add( sliceViewer.getSourceBoundsIndex() );
+	}
+
 	private void acceptManualTransform()
 	{
 		if ( transformationEditor == null ) return;
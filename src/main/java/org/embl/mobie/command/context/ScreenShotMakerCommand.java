@@ -33,6 +33,7 @@ import ij.IJ;
 import org.embl.mobie.MoBIE;
 import org.embl.mobie.command.CommandConstants;
 import org.embl.mobie.lib.bdv.ScreenShotMaker;
+import org.embl.mobie.lib.bdv.TiledScreenShotWriter;
 import org.scijava.Initializable;
 import org.scijava.command.DynamicCommand;
 import org.scijava.module.MutableModuleItem;
@@ -41,6 +42,7 @@ import org.scijava.plugin.Plugin;
 import sc.fiji.bdvpg.bdv.BdvHandleHelper;
 import sc.fiji.bdvpg.scijava.command.BdvPlaygroundActionCommand;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 
@@ -65,12 +67,33 @@ public class ScreenShotMakerCommand extends DynamicCommand implements BdvPlaygro
     @Parameter(label="Pixel unit", persist = false, choices = {"micrometer"} )
     public String pixelUnit;
 
+    @Parameter(label="Write tiles to OME-Zarr (for very large screenshots)", persist = false )
+    public Boolean writeToDisk = false;
+
+    @Parameter(label="Output directory", style = "directory", required = false )
+    public File outputDirectory;
+
+    @Parameter(label="Output name", persist = false, required = false )
+    public String outputName = "screenshot";
+
     @Override
     public void run()
     {
         if ( MoBIE.getInstance().getSettings().values.isOpenedFromCLI() )
             MoBIE.imageJ.ui().showUI();
 
+        if ( writeToDisk )
+        {
+            if ( outputDirectory == null )
+            {
+                IJ.showMessage( "Please specify an output directory." );
+                return;
+            }
+
+            new TiledScreenShotWriter( bdvHandle, pixelUnit ).run( outputDirectory, outputName, targetSamplingInXY );
+            return;
+        }
+
         ScreenShotMaker screenShotMaker = new ScreenShotMaker( bdvHandle, pixelUnit );
         screenShotMaker.run( targetSamplingInXY );
         screenShotMaker.getRGBImagePlus().show();
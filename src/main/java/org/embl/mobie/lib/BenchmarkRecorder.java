@@ -0,0 +1,162 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib;
+
+import com.google.gson.GsonBuilder;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the wall-clock time of the phases of opening data,
+ * the maximal queue depths of the {@link ThreadHelper} executors
+ * and the peak heap usage.
+ *
+ * Phases with the same name are summed up.
+ */
+public class BenchmarkRecorder
+{
+	private static final Phase NO_PHASE = () -> {};
+
+	private final long startMillis;
+	private long totalMillis = -1;
+	private final Map< String, Long > phaseMillis = Collections.synchronizedMap( new LinkedHashMap<>() );
+	private final Map< String, Integer > maxQueueDepths = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService sampler;
+
+	public BenchmarkRecorder()
+	{
+		for ( MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() )
+			pool.resetPeakUsage();
+
+		sampler = Executors.newSingleThreadScheduledExecutor( runnable -> {
+			final Thread thread = new Thread( runnable, "MoBIE benchmark sampler" );
+			thread.setDaemon( true );
+			return thread;
+		} );
+		sampler.scheduleAtFixedRate( this::sampleQueueDepths, 0, 10, TimeUnit.MILLISECONDS );
+
+		startMillis = System.currentTimeMillis();
+	}
+
+	/**
+	 * @param recorder
+	 * 			may be null, in which case nothing is recorded
+	 * @return a phase that is recorded when it is closed
+	 */
+	public static Phase phase( @Nullable BenchmarkRecorder recorder, String name )
+	{
+		return recorder == null ? NO_PHASE : recorder.phase( name );
+	}
+
+	public Phase phase( String name )
+	{
+		final long start = System.currentTimeMillis();
+		return () -> phaseMillis.merge( name, System.currentTimeMillis() - start, Long::sum );
+	}
+
+	public synchronized void stop()
+	{
+		if ( totalMillis >= 0 ) return;
+
+		totalMillis = System.currentTimeMillis() - startMillis;
+		sampler.shutdownNow();
+		sampleQueueDepths();
+	}
+
+	public long getTotalMillis()
+	{
+		return totalMillis;
+	}
+
+	public Map< String, Long > getPhaseMillis()
+	{
+		synchronized ( phaseMillis )
+		{
+			return new LinkedHashMap<>( phaseMillis );
+		}
+	}
+
+	public Map< String, Integer > getMaxQueueDepths()
+	{
+		return new LinkedHashMap<>( maxQueueDepths );
+	}
+
+	/**
+	 * @return the sum of the peak usages of the heap memory pools since the
+	 * 			start of the recording, which may be larger than the actual peak
+	 */
+	public long getPeakHeapBytes()
+	{
+		long bytes = 0;
+		for ( MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() )
+			if ( pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null )
+				bytes += pool.getPeakUsage().getUsed();
+		return bytes;
+	}
+
+	public void write( String path ) throws IOException
+	{
+		final Map< String, Object > report = new LinkedHashMap<>();
+		report.put( "totalMillis", totalMillis );
+		report.put( "phaseMillis", getPhaseMillis() );
+		report.put( "maxQueueDepths", getMaxQueueDepths() );
+		report.put( "peakHeapBytes", getPeakHeapBytes() );
+		report.put( "availableProcessors", Runtime.getRuntime().availableProcessors() );
+		report.put( "maxHeapBytes", Runtime.getRuntime().maxMemory() );
+
+		final String json = new GsonBuilder().setPrettyPrinting().create().toJson( report );
+		Files.write( Paths.get( path ), json.getBytes( StandardCharsets.UTF_8 ) );
+	}
+
+	private void sampleQueueDepths()
+	{
+		ThreadHelper.getQueueDepths().forEach( ( executor, depth ) ->
+				maxQueueDepths.merge( executor, depth, Math::max ) );
+	}
+
+	public interface Phase extends AutoCloseable
+	{
+		@Override
+		void close();
+	}
+}
@@ -39,6 +39,7 @@ import org.embl.mobie.lib.image.Image;
 import org.embl.mobie.lib.image.ImageDataImage;
 import org.embl.mobie.lib.image.TransformedImage;
 import org.embl.mobie.lib.io.ImageDataInfo;
+import org.embl.mobie.lib.io.PathFinder;
 import org.janelia.saalfeldlab.n5.universe.metadata.canonical.CanonicalDatasetMetadata;
 import sc.fiji.bdvpg.scijava.services.SourceAndConverterBdvDisplayService;
 import sc.fiji.bdvpg.services.SourceAndConverterServices;
@@ -338,6 +339,12 @@ public abstract class MoBIEHelper
 			// TODO: what is the correct path depth here?
 			//   Note that is can become very slow for
 			//   OME-Zarr with its many sub-folders if the depth is too deep
+			final File file = new File( regex );
+			final File folder = file.getParentFile();
+			if ( folder != null && folder.isDirectory() )
+				return new PathFinder( folder.getPath(), file.getName(), 2 ).find();
+
+			// e.g., the folder is a regular expression as well
             return getPaths( regex, 2 );
 		}
 		catch ( Exception e )
@@ -31,7 +31,9 @@ package org.embl.mobie.lib;
 import bdv.cache.SharedQueue;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -57,6 +59,11 @@ public class ThreadHelper
 
 	public static ExecutorService executorService = Executors.newFixedThreadPool( N_THREADS );
 
+	// the alignments wait for the tasks that they submit here;
+	// submitting them to the executorService could deadlock,
+	// if the alignments themselves run on the executorService
+	public static final ExecutorService alignmentExecutorService = Executors.newFixedThreadPool( N_THREADS );
+
 	public static ExecutorService stitchedImageExecutorService;
 	static {
 		// queue that only keep the latest requests.
@@ -118,4 +125,24 @@ public class ThreadHelper
 	{
 		return new ArrayList<>();
 	}
+
+	/**
+	 * @return the number of tasks that are waiting in the queues of the executors
+	 */
+	public static Map< String, Integer > getQueueDepths()
+	{
+		final Map< String, Integer > queueDepths = new LinkedHashMap<>();
+		queueDepths.put( "io", getQueueDepth( ioExecutorService ) );
+		queueDepths.put( "compute", getQueueDepth( executorService ) );
+		queueDepths.put( "stitchedImage", getQueueDepth( stitchedImageExecutorService ) );
+		return queueDepths;
+	}
+
+	private static int getQueueDepth( ExecutorService executorService )
+	{
+		if ( executorService instanceof ThreadPoolExecutor )
+			return ( ( ThreadPoolExecutor ) executorService ).getQueue().size();
+
+		return 0;
+	}
 }
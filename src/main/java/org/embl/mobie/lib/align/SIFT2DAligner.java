@@ -32,18 +32,27 @@ import ij.IJ;
 import ij.ImagePlus;
 import ij.gui.GenericDialog;
 
+import java.awt.Rectangle;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
-import mpicbg.ij.FeatureTransform;
+import ij.process.ImageProcessor;
 import mpicbg.ij.SIFT;
 import mpicbg.ij.util.Util;
 import mpicbg.imagefeatures.Feature;
 import mpicbg.imagefeatures.FloatArray2DSIFT;
 import mpicbg.models.*;
+import net.imglib2.KDTree;
+import net.imglib2.RealPoint;
+import net.imglib2.neighborsearch.KNearestNeighborSearchOnKDTree;
 import net.imglib2.realtransform.AffineTransform3D;
+import org.embl.mobie.lib.ThreadHelper;
 import org.embl.mobie.lib.transform.Transform;
 
 /**
@@ -84,6 +93,12 @@ import org.embl.mobie.lib.transform.Transform;
  * @version 0.4b
  *
  * Modified by Christian Tischer
+ *
+ * The features are extracted concurrently for both images on a
+ * downsampled level, which is chosen such that enough features are found.
+ * The correspondence candidates are found on a KDTree of the descriptors.
+ * If the features were extracted on a downsampled level the model is
+ * refined at full resolution within windows around the coarse inliers.
  */
 public class SIFT2DAligner
 {
@@ -91,9 +106,8 @@ public class SIFT2DAligner
     final static private DecimalFormatSymbols decimalFormatSymbols = new DecimalFormatSymbols();
     private final ImagePlus impA;
     private final ImagePlus impB;
-    final private List< Feature > fs1 = new ArrayList< Feature >();
-    final private List< Feature > fs2 = new ArrayList< Feature >();;
     private AffineTransform3D siftTransform;
+    private List< PointMatch > inliers = new ArrayList<>();
 
     static private class Param
     {
@@ -123,12 +137,63 @@ public class SIFT2DAligner
          */
         public int minNumInliers = 7;
 
+        /**
+         * Number of features per image for which the downsampling level is chosen
+         */
+        public int targetNumFeatures = 2000;
+
+        /**
+         * Size of the windows for the refinement at full resolution in px
+         */
+        public int refinementWindowSize = 256;
+
+        public int maxNumRefinementWindows = 16;
+
         /**
          * Implemeted transformation models for choice
          */
         public Transform transformationType;
     }
 
+    /**
+     * Statistics of one alignment.
+     * All distances are in full resolution pixels.
+     */
+    public static class Result
+    {
+        public boolean modelFound;
+        public AffineTransform3D transform;
+        public int level; // the features were extracted at a downsampling of 2^level
+        public int numFeaturesA;
+        public int numFeaturesB;
+        public int numCandidates;
+        public int numInliers;
+        public double meanDisplacement = Double.NaN;
+        public boolean refined;
+        public long extractionMillis;
+        public long matchingMillis;
+        public long filteringMillis;
+        public long refinementMillis;
+        public long totalMillis;
+
+        @Override
+        public String toString()
+        {
+            return "SIFT alignment: model found: " + modelFound
+                    + ", level: " + level
+                    + ", features: " + numFeaturesA + " / " + numFeaturesB
+                    + ", candidates: " + numCandidates
+                    + ", inliers: " + numInliers
+                    + ", mean displacement: " + decimalFormat.format( meanDisplacement ) + " px"
+                    + ", refined: " + refined
+                    + ", time [ms]: extraction " + extractionMillis
+                    + ", matching " + matchingMillis
+                    + ", filtering " + filteringMillis
+                    + ", refinement " + refinementMillis
+                    + ", total " + totalMillis;
+        }
+    }
+
     final static private Param p = new Param();
 
     public SIFT2DAligner( ImagePlus impA, ImagePlus impB, Transform transformationType )
@@ -154,6 +219,7 @@ public class SIFT2DAligner
         gd.addNumericField( "steps_per_scale_octave :", p.sift.steps, 0 );
         gd.addNumericField( "minimum_image_size :", p.sift.minOctaveSize, 0, 6, "px" );
         gd.addNumericField( "maximum_image_size :", p.sift.maxOctaveSize, 0, 6, "px" );
+        gd.addNumericField( "target_number_of_features :", p.targetNumFeatures, 0 );
 
         gd.addNumericField( "feature_descriptor_size :", p.sift.fdSize, 0 );
         gd.addNumericField( "feature_descriptor_orientation_bins :", p.sift.fdBins, 0 );
@@ -172,6 +238,7 @@ public class SIFT2DAligner
         p.sift.steps = ( int )gd.getNextNumber();
         p.sift.minOctaveSize = ( int )gd.getNextNumber();
         p.sift.maxOctaveSize = ( int )gd.getNextNumber();
+        p.targetNumFeatures = ( int )gd.getNextNumber();
 
         p.sift.fdSize = ( int )gd.getNextNumber();
         p.sift.fdBins = ( int )gd.getNextNumber();
@@ -184,132 +251,399 @@ public class SIFT2DAligner
         
         return run( impA, impB, showIntermediates );
     }
-    
+
     /**
-     * Execute with current parameters
+     * Execute with current parameters, without user interaction
      *
      * @return
-     *        boolean whether a model was found
+     *        the transformation and statistics of the alignment
      */
-    private boolean run( final ImagePlus imp1, final ImagePlus imp2, Boolean showIntermediates ) {
+    public Result align()
+    {
+        return align( impA, impB );
+    }
+
+    private boolean run( final ImagePlus imp1, final ImagePlus imp2, Boolean showIntermediates )
+    {
+        final Result result = align( imp1, imp2 );
 
-        // cleanup
-        fs1.clear();
-        fs2.clear();
+        IJ.log( result.toString() );
 
-        final FloatArray2DSIFT sift = new FloatArray2DSIFT( p.sift );
-        final SIFT ijSIFT = new SIFT( sift );
+        if ( ! inliers.isEmpty() && showIntermediates  )
+        {
+            final ArrayList< Point > p1 = new ArrayList< Point >();
+            final ArrayList< Point > p2 = new ArrayList< Point >();
+            imp1.show();
+            imp2.show();
+            PointMatch.sourcePoints( inliers, p1 );
+            PointMatch.targetPoints( inliers, p2 );
+            imp1.setRoi( Util.pointsToPointRoi( p1 ) );
+            imp2.setRoi( Util.pointsToPointRoi( p2 ) );
+        }
+
+        return result.modelFound;
+    }
 
-        long start_time = System.currentTimeMillis();
-        IJ.log( "Processing SIFT ..." );
-        ijSIFT.extractFeatures( imp1.getProcessor(), fs1 );
-        IJ.log( " took " + ( System.currentTimeMillis() - start_time ) + "ms." );
-        IJ.log( fs1.size() + " features extracted." );
+    private Result align( final ImagePlus imp1, final ImagePlus imp2 )
+    {
+        final long alignStartTime = System.currentTimeMillis();
+        final Result result = new Result();
+        inliers = new ArrayList<>();
+        siftTransform = null;
+
+        final ImageProcessor ip1 = imp1.getProcessor();
+        final ImageProcessor ip2 = imp2.getProcessor();
+
+        // Start at the level at which the images are not larger than
+        // the largest octave that is used for the feature extraction,
+        // and go to finer levels until there are enough features.
+        final int maxSize = Math.max( Math.max( ip1.getWidth(), ip1.getHeight() ), Math.max( ip2.getWidth(), ip2.getHeight() ) );
+        int level = Math.max( 0, ( int ) Math.ceil( log2( ( double ) maxSize / p.sift.maxOctaveSize ) ) );
+
+        long startTime = System.currentTimeMillis();
+        List< Feature > fs1;
+        List< Feature > fs2;
+        while ( true )
+        {
+            final List< List< Feature > > features = extractFeatures( ip1, ip2, level );
+            fs1 = features.get( 0 );
+            fs2 = features.get( 1 );
 
-        start_time = System.currentTimeMillis();
-        IJ.log( "Processing SIFT ..." );
-        ijSIFT.extractFeatures( imp2.getProcessor(), fs2 );
-        IJ.log( " took " + ( System.currentTimeMillis() - start_time ) + "ms." );
-        IJ.log( fs2.size() + " features extracted." );
+            final int numFeatures = Math.min( fs1.size(), fs2.size() );
+            if ( level == 0 || numFeatures >= p.targetNumFeatures ) break;
 
-        start_time = System.currentTimeMillis();
-        IJ.log( "Identifying correspondence candidates using brute force ..." );
-        final List< PointMatch > candidates = new ArrayList< PointMatch >();
-        FeatureTransform.matchFeatures( fs1, fs2, candidates, p.rod );
-        IJ.log( " took " + ( System.currentTimeMillis() - start_time ) + "ms." );
+            // the number of features scales with the image area
+            final double numLevels = 0.5 * log2( ( double ) p.targetNumFeatures / Math.max( 1, numFeatures ) );
+            level = Math.max( 0, level - Math.max( 1, ( int ) Math.ceil( numLevels ) ) );
+        }
+        result.level = level;
+        result.numFeaturesA = fs1.size();
+        result.numFeaturesB = fs2.size();
+        result.extractionMillis = System.currentTimeMillis() - startTime;
 
-        final ArrayList< Point > p1 = new ArrayList< Point >();
-        final ArrayList< Point > p2 = new ArrayList< Point >();
-        final List< PointMatch > inliers;
+        startTime = System.currentTimeMillis();
+        final List< PointMatch > candidates = matchFeatures( fs1, fs2, p.rod );
+        result.numCandidates = candidates.size();
+        result.matchingMillis = System.currentTimeMillis() - startTime;
 
-        boolean modelFound = false;
+        if ( ! p.useGeometricConsensusFilter )
+        {
+            inliers = candidates;
+            result.numInliers = candidates.size();
+            result.totalMillis = System.currentTimeMillis() - alignStartTime;
+            return result;
+        }
 
-        if ( p.useGeometricConsensusFilter )
+        AbstractAffineModel2D< ? > model = createModel();
+        if ( model == null )
         {
-            IJ.log( candidates.size() + " potentially corresponding features identified." );
+            result.totalMillis = System.currentTimeMillis() - alignStartTime;
+            return result;
+        }
+
+        // the features of the downsampled levels are localised less precisely
+        final double coarseEpsilon = Math.max( p.maxEpsilon, 2 * Math.pow( 2, level ) );
 
-            start_time = System.currentTimeMillis();
-            IJ.log( "Filtering correspondence candidates by geometric consensus ..." );
-            inliers = new ArrayList< PointMatch >();
+        startTime = System.currentTimeMillis();
+        List< PointMatch > modelInliers = new ArrayList<>();
+        result.modelFound = filterRansac( model, candidates, modelInliers, coarseEpsilon );
+        result.filteringMillis = System.currentTimeMillis() - startTime;
 
-            AbstractAffineModel2D< ? > model;
-            switch ( p.transformationType )
+        if ( result.modelFound && level > 0 )
+        {
+            startTime = System.currentTimeMillis();
+            final AbstractAffineModel2D< ? > refinedModel = createModel();
+            final List< PointMatch > refinedInliers = new ArrayList<>();
+            final List< PointMatch > refinedCandidates = matchFeaturesInWindows( ip1, ip2, model, modelInliers, coarseEpsilon );
+            if ( filterRansac( refinedModel, refinedCandidates, refinedInliers, p.maxEpsilon ) )
             {
-                case Translation:
-                    model = new TranslationModel2D();
-                    break;
-                case Rigid:
-                    model = new RigidModel2D();
-                    break;
-                case Similarity:
-                    model = new SimilarityModel2D();
-                    break;
-                case Affine:
-                    model = new AffineModel2D();
-                    break;
-//                case 4:
-//                    // TODO: What is this?
-//                    model = new HomographyModel2D();
-//                    break;
-                default:
-                    return modelFound;
+                model = refinedModel;
+                modelInliers = refinedInliers;
+                result.refined = true;
             }
+            result.refinementMillis = System.currentTimeMillis() - startTime;
+        }
 
+        if ( result.modelFound )
+        {
+            PointMatch.apply( modelInliers, model );
+            inliers = modelInliers;
+
+            final double[] a = new double[ 6 ];
+            model.toArray( a );
+            siftTransform = new AffineTransform3D();
+            siftTransform.set(
+                    a[0], a[2], 0, a[4],
+                    a[1], a[3], 0, a[5],
+                    0, 0, 1, 0);
+            siftTransform = siftTransform.inverse();
+
+            result.transform = siftTransform.copy();
+            result.numInliers = modelInliers.size();
+            result.meanDisplacement = PointMatch.meanDistance( modelInliers );
+        }
 
-            try
-            {
-                modelFound = model.filterRansac(
-                        candidates,
-                        inliers,
-                        1000,
-                        p.maxEpsilon,
-                        p.minInlierRatio,
-                        p.minNumInliers );
-
-                final double[] a = new double[ 6 ];
-                model.toArray( a );
-                siftTransform = new AffineTransform3D();
-                siftTransform.set(
-                        a[0], a[2], 0, a[4],
-                        a[1], a[3], 0, a[5],
-                        0, 0, 1, 0);
-                siftTransform = siftTransform.inverse();
+        result.totalMillis = System.currentTimeMillis() - alignStartTime;
+        return result;
+    }
 
-            }
-            catch ( final NotEnoughDataPointsException e )
+    private static AbstractAffineModel2D< ? > createModel()
+    {
+        switch ( p.transformationType )
+        {
+            case Translation:
+                return new TranslationModel2D();
+            case Rigid:
+                return new RigidModel2D();
+            case Similarity:
+                return new SimilarityModel2D();
+            case Affine:
+                return new AffineModel2D();
+//            case 4:
+//                // TODO: What is this?
+//                return new HomographyModel2D();
+            default:
+                return null;
+        }
+    }
+
+    private static boolean filterRansac( AbstractAffineModel2D< ? > model, List< PointMatch > candidates, List< PointMatch > inliers, double epsilon )
+    {
+        try
+        {
+            return model.filterRansac(
+                    candidates,
+                    inliers,
+                    1000,
+                    epsilon,
+                    p.minInlierRatio,
+                    p.minNumInliers );
+        }
+        catch ( final NotEnoughDataPointsException e )
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Extracts the features of both images concurrently.
+     *
+     * @return the features of both images, in full resolution pixel coordinates
+     */
+    private static List< List< Feature > > extractFeatures( ImageProcessor ip1, ImageProcessor ip2, int level )
+    {
+        final Future< List< Feature > > future = ThreadHelper.alignmentExecutorService.submit( () -> extractFeatures( ip2, level ) );
+        final List< Feature > fs1 = extractFeatures( ip1, level );
+        try
+        {
+            final List< List< Feature > > features = new ArrayList<>();
+            features.add( fs1 );
+            features.add( future.get() );
+            return features;
+        }
+        catch ( InterruptedException | ExecutionException e )
+        {
+            throw new RuntimeException( e );
+        }
+    }
+
+    private static List< Feature > extractFeatures( ImageProcessor ip, int level )
+    {
+        ImageProcessor downsampled = ip;
+        if ( level > 0 )
+        {
+            final double downsampling = Math.pow( 2, level );
+            downsampled = ip.duplicate();
+            downsampled.setInterpolationMethod( ImageProcessor.BILINEAR );
+            downsampled = downsampled.resize(
+                    Math.max( 1, ( int ) Math.round( ip.getWidth() / downsampling ) ),
+                    Math.max( 1, ( int ) Math.round( ip.getHeight() / downsampling ) ),
+                    true );
+        }
+
+        // use all octaves of a downsampled image; at full resolution
+        // the user's maximum image size is respected
+        final FloatArray2DSIFT.Param param = p.sift.clone();
+        if ( level > 0 )
+            param.maxOctaveSize = Math.max( param.maxOctaveSize, Math.max( downsampled.getWidth(), downsampled.getHeight() ) );
+        final List< Feature > features = new ArrayList<>();
+        new SIFT( new FloatArray2DSIFT( param ) ).extractFeatures( downsampled, features );
+
+        // pixel centers of the downsampled image in full resolution coordinates
+        final double scaleX = ( double ) ip.getWidth() / downsampled.getWidth();
+        final double scaleY = ( double ) ip.getHeight() / downsampled.getHeight();
+        if ( scaleX != 1 || scaleY != 1 )
+        {
+            for ( Feature feature : features )
             {
-                modelFound = false;
+                feature.location[ 0 ] = feature.location[ 0 ] * scaleX + 0.5 * ( scaleX - 1 );
+                feature.location[ 1 ] = feature.location[ 1 ] * scaleY + 0.5 * ( scaleY - 1 );
             }
+        }
 
-            IJ.log( " took " + ( System.currentTimeMillis() - start_time ) + "ms." );
+        return features;
+    }
 
-            if ( modelFound )
+    /**
+     * Extracts and matches the features at full resolution, within windows
+     * around the coarse inliers and their positions as predicted by the coarse model.
+     */
+    private static List< PointMatch > matchFeaturesInWindows(
+            ImageProcessor ip1,
+            ImageProcessor ip2,
+            AbstractAffineModel2D< ? > model,
+            List< PointMatch > coarseInliers,
+            double maxDistance )
+    {
+        final int size = p.refinementWindowSize;
+        final int margin = ( int ) Math.ceil( maxDistance );
+
+        // windows around inliers that are spread across the image
+        final List< double[] > centers = new ArrayList<>();
+        for ( PointMatch inlier : coarseInliers )
+        {
+            final double[] center = inlier.getP1().getL();
+            boolean isSeparated = true;
+            for ( double[] other : centers )
+                if ( Math.abs( other[ 0 ] - center[ 0 ] ) < size && Math.abs( other[ 1 ] - center[ 1 ] ) < size )
+                    isSeparated = false;
+
+            if ( isSeparated ) centers.add( center );
+            if ( centers.size() == p.maxNumRefinementWindows ) break;
+        }
+
+        // crop sequentially, because ImageProcessor.setRoi is not thread safe
+        final List< ImageProcessor[] > crops = new ArrayList<>();
+        final List< Rectangle[] > windows = new ArrayList<>();
+        for ( double[] center : centers )
+        {
+            final double[] predicted = model.apply( center );
+            final Rectangle window1 = getWindow( ip1, center, size / 2 );
+            final Rectangle window2 = getWindow( ip2, predicted, size / 2 + margin );
+            if ( window1.isEmpty() || window2.isEmpty() ) continue;
+
+            ip1.setRoi( window1 );
+            ip2.setRoi( window2 );
+            crops.add( new ImageProcessor[]{ ip1.crop(), ip2.crop() } );
+            windows.add( new Rectangle[]{ window1, window2 } );
+        }
+        ip1.resetRoi();
+        ip2.resetRoi();
+
+        final List< Future< List< PointMatch > > > futures = new ArrayList<>();
+        for ( int i = 0; i < crops.size(); i++ )
+        {
+            final ImageProcessor[] crop = crops.get( i );
+            final Rectangle[] window = windows.get( i );
+            futures.add( ThreadHelper.alignmentExecutorService.submit( () ->
             {
-                PointMatch.apply( inliers, model );
+                final List< Feature > fs1 = extractFeatures( crop[ 0 ], 0 );
+                final List< Feature > fs2 = extractFeatures( crop[ 1 ], 0 );
+                translate( fs1, window[ 0 ] );
+                translate( fs2, window[ 1 ] );
+
+                // only keep the matches that are close to the predicted position
+                final List< PointMatch > matches = new ArrayList<>();
+                for ( PointMatch match : matchFeatures( fs1, fs2, p.rod ) )
+                {
+                    final double[] predicted = model.apply( match.getP1().getL() );
+                    final double[] actual = match.getP2().getL();
+                    if ( Math.hypot( predicted[ 0 ] - actual[ 0 ], predicted[ 1 ] - actual[ 1 ] ) <= maxDistance )
+                        matches.add( match );
+                }
+                return matches;
+            } ) );
+        }
 
-                IJ.log( inliers.size() + " corresponding features with an average displacement of " + decimalFormat.format( PointMatch.meanDistance( inliers ) ) + "px identified." );
-                IJ.log( "Estimated transformation model: " + model );
+        final List< PointMatch > candidates = new ArrayList<>();
+        for ( Future< List< PointMatch > > future : futures )
+        {
+            try
+            {
+                candidates.addAll( future.get() );
+            }
+            catch ( InterruptedException | ExecutionException e )
+            {
+                throw new RuntimeException( e );
             }
-            else
-                IJ.log( "No correspondences found." );
         }
-        else
+
+        return candidates;
+    }
+
+    private static Rectangle getWindow( ImageProcessor ip, double[] center, int radius )
+    {
+        final Rectangle window = new Rectangle(
+                ( int ) Math.round( center[ 0 ] ) - radius,
+                ( int ) Math.round( center[ 1 ] ) - radius,
+                2 * radius + 1,
+                2 * radius + 1 );
+        return window.intersection( new Rectangle( 0, 0, ip.getWidth(), ip.getHeight() ) );
+    }
+
+    private static void translate( List< Feature > features, Rectangle window )
+    {
+        for ( Feature feature : features )
         {
-            inliers = candidates;
-            IJ.log( candidates.size() + " corresponding features identified." );
+            feature.location[ 0 ] += window.x;
+            feature.location[ 1 ] += window.y;
         }
+    }
 
-        if ( ! inliers.isEmpty() && showIntermediates  )
+    /**
+     * Identifies the correspondence candidates, using the same ratio test
+     * and removal of ambiguous matches as {@code FeatureTransform.matchFeatures},
+     * but finding the two closest descriptors on a KDTree rather than by brute force.
+     */
+    static List< PointMatch > matchFeatures( List< Feature > fs1, List< Feature > fs2, double rod )
+    {
+        final List< PointMatch > matches = new ArrayList<>();
+        if ( fs1.isEmpty() || fs2.size() < 2 )
+            return matches;
+
+        final List< RealPoint > descriptors = new ArrayList<>( fs2.size() );
+        for ( Feature feature : fs2 )
+            descriptors.add( toRealPoint( feature.descriptor ) );
+
+        final KDTree< Feature > kdTree = new KDTree<>( fs2, descriptors );
+        final KNearestNeighborSearchOnKDTree< Feature > search = new KNearestNeighborSearchOnKDTree<>( kdTree, 2 );
+
+        final List< Feature > targets = new ArrayList<>();
+        final Map< Feature, Integer > numMatches = new IdentityHashMap<>();
+        for ( Feature feature : fs1 )
         {
-            imp1.show();
-            imp2.show();
-            PointMatch.sourcePoints( inliers, p1 );
-            PointMatch.targetPoints( inliers, p2 );
-            imp1.setRoi( Util.pointsToPointRoi( p1 ) );
-            imp2.setRoi( Util.pointsToPointRoi( p2 ) );
+            search.search( toRealPoint( feature.descriptor ) );
+            final double bestDistance = Math.sqrt( search.getSquareDistance( 0 ) );
+            final double secondBestDistance = Math.sqrt( search.getSquareDistance( 1 ) );
+            if ( bestDistance < rod * secondBestDistance )
+            {
+                final Feature target = search.getSampler( 0 ).get();
+                matches.add( new PointMatch( new Point( feature.location.clone() ), new Point( target.location.clone() ) ) );
+                targets.add( target );
+                numMatches.merge( target, 1, Integer::sum );
+            }
         }
 
-        return modelFound;
+        // remove ambiguous matches
+        final List< PointMatch > unambiguousMatches = new ArrayList<>( matches.size() );
+        for ( int i = 0; i < matches.size(); i++ )
+            if ( numMatches.get( targets.get( i ) ) == 1 )
+                unambiguousMatches.add( matches.get( i ) );
+
+        return unambiguousMatches;
+    }
+
+    private static RealPoint toRealPoint( float[] descriptor )
+    {
+        final double[] position = new double[ descriptor.length ];
+        for ( int d = 0; d < descriptor.length; d++ )
+            position[ d ] = descriptor[ d ];
+        return new RealPoint( position );
+    }
+
+    private static double log2( double value )
+    {
+        return Math.log( value ) / Math.log( 2 );
     }
 
     public AffineTransform3D getAlignmentTransform()
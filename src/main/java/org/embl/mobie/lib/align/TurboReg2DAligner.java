@@ -34,6 +34,8 @@ import ij.io.FileSaver;
 import net.imglib2.realtransform.AffineTransform3D;
 import org.embl.mobie.lib.transform.Transform;
 
+import java.awt.Rectangle;
+import java.io.File;
 import java.lang.reflect.Method;
 
 public class TurboReg2DAligner
@@ -51,109 +53,135 @@ public class TurboReg2DAligner
     }
 
     public boolean run( Boolean showIntermediates )
+    {
+        transformationMatrix = register( source, target, transformationType );
+        return transformationMatrix != null;
+    }
+
+    /**
+     * Registers the source onto the target with TurboReg, using the
+     * default landmarks of TurboReg for the given transformation.
+     *
+     * The images are saved to unique temporary files,
+     * such that several registrations can run concurrently.
+     *
+     * @return the matrix that maps target onto source coordinates,
+     *         or null if the transformation is not supported
+     */
+    static double[][] register( ImagePlus source, ImagePlus target, Transform transformationType )
     {
         int width = source.getWidth();
         int height = source.getHeight();
 
-        // Code adapted from 
-        // https://github.com/fiji-BIG/StackReg/blob/master/src/main/java/StackReg_.java#L1021C1-L1104C20
-        final FileSaver sourceFile = new FileSaver(source);
-        final String sourcePathAndFileName = IJ.getDirectory("temp") + "source.tif";
-        sourceFile.saveAsTiff(sourcePathAndFileName);
-        final FileSaver targetFile = new FileSaver(target);
-        final String targetPathAndFileName = IJ.getDirectory("temp") + "target.tif";
-        targetFile.saveAsTiff(targetPathAndFileName);
-
-        Object turboReg;
-        Method method;
-        switch (transformationType) {
-            case Translation: {
-                turboReg = IJ.runPlugIn("TurboReg_", "-align"
-                        + " -file " + sourcePathAndFileName
-                        + " 0 0 " + (width - 1) + " " + (height - 1)
-                        + " -file " + targetPathAndFileName
-                        + " 0 0 " + (width - 1) + " " + (height - 1)
-                        + " -translation"
-                        + " " + (width / 2) + " " + (height / 2)
-                        + " " + (width / 2) + " " + (height / 2)
-                        + " -hideOutput"
-                );
-                break;
-            }
-            case Rigid: {
-                turboReg = IJ.runPlugIn("TurboReg_", "-align"
-                        + " -file " + sourcePathAndFileName
-                        + " 0 0 " + (width - 1) + " " + (height - 1)
-                        + " -file " + targetPathAndFileName
-                        + " 0 0 " + (width - 1) + " " + (height - 1)
-                        + " -rigidBody"
-                        + " " + (width / 2) + " " + (height / 2)
-                        + " " + (width / 2) + " " + (height / 2)
-                        + " " + (width / 2) + " " + (height / 4)
-                        + " " + (width / 2) + " " + (height / 4)
-                        + " " + (width / 2) + " " + ((3 * height) / 4)
-                        + " " + (width / 2) + " " + ((3 * height) / 4)
-                        + " -hideOutput"
-                );
-                break;
-            }
-            case Similarity: {
-                turboReg = IJ.runPlugIn("TurboReg_", "-align"
-                        + " -file " + sourcePathAndFileName
-                        + " 0 0 " + (width - 1) + " " + (height - 1)
-                        + " -file " + targetPathAndFileName
-                        + " 0 0 " + (width - 1) + " " + (height - 1)
-                        + " -scaledRotation"
-                        + " " + (width / 4) + " " + (height / 2)
-                        + " " + (width / 4) + " " + (height / 2)
-                        + " " + ((3 * width) / 4) + " " + (height / 2)
-                        + " " + ((3 * width) / 4) + " " + (height / 2)
-                        + " -hideOutput"
-                );
-                break;
-            }
-            case Affine: {
-                turboReg = IJ.runPlugIn("TurboReg_", "-align"
-                        + " -file " + sourcePathAndFileName
-                        + " 0 0 " + (width - 1) + " " + (height - 1)
-                        + " -file " + targetPathAndFileName
-                        + " 0 0 " + (width - 1) + " " + (height - 1)
-                        + " -affine"
-                        + " " + (width / 2) + " " + (height / 4)
-                        + " " + (width / 2) + " " + (height / 4)
-                        + " " + (width / 4) + " " + ((3 * height) / 4)
-                        + " " + (width / 4) + " " + ((3 * height) / 4)
-                        + " " + ((3 * width) / 4) + " " + ((3 * height) / 4)
-                        + " " + ((3 * width) / 4) + " " + ((3 * height) / 4)
-                        + " -hideOutput"
-                );
-                break;
-            }
-            default: {
-                IJ.error("Unsupported transformation: " + transformationType);
-                return false;
-            }
+        final String option = getTurboRegOption( transformationType );
+        if ( option == null )
+        {
+            IJ.error("Unsupported transformation: " + transformationType);
+            return null;
         }
+
+        File sourceFile = null;
+        File targetFile = null;
         try
         {
-            method = turboReg.getClass().getMethod( "getSourcePoints", null );
+            // Code adapted from
+            // https://github.com/fiji-BIG/StackReg/blob/master/src/main/java/StackReg_.java#L1021C1-L1104C20
+            sourceFile = File.createTempFile( "turboreg-source", ".tif" );
+            new FileSaver( source ).saveAsTiff( sourceFile.getAbsolutePath() );
+            targetFile = File.createTempFile( "turboreg-target", ".tif" );
+            new FileSaver( target ).saveAsTiff( targetFile.getAbsolutePath() );
+
+            final StringBuilder landmarks = new StringBuilder();
+            for ( int[] landmark : getLandmarks( new Rectangle( 0, 0, width, height ), transformationType ) )
+            {
+                // the same positions in the source and the target
+                landmarks.append( " " ).append( landmark[ 0 ] ).append( " " ).append( landmark[ 1 ] );
+                landmarks.append( " " ).append( landmark[ 0 ] ).append( " " ).append( landmark[ 1 ] );
+            }
+
+            final Object turboReg = IJ.runPlugIn("TurboReg_", "-align"
+                    + " -file " + sourceFile.getAbsolutePath()
+                    + " 0 0 " + (width - 1) + " " + (height - 1)
+                    + " -file " + targetFile.getAbsolutePath()
+                    + " 0 0 " + (width - 1) + " " + (height - 1)
+                    + " -" + option
+                    + landmarks
+                    + " -hideOutput"
+            );
+
+            Method method = turboReg.getClass().getMethod( "getSourcePoints", null );
             double[][] sourcePoints = ( ( double[][] ) method.invoke( turboReg, null ) );
             method = turboReg.getClass().getMethod( "getTargetPoints", null );
             double[][] targetPoints = ( ( double[][] ) method.invoke( turboReg, null ) );
             // If this is a licensing issue, we could probably use methods in BigWarp
             // or mpicbg to compute the transformation from a set of points.
-            transformationMatrix = getTransformationMatrix( targetPoints, sourcePoints, transformationType );
+            return getTransformationMatrix( targetPoints, sourcePoints, transformationType );
         }
         catch ( Exception e )
         {
             throw new RuntimeException( e );
         }
-        return true;
+        finally
+        {
+            if ( sourceFile != null ) sourceFile.delete();
+            if ( targetFile != null ) targetFile.delete();
+        }
+    }
+
+    private static String getTurboRegOption( Transform transformationType )
+    {
+        switch ( transformationType )
+        {
+            case Translation:
+                return "translation";
+            case Rigid:
+                return "rigidBody";
+            case Similarity:
+                return "scaledRotation";
+            case Affine:
+                return "affine";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return the default landmarks of TurboReg within the region
+     */
+    static int[][] getLandmarks( Rectangle region, Transform transformationType )
+    {
+        final int x = region.x;
+        final int y = region.y;
+        final int width = region.width;
+        final int height = region.height;
+
+        switch ( transformationType )
+        {
+            case Translation:
+                return new int[][]{
+                        { x + width / 2, y + height / 2 } };
+            case Rigid:
+                return new int[][]{
+                        { x + width / 2, y + height / 2 },
+                        { x + width / 2, y + height / 4 },
+                        { x + width / 2, y + ( 3 * height ) / 4 } };
+            case Similarity:
+                return new int[][]{
+                        { x + width / 4, y + height / 2 },
+                        { x + ( 3 * width ) / 4, y + height / 2 } };
+            case Affine:
+                return new int[][]{
+                        { x + width / 2, y + height / 4 },
+                        { x + width / 4, y + ( 3 * height ) / 4 },
+                        { x + ( 3 * width ) / 4, y + ( 3 * height ) / 4 } };
+            default:
+                throw new UnsupportedOperationException( "Unsupported transformation: " + transformationType );
+        }
     }
 
     // Code copied and slightly adapted from
     // https://github.com/fiji-BIG/StackReg/blob/master/src/main/java/StackReg_.java#L1021C1-L1104C20
-    private double[][] getTransformationMatrix( double[][] fromCoord, double[][] toCoord, Transform transformation) {
+    static double[][] getTransformationMatrix( double[][] fromCoord, double[][] toCoord, Transform transformation) {
         double[][] matrix;
         matrix = new double[3][3];
         double[][] a;
@@ -193,7 +221,7 @@ public class TurboReg2DAligner
                 a[2][0] = fromCoord[0][1] - fromCoord[1][1] + fromCoord[1][0];
                 a[2][1] = fromCoord[1][0] + fromCoord[1][1] - fromCoord[0][0];
                 a[2][2] = 1.0;
-                this.invertGauss(a);
+                invertGauss(a);
                 v[0] = toCoord[0][0];
                 v[1] = toCoord[1][0];
                 v[2] = toCoord[0][1] - toCoord[1][1] + toCoord[1][0];
@@ -236,7 +264,7 @@ public class TurboReg2DAligner
                 a[2][0] = fromCoord[2][0];
                 a[2][1] = fromCoord[2][1];
                 a[2][2] = 1.0;
-                this.invertGauss(a);
+                invertGauss(a);
                 v[0] = toCoord[0][0];
                 v[1] = toCoord[1][0];
                 v[2] = toCoord[2][0];
@@ -277,7 +305,7 @@ public class TurboReg2DAligner
         return matrix;
     }
 
-    private void invertGauss(double[][] matrix) {
+    private static void invertGauss(double[][] matrix) {
         int n = matrix.length;
         double[][] inverse = new double[n][n];
 
@@ -0,0 +1,377 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.align;
+
+import ij.ImagePlus;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import net.imglib2.realtransform.AffineTransform2D;
+import net.imglib2.realtransform.AffineTransform3D;
+import org.embl.mobie.lib.ThreadHelper;
+import org.embl.mobie.lib.transform.Transform;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Coarse-to-fine registration with TurboReg.
+ *
+ * The overlap of the non-zero regions of both images is first registered
+ * at a downsampling at which it fits into {@code COARSE_SIZE}.
+ * The transformation is then refined on the finer levels: at each level,
+ * tiles around the TurboReg landmarks are cut from the target, and from the
+ * source as resampled by the current transformation, and the remaining
+ * translation of each tile is measured with TurboReg. The tiles of one level
+ * are registered in parallel.
+ *
+ * The refinement stops when the time budget is used up, keeping the
+ * transformation of the finest completed level.
+ */
+public class TurboReg2DPyramidAligner
+{
+	public static final int COARSE_SIZE = 256;
+	public static final int TILE_SIZE = 128;
+	private static final int MAX_NUM_SAMPLES = 4; // per dimension and tile pixel
+
+	private final ImagePlus source;
+	private final ImagePlus target;
+	private final Transform transformationType;
+	private long timeBudgetMillis = Long.MAX_VALUE;
+	private volatile boolean isCancelled;
+	private final List< Future< ? > > futures = new ArrayList<>();
+
+	private AffineTransform2D transform; // target to source coordinates
+	private int downsampling;
+
+	public TurboReg2DPyramidAligner( ImagePlus source, ImagePlus target, Transform transformationType )
+	{
+		this.source = source;
+		this.target = target;
+		this.transformationType = transformationType;
+	}
+
+	public void setTimeBudgetMillis( long timeBudgetMillis )
+	{
+		this.timeBudgetMillis = timeBudgetMillis;
+	}
+
+	public void cancel()
+	{
+		isCancelled = true;
+		synchronized ( futures )
+		{
+			for ( Future< ? > future : futures )
+				future.cancel( true );
+		}
+	}
+
+	/**
+	 * @return whether a transformation was found;
+	 * 			false if the registration was cancelled,
+	 * 			or if the time budget was used up before
+	 * 			the coarse registration completed
+	 */
+	public boolean run()
+	{
+		final long startTime = System.currentTimeMillis();
+		isCancelled = false;
+		transform = null;
+
+		final ImageProcessor sourceProcessor = source.getProcessor();
+		final ImageProcessor targetProcessor = target.getProcessor();
+		final Rectangle overlap = getOverlap( sourceProcessor, targetProcessor );
+
+		if ( isCancelled || isOverBudget( startTime ) ) return false;
+
+		final int maxSize = Math.max( overlap.width, overlap.height );
+		int downsampling = 1;
+		while ( maxSize / downsampling > COARSE_SIZE )
+			downsampling *= 2;
+
+		// coarse registration of the whole overlap
+		final ImageProcessor coarseSource = downsample( crop( sourceProcessor, overlap ), downsampling );
+		final ImageProcessor coarseTarget = downsample( crop( targetProcessor, overlap ), downsampling );
+		final double[][] matrix = TurboReg2DAligner.register(
+				new ImagePlus( "source", coarseSource ),
+				new ImagePlus( "target", coarseTarget ),
+				transformationType );
+		if ( matrix == null || isCancelled ) return false;
+
+		// from the coarse to the full resolution coordinates
+		final AffineTransform2D toFullResolution = new AffineTransform2D();
+		final double scaleX = ( double ) overlap.width / coarseSource.getWidth();
+		final double scaleY = ( double ) overlap.height / coarseSource.getHeight();
+		toFullResolution.set(
+				scaleX, 0, overlap.x + 0.5 * ( scaleX - 1 ),
+				0, scaleY, overlap.y + 0.5 * ( scaleY - 1 ) );
+		transform = toFullResolution.copy()
+				.concatenate( toAffineTransform2D( matrix ) )
+				.concatenate( toFullResolution.inverse() );
+		this.downsampling = downsampling;
+
+		// keep the coarse transformation if the time budget is used up
+		if ( isOverBudget( startTime ) ) return true;
+
+		final int[][] landmarks = getRefinementLandmarks( overlap, transformationType );
+		for ( downsampling /= 2; downsampling >= 1; downsampling /= 2 )
+		{
+			final long remainingMillis = timeBudgetMillis - ( System.currentTimeMillis() - startTime );
+			if ( remainingMillis <= 0 ) break;
+
+			final AffineTransform2D refinedTransform = refine( landmarks, downsampling, remainingMillis );
+			if ( isCancelled ) return false;
+			if ( refinedTransform == null ) break;
+
+			transform = refinedTransform;
+			this.downsampling = downsampling;
+		}
+
+		return true;
+	}
+
+	private boolean isOverBudget( long startTime )
+	{
+		return System.currentTimeMillis() - startTime >= timeBudgetMillis;
+	}
+
+	/*
+	 * The landmarks of TurboReg, except for the rigid registration,
+	 * for which TurboReg places all landmarks on the vertical center line;
+	 * here, they are spread along the diagonal, such that the tiles
+	 * around them sample the overlap in both x and y.
+	 */
+	private static int[][] getRefinementLandmarks( Rectangle overlap, Transform transformationType )
+	{
+		if ( transformationType != Transform.Rigid )
+			return TurboReg2DAligner.getLandmarks( overlap, transformationType );
+
+		final int x = overlap.x;
+		final int y = overlap.y;
+		final int width = overlap.width;
+		final int height = overlap.height;
+
+		return new int[][]{
+				{ x + width / 2, y + height / 2 },
+				{ x + width / 4, y + height / 4 },
+				{ x + ( 3 * width ) / 4, y + ( 3 * height ) / 4 } };
+	}
+
+	/**
+	 * @return the refined transformation, or null if the time budget was used up
+	 */
+	private AffineTransform2D refine( int[][] landmarks, int downsampling, long remainingMillis )
+	{
+		final ImageProcessor sourceProcessor = source.getProcessor();
+		final ImageProcessor targetProcessor = target.getProcessor();
+		final AffineTransform2D currentTransform = transform.copy();
+
+		final List< Future< double[] > > tileFutures = new ArrayList<>();
+		synchronized ( futures )
+		{
+			futures.clear();
+			for ( int[] landmark : landmarks )
+			{
+				final Future< double[] > future = ThreadHelper.alignmentExecutorService.submit( () ->
+						registerTile( sourceProcessor, targetProcessor, currentTransform, landmark, downsampling ) );
+				tileFutures.add( future );
+				futures.add( future );
+			}
+		}
+
+		final long deadline = System.currentTimeMillis() + remainingMillis;
+		final double[][] targetPoints = new double[ landmarks.length ][];
+		final double[][] sourcePoints = new double[ landmarks.length ][];
+		try
+		{
+			for ( int i = 0; i < landmarks.length; i++ )
+			{
+				targetPoints[ i ] = new double[]{ landmarks[ i ][ 0 ], landmarks[ i ][ 1 ] };
+				sourcePoints[ i ] = tileFutures.get( i ).get( Math.max( 0, deadline - System.currentTimeMillis() ), TimeUnit.MILLISECONDS );
+			}
+		}
+		catch ( TimeoutException | InterruptedException | CancellationException e )
+		{
+			for ( Future< double[] > future : tileFutures )
+				future.cancel( true );
+			return null;
+		}
+		catch ( ExecutionException e )
+		{
+			throw new RuntimeException( e );
+		}
+
+		return toAffineTransform2D( TurboReg2DAligner.getTransformationMatrix( targetPoints, sourcePoints, transformationType ) );
+	}
+
+	/**
+	 * Measures the remaining translation in a tile around the landmark.
+	 *
+	 * @return the source position of the landmark
+	 */
+	private double[] registerTile(
+			ImageProcessor sourceProcessor,
+			ImageProcessor targetProcessor,
+			AffineTransform2D transform,
+			int[] landmark,
+			int downsampling )
+	{
+		final double offsetX = landmark[ 0 ] - 0.5 * TILE_SIZE * downsampling;
+		final double offsetY = landmark[ 1 ] - 0.5 * TILE_SIZE * downsampling;
+
+		final FloatProcessor targetTile = sampleTile( targetProcessor, new AffineTransform2D(), offsetX, offsetY, downsampling );
+		final FloatProcessor sourceTile = sampleTile( sourceProcessor, transform, offsetX, offsetY, downsampling );
+
+		final double[][] matrix = TurboReg2DAligner.register(
+				new ImagePlus( "source", sourceTile ),
+				new ImagePlus( "target", targetTile ),
+				Transform.Translation );
+
+		// the landmark corresponds to the shifted position in the resampled source tile
+		final double[] position = {
+				landmark[ 0 ] + matrix[ 0 ][ 2 ] * downsampling,
+				landmark[ 1 ] + matrix[ 1 ][ 2 ] * downsampling };
+		transform.apply( position, position );
+		return position;
+	}
+
+	/**
+	 * Samples a tile of the image on the grid of the target at the given downsampling.
+	 * Each pixel is the average of up to {@code MAX_NUM_SAMPLES}^2 interpolated values.
+	 */
+	private static FloatProcessor sampleTile( ImageProcessor processor, AffineTransform2D transform, double offsetX, double offsetY, int downsampling )
+	{
+		final FloatProcessor tile = new FloatProcessor( TILE_SIZE, TILE_SIZE );
+		final int numSamples = Math.min( downsampling, MAX_NUM_SAMPLES );
+		final double sampleSpacing = ( double ) downsampling / numSamples;
+		final int maxX = processor.getWidth() - 1;
+		final int maxY = processor.getHeight() - 1;
+		final double[] position = new double[ 2 ];
+		for ( int y = 0; y < TILE_SIZE; y++ )
+		{
+			for ( int x = 0; x < TILE_SIZE; x++ )
+			{
+				double sum = 0;
+				for ( int sy = 0; sy < numSamples; sy++ )
+				{
+					for ( int sx = 0; sx < numSamples; sx++ )
+					{
+						position[ 0 ] = offsetX + x * downsampling + ( sx + 0.5 ) * sampleSpacing - 0.5;
+						position[ 1 ] = offsetY + y * downsampling + ( sy + 0.5 ) * sampleSpacing - 0.5;
+						transform.apply( position, position );
+						if ( position[ 0 ] >= 0 && position[ 0 ] <= maxX && position[ 1 ] >= 0 && position[ 1 ] <= maxY )
+							sum += processor.getInterpolatedValue( position[ 0 ], position[ 1 ] );
+					}
+				}
+				tile.setf( x, y, ( float ) ( sum / ( numSamples * numSamples ) ) );
+			}
+		}
+		return tile;
+	}
+
+	/**
+	 * @return the intersection of the bounding boxes of the non-zero pixels,
+	 * 			or the whole image if they do not intersect
+	 */
+	private static Rectangle getOverlap( ImageProcessor source, ImageProcessor target )
+	{
+		final Rectangle overlap = getNonZeroBounds( source ).intersection( getNonZeroBounds( target ) );
+		if ( overlap.isEmpty() )
+			return new Rectangle( 0, 0, source.getWidth(), source.getHeight() );
+		return overlap;
+	}
+
+	private static Rectangle getNonZeroBounds( ImageProcessor processor )
+	{
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+		int maxX = -1, maxY = -1;
+		for ( int y = 0; y < processor.getHeight(); y++ )
+			for ( int x = 0; x < processor.getWidth(); x++ )
+				if ( processor.getf( x, y ) != 0 )
+				{
+					minX = Math.min( minX, x );
+					maxX = Math.max( maxX, x );
+					minY = Math.min( minY, y );
+					maxY = Math.max( maxY, y );
+				}
+
+		if ( maxX < 0 ) return new Rectangle();
+		return new Rectangle( minX, minY, maxX - minX + 1, maxY - minY + 1 );
+	}
+
+	private static ImageProcessor crop( ImageProcessor processor, Rectangle region )
+	{
+		processor.setRoi( region );
+		final ImageProcessor crop = processor.crop();
+		processor.resetRoi();
+		return crop;
+	}
+
+	private static ImageProcessor downsample( ImageProcessor processor, int downsampling )
+	{
+		if ( downsampling == 1 ) return processor;
+		processor.setInterpolationMethod( ImageProcessor.BILINEAR );
+		return processor.resize(
+				Math.max( 1, processor.getWidth() / downsampling ),
+				Math.max( 1, processor.getHeight() / downsampling ),
+				true );
+	}
+
+	private static AffineTransform2D toAffineTransform2D( double[][] matrix )
+	{
+		final AffineTransform2D transform = new AffineTransform2D();
+		transform.set(
+				matrix[ 0 ][ 0 ], matrix[ 0 ][ 1 ], matrix[ 0 ][ 2 ],
+				matrix[ 1 ][ 0 ], matrix[ 1 ][ 1 ], matrix[ 1 ][ 2 ] );
+		return transform;
+	}
+
+	/**
+	 * @return the downsampling of the finest level that was completed
+	 */
+	public int getDownsampling()
+	{
+		return downsampling;
+	}
+
+	public AffineTransform3D getAlignmentTransform()
+	{
+		final AffineTransform3D alignmentTransform = new AffineTransform3D();
+		alignmentTransform.set(
+				transform.get( 0, 0 ), transform.get( 0, 1 ), 0, transform.get( 0, 2 ),
+				transform.get( 1, 0 ), transform.get( 1, 1 ), 0, transform.get( 1, 2 ),
+				0, 0, 1, 0 );
+		return alignmentTransform;
+	}
+}
@@ -33,25 +33,26 @@ import bdv.viewer.Interpolation;
 import bdv.viewer.Source;
 import bdv.viewer.SourceAndConverter;
 import net.imglib2.RealPoint;
-import net.imglib2.realtransform.AffineTransform3D;
 import org.embl.mobie.lib.bdv.CalibratedMousePositionProvider;
+import org.embl.mobie.lib.bdv.SourceBoundsIndex;
 import org.embl.mobie.lib.serialize.display.AbstractAnnotationDisplay;
 import org.embl.mobie.lib.source.AnnotationType;
-import sc.fiji.bdvpg.sourceandconverter.SourceAndConverterHelper;
 
 import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.function.Supplier;
 
 public class SliceViewAnnotationSelector< A extends Annotation > implements Runnable
 {
 	private BdvHandle bdvHandle;
-	private boolean is2D;
+	private SourceBoundsIndex sourceBoundsIndex;
 	private Supplier< Collection< AbstractAnnotationDisplay< A > > > annotationDisplaySupplier;
 
-	public SliceViewAnnotationSelector( BdvHandle bdvHandle, boolean is2D, Supplier< Collection< AbstractAnnotationDisplay< A > > > annotationDisplaySupplier )
+	public SliceViewAnnotationSelector( BdvHandle bdvHandle, SourceBoundsIndex sourceBoundsIndex, Supplier< Collection< AbstractAnnotationDisplay< A > > > annotationDisplaySupplier )
 	{
 		this.bdvHandle = bdvHandle;
-		this.is2D = is2D;
+		this.sourceBoundsIndex = sourceBoundsIndex;
 		this.annotationDisplaySupplier = annotationDisplaySupplier;
 	}
 
@@ -70,6 +71,13 @@ public class SliceViewAnnotationSelector< A extends Annotation > implements Runn
 		final int timePoint = positionProvider.getTimePoint();
 		final RealPoint realPosition = positionProvider.getPositionAsRealPoint();
 
+		final Map< SourceAndConverter< ? >, SourceBoundsIndex.Entry > sourceToEntry = new IdentityHashMap<>();
+		for ( SourceBoundsIndex.Entry entry : sourceBoundsIndex.getEntriesAt( realPosition, timePoint ) )
+			sourceToEntry.put( entry.getSourceAndConverter(), entry );
+
+		if ( sourceToEntry.isEmpty() )
+			return;
+
 		final Collection< AbstractAnnotationDisplay< A > > annotationDisplays = annotationDisplaySupplier.get();
 
 		for ( AbstractAnnotationDisplay< A > annotationDisplay : annotationDisplays )
@@ -81,7 +89,8 @@ public class SliceViewAnnotationSelector< A extends Annotation > implements Runn
 				if ( ! bdvHandle.getViewerPanel().state().isSourceVisible( sourceAndConverter ) )
 					continue;
 
-				if ( SourceAndConverterHelper.isPositionWithinSourceInterval( sourceAndConverter, realPosition, timePoint, is2D ) )
+				final SourceBoundsIndex.Entry entry = sourceToEntry.get( sourceAndConverter );
+				if ( entry != null )
 				{
 					final Source< AnnotationType< A > > source = sourceAndConverter.getSpimSource();
 
@@ -93,10 +102,8 @@ public class SliceViewAnnotationSelector< A extends Annotation > implements Runn
 					// This is needed for sources like the SpotImage, which is
 					// created in real space and does not live on a voxel grid.
 					// See also: https://github.com/mobie/spatial-transcriptomics-example-project/issues/22
-					AffineTransform3D sourceTransform = new AffineTransform3D();
-					source.getSourceTransform( timePoint, 0, sourceTransform);
 					final RealPoint positionInSource = new RealPoint( 3 );
-					sourceTransform.inverse().apply( realPosition, positionInSource );
+					entry.applyInverseSourceTransform( realPosition, positionInSource );
 					final AnnotationType< A > annotationType = source.getInterpolatedSource( timePoint, 0, Interpolation.NEARESTNEIGHBOR ).getAt( positionInSource );
 
 					final A annotation = annotationType.getAnnotation();
@@ -21,6 +21,16 @@ public class AutoContrastAdjuster
     }
 
     public double[] computeMinMax()
+    {
+        final double[] minMax = new SamplingContrastEstimator( bdvHandle ).estimate( sourceAndConverter );
+        if ( minMax != null )
+            return minMax;
+
+        // e.g., for non-real valued sources
+        return computeMinMaxFromScreenShot();
+    }
+
+    public double[] computeMinMaxFromScreenShot()
     {
         double viewerVoxelSpacing = BdvHandleHelper.getViewerVoxelSpacing( bdvHandle );
         ScreenShotMaker screenShotMaker = new ScreenShotMaker( bdvHandle, "" );
@@ -0,0 +1,223 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.bdv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bounding volume hierarchy of axis aligned 3D boxes, to find
+ * the boxes that contain a point or intersect an interval.
+ *
+ * The tree is immutable; it is built at once from all boxes by
+ * splitting them at the median of their centers along the longest axis.
+ * Boxes may be unbounded along an axis, e.g. [-inf, inf] along z for 2D data.
+ *
+ * @param <T>
+ *            type of the values that are associated with the boxes.
+ */
+public class BoundingBoxTree< T >
+{
+	private static final int MAX_LEAF_SIZE = 8;
+
+	private final List< T > values; // in the order of the leaves
+	private final double[] boxes; // min x,y,z and max x,y,z of each value
+
+	private final double[] nodeBoxes;
+	private final int[] nodeStart;
+	private final int[] nodeEnd;
+	private final int[] nodeLeft; // -1 for leaves; the right child is nodeLeft + 1
+	private int numNodes;
+	private int depth;
+
+	/**
+	 * @param values
+	 * 			the values associated with the boxes
+	 * @param mins
+	 * 			the minima of the boxes, 3 per value
+	 * @param maxs
+	 * 			the maxima of the boxes, 3 per value
+	 */
+	public BoundingBoxTree( List< T > values, List< double[] > mins, List< double[] > maxs )
+	{
+		final int n = values.size();
+
+		final Integer[] order = new Integer[ n ];
+		final double[] centers = new double[ 3 * n ];
+		for ( int i = 0; i < n; i++ )
+		{
+			order[ i ] = i;
+			for ( int d = 0; d < 3; d++ )
+			{
+				final double center = 0.5 * ( mins.get( i )[ d ] + maxs.get( i )[ d ] );
+				centers[ 3 * i + d ] = Double.isFinite( center ) ? center : 0;
+			}
+		}
+
+		// the leaves have at least MAX_LEAF_SIZE / 2 values
+		final int maxNumNodes = 2 * ( n / ( MAX_LEAF_SIZE / 2 ) + 1 );
+		nodeBoxes = new double[ 6 * maxNumNodes ];
+		nodeStart = new int[ maxNumNodes ];
+		nodeEnd = new int[ maxNumNodes ];
+		nodeLeft = new int[ maxNumNodes ];
+		allocateNode();
+		build( 0, order, 0, n, centers, 1 );
+
+		this.values = new ArrayList<>( n );
+		boxes = new double[ 6 * n ];
+		for ( int i = 0; i < n; i++ )
+		{
+			final int index = order[ i ];
+			this.values.add( values.get( index ) );
+			System.arraycopy( mins.get( index ), 0, boxes, 6 * i, 3 );
+			System.arraycopy( maxs.get( index ), 0, boxes, 6 * i + 3, 3 );
+		}
+
+		// node bounds, from the leaves to the root
+		for ( int node = numNodes - 1; node >= 0; node-- )
+		{
+			Arrays.fill( nodeBoxes, 6 * node, 6 * node + 3, Double.POSITIVE_INFINITY );
+			Arrays.fill( nodeBoxes, 6 * node + 3, 6 * node + 6, Double.NEGATIVE_INFINITY );
+			if ( nodeLeft[ node ] < 0 )
+			{
+				for ( int i = nodeStart[ node ]; i < nodeEnd[ node ]; i++ )
+					include( node, boxes, 6 * i );
+			}
+			else
+			{
+				include( node, nodeBoxes, 6 * nodeLeft[ node ] );
+				include( node, nodeBoxes, 6 * ( nodeLeft[ node ] + 1 ) );
+			}
+		}
+	}
+
+	public int size()
+	{
+		return values.size();
+	}
+
+	/**
+	 * @return the values whose boxes contain the position (inclusive)
+	 */
+	public List< T > getContaining( double[] position )
+	{
+		return getIntersecting( position, position );
+	}
+
+	/**
+	 * @return the values whose boxes intersect the interval from min to max (inclusive)
+	 */
+	public List< T > getIntersecting( double[] min, double[] max )
+	{
+		final List< T > intersecting = new ArrayList<>();
+		if ( values.isEmpty() ) return intersecting;
+
+		final int[] stack = new int[ depth + 1 ];
+		int stackSize = 0;
+		stack[ stackSize++ ] = 0;
+		while ( stackSize > 0 )
+		{
+			final int node = stack[ --stackSize ];
+			if ( ! intersects( nodeBoxes, 6 * node, min, max ) )
+				continue;
+
+			if ( nodeLeft[ node ] < 0 )
+			{
+				for ( int i = nodeStart[ node ]; i < nodeEnd[ node ]; i++ )
+					if ( intersects( boxes, 6 * i, min, max ) )
+						intersecting.add( values.get( i ) );
+			}
+			else
+			{
+				stack[ stackSize++ ] = nodeLeft[ node ];
+				stack[ stackSize++ ] = nodeLeft[ node ] + 1;
+			}
+		}
+
+		return intersecting;
+	}
+
+	private void build( int node, Integer[] order, int start, int end, double[] centers, int depth )
+	{
+		this.depth = Math.max( this.depth, depth );
+		nodeStart[ node ] = start;
+		nodeEnd[ node ] = end;
+		nodeLeft[ node ] = -1;
+		if ( end - start <= MAX_LEAF_SIZE )
+			return;
+
+		// split along the longest axis of the centers
+		final double[] min = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY };
+		final double[] max = { Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+		for ( int i = start; i < end; i++ )
+			for ( int d = 0; d < 3; d++ )
+			{
+				min[ d ] = Math.min( min[ d ], centers[ 3 * order[ i ] + d ] );
+				max[ d ] = Math.max( max[ d ], centers[ 3 * order[ i ] + d ] );
+			}
+
+		int axis = 0;
+		for ( int d = 1; d < 3; d++ )
+			if ( max[ d ] - min[ d ] > max[ axis ] - min[ axis ] )
+				axis = d;
+
+		final int splitAxis = axis;
+		Arrays.sort( order, start, end, ( i, j ) -> Double.compare( centers[ 3 * i + splitAxis ], centers[ 3 * j + splitAxis ] ) );
+
+		final int middle = ( start + end ) >>> 1;
+		final int left = allocateNode();
+		allocateNode(); // right = left + 1
+		nodeLeft[ node ] = left;
+		build( left, order, start, middle, centers, depth + 1 );
+		build( left + 1, order, middle, end, centers, depth + 1 );
+	}
+
+	private int allocateNode()
+	{
+		return numNodes++;
+	}
+
+	private void include( int node, double[] box, int offset )
+	{
+		for ( int d = 0; d < 3; d++ )
+		{
+			nodeBoxes[ 6 * node + d ] = Math.min( nodeBoxes[ 6 * node + d ], box[ offset + d ] );
+			nodeBoxes[ 6 * node + 3 + d ] = Math.max( nodeBoxes[ 6 * node + 3 + d ], box[ offset + 3 + d ] );
+		}
+	}
+
+	private static boolean intersects( double[] box, int offset, double[] min, double[] max )
+	{
+		for ( int d = 0; d < 3; d++ )
+			if ( box[ offset + d ] > max[ d ] || box[ offset + 3 + d ] < min[ d ] )
+				return false;
+		return true;
+	}
+}
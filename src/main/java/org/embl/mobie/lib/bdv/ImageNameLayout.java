@@ -0,0 +1,169 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.bdv;
+
+import net.imglib2.RealInterval;
+
+import java.awt.FontMetrics;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+/**
+ * Places the names of images below the images on the screen.
+ *
+ * The font of each name is shrunk such that the name is not wider than
+ * its image. Names outside the screen are dropped, as well as names that
+ * overlap with names of larger font size that have been placed already.
+ */
+public class ImageNameLayout
+{
+	private static final int CELL_SIZE = 64; // of the grid for the collision detection
+
+	public static class Label
+	{
+		public final String name;
+		public final float fontSize;
+		public final int x; // of the text baseline
+		public final int y;
+		public final Rectangle background;
+
+		public Label( String name, float fontSize, int x, int y, Rectangle background )
+		{
+			this.name = name;
+			this.fontSize = fontSize;
+			this.x = x;
+			this.y = y;
+			this.background = background;
+		}
+	}
+
+	/**
+	 * @param names
+	 * 			the names of the images
+	 * @param screenBounds
+	 * 			the bounds of the images in screen coordinates
+	 * @param fontMetrics
+	 * 			the metrics of the largest font; smaller fonts are scaled from it
+	 * @param maxNumLabels
+	 * 			the maximal number of labels that are placed
+	 * @return the labels to be drawn
+	 */
+	public static List< Label > layout(
+			List< String > names,
+			List< ? extends RealInterval > screenBounds,
+			FontMetrics fontMetrics,
+			int screenWidth,
+			int screenHeight,
+			int maxNumLabels )
+	{
+		final Rectangle screen = new Rectangle( 0, 0, screenWidth, screenHeight );
+		final float maxFontSize = fontMetrics.getFont().getSize2D();
+
+		final List< Label > candidates = new ArrayList<>();
+		for ( int i = 0; i < names.size(); i++ )
+		{
+			final String name = names.get( i );
+			final RealInterval bounds = screenBounds.get( i );
+
+			// determine the size of the image in the viewer
+			final double imageWidth = bounds.realMax( 0 ) - bounds.realMin( 0 );
+			final double imageCenter = ( bounds.realMax( 0 ) + bounds.realMin( 0 ) ) / 2.0;
+
+			// determine the font size
+			final int maxTextWidth = fontMetrics.stringWidth( name );
+			final float fontSize = Math.min( maxFontSize, ( float ) ( maxFontSize * imageWidth / maxTextWidth ) );
+			if ( ! ( fontSize > 0 ) ) continue;
+
+			final double scale = fontSize / maxFontSize;
+			final int textWidth = ( int ) Math.ceil( maxTextWidth * scale );
+			final int textHeight = ( int ) Math.ceil( fontMetrics.getHeight() * scale );
+			final int descent = ( int ) Math.ceil( fontMetrics.getDescent() * scale );
+
+			final int x = (int) ( imageCenter - textWidth / 2.0 );
+			final int y = (int) ( bounds.realMax( 1 ) + 1.1F * fontSize );
+
+			final Rectangle background = new Rectangle( x, y - textHeight + descent, textWidth, textHeight );
+			if ( ! background.intersects( screen ) ) continue;
+
+			candidates.add( new Label( name, fontSize, x, y, background ) );
+		}
+
+		// place the larger names first
+		candidates.sort( Comparator.comparingDouble( ( Label label ) -> - label.fontSize ).thenComparing( label -> label.name ) );
+
+		final List< Label > labels = new ArrayList<>();
+		final Map< Long, List< Rectangle > > cellToRectangles = new HashMap<>();
+		for ( Label candidate : candidates )
+		{
+			if ( labels.size() >= maxNumLabels ) break;
+
+			// only the visible part can overlap with other labels
+			final Rectangle rectangle = candidate.background.intersection( screen );
+			if ( overlaps( rectangle, cellToRectangles ) ) continue;
+
+			labels.add( candidate );
+			forEachCell( rectangle, cell -> cellToRectangles.computeIfAbsent( cell, c -> new ArrayList<>() ).add( rectangle ) );
+		}
+
+		return labels;
+	}
+
+	private static boolean overlaps( Rectangle rectangle, Map< Long, List< Rectangle > > cellToRectangles )
+	{
+		final boolean[] overlaps = { false };
+		forEachCell( rectangle, cell ->
+		{
+			final List< Rectangle > rectangles = cellToRectangles.get( cell );
+			if ( rectangles == null || overlaps[ 0 ] ) return;
+			for ( Rectangle other : rectangles )
+				if ( other.intersects( rectangle ) )
+				{
+					overlaps[ 0 ] = true;
+					return;
+				}
+		} );
+		return overlaps[ 0 ];
+	}
+
+	private static void forEachCell( Rectangle rectangle, LongConsumer consumer )
+	{
+		final int minX = Math.floorDiv( rectangle.x, CELL_SIZE );
+		final int maxX = Math.floorDiv( rectangle.x + rectangle.width - 1, CELL_SIZE );
+		final int minY = Math.floorDiv( rectangle.y, CELL_SIZE );
+		final int maxY = Math.floorDiv( rectangle.y + rectangle.height - 1, CELL_SIZE );
+		for ( long cellY = minY; cellY <= maxY; cellY++ )
+			for ( long cellX = minX; cellX <= maxX; cellX++ )
+				consumer.accept( ( cellY << 32 ) | ( cellX & 0xFFFFFFFFL ) );
+	}
+}
@@ -37,30 +37,43 @@ import bdv.viewer.SourceAndConverter;
 import bdv.viewer.TransformListener;
 import bdv.viewer.ViewerState;
 import net.imglib2.FinalRealInterval;
+import net.imglib2.RealInterval;
 import net.imglib2.realtransform.AffineTransform3D;
-import net.imglib2.roi.RealMaskRealInterval;
-import net.imglib2.util.Intervals;
 import org.embl.mobie.DataStore;
 import org.embl.mobie.lib.bdv.view.SliceViewer;
 import org.embl.mobie.lib.image.Image;
+import org.embl.mobie.lib.image.ImageListener;
 import org.embl.mobie.lib.image.RegionAnnotationImage;
 import org.embl.mobie.lib.image.StitchedImage;
 import org.embl.mobie.lib.select.Listeners;
 import sc.fiji.bdvpg.bdv.BdvHandleHelper;
 
+import javax.swing.JComponent;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
-public class ImageNameOverlay extends BdvOverlay implements TransformListener< AffineTransform3D >
+public class ImageNameOverlay extends BdvOverlay implements TransformListener< AffineTransform3D >, ImageListener
 {
+	// drawing more names does not help, because they would not be readable
+	public static final int MAX_NUM_LABELS = 500;
+
 	private final BdvHandle bdvHandle;
 	private final SliceViewer sliceViewer;
-	private Map< String, FinalRealInterval > imageBounds = new ConcurrentHashMap< String, FinalRealInterval >();
+	private volatile List< ImageNameLayout.Label > labels = Collections.emptyList();
+
+	// the global bounds of the images are only computed
+	// when the sources or their transformations change
+	private Set< SourceAndConverter< ? > > indexedSources = Collections.emptySet();
+	private BoundingBoxTree< ImageBounds > imageBoundsTree;
+	private volatile boolean isImageBoundsTreeValid;
 	private BdvOverlaySource< ImageNameOverlay > overlaySource;
 	private boolean isActive;
 	private static final Font font = new Font( "Monospaced", Font.PLAIN, 20 );
@@ -73,6 +86,7 @@ public class ImageNameOverlay extends BdvOverlay implements TransformListener< A
 		this.bdvHandle = bdvHandle;
 		this.sliceViewer = sliceViewer;
 		bdvHandle.getViewerPanel().transformListeners().add( this );
+		Image.listeners.add( this );
 	}
 
 	public void setActive( boolean isActive )
@@ -117,6 +131,15 @@ public class ImageNameOverlay extends BdvOverlay implements TransformListener< A
 		return isActive;
 	}
 
+	/**
+	 * Removes the listeners that were added to the viewer and to the {@link Image}s.
+	 */
+	public void close()
+	{
+		Image.listeners.remove( this );
+		bdvHandle.getViewerPanel().transformListeners().remove( this );
+	}
+
 	@Override
 	public void transformChanged( AffineTransform3D transform3D )
 	{
@@ -126,10 +149,14 @@ public class ImageNameOverlay extends BdvOverlay implements TransformListener< A
 		}
 	}
 
-	private synchronized void updateImages()
+	@Override
+	public void imageChanged()
 	{
-		imageBounds.clear();
+		isImageBoundsTreeValid = false;
+	}
 
+	private synchronized void updateImages()
+	{
 		final ViewerState viewerState = bdvHandle.getViewerPanel().state().snapshot();
 
 		final AffineTransform3D viewerTransform = viewerState.getViewerTransform();
@@ -138,6 +165,35 @@ public class ImageNameOverlay extends BdvOverlay implements TransformListener< A
 
 		final Set< SourceAndConverter< ? > > sourceAndConverters = viewerState.getVisibleAndPresentSources();
 
+		if ( ! isImageBoundsTreeValid || ! sourceAndConverters.equals( indexedSources ) )
+		{
+			isImageBoundsTreeValid = true;
+			indexedSources = new HashSet<>( sourceAndConverters );
+			imageBoundsTree = createImageBoundsTree( sourceAndConverters );
+		}
+
+		final List< String > names = new ArrayList<>();
+		final List< RealInterval > screenBounds = new ArrayList<>();
+		for ( ImageBounds imageBounds : imageBoundsTree.getIntersecting( viewerInterval.minAsDoubleArray(), viewerInterval.maxAsDoubleArray() ) )
+		{
+			names.add( imageBounds.name );
+			screenBounds.add( viewerTransform.estimateBounds( imageBounds.bounds ) );
+		}
+
+		final JComponent display = bdvHandle.getViewerPanel().getDisplay();
+		labels = ImageNameLayout.layout(
+				names,
+				screenBounds,
+				display.getFontMetrics( font ),
+				display.getWidth(),
+				display.getHeight(),
+				MAX_NUM_LABELS );
+	}
+
+	private static BoundingBoxTree< ImageBounds > createImageBoundsTree( Set< SourceAndConverter< ? > > sourceAndConverters )
+	{
+		final Map< String, RealInterval > nameToBounds = new LinkedHashMap<>();
+
 		for ( final SourceAndConverter< ? > sourceAndConverter : sourceAndConverters )
 		{
 			Image< ? > image = DataStore.sourceToImage().get( sourceAndConverter );
@@ -153,59 +209,57 @@ public class ImageNameOverlay extends BdvOverlay implements TransformListener< A
 
 				for ( Image< ? > tileImage : tileImages )
 				{
-					addImage( viewerTransform, viewerInterval, tileImage );
+					nameToBounds.put( tileImage.getName(), new FinalRealInterval( tileImage.getMask() ) );
 				}
 
 				continue;
 			}
 
-			addImage( viewerTransform, viewerInterval, image );
+			if ( image != null )
+			{
+				nameToBounds.put( image.getName(), new FinalRealInterval( image.getMask() ) );
+			}
 		}
-	}
 
-	private void addImage( AffineTransform3D viewerTransform, FinalRealInterval viewerInterval, Image< ? > image )
-	{
-		final RealMaskRealInterval imageMask = image.getMask();
-		final FinalRealInterval intersect = Intervals.intersect( viewerInterval, imageMask );
-		if ( ! Intervals.isEmpty( intersect ) )
+		final List< ImageBounds > values = new ArrayList<>();
+		final List< double[] > mins = new ArrayList<>();
+		final List< double[] > maxs = new ArrayList<>();
+		for ( Map.Entry< String, RealInterval > entry : nameToBounds.entrySet() )
 		{
-			imageBounds.put( image.getName(), viewerTransform.estimateBounds( imageMask ) );
+			values.add( new ImageBounds( entry.getKey(), entry.getValue() ) );
+			mins.add( entry.getValue().minAsDoubleArray() );
+			maxs.add( entry.getValue().maxAsDoubleArray() );
 		}
+
+		return new BoundingBoxTree<>( values, mins, maxs );
 	}
 
 	@Override
 	protected void draw( Graphics2D g )
 	{
-		for ( Map.Entry< String, FinalRealInterval > entry : imageBounds.entrySet() )
+		for ( ImageNameLayout.Label label : labels )
 		{
-			// determine the size of the annotated source
-			// in the viewer
-			final FinalRealInterval bounds = entry.getValue();
-			final double sourceWidth = bounds.realMax( 0 ) - bounds.realMin( 0 );
-			final double sourceCenter = ( bounds.realMax( 0 ) + bounds.realMin( 0 ) ) / 2.0;
-
-			// determine font size
-			final String name = entry.getKey();
-			g.setFont( font );
-			final float finalFontSize = Math.min ( font.getSize(), ( float ) ( 1.0F * font.getSize() * sourceWidth / ( 1.0F * g.getFontMetrics().stringWidth( name ) ) ) );
-			Font finalFont = font.deriveFont( finalFontSize );
-			g.setFont( finalFont );
-
-			int textWidth = g.getFontMetrics().stringWidth( name );
-			int textHeight = g.getFontMetrics().getHeight();
-
-			final int x = (int) ( sourceCenter - textWidth / 2.0 );
-			final int y = (int) ( bounds.realMax( 1 ) + 1.1F * finalFont.getSize() );
+			g.setFont( font.deriveFont( label.fontSize ) );
 
 			// draw background (this helps with https://github.com/mobie/mobie-viewer-fiji/issues/1013)
-			// TODO? in addition, one could also determine all the text bounds as an Interval
-			//   and then only draw the names that don't overlap with something that has been drawn already
 			g.setColor( Color.BLACK );
-			g.fillRect( x, y - textHeight + g.getFontMetrics().getDescent(), textWidth, textHeight );
+			g.fill( label.background );
 
 			// draw text
 			g.setColor( Color.WHITE );
-			g.drawString( name,  x, y );
+			g.drawString( label.name, label.x, label.y );
+		}
+	}
+
+	private static class ImageBounds
+	{
+		private final String name;
+		private final RealInterval bounds;
+
+		private ImageBounds( String name, RealInterval bounds )
+		{
+			this.name = name;
+			this.bounds = bounds;
 		}
 	}
 
@@ -0,0 +1,224 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.bdv;
+
+import bdv.util.BdvHandle;
+import bdv.viewer.Source;
+import bdv.viewer.SourceAndConverter;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.Volatile;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.RealType;
+import org.embl.mobie.lib.ThreadHelper;
+import org.embl.mobie.lib.contrast.QuantileSketch;
+import sc.fiji.bdvpg.bdv.BdvHandleHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static sc.fiji.bdvpg.bdv.BdvHandleHelper.getLevel;
+import static sc.fiji.bdvpg.bdv.BdvHandleHelper.getViewerVoxelSpacing;
+
+/**
+ * Estimates contrast limits of an image from a stratified random sample
+ * of the voxels that are visible in the current viewer plane.
+ *
+ * The viewer canvas is divided into a grid of strata with one randomly
+ * jittered sample per stratum. The samples are read at the coarsest
+ * resolution level that still resolves the grid. Where possible, values
+ * are taken from the volatile source, i.e. from cells that are already
+ * cached; the remaining samples are loaded, such that the estimate does
+ * not depend on which cells happen to be cached.
+ */
+public class SamplingContrastEstimator
+{
+	public static final int DEFAULT_GRID_SIZE = 128;
+
+	// ImageJ's "Enhance Contrast" default of saturated=0.35,
+	// which is split between the lower and upper tail
+	public static final double DEFAULT_SATURATED_FRACTION = 0.0035;
+
+	private final BdvHandle bdvHandle;
+	private int gridSize = DEFAULT_GRID_SIZE;
+	private double saturatedFraction = DEFAULT_SATURATED_FRACTION;
+
+	public SamplingContrastEstimator( BdvHandle bdvHandle )
+	{
+		this.bdvHandle = bdvHandle;
+	}
+
+	public void setGridSize( int gridSize )
+	{
+		this.gridSize = gridSize;
+	}
+
+	public void setSaturatedFraction( double saturatedFraction )
+	{
+		this.saturatedFraction = saturatedFraction;
+	}
+
+	/**
+	 * @return the contrast limits, or null if the source is
+	 * not of a real type or no voxels are visible
+	 */
+	public double[] estimate( SourceAndConverter< ? > sac )
+	{
+		final QuantileSketch sketch = sample( sac );
+		if ( sketch == null || sketch.size() == 0 )
+			return null;
+
+		return sketch.quantiles( saturatedFraction / 2, 1.0 - saturatedFraction / 2 );
+	}
+
+	public QuantileSketch sample( SourceAndConverter< ? > sac )
+	{
+		final Source< ? > source = sac.getSpimSource();
+		if ( ! ( source.getType() instanceof RealType ) )
+			return null;
+
+		final Source< ? > volatileSource = sac.asVolatile() == null ? null : sac.asVolatile().getSpimSource();
+
+		final int t = bdvHandle.getViewerPanel().state().getCurrentTimepoint();
+		final int width = bdvHandle.getViewerPanel().getDisplay().getWidth();
+		final int height = bdvHandle.getViewerPanel().getDisplay().getHeight();
+		if ( width == 0 || height == 0 )
+			return null;
+
+		// choose the coarsest level at which the grid
+		// is still resolved by the voxels
+		final double strataSize = 1.0 * Math.max( width, height ) / gridSize;
+		final int level = getLevel( source, strataSize * getViewerVoxelSpacing( bdvHandle ) );
+
+		final AffineTransform3D canvasToSource = new AffineTransform3D();
+		bdvHandle.getViewerPanel().state().getViewerTransform( canvasToSource );
+		canvasToSource.set( canvasToSource.inverse() );
+		canvasToSource.preConcatenate( BdvHandleHelper.getSourceTransform( source, t, level ).inverse() );
+
+		final RandomAccessibleInterval< ? > rai = source.getSource( t, level );
+		final RandomAccessibleInterval< ? > volatileRai = volatileSource == null ? null : volatileSource.getSource( t, level );
+
+		final int numColumns = ( int ) Math.ceil( width / strataSize );
+		final int numRows = ( int ) Math.ceil( height / strataSize );
+
+		final List< Future< RowSample > > futures = new ArrayList<>();
+		for ( int row = 0; row < numRows; row++ )
+		{
+			final int finalRow = row;
+			futures.add( ThreadHelper.executorService.submit(
+					() -> sampleRow( finalRow, numColumns, strataSize, width, height, canvasToSource, rai, volatileRai ) ) );
+		}
+
+		final List< RowSample > rowSamples = new ArrayList<>();
+		try
+		{
+			for ( Future< RowSample > future : futures )
+				rowSamples.add( future.get() );
+		}
+		catch ( InterruptedException | ExecutionException e )
+		{
+			throw new RuntimeException( e );
+		}
+
+		final QuantileSketch sketch = new QuantileSketch( numRows * numColumns, 42 );
+		for ( RowSample rowSample : rowSamples )
+			sketch.merge( rowSample.sketch );
+
+		return sketch;
+	}
+
+	private static RowSample sampleRow(
+			int row,
+			int numColumns,
+			double strataSize,
+			int width,
+			int height,
+			AffineTransform3D canvasToSource,
+			RandomAccessibleInterval< ? > rai,
+			RandomAccessibleInterval< ? > volatileRai )
+	{
+		final RowSample rowSample = new RowSample( numColumns, row );
+		final Random random = new Random( 42 + row );
+		final RandomAccess< ? > access = volatileRai == null ? rai.randomAccess() : volatileRai.randomAccess();
+		final RandomAccess< ? > loadingAccess = rai.randomAccess();
+		final int numDimensions = rai.numDimensions();
+		final double[] canvasPosition = new double[ 3 ];
+		final double[] sourcePosition = new double[ 3 ];
+		final long[] voxel = new long[ numDimensions ];
+
+		for ( int column = 0; column < numColumns; column++ )
+		{
+			canvasPosition[ 0 ] = Math.min( width - 1, ( column + random.nextDouble() ) * strataSize );
+			canvasPosition[ 1 ] = Math.min( height - 1, ( row + random.nextDouble() ) * strataSize );
+			canvasToSource.apply( canvasPosition, sourcePosition );
+
+			boolean isInside = true;
+			for ( int d = 0; d < numDimensions; d++ )
+			{
+				voxel[ d ] = Math.round( sourcePosition[ d ] );
+				if ( voxel[ d ] < rai.min( d ) || voxel[ d ] > rai.max( d ) )
+				{
+					isInside = false;
+					break;
+				}
+			}
+
+			if ( ! isInside ) continue;
+
+			final Object value = access.setPositionAndGet( voxel );
+			if ( value instanceof Volatile )
+			{
+				final Volatile< ? > volatileValue = ( Volatile< ? > ) value;
+				if ( volatileValue.isValid() )
+					rowSample.sketch.add( ( ( RealType< ? > ) volatileValue.get() ).getRealDouble() );
+				else // not cached yet, load it
+					rowSample.sketch.add( ( ( RealType< ? > ) loadingAccess.setPositionAndGet( voxel ) ).getRealDouble() );
+			}
+			else
+			{
+				rowSample.sketch.add( ( ( RealType< ? > ) value ).getRealDouble() );
+			}
+		}
+
+		return rowSample;
+	}
+
+	private static class RowSample
+	{
+		final QuantileSketch sketch;
+
+		RowSample( int capacity, long seed )
+		{
+			sketch = new QuantileSketch( Math.max( 1, capacity ), seed );
+		}
+	}
+}
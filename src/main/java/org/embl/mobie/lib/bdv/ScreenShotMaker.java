@@ -47,6 +47,7 @@ import net.imglib2.roi.geom.real.WritableBox;
 import net.imglib2.type.Type;
 import net.imglib2.type.logic.BitType;
 import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
 import org.embl.mobie.lib.MoBIEHelper;
 import org.embl.mobie.lib.ThreadHelper;
 import org.embl.mobie.lib.annotation.Annotation;
@@ -71,7 +72,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.Future;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static sc.fiji.bdvpg.bdv.BdvHandleHelper.getLevel;
 import static sc.fiji.bdvpg.bdv.BdvHandleHelper.getViewerVoxelSpacing;
@@ -125,15 +126,7 @@ public class ScreenShotMaker
 
         final int currentTimepoint = bdvHandle.getViewerPanel().state().getCurrentTimepoint();
 
-        final AffineTransform3D viewerTransform = new AffineTransform3D();
-        bdvHandle.getViewerPanel().state().getViewerTransform( viewerTransform );
-        canvasToGlobalTransform = new AffineTransform3D();
-        // target canvas to viewer canvas...
-        double targetToViewer = targetVoxelSpacing / getViewerVoxelSpacing( bdvHandle );
-        canvasToGlobalTransform.scale( targetToViewer, targetToViewer, 1.0 );
-        // ...viewer canvas to global
-        AffineTransform3D viewerToGlobal = viewerTransform.inverse();
-        canvasToGlobalTransform.preConcatenate( viewerToGlobal );
+        canvasToGlobalTransform = getCanvasToGlobalTransform( bdvHandle, targetVoxelSpacing );
         //IJ.log( "Canvas to global transform: " + canvasToGlobalTransform );
 
         IJ.log( "Fetching data from " + sacs.size() + " image(s)..."  );
@@ -177,7 +170,7 @@ public class ScreenShotMaker
 
             boolean interpolate = ! ( source.getType() instanceof AnnotationType );
 
-            final AtomicInteger pixelCount = new AtomicInteger();
+            final AtomicLong pixelCount = new AtomicLong();
             final AtomicDouble fractionDone = new AtomicDouble( 0.2 );
             ArrayList< Future< ? > > futures = ThreadHelper.getFutures();
             for ( Interval interval : intervals )
@@ -188,64 +181,25 @@ public class ScreenShotMaker
                     {
                         RealRandomAccess< ? extends Type< ? > > sourceAccess = getRealRandomAccess( ( Source< Type< ? > > ) source, currentTimepoint, level, interpolate );
                         WritableBox sourceMask = SourceHelper.estimateDataMask( source, currentTimepoint, level, true );
-                        //RandomAccessibleInterval< ? > sourceInterval = source.getSource( currentTimepoint, level );
-
-                        // to collect raw data
-                        final IntervalView< FloatType > floatCrop = Views.interval( floatCapture, interval );
-                        final Cursor< FloatType > floatCursor = Views.iterable( floatCrop ).localizingCursor();
-                        final RandomAccess< FloatType > floatAccess = floatCrop.randomAccess();
-
-                        // to collect masks
-                        final RandomAccess< BitType > maskAccess = Views.interval( maskCapture, interval ).randomAccess();
-
-                        // to collect colored data
-                        final RandomAccess< ARGBType > argbAccess = Views.interval( argbCapture, interval ).randomAccess();
-
-                        final double[] canvasPosition = new double[ 3 ];
-                        final double[] sourceRealPosition = new double[ 3 ];
 
-                        final ARGBType argbType = new ARGBType();
-
-                        // iterate through the target image in pixel units
-                        while ( floatCursor.hasNext() )
+                        renderBlock(
+                                interval,
+                                targetCanvasToSourceTransform,
+                                sourceAccess,
+                                sourceMask,
+                                converter,
+                                Views.interval( floatCapture, interval ),
+                                Views.interval( maskCapture, interval ),
+                                Views.interval( argbCapture, interval ) );
+
+                        // log progress, once per block
+                        final double currentFractionDone = 1.0 * pixelCount.addAndGet( Intervals.numElements( interval ) ) / numPixels;
+                        synchronized ( fractionDone )
                         {
-                            // set the positions
-                            floatCursor.fwd();
-                            floatCursor.localize( canvasPosition );
-                            floatAccess.setPosition( floatCursor );
-                            maskAccess.setPosition( floatCursor );
-                            argbAccess.setPosition( floatCursor );
-                            targetCanvasToSourceTransform.apply( canvasPosition, sourceRealPosition );
-                            sourceAccess.setPosition( sourceRealPosition );
-
-                            // set the pixel and mask values depending on whether the
-                            // pixel is within the source data
-                            if ( sourceMask.test( new RealPoint( sourceRealPosition ) ) )
-                            {
-                                maskAccess.get().set( true );
-                                setFloatPixelValue( sourceAccess, floatAccess );
-                                setArgbPixelValue( converter, sourceAccess, argbAccess, argbType );
-                            }
-                            else
-                            {
-                                maskAccess.get().set( false );
-                            }
-
-                            // log progress
-                            pixelCount.incrementAndGet();
-                            final double currentFractionDone = 1.0 * pixelCount.get() / numPixels;
-                            if ( currentFractionDone >= fractionDone.get() )
+                            while ( currentFractionDone >= fractionDone.get() )
                             {
-                                synchronized ( fractionDone )
-                                {
-                                    // check again, because meanwhile another thread might have
-                                    // incremented fractionDone
-                                    if ( currentFractionDone >= fractionDone.get() )
-                                    {
-                                        IJ.log(sac.getSpimSource().getName() + ": " + ( Math.round( 100 * fractionDone.get() ) + "%" ) );
-                                        fractionDone.addAndGet( 0.2 );
-                                    }
-                                }
+                                IJ.log( sac.getSpimSource().getName() + ": " + ( Math.round( 100 * fractionDone.get() ) + "%" ) );
+                                fractionDone.addAndGet( 0.2 );
                             }
                         }
                     } )
@@ -282,7 +236,21 @@ public class ScreenShotMaker
         return canvasToGlobalTransform;
     }
 
-    private List< SourceAndConverter< ? > > getVisibleSourceAndConverters()
+    public static AffineTransform3D getCanvasToGlobalTransform( BdvHandle bdvHandle, double targetVoxelSpacing )
+    {
+        final AffineTransform3D viewerTransform = new AffineTransform3D();
+        bdvHandle.getViewerPanel().state().getViewerTransform( viewerTransform );
+        final AffineTransform3D canvasToGlobal = new AffineTransform3D();
+        // target canvas to viewer canvas...
+        double targetToViewer = targetVoxelSpacing / getViewerVoxelSpacing( bdvHandle );
+        canvasToGlobal.scale( targetToViewer, targetToViewer, 1.0 );
+        // ...viewer canvas to global
+        AffineTransform3D viewerToGlobal = viewerTransform.inverse();
+        canvasToGlobal.preConcatenate( viewerToGlobal );
+        return canvasToGlobal;
+    }
+
+    List< SourceAndConverter< ? > > getVisibleSourceAndConverters()
     {
         final List< SourceAndConverter <?> > visibleSacs = MoBIEHelper.getVisibleSacs( bdvHandle );
 
@@ -298,7 +266,73 @@ public class ScreenShotMaker
         return sacs;
     }
 
-    private void setArgbPixelValue( Converter converter, RealRandomAccess< ? > access, RandomAccess< ARGBType > argbCaptureAccess, ARGBType argbType )
+    /**
+     * Renders one source into a block of the capture canvas.
+     *
+     * The float, mask and ARGB targets must have the same dimensions as the
+     * block; their pixels are visited in flat iteration order.
+     * Only the mask and argb targets are optional and may be null.
+     * No objects are allocated per pixel.
+     */
+    static void renderBlock(
+            Interval canvasBlock,
+            AffineTransform3D canvasToSource,
+            RealRandomAccess< ? extends Type< ? > > sourceAccess,
+            WritableBox sourceMask,
+            Converter< ?, ? > converter,
+            RandomAccessibleInterval< FloatType > floatTarget,
+            RandomAccessibleInterval< BitType > maskTarget,
+            RandomAccessibleInterval< ARGBType > argbTarget )
+    {
+        final Cursor< FloatType > floatCursor = Views.flatIterable( floatTarget ).cursor();
+        final Cursor< BitType > maskCursor = maskTarget == null ? null : Views.flatIterable( maskTarget ).cursor();
+        final Cursor< ARGBType > argbCursor = argbTarget == null ? null : Views.flatIterable( argbTarget ).cursor();
+
+        final double[] canvasPosition = new double[ 3 ];
+        final double[] sourcePosition = new double[ 3 ];
+        final RealPoint sourcePoint = new RealPoint( 3 );
+        final ARGBType argbType = new ARGBType();
+
+        final long minX = canvasBlock.min( 0 );
+        final long maxX = canvasBlock.max( 0 );
+        final long minY = canvasBlock.min( 1 );
+        final long maxY = canvasBlock.max( 1 );
+
+        for ( long y = minY; y <= maxY; y++ )
+        {
+            canvasPosition[ 1 ] = y;
+            for ( long x = minX; x <= maxX; x++ )
+            {
+                canvasPosition[ 0 ] = x;
+                final FloatType floatType = floatCursor.next();
+                final BitType maskType = maskCursor == null ? null : maskCursor.next();
+                final ARGBType argbPixel = argbCursor == null ? null : argbCursor.next();
+
+                canvasToSource.apply( canvasPosition, sourcePosition );
+                sourcePoint.setPosition( sourcePosition );
+
+                // set the pixel and mask values depending on whether the
+                // pixel is within the source data
+                if ( sourceMask.test( sourcePoint ) )
+                {
+                    sourceAccess.setPosition( sourcePosition );
+                    if ( maskType != null ) maskType.set( true );
+                    setFloatPixelValue( sourceAccess, floatType );
+                    if ( argbPixel != null )
+                    {
+                        setArgbPixelValue( converter, sourceAccess, argbType );
+                        argbPixel.set( argbType.get() );
+                    }
+                }
+                else
+                {
+                    if ( maskType != null ) maskType.set( false );
+                }
+            }
+        }
+    }
+
+    private static void setArgbPixelValue( Converter converter, RealRandomAccess< ? > access, ARGBType argbType )
     {
         final Object pixelValue = access.get();
 
@@ -306,16 +340,14 @@ public class ScreenShotMaker
             argbType.set( ( ARGBType ) pixelValue );
         else
             converter.convert( pixelValue, argbType );
-
-        argbCaptureAccess.get().set( argbType.get() );
     }
 
-    private void setFloatPixelValue( RealRandomAccess< ? extends Type< ? > > access, RandomAccess< FloatType > floatCaptureAccess )
+    private static void setFloatPixelValue( RealRandomAccess< ? extends Type< ? > > access, FloatType floatType )
     {
         final Type< ? > type = access.get();
         if ( type instanceof RealType )
         {
-            floatCaptureAccess.get().setReal( ( ( RealType ) type ).getRealDouble() );
+            floatType.setReal( ( ( RealType ) type ).getRealDouble() );
         }
         else if ( type instanceof AnnotationType )
         {
@@ -323,7 +355,7 @@ public class ScreenShotMaker
             {
                 final Annotation annotation = ( Annotation ) ( ( AnnotationType< ? > ) type ).getAnnotation();
                 if ( annotation != null )
-                    floatCaptureAccess.get().setReal( annotation.label() );
+                    floatType.setReal( annotation.label() );
             }
             catch ( Exception e )
             {
@@ -337,10 +369,14 @@ public class ScreenShotMaker
     }
 
     private RealRandomAccess< ? extends Type< ? > > getRealRandomAccess( Source< Type< ? > > source, int t, int level, boolean interpolate )
+    {
+        return getRealRandomAccess( source, t, level, interpolate, bdvHandle.getViewerPanel().state().getInterpolation() );
+    }
+
+    static RealRandomAccess< ? extends Type< ? > > getRealRandomAccess( Source< Type< ? > > source, int t, int level, boolean interpolate, Interpolation interpolation )
     {
         if ( interpolate )
         {
-            Interpolation interpolation = bdvHandle.getViewerPanel().state().getInterpolation();
             return source.getInterpolatedSource( t, level, interpolation ).realRandomAccess();
         }
         else
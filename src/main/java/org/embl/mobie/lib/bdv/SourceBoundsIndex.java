@@ -0,0 +1,330 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.bdv;
+
+import bdv.tools.transformation.ManualTransformActiveListener;
+import bdv.util.BdvHandle;
+import bdv.viewer.Source;
+import bdv.viewer.SourceAndConverter;
+import bdv.viewer.TransformListener;
+import bdv.viewer.ViewerStateChange;
+import bdv.viewer.ViewerState;
+import bdv.viewer.ViewerStateChangeListener;
+import net.imglib2.FinalInterval;
+import net.imglib2.FinalRealInterval;
+import net.imglib2.Interval;
+import net.imglib2.RealInterval;
+import net.imglib2.RealLocalizable;
+import net.imglib2.RealPositionable;
+import net.imglib2.realtransform.AffineTransform3D;
+import org.embl.mobie.lib.image.Image;
+import org.embl.mobie.lib.image.ImageListener;
+import org.scijava.listeners.Listeners;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Finds the sources whose voxel grid contains a global position,
+ * with the same result as {@code SourceAndConverterHelper.isPositionWithinSourceInterval},
+ * but without testing and inverting the transforms of all sources.
+ *
+ * For each time point the global bounding boxes of the sources are kept
+ * in a {@link BoundingBoxTree}, together with the inverse source transforms.
+ * The index is refreshed when sources are added or removed, when images are
+ * transformed and while a manual transformation is active;
+ * only sources whose transform or interval changed are recomputed.
+ */
+public class SourceBoundsIndex implements ImageListener, ManualTransformActiveListener
+{
+	private final Supplier< Collection< SourceAndConverter< ? > > > sourcesSupplier;
+	private final boolean is2D;
+	private final Map< Integer, TimePointIndex > timePointToIndex = new HashMap<>();
+	private final AtomicLong modificationCount = new AtomicLong();
+	private ViewerState viewerState;
+	private Listeners< TransformListener< AffineTransform3D > > viewerTransformListeners;
+
+	private final ViewerStateChangeListener viewerStateChangeListener = change ->
+	{
+		if ( change == ViewerStateChange.NUM_SOURCES_CHANGED )
+			invalidate();
+	};
+
+	private final TransformListener< AffineTransform3D > viewerTransformListener = transform -> invalidate();
+
+	public SourceBoundsIndex( Supplier< Collection< SourceAndConverter< ? > > > sourcesSupplier, boolean is2D )
+	{
+		this.sourcesSupplier = sourcesSupplier;
+		this.is2D = is2D;
+	}
+
+	public SourceBoundsIndex( BdvHandle bdvHandle, boolean is2D )
+	{
+		this( bdvHandle.getViewerPanel().state(), bdvHandle.getViewerPanel().transformListeners(), is2D );
+	}
+
+	public SourceBoundsIndex( ViewerState viewerState, Listeners< TransformListener< AffineTransform3D > > viewerTransformListeners, boolean is2D )
+	{
+		this( () -> new ArrayList<>( viewerState.getSources() ), is2D );
+
+		this.viewerState = viewerState;
+		this.viewerTransformListeners = viewerTransformListeners;
+		viewerState.changeListeners().add( viewerStateChangeListener );
+		Image.listeners.add( this );
+	}
+
+	/**
+	 * Marks the index as outdated, e.g. after a source transform changed.
+	 */
+	public void invalidate()
+	{
+		modificationCount.incrementAndGet();
+	}
+
+	@Override
+	public void imageChanged()
+	{
+		invalidate();
+	}
+
+	/**
+	 * While a manual transformation is active the sources are moved
+	 * along with the viewer transform, without notifying any listeners;
+	 * thus the index is invalidated whenever the viewer transform changes.
+	 */
+	@Override
+	public void manualTransformActiveChanged( boolean active )
+	{
+		if ( viewerTransformListeners != null )
+		{
+			if ( active )
+				viewerTransformListeners.add( viewerTransformListener );
+			else
+				viewerTransformListeners.remove( viewerTransformListener );
+		}
+
+		invalidate();
+	}
+
+	/**
+	 * Removes the listeners that were added to the viewer and to the {@link Image}s.
+	 */
+	public void close()
+	{
+		Image.listeners.remove( this );
+
+		if ( viewerState != null )
+			viewerState.changeListeners().remove( viewerStateChangeListener );
+
+		if ( viewerTransformListeners != null )
+			viewerTransformListeners.remove( viewerTransformListener );
+	}
+
+	public List< SourceAndConverter< ? > > getSourcesAt( RealLocalizable position, int timePoint )
+	{
+		final List< SourceAndConverter< ? > > sourceAndConverters = new ArrayList<>();
+		for ( Entry entry : getEntriesAt( position, timePoint ) )
+			sourceAndConverters.add( entry.sourceAndConverter );
+		return sourceAndConverters;
+	}
+
+	/**
+	 * @return the entries of the sources whose voxel grid contains the position
+	 */
+	public List< Entry > getEntriesAt( RealLocalizable position, int timePoint )
+	{
+		return getEntriesAt( position, timePoint, false );
+	}
+
+	private List< Entry > getEntriesAt( RealLocalizable position, int timePoint, boolean isRefreshed )
+	{
+		final double[] point = { position.getDoublePosition( 0 ), position.getDoublePosition( 1 ), position.getDoublePosition( 2 ) };
+
+		final List< Entry > entries = new ArrayList<>();
+		final AffineTransform3D sourceTransform = new AffineTransform3D();
+		for ( Entry entry : getIndex( timePoint ).tree.getContaining( point ) )
+		{
+			// transforms that are changed without notifying the
+			// image listeners are noticed here, at least for the
+			// sources that used to be at this position
+			entry.sourceAndConverter.getSpimSource().getSourceTransform( timePoint, 0, sourceTransform );
+			if ( ! isRefreshed && ! equals( sourceTransform, entry.sourceTransform ) )
+			{
+				invalidate();
+				return getEntriesAt( position, timePoint, true );
+			}
+
+			if ( entry.contains( point ) )
+				entries.add( entry );
+		}
+
+		return entries;
+	}
+
+	private synchronized TimePointIndex getIndex( int timePoint )
+	{
+		final TimePointIndex index = timePointToIndex.get( timePoint );
+		final long modificationCount = this.modificationCount.get();
+		if ( index != null && index.modificationCount == modificationCount )
+			return index;
+
+		final Map< SourceAndConverter< ? >, Entry > previousEntries =
+				index == null ? Collections.emptyMap() : index.sourceToEntry;
+
+		final TimePointIndex refreshedIndex = new TimePointIndex( modificationCount );
+		final List< Entry > entries = new ArrayList<>();
+		final List< double[] > mins = new ArrayList<>();
+		final List< double[] > maxs = new ArrayList<>();
+		for ( SourceAndConverter< ? > sourceAndConverter : sourcesSupplier.get() )
+		{
+			final Source< ? > source = sourceAndConverter.getSpimSource();
+			if ( ! source.isPresent( timePoint ) )
+				continue;
+
+			final AffineTransform3D sourceTransform = new AffineTransform3D();
+			source.getSourceTransform( timePoint, 0, sourceTransform );
+			final Interval interval = source.getSource( timePoint, 0 );
+
+			Entry entry = previousEntries.get( sourceAndConverter );
+			if ( entry == null || ! equals( sourceTransform, entry.sourceTransform ) || ! equals( interval, entry.interval ) )
+				entry = new Entry( sourceAndConverter, sourceTransform, interval, is2D );
+
+			refreshedIndex.sourceToEntry.put( sourceAndConverter, entry );
+			entries.add( entry );
+			mins.add( entry.min );
+			maxs.add( entry.max );
+		}
+		refreshedIndex.tree = new BoundingBoxTree<>( entries, mins, maxs );
+
+		timePointToIndex.put( timePoint, refreshedIndex );
+		return refreshedIndex;
+	}
+
+	private static boolean equals( AffineTransform3D transform, AffineTransform3D other )
+	{
+		for ( int row = 0; row < 3; row++ )
+			for ( int column = 0; column < 4; column++ )
+				if ( transform.get( row, column ) != other.get( row, column ) )
+					return false;
+		return true;
+	}
+
+	private static boolean equals( Interval interval, Interval other )
+	{
+		for ( int d = 0; d < interval.numDimensions(); d++ )
+			if ( interval.min( d ) != other.min( d ) || interval.max( d ) != other.max( d ) )
+				return false;
+		return true;
+	}
+
+	private static class TimePointIndex
+	{
+		private final long modificationCount;
+		private final Map< SourceAndConverter< ? >, Entry > sourceToEntry = new IdentityHashMap<>();
+		private BoundingBoxTree< Entry > tree;
+
+		private TimePointIndex( long modificationCount )
+		{
+			this.modificationCount = modificationCount;
+		}
+	}
+
+	public static class Entry
+	{
+		private final SourceAndConverter< ? > sourceAndConverter;
+		private final AffineTransform3D sourceTransform;
+		private final AffineTransform3D inverseSourceTransform;
+		private final Interval interval;
+		private final boolean is2D;
+		private final double[] min;
+		private final double[] max;
+
+		private Entry( SourceAndConverter< ? > sourceAndConverter, AffineTransform3D sourceTransform, Interval interval, boolean is2D )
+		{
+			this.sourceAndConverter = sourceAndConverter;
+			this.sourceTransform = sourceTransform;
+			this.inverseSourceTransform = sourceTransform.inverse();
+			this.interval = new FinalInterval( interval );
+			this.is2D = is2D;
+
+			// the voxel positions are truncated, thus the voxels
+			// from min - 1 (exclusive) to max + 1 (exclusive) are inside
+			final double[] voxelMin = new double[ 3 ];
+			final double[] voxelMax = new double[ 3 ];
+			for ( int d = 0; d < 3; d++ )
+			{
+				voxelMin[ d ] = interval.min( d ) - 1;
+				voxelMax[ d ] = interval.max( d ) + 1;
+			}
+			final RealInterval bounds = sourceTransform.estimateBounds( new FinalRealInterval( voxelMin, voxelMax ) );
+			min = bounds.minAsDoubleArray();
+			max = bounds.maxAsDoubleArray();
+			if ( is2D )
+			{
+				min[ 2 ] = Double.NEGATIVE_INFINITY;
+				max[ 2 ] = Double.POSITIVE_INFINITY;
+			}
+		}
+
+		public SourceAndConverter< ? > getSourceAndConverter()
+		{
+			return sourceAndConverter;
+		}
+
+		/**
+		 * Applies the cached inverse of the source transform at resolution level 0.
+		 */
+		public void applyInverseSourceTransform( RealLocalizable global, RealPositionable source )
+		{
+			inverseSourceTransform.apply( global, source );
+		}
+
+		private boolean contains( double[] global )
+		{
+			final double[] voxel = new double[ 3 ];
+			inverseSourceTransform.apply( global, voxel );
+			final int numDimensions = is2D ? 2 : 3;
+			for ( int d = 0; d < numDimensions; d++ )
+			{
+				// same as SourceAndConverterHelper.getVoxelPositionInSource
+				final long position = ( long ) ( float ) voxel[ d ];
+				if ( position < interval.min( d ) || position > interval.max( d ) )
+					return false;
+			}
+			return true;
+		}
+	}
+}
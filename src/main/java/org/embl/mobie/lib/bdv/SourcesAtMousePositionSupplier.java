@@ -32,7 +32,6 @@ import bdv.util.BdvHandle;
 import bdv.util.PlaceHolderSource;
 import bdv.viewer.SourceAndConverter;
 import sc.fiji.bdvpg.services.SourceAndConverterServices;
-import sc.fiji.bdvpg.sourceandconverter.SourceAndConverterHelper;
 
 import java.util.Collection;
 import java.util.List;
@@ -42,12 +41,12 @@ import java.util.stream.Collectors;
 public class SourcesAtMousePositionSupplier implements Supplier< Collection< SourceAndConverter< ? > > >
 {
 	BdvHandle bdvHandle;
-	boolean is2D;
+	SourceBoundsIndex sourceBoundsIndex;
 
-	public SourcesAtMousePositionSupplier( BdvHandle bdvHandle, boolean is2D )
+	public SourcesAtMousePositionSupplier( BdvHandle bdvHandle, SourceBoundsIndex sourceBoundsIndex )
 	{
 		this.bdvHandle = bdvHandle;
-		this.is2D = is2D;
+		this.sourceBoundsIndex = sourceBoundsIndex;
 	}
 
 	@Override
@@ -55,10 +54,9 @@ public class SourcesAtMousePositionSupplier implements Supplier< Collection< Sou
 	{
 		final CalibratedMousePositionProvider positionProvider = new CalibratedMousePositionProvider( bdvHandle );
 
-		final List< SourceAndConverter< ? > > sourceAndConverters = SourceAndConverterServices.getBdvDisplayService().getSourceAndConverterOf( bdvHandle )
+		final List< SourceAndConverter< ? > > sourceAndConverters = sourceBoundsIndex.getSourcesAt( positionProvider.getPositionAsRealPoint(), positionProvider.getTimePoint() )
 				.stream()
 				.filter( sac -> ! ( sac.getSpimSource() instanceof PlaceHolderSource ) )
-				.filter( sac -> SourceAndConverterHelper.isPositionWithinSourceInterval( sac, positionProvider.getPositionAsRealPoint(), positionProvider.getTimePoint(), is2D ) )
 				.filter( sac -> SourceAndConverterServices.getBdvDisplayService().isVisible( sac, bdvHandle ) )
 				.collect( Collectors.toList() );
 
@@ -0,0 +1,309 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.bdv;
+
+import bdv.util.BdvHandle;
+import bdv.viewer.Interpolation;
+import bdv.viewer.Source;
+import bdv.viewer.SourceAndConverter;
+import ij.IJ;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealRandomAccess;
+import net.imglib2.algorithm.util.Grids;
+import net.imglib2.converter.Converter;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.roi.geom.real.WritableBox;
+import net.imglib2.type.Type;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+import org.embl.mobie.lib.ThreadHelper;
+import org.embl.mobie.lib.bdv.blend.AccumulateAlphaBlendingProjectorARGB;
+import org.embl.mobie.lib.source.AnnotationType;
+import org.embl.mobie.lib.source.SourceHelper;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.n5.zarr.N5ZarrWriter;
+import sc.fiji.bdvpg.bdv.BdvHandleHelper;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import static sc.fiji.bdvpg.bdv.BdvHandleHelper.getLevel;
+
+/**
+ * Renders the current BDV view tile by tile and streams the tiles
+ * into OME-Zarr images on disk.
+ *
+ * In contrast to the {@link ScreenShotMaker}, the full screenshot is never
+ * held in memory: only a bounded number of tiles is in flight at any time,
+ * such that the peak memory does not depend on the size of the output.
+ *
+ * Two OME-Zarr images are written:
+ * "{name}-rgb.ome.zarr" contains the blended view as three 8-bit channels,
+ * "{name}.ome.zarr" contains the raw data of each source as one float channel.
+ */
+public class TiledScreenShotWriter
+{
+	public static final int DEFAULT_TILE_SIZE = 1024;
+	public static final String DATASET = "s0";
+
+	private final BdvHandle bdvHandle;
+	private final String voxelUnit;
+	private int tileSize = DEFAULT_TILE_SIZE;
+
+	public TiledScreenShotWriter( BdvHandle bdvHandle, String voxelUnit )
+	{
+		this.bdvHandle = bdvHandle;
+		this.voxelUnit = voxelUnit;
+	}
+
+	public void setTileSize( int tileSize )
+	{
+		this.tileSize = tileSize;
+	}
+
+	public void run( File outputDirectory, String name, double targetVoxelSpacing )
+	{
+		final List< SourceAndConverter< ? > > sacs = new ScreenShotMaker( bdvHandle, voxelUnit ).getVisibleSourceAndConverters();
+		run( sacs, outputDirectory, name, targetVoxelSpacing );
+	}
+
+	public void run( List< SourceAndConverter< ? > > sacs, File outputDirectory, String name, double targetVoxelSpacing )
+	{
+		if ( sacs.isEmpty() )
+		{
+			IJ.log( "No screen shot written, as there were no images." );
+			return;
+		}
+
+		final int numSources = sacs.size();
+		final long[] dimensions = ScreenShotMaker.getCaptureImageSizeInPixels( bdvHandle, targetVoxelSpacing );
+		final int t = bdvHandle.getViewerPanel().state().getCurrentTimepoint();
+		final Interpolation interpolation = bdvHandle.getViewerPanel().state().getInterpolation();
+		final AffineTransform3D canvasToGlobal = ScreenShotMaker.getCanvasToGlobalTransform( bdvHandle, targetVoxelSpacing );
+
+		// per source rendering parameters, shared by all tiles
+		final Source< ? >[] sources = new Source< ? >[ numSources ];
+		final Converter< ?, ? >[] converters = new Converter< ?, ? >[ numSources ];
+		final int[] levels = new int[ numSources ];
+		final AffineTransform3D[] canvasToSources = new AffineTransform3D[ numSources ];
+		final boolean[] interpolate = new boolean[ numSources ];
+		for ( int sourceIndex = 0; sourceIndex < numSources; sourceIndex++ )
+		{
+			final SourceAndConverter< ? > sac = sacs.get( sourceIndex );
+			sources[ sourceIndex ] = sac.getSpimSource();
+			converters[ sourceIndex ] = sac.getConverter();
+			levels[ sourceIndex ] = getLevel( sources[ sourceIndex ], targetVoxelSpacing );
+			final AffineTransform3D sourceTransform = BdvHandleHelper.getSourceTransform( sources[ sourceIndex ], t, levels[ sourceIndex ] );
+			canvasToSources[ sourceIndex ] = canvasToGlobal.copy().preConcatenate( sourceTransform.inverse() );
+			interpolate[ sourceIndex ] = ! ( sources[ sourceIndex ].getType() instanceof AnnotationType );
+		}
+
+		final boolean[] alphaBlending = AccumulateAlphaBlendingProjectorARGB.getAlphaBlending( sacs );
+		final int[] order = AccumulateAlphaBlendingProjectorARGB.getOrder( sacs );
+
+		final String rawPath = new File( outputDirectory, name + ".ome.zarr" ).getAbsolutePath();
+		final String rgbPath = new File( outputDirectory, name + "-rgb.ome.zarr" ).getAbsolutePath();
+		final N5Writer rawWriter = createOMEZarr( rawPath, dimensions, numSources, DataType.FLOAT32, targetVoxelSpacing );
+		final N5Writer rgbWriter = createOMEZarr( rgbPath, dimensions, 3, DataType.UINT8, targetVoxelSpacing );
+
+		final List< Interval > tiles = Grids.collectAllContainedIntervals( dimensions, new int[]{ tileSize, tileSize } );
+		IJ.log( "Writing " + Arrays.toString( dimensions ) + " pixels from " + numSources + " image(s) in " + tiles.size() + " tiles to " + outputDirectory + "..." );
+
+		// limit the number of tiles that are in memory at the same time
+		final int maxTilesInFlight = 2 * ThreadHelper.getNumIoThreads();
+		final long start = System.currentTimeMillis();
+		int numTilesDone = 0;
+		int nextPercentage = 10;
+		for ( int batchStart = 0; batchStart < tiles.size(); batchStart += maxTilesInFlight )
+		{
+			final List< Interval > batch = tiles.subList( batchStart, Math.min( tiles.size(), batchStart + maxTilesInFlight ) );
+			final ArrayList< Future< ? > > futures = ThreadHelper.getFutures();
+			for ( Interval tile : batch )
+			{
+				futures.add( ThreadHelper.ioExecutorService.submit( () ->
+				{
+					writeTile( tile, t, interpolation, sources, converters, levels, canvasToSources, interpolate, alphaBlending, order, rawWriter, rgbWriter );
+				} ) );
+			}
+			ThreadHelper.waitUntilFinished( futures );
+
+			numTilesDone += batch.size();
+			final int percentage = 100 * numTilesDone / tiles.size();
+			if ( percentage >= nextPercentage )
+			{
+				IJ.log( "Written " + percentage + "% of the tiles." );
+				nextPercentage = 10 * ( percentage / 10 + 1 );
+			}
+		}
+
+		rawWriter.close();
+		rgbWriter.close();
+
+		IJ.log( "Written screenshot in " + ( System.currentTimeMillis() - start ) + " ms:" );
+		IJ.log( rawPath );
+		IJ.log( rgbPath );
+	}
+
+	private void writeTile(
+			Interval tile,
+			int t,
+			Interpolation interpolation,
+			Source< ? >[] sources,
+			Converter< ?, ? >[] converters,
+			int[] levels,
+			AffineTransform3D[] canvasToSources,
+			boolean[] interpolate,
+			boolean[] alphaBlending,
+			int[] order,
+			N5Writer rawWriter,
+			N5Writer rgbWriter )
+	{
+		final int numSources = sources.length;
+		final long width = tile.dimension( 0 );
+		final long height = tile.dimension( 1 );
+
+		final ArrayImg< FloatType, FloatArray > floats = ArrayImgs.floats( width, height, numSources );
+		final List< RandomAccessibleInterval< ARGBType > > argbs = new ArrayList<>();
+
+		for ( int sourceIndex = 0; sourceIndex < numSources; sourceIndex++ )
+		{
+			final RealRandomAccess< ? extends Type< ? > > sourceAccess = ScreenShotMaker.getRealRandomAccess( ( Source< Type< ? > > ) sources[ sourceIndex ], t, levels[ sourceIndex ], interpolate[ sourceIndex ], interpolation );
+			final WritableBox sourceMask = SourceHelper.estimateDataMask( sources[ sourceIndex ], t, levels[ sourceIndex ], true );
+			final RandomAccessibleInterval< ARGBType > argb = ArrayImgs.argbs( width, height );
+
+			ScreenShotMaker.renderBlock(
+					tile,
+					canvasToSources[ sourceIndex ],
+					sourceAccess,
+					sourceMask,
+					converters[ sourceIndex ],
+					Views.hyperSlice( floats, 2, sourceIndex ),
+					null,
+					argb );
+
+			argbs.add( argb );
+		}
+
+		final ArrayImg< UnsignedByteType, ByteArray > rgb = ArrayImgs.unsignedBytes( width, height, 3 );
+		blend( argbs, alphaBlending, order, rgb );
+
+		final long[] gridOffset = { tile.min( 0 ) / tileSize, tile.min( 1 ) / tileSize, 0 };
+		N5Utils.saveBlock( floats, rawWriter, DATASET, gridOffset );
+		N5Utils.saveBlock( rgb, rgbWriter, DATASET, gridOffset );
+	}
+
+	private static void blend(
+			List< RandomAccessibleInterval< ARGBType > > argbs,
+			boolean[] alphaBlending,
+			int[] order,
+			RandomAccessibleInterval< UnsignedByteType > rgb )
+	{
+		final int numSources = argbs.size();
+		final Cursor< ARGBType >[] cursors = new Cursor[ numSources ];
+		for ( int i = 0; i < numSources; i++ )
+			cursors[ i ] = Views.flatIterable( argbs.get( i ) ).cursor();
+
+		final Cursor< UnsignedByteType > red = Views.flatIterable( Views.hyperSlice( rgb, 2, 0 ) ).cursor();
+		final Cursor< UnsignedByteType > green = Views.flatIterable( Views.hyperSlice( rgb, 2, 1 ) ).cursor();
+		final Cursor< UnsignedByteType > blue = Views.flatIterable( Views.hyperSlice( rgb, 2, 2 ) ).cursor();
+
+		while ( red.hasNext() )
+		{
+			for ( int i = 0; i < numSources; i++ )
+				cursors[ i ].fwd();
+			final int argb = AccumulateAlphaBlendingProjectorARGB.getArgbIndex( cursors, alphaBlending, order );
+			red.next().set( ARGBType.red( argb ) );
+			green.next().set( ARGBType.green( argb ) );
+			blue.next().set( ARGBType.blue( argb ) );
+		}
+	}
+
+	private N5Writer createOMEZarr( String path, long[] dimensions, int numChannels, DataType dataType, double voxelSpacing )
+	{
+		final N5ZarrWriter writer = new N5ZarrWriter( path );
+
+		// the zarr axes order is the reverse of the N5 axes order: c, y, x
+		writer.createDataset(
+				DATASET,
+				new long[]{ dimensions[ 0 ], dimensions[ 1 ], numChannels },
+				new int[]{ tileSize, tileSize, numChannels },
+				dataType,
+				new GzipCompression() );
+
+		final List< Map< String, Object > > axes = new ArrayList<>();
+		axes.add( axis( "c", "channel", null ) );
+		axes.add( axis( "y", "space", voxelUnit ) );
+		axes.add( axis( "x", "space", voxelUnit ) );
+
+		final Map< String, Object > scale = new LinkedHashMap<>();
+		scale.put( "type", "scale" );
+		scale.put( "scale", new double[]{ 1.0, voxelSpacing, voxelSpacing } );
+
+		final Map< String, Object > dataset = new LinkedHashMap<>();
+		dataset.put( "path", DATASET );
+		dataset.put( "coordinateTransformations", Arrays.asList( scale ) );
+
+		final Map< String, Object > multiscale = new LinkedHashMap<>();
+		multiscale.put( "version", "0.4" );
+		multiscale.put( "name", new File( path ).getName() );
+		multiscale.put( "axes", axes );
+		multiscale.put( "datasets", Arrays.asList( dataset ) );
+
+		writer.setAttribute( "/", "multiscales", Arrays.asList( multiscale ) );
+
+		return writer;
+	}
+
+	private static Map< String, Object > axis( String name, String type, String unit )
+	{
+		final Map< String, Object > axis = new LinkedHashMap<>();
+		axis.put( "name", name );
+		axis.put( "type", type );
+		if ( unit != null )
+			axis.put( "unit", unit );
+		return axis;
+	}
+}
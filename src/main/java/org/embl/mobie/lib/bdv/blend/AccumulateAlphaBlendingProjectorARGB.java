@@ -30,40 +30,114 @@ package org.embl.mobie.lib.bdv.blend;
 
 import bdv.util.BdvHandle;
 import bdv.viewer.SourceAndConverter;
-import bdv.viewer.render.AccumulateProjector;
 import bdv.viewer.render.VolatileProjector;
 import net.imglib2.Cursor;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.parallel.Parallelization;
+import net.imglib2.parallel.TaskExecutor;
 import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.view.Views;
 import sc.fiji.bdvpg.services.ISourceAndConverterService;
 import sc.fiji.bdvpg.services.SourceAndConverterServices;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-public class AccumulateAlphaBlendingProjectorARGB extends AccumulateProjector< ARGBType, ARGBType >
+/**
+ * Blends the ARGB screen images of the sources, either by summing them
+ * or by alpha blending them in the order in which they have been added.
+ *
+ * The blending is computed in integer fixed-point arithmetic, line by line.
+ * Sources that are fully transparent within a line are skipped for that line.
+ * The blending order and modes of a given list of sources are cached until
+ * {@link #blendingSettingsChanged()} is called.
+ */
+public class AccumulateAlphaBlendingProjectorARGB implements VolatileProjector
 {
 	public static BdvHandle bdvHandle;
 	public static ISourceAndConverterService sacService = SourceAndConverterServices.getSourceAndConverterService();;
 
+	// the blending settings only change when sources are added
+	// or when their blending mode is changed, thus we cache them
+	// rather than querying the source metadata for every new frame
+	private static final Map< List< SourceAndConverter< ? > >, BlendingSettings > sourcesToSettings = new ConcurrentHashMap<>();
+	private static final int MAX_CACHED_SETTINGS = 64;
+
+	private final List< VolatileProjector > sourceProjectors;
+	private final List< ? extends RandomAccessible< ? extends ARGBType > > sourceScreenImages;
+	private final RandomAccessibleInterval< ARGBType > target;
 	private final boolean[] alphaBlending;
 	private final int[] order;
 
+	private volatile boolean canceled = false;
+	private boolean valid = false;
+	private long lastFrameRenderNanoTime;
+
 	public AccumulateAlphaBlendingProjectorARGB(
 			final List< VolatileProjector > sourceProjectors,
 			final List< SourceAndConverter< ? > > sources,
 			final List< ? extends RandomAccessible< ? extends ARGBType > > sourceScreenImages,
 			final RandomAccessibleInterval< ARGBType > target )
 	{
-		super( sourceProjectors, sourceScreenImages, target );
-		alphaBlending = getAlphaBlending( sources );
-		order = getOrder( sources );
+		this( sourceProjectors, getBlendingSettings( sources ), sourceScreenImages, target );
+	}
+
+	private AccumulateAlphaBlendingProjectorARGB(
+			final List< VolatileProjector > sourceProjectors,
+			final BlendingSettings settings,
+			final List< ? extends RandomAccessible< ? extends ARGBType > > sourceScreenImages,
+			final RandomAccessibleInterval< ARGBType > target )
+	{
+		this( sourceProjectors, settings.alphaBlending, settings.order, sourceScreenImages, target );
 	}
 
-	public static synchronized int[] getOrder( List< SourceAndConverter< ? > > sources )
+	public AccumulateAlphaBlendingProjectorARGB(
+			final List< VolatileProjector > sourceProjectors,
+			final boolean[] alphaBlending,
+			final int[] order,
+			final List< ? extends RandomAccessible< ? extends ARGBType > > sourceScreenImages,
+			final RandomAccessibleInterval< ARGBType > target )
+	{
+		this.sourceProjectors = sourceProjectors;
+		this.sourceScreenImages = sourceScreenImages;
+		this.target = target;
+		this.alphaBlending = alphaBlending;
+		this.order = order;
+	}
+
+	/**
+	 * Must be called whenever the blending mode or
+	 * the time added of a source has changed.
+	 */
+	public static void blendingSettingsChanged()
+	{
+		sourcesToSettings.clear();
+	}
+
+	private static BlendingSettings getBlendingSettings( List< SourceAndConverter< ? > > sources )
+	{
+		final BlendingSettings settings = sourcesToSettings.get( sources );
+		if ( settings != null )
+			return settings;
+
+		if ( sourcesToSettings.size() > MAX_CACHED_SETTINGS )
+			sourcesToSettings.clear();
+
+		final BlendingSettings newSettings = new BlendingSettings( getAlphaBlending( sources ), getOrder( sources ) );
+		// copy the key, because the list may be modified by the caller
+		sourcesToSettings.put( new ArrayList<>( sources ), newSettings );
+		return newSettings;
+	}
+
+	public static int[] getOrder( List< SourceAndConverter< ? > > sources )
 	{
 		final ArrayList< SourceAndConverter< ? > > sorted = new ArrayList<>( sources );
 
@@ -77,7 +151,7 @@ public class AccumulateAlphaBlendingProjectorARGB extends AccumulateProjector< A
 		return order;
 	}
 
-	public static synchronized boolean[] getAlphaBlending( List< SourceAndConverter< ? > > sources )
+	public static boolean[] getAlphaBlending( List< SourceAndConverter< ? > > sources )
 	{
 		final int numSources = sources.size();
 		final boolean[] alphaBlending = new boolean[ numSources ];
@@ -92,56 +166,252 @@ public class AccumulateAlphaBlendingProjectorARGB extends AccumulateProjector< A
 	}
 
 	@Override
-	protected void accumulate(
-			final Cursor< ? extends ARGBType >[] accesses,
-			final ARGBType target )
+	public boolean map( final boolean clearUntouchedTargetPixels )
 	{
-		final int argbIndex = getArgbIndex( accesses, alphaBlending, order );
-		target.set( argbIndex );
+		if ( canceled )
+			return false;
+
+		if ( isValid() )
+			return true;
+
+		final long startTime = System.nanoTime();
+
+		valid = true;
+		for ( VolatileProjector projector : sourceProjectors )
+		{
+			if ( ! projector.isValid() )
+			{
+				if ( ! projector.map( clearUntouchedTargetPixels ) )
+					return false;
+				valid &= projector.isValid();
+			}
+		}
+
+		final int width = ( int ) target.dimension( 0 );
+		final int height = ( int ) target.dimension( 1 );
+		final int numSources = sourceScreenImages.size();
+
+		final int[] targetData = getData( target, width, height );
+		final int[][] sourceData = new int[ numSources ][];
+		boolean isDirect = targetData != null;
+		for ( int sourceIndex = 0; sourceIndex < numSources && isDirect; sourceIndex++ )
+		{
+			sourceData[ sourceIndex ] = getData( sourceScreenImages.get( sourceIndex ), width, height );
+			isDirect = sourceData[ sourceIndex ] != null;
+		}
+
+		final TaskExecutor taskExecutor = Parallelization.getTaskExecutor();
+		final int numTasks = Math.max( 1, Math.min( height, 4 * taskExecutor.suggestNumberOfTasks() ) );
+		final List< int[] > rowRanges = new ArrayList<>( numTasks );
+		for ( int task = 0; task < numTasks; task++ )
+			rowRanges.add( new int[]{ task * height / numTasks, ( task + 1 ) * height / numTasks } );
+
+		final boolean finalIsDirect = isDirect;
+		taskExecutor.forEach( rowRanges, rowRange ->
+		{
+			if ( canceled ) return;
+
+			if ( finalIsDirect )
+				blendRows( sourceData, targetData, width, rowRange[ 0 ], rowRange[ 1 ] );
+			else
+				blendRowsViaCursors( width, rowRange[ 0 ], rowRange[ 1 ] );
+		} );
+
+		lastFrameRenderNanoTime = System.nanoTime() - startTime;
+
+		return ! canceled;
 	}
 
-	public static int getArgbIndex( Cursor< ? extends ARGBType >[] accesses, boolean[] alphaBlending, int[] order )
+	/**
+	 * Blends the rows in [ startRow, endRow [ of the flattened images.
+	 */
+	private void blendRows( int[][] sources, int[] target, int width, int startRow, int endRow )
 	{
-		try
+		final int numSources = order.length;
+		final int[] activeSources = new int[ numSources ];
+		final int[] accumulators = new int[ 3 * width ];
+
+		for ( int row = startRow; row < endRow; row++ )
 		{
-			int aAccu = 0, rAccu = 0, gAccu = 0, bAccu = 0;
+			final int offset = row * width;
 
+			// skip sources that are fully transparent in this row
+			int numActive = 0;
 			for ( int sourceIndex : order )
+				if ( isVisible( sources[ sourceIndex ], offset, width ) )
+					activeSources[ numActive++ ] = sourceIndex;
+
+			if ( numActive == 0 )
+			{
+				Arrays.fill( target, offset, offset + width, 0 );
+				continue;
+			}
+
+			Arrays.fill( accumulators, 0 );
+			for ( int i = 0; i < numActive; i++ )
+			{
+				final int sourceIndex = activeSources[ i ];
+				accumulate( sources[ sourceIndex ], offset, width, alphaBlending[ sourceIndex ], accumulators );
+			}
+
+			toARGB( accumulators, target, offset, width );
+		}
+	}
+
+	/**
+	 * Fallback for screen images that are not backed by an int[] array.
+	 * Copies the rows into buffers and blends those.
+	 */
+	private void blendRowsViaCursors( int width, int startRow, int endRow )
+	{
+		final int numSources = sourceScreenImages.size();
+		final int numPixels = ( endRow - startRow ) * width;
+		final long offset = ( long ) startRow * width;
+
+		final int[][] sources = new int[ numSources ][ numPixels ];
+		for ( int sourceIndex = 0; sourceIndex < numSources; sourceIndex++ )
+		{
+			final Cursor< ? extends ARGBType > cursor = Views.flatIterable( Views.interval( sourceScreenImages.get( sourceIndex ), target ) ).cursor();
+			cursor.jumpFwd( offset );
+			final int[] data = sources[ sourceIndex ];
+			for ( int i = 0; i < numPixels; i++ )
+				data[ i ] = cursor.next().get();
+		}
+
+		final int[] blended = new int[ numPixels ];
+		blendRows( sources, blended, width, 0, endRow - startRow );
+
+		final Cursor< ARGBType > targetCursor = Views.flatIterable( target ).cursor();
+		targetCursor.jumpFwd( offset );
+		for ( int i = 0; i < numPixels; i++ )
+			targetCursor.next().set( blended[ i ] );
+	}
+
+	private static boolean isVisible( int[] argbs, int offset, int width )
+	{
+		final int end = offset + width;
+		for ( int i = offset; i < end; i++ )
+			if ( ( argbs[ i ] & 0xff000000 ) != 0 )
+				return true;
+		return false;
+	}
+
+	/*
+	 * The accumulators hold the red, green and blue values,
+	 * in fixed-point with a scale of 255, i.e. 255 * 255 is full intensity.
+	 */
+	private static void accumulate( int[] argbs, int offset, int width, boolean alphaBlending, int[] accumulators )
+	{
+		for ( int x = 0, i = offset; x < width; x++, i++ )
+		{
+			final int argb = argbs[ i ];
+			final int alpha = argb >>> 24;
+			if ( alpha == 0 ) continue;
+
+			final int a = 3 * x;
+			if ( alphaBlending )
 			{
-				final int argb = accesses[ sourceIndex ].get().get();
-				final double alpha = ARGBType.alpha( argb ) / 255.0;
-				if ( alpha == 0 ) continue;
-
-				final int r = ARGBType.red( argb );
-				final int g = ARGBType.green( argb );
-				final int b = ARGBType.blue( argb );
-
-				if ( alphaBlending[ sourceIndex ] )
-				{
-					rAccu *= ( 1 - alpha );
-					gAccu *= ( 1 - alpha );
-					bAccu *= ( 1 - alpha );
-				}
-
-				rAccu += r * alpha;
-				gAccu += g * alpha;
-				bAccu += b * alpha;
+				final int beta = 255 - alpha;
+				accumulators[ a ] = accumulators[ a ] * beta / 255;
+				accumulators[ a + 1 ] = accumulators[ a + 1 ] * beta / 255;
+				accumulators[ a + 2 ] = accumulators[ a + 2 ] * beta / 255;
 			}
 
-			if ( aAccu > 255 )
-				aAccu = 255;
-			if ( rAccu > 255 )
-				rAccu = 255;
-			if ( gAccu > 255 )
-				gAccu = 255;
-			if ( bAccu > 255 )
-				bAccu = 255;
+			accumulators[ a ] += ( ( argb >> 16 ) & 0xff ) * alpha;
+			accumulators[ a + 1 ] += ( ( argb >> 8 ) & 0xff ) * alpha;
+			accumulators[ a + 2 ] += ( argb & 0xff ) * alpha;
+		}
+	}
 
-			return ARGBType.rgba( rAccu, gAccu, bAccu, aAccu );
+	private static void toARGB( int[] accumulators, int[] target, int offset, int width )
+	{
+		for ( int x = 0, i = offset; x < width; x++, i++ )
+		{
+			final int a = 3 * x;
+			final int r = Math.min( 255, accumulators[ a ] / 255 );
+			final int g = Math.min( 255, accumulators[ a + 1 ] / 255 );
+			final int b = Math.min( 255, accumulators[ a + 2 ] / 255 );
+			target[ i ] = ARGBType.rgba( r, g, b, 0 );
 		}
-		catch ( Exception e )
+	}
+
+	/**
+	 * @return the underlying int[] if the image is a flat array of the given size, or null
+	 */
+	private static int[] getData( RandomAccessible< ? > image, int width, int height )
+	{
+		if ( ! ( image instanceof ArrayImg ) )
+			return null;
+
+		final ArrayImg< ?, ? > arrayImg = ( ArrayImg< ?, ? > ) image;
+		if ( arrayImg.numDimensions() != 2 || arrayImg.dimension( 0 ) != width || arrayImg.dimension( 1 ) != height )
+			return null;
+
+		final Object access = arrayImg.update( null );
+		if ( ! ( access instanceof IntArray ) )
+			return null;
+
+		return ( ( IntArray ) access ).getCurrentStorageArray();
+	}
+
+	/**
+	 * Blends the current values of the cursors, e.g. for screenshots.
+	 */
+	public static int getArgbIndex( Cursor< ? extends ARGBType >[] accesses, boolean[] alphaBlending, int[] order )
+	{
+		int rAccu = 0, gAccu = 0, bAccu = 0;
+
+		for ( int sourceIndex : order )
+		{
+			final int argb = accesses[ sourceIndex ].get().get();
+			final int alpha = argb >>> 24;
+			if ( alpha == 0 ) continue;
+
+			if ( alphaBlending[ sourceIndex ] )
+			{
+				final int beta = 255 - alpha;
+				rAccu = rAccu * beta / 255;
+				gAccu = gAccu * beta / 255;
+				bAccu = bAccu * beta / 255;
+			}
+
+			rAccu += ( ( argb >> 16 ) & 0xff ) * alpha;
+			gAccu += ( ( argb >> 8 ) & 0xff ) * alpha;
+			bAccu += ( argb & 0xff ) * alpha;
+		}
+
+		return ARGBType.rgba( Math.min( 255, rAccu / 255 ), Math.min( 255, gAccu / 255 ), Math.min( 255, bAccu / 255 ), 0 );
+	}
+
+	@Override
+	public void cancel()
+	{
+		canceled = true;
+		for ( final VolatileProjector projector : sourceProjectors )
+			projector.cancel();
+	}
+
+	@Override
+	public long getLastFrameRenderNanoTime()
+	{
+		return lastFrameRenderNanoTime;
+	}
+
+	@Override
+	public boolean isValid()
+	{
+		return valid;
+	}
+
+	private static class BlendingSettings
+	{
+		final boolean[] alphaBlending;
+		final int[] order;
+
+		BlendingSettings( boolean[] alphaBlending, int[] order )
 		{
-			throw new RuntimeException();
+			this.alphaBlending = alphaBlending;
+			this.order = order;
 		}
 	}
 }
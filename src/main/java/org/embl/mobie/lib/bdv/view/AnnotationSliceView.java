@@ -53,6 +53,7 @@ import org.embl.mobie.lib.serialize.display.RegionDisplay;
 import org.embl.mobie.lib.serialize.display.SegmentationDisplay;
 import org.embl.mobie.lib.serialize.display.SpotDisplay;
 import org.embl.mobie.lib.source.AnnotationType;
+import org.embl.mobie.lib.source.BoundaryMasks;
 import org.embl.mobie.lib.source.BoundarySource;
 import org.embl.mobie.lib.source.SourceHelper;
 import org.embl.mobie.lib.source.VolatileBoundarySource;
@@ -114,6 +115,10 @@ public class AnnotationSliceView< A extends Annotation > extends AbstractSliceVi
 			// create volatile sac
 			final Source< ? extends Volatile< ? extends AnnotationType< ? > > > volatileSource = image.getSourcePair().getVolatileSource();
 			final VolatileBoundarySource volatileBoundarySource = new VolatileBoundarySource( volatileSource, false, 1.0F, image.getMask() );
+			// compute the boundaries once per cell, on the fetcher threads
+			final BoundaryMasks< AnnotationType< A > > boundaryMasks = new BoundaryMasks<>( source );
+			boundarySource.setBoundaryMasks( boundaryMasks );
+			volatileBoundarySource.setBoundaryMasks( boundaryMasks );
 			final VolatileAnnotationARGBConverter volatileAnnotationConverter = new VolatileAnnotationARGBConverter( display.coloringModel );
 			final TransformedSource volatileTransformedSource = new TransformedSource( volatileBoundarySource, transformedBoundarySource );
 			SourceAndConverter volatileSourceAndConverter = new SourceAndConverter( volatileTransformedSource, volatileAnnotationConverter );
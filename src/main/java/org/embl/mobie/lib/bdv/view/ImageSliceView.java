@@ -39,7 +39,12 @@ import net.imglib2.type.numeric.RealType;
 import org.embl.mobie.MoBIE;
 import org.embl.mobie.lib.color.ColorHelper;
 import org.embl.mobie.lib.color.opacity.MoBIEColorConverter;
+import org.embl.mobie.lib.bdv.SamplingContrastEstimator;
+import org.embl.mobie.lib.contrast.IntensityStatistics;
+import org.embl.mobie.lib.contrast.IntensityStatisticsIO;
 import org.embl.mobie.lib.image.Image;
+import org.embl.mobie.lib.image.ImageDataImage;
+import org.embl.mobie.lib.image.ImageWrapper;
 import org.embl.mobie.lib.serialize.display.ImageDisplay;
 import sc.fiji.bdvpg.services.SourceAndConverterServices;
 import sc.fiji.bdvpg.sourceandconverter.display.ColorChanger;
@@ -78,7 +83,7 @@ public class ImageSliceView< T extends NumericType< T > > extends AbstractSliceV
 
 			// adapt Image specific contrast limits after showing the image,
 			// because we need the ConverterSetup to exist
-			adaptContrastLimits( sourceAndConverter );
+			adaptContrastLimits( image, sourceAndConverter );
 		}
 	}
 
@@ -117,10 +122,13 @@ public class ImageSliceView< T extends NumericType< T > > extends AbstractSliceV
 		}
 	}
 
-	private void adaptContrastLimits( SourceAndConverter< ? > sourceAndConverter )
+	private void adaptContrastLimits( Image< T > image, SourceAndConverter< ? > sourceAndConverter )
 	{
 		double[] contrastLimits = display.getContrastLimits();
 
+		if ( contrastLimits == null )
+			contrastLimits = getPrecomputedContrastLimits( image );
+
 		if ( contrastLimits != null )
 		{
 			final ConverterSetup converterSetup = SourceAndConverterServices.getSourceAndConverterService().getConverterSetup( sourceAndConverter );
@@ -128,6 +136,30 @@ public class ImageSliceView< T extends NumericType< T > > extends AbstractSliceV
 		}
 	}
 
+	// use the intensity statistics that have been stored
+	// next to the image data during project creation, if any
+	private double[] getPrecomputedContrastLimits( Image< ? > image )
+	{
+		while ( image instanceof ImageWrapper )
+			image = ( ( ImageWrapper ) image ).getWrappedImage();
+
+		if ( ! ( image instanceof ImageDataImage ) )
+			return null;
+
+		final ImageDataImage< ? > imageDataImage = ( ImageDataImage< ? > ) image;
+		if ( imageDataImage.getUri() == null )
+			return null;
+
+		final int timepoint = display.sliceViewer.getBdvHandle().getViewerPanel().state().getCurrentTimepoint();
+		IntensityStatistics statistics = IntensityStatisticsIO.read( imageDataImage.getUri(), imageDataImage.getSetupId(), timepoint );
+		if ( statistics == null )
+			statistics = IntensityStatisticsIO.read( imageDataImage.getUri(), imageDataImage.getSetupId(), 0 );
+		if ( statistics == null || statistics.count == 0 )
+			return null;
+
+		return statistics.getContrastLimits( SamplingContrastEstimator.DEFAULT_SATURATED_FRACTION );
+	}
+
 	private void adaptColor( SourceAndConverter< ? > sourceAndConverter )
 	{
 		if ( display.getColor() == null ) return;
@@ -80,6 +80,7 @@ public class SliceViewer
 	private SourceAndConverterContextMenuClickBehaviour contextMenu;
 	private final SourceAndConverterService sacService;
 	private final ImageNameOverlay imageNameOverlay;
+	private SourceBoundsIndex sourceBoundsIndex;
 
 	public SliceViewer( MoBIE moBIE, boolean is2D )
 	{
@@ -110,6 +111,18 @@ public class SliceViewer
 		return imageNameOverlay;
 	}
 
+	public SourceBoundsIndex getSourceBoundsIndex()
+	{
+		return sourceBoundsIndex;
+	}
+
+	public void close()
+	{
+		sourceBoundsIndex.close();
+		imageNameOverlay.close();
+		bdvHandle.close();
+	}
+
 	public synchronized BdvHandle getBdvHandle()
 	{
 		if ( bdvHandle == null )
@@ -124,8 +137,10 @@ public class SliceViewer
 
 	private void installContextMenuAndKeyboardShortCuts( )
 	{
+		sourceBoundsIndex = new SourceBoundsIndex( bdvHandle, is2D );
+
 		final SliceViewAnnotationSelector sliceViewAnnotationSelector =
-				new SliceViewAnnotationSelector( bdvHandle, is2D, () -> moBIE.getViewManager().getAnnotationDisplays() );
+				new SliceViewAnnotationSelector( bdvHandle, sourceBoundsIndex, () -> moBIE.getViewManager().getAnnotationDisplays() );
 
 		sacService.registerAction( UNDO_SEGMENT_SELECTIONS, sourceAndConverters -> {
 			// TODO: Maybe only do this for the sacs at the mouse position
@@ -161,7 +176,7 @@ public class SliceViewer
 			actions.addAll( projectCommands );
 		}
 
-		contextMenu = new SourceAndConverterContextMenuClickBehaviour( bdvHandle, new SourcesAtMousePositionSupplier( bdvHandle, is2D ), actions.toArray( new String[0] ) );
+		contextMenu = new SourceAndConverterContextMenuClickBehaviour( bdvHandle, new SourcesAtMousePositionSupplier( bdvHandle, sourceBoundsIndex ), actions.toArray( new String[0] ) );
 
 		// Install keyboard shortcuts
 
@@ -246,6 +261,7 @@ public class SliceViewer
 
 		// time added (for alpha blending)
 		SourceAndConverterServices.getSourceAndConverterService().setMetadata( sourceAndConverter, BlendingMode.TIME_ADDED, System.currentTimeMillis() );
+		AccumulateAlphaBlendingProjectorARGB.blendingSettingsChanged();
 
 		// opacity
 		OpacityHelper.setOpacity( sourceAndConverter, display.getOpacity() );
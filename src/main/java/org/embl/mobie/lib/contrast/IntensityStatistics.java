@@ -0,0 +1,92 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.contrast;
+
+/**
+ * Precomputed intensity statistics of one channel and timepoint of an image.
+ *
+ * Stores a histogram with equally spaced bins between the minimum and
+ * the maximum, as well as the values of a set of quantiles.
+ * Serialised to JSON by {@link IntensityStatisticsIO}.
+ */
+public class IntensityStatistics
+{
+	// Serialisation
+	public int channel;
+	public int timepoint;
+	public int level; // resolution level that was scanned
+	public long count;
+	public double min;
+	public double max;
+	public long[] histogram;
+	public double[] quantiles;
+	public double[] quantileValues;
+
+	public IntensityStatistics()
+	{
+	}
+
+	/**
+	 * @param saturatedFraction
+	 * 			fraction of the values that will be saturated,
+	 * 			split equally between the lower and the upper tail
+	 * @return the contrast limits
+	 */
+	public double[] getContrastLimits( double saturatedFraction )
+	{
+		return new double[]{ getQuantile( saturatedFraction / 2 ), getQuantile( 1.0 - saturatedFraction / 2 ) };
+	}
+
+	/**
+	 * Interpolates between the stored quantiles.
+	 *
+	 * @param quantile
+	 * 			between 0.0 and 1.0
+	 * @return the estimated value at this quantile
+	 */
+	public double getQuantile( double quantile )
+	{
+		if ( quantiles == null || quantiles.length == 0 )
+			return quantile < 0.5 ? min : max;
+
+		if ( quantile <= quantiles[ 0 ] )
+			return quantileValues[ 0 ];
+
+		for ( int i = 1; i < quantiles.length; i++ )
+		{
+			if ( quantile <= quantiles[ i ] )
+			{
+				final double fraction = ( quantile - quantiles[ i - 1 ] ) / ( quantiles[ i ] - quantiles[ i - 1 ] );
+				return quantileValues[ i - 1 ] + fraction * ( quantileValues[ i ] - quantileValues[ i - 1 ] );
+			}
+		}
+
+		return quantileValues[ quantileValues.length - 1 ];
+	}
+}
@@ -0,0 +1,104 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.contrast;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import org.embl.mobie.io.util.IOHelper;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads and writes {@link IntensityStatistics} from and to a JSON file
+ * that is stored within the image container, next to the image data.
+ *
+ * Reading is cached per image URI, such that the file is fetched at most once,
+ * which also holds for images without such a file.
+ */
+public class IntensityStatisticsIO
+{
+	public static final String FILE_NAME = "mobie-intensity-statistics.json";
+
+	private static final Map< String, List< IntensityStatistics > > uriToStatistics = new ConcurrentHashMap<>();
+
+	private static final Type TYPE = new TypeToken< List< IntensityStatistics > >() {}.getType();
+
+	public static String getPath( String imageUri )
+	{
+		return IOHelper.combinePath( imageUri, FILE_NAME );
+	}
+
+	public static void write( String imageUri, List< IntensityStatistics > statistics ) throws IOException
+	{
+		final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+		IOHelper.write( getPath( imageUri ), gson.toJson( statistics, TYPE ) );
+		uriToStatistics.put( imageUri, statistics );
+	}
+
+	/**
+	 * @return the statistics, or an empty list if there are none
+	 */
+	public static List< IntensityStatistics > read( String imageUri )
+	{
+		return uriToStatistics.computeIfAbsent( imageUri, uri ->
+		{
+			final String path = getPath( uri );
+			try
+			{
+				if ( ! IOHelper.exists( path ) )
+					return Collections.emptyList();
+
+				final List< IntensityStatistics > statistics = new Gson().fromJson( IOHelper.read( path ), TYPE );
+				return statistics == null ? Collections.emptyList() : new ArrayList<>( statistics );
+			}
+			catch ( Exception e )
+			{
+				return Collections.emptyList();
+			}
+		} );
+	}
+
+	@Nullable
+	public static IntensityStatistics read( String imageUri, int channel, int timepoint )
+	{
+		for ( IntensityStatistics statistics : read( imageUri ) )
+			if ( statistics.channel == channel && statistics.timepoint == timepoint )
+				return statistics;
+
+		return null;
+	}
+}
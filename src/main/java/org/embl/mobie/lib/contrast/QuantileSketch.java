@@ -0,0 +1,207 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.contrast;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Streaming, mergeable estimator of the quantiles of a stream of values.
+ *
+ * Keeps a uniform random sample (reservoir) of bounded size of all values
+ * that have been added, such that the memory does not depend on the number
+ * of values. Sketches that have been filled on different threads can be
+ * merged, taking into account how many values each of them has seen.
+ *
+ * The exact minimum and maximum are tracked in addition.
+ *
+ * Not thread-safe; use one sketch per thread and merge them.
+ */
+public class QuantileSketch
+{
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	private final float[] reservoir;
+	private final Random random;
+	private int size = 0;
+	private long count = 0;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+	private boolean isSorted = true;
+
+	public QuantileSketch()
+	{
+		this( DEFAULT_CAPACITY, 42 );
+	}
+
+	public QuantileSketch( int capacity, long seed )
+	{
+		this.reservoir = new float[ capacity ];
+		this.random = new Random( seed );
+	}
+
+	public void add( double value )
+	{
+		if ( Double.isNaN( value ) ) return;
+
+		count++;
+		if ( value < min ) min = value;
+		if ( value > max ) max = value;
+
+		if ( size == count - 1 && size < reservoir.length )
+		{
+			// all values so far are kept
+			reservoir[ size++ ] = ( float ) value;
+			isSorted = false;
+		}
+		else
+		{
+			// Vitter's algorithm R: keep the value with probability size / count,
+			// such that the reservoir remains a uniform sample of all values;
+			// after a merge the reservoir may not be full, but still is a sample
+			final long index = ( long ) ( random.nextDouble() * count );
+			if ( index < size )
+			{
+				reservoir[ ( int ) index ] = ( float ) value;
+				isSorted = false;
+			}
+		}
+	}
+
+	/**
+	 * Merges the other sketch into this one.
+	 *
+	 * If both sketches keep all their values and those fit into the reservoir,
+	 * the values are concatenated. Otherwise, the number of values that are
+	 * drawn from either sample is proportional to the number of values
+	 * that the respective sketch has seen.
+	 */
+	public void merge( QuantileSketch other )
+	{
+		if ( other.count == 0 ) return;
+
+		min = Math.min( min, other.min );
+		max = Math.max( max, other.max );
+
+		if ( size == count && other.size == other.count && size + other.size <= reservoir.length )
+		{
+			System.arraycopy( other.reservoir, 0, reservoir, size, other.size );
+			size += other.size;
+			count += other.count;
+			isSorted = false;
+			return;
+		}
+
+		// the largest sample in which both samples
+		// are represented according to their counts
+		final long totalCount = count + other.count;
+		long numSamples = reservoir.length;
+		if ( count > 0 )
+			numSamples = Math.min( numSamples, size * totalCount / count );
+		numSamples = Math.min( numSamples, other.size * totalCount / other.count );
+		final int numThese = ( int ) Math.min( size, Math.round( numSamples * ( double ) count / totalCount ) );
+		final int numOthers = ( int ) Math.min( other.size, numSamples - numThese );
+
+		final float[] these = Arrays.copyOf( reservoir, size );
+		final float[] others = Arrays.copyOf( other.reservoir, other.size );
+		draw( these, numThese, reservoir, 0 );
+		draw( others, numOthers, reservoir, numThese );
+
+		size = numThese + numOthers;
+		count = totalCount;
+		isSorted = false;
+	}
+
+	// draws without replacement (partial Fisher-Yates shuffle)
+	private void draw( float[] values, int numValues, float[] target, int offset )
+	{
+		for ( int i = 0; i < numValues; i++ )
+		{
+			final int index = i + random.nextInt( values.length - i );
+			final float value = values[ index ];
+			values[ index ] = values[ i ];
+			values[ i ] = value;
+			target[ offset + i ] = value;
+		}
+	}
+
+	/**
+	 * @param quantile
+	 * 			between 0.0 and 1.0
+	 * @return the estimated value at this quantile, or NaN if no values have been added
+	 */
+	public double quantile( double quantile )
+	{
+		if ( size == 0 ) return Double.NaN;
+
+		if ( quantile <= 0 ) return min;
+		if ( quantile >= 1 ) return max;
+
+		if ( ! isSorted )
+		{
+			Arrays.sort( reservoir, 0, size );
+			isSorted = true;
+		}
+
+		// linear interpolation between the closest ranks
+		final double rank = quantile * ( size - 1 );
+		final int lower = ( int ) Math.floor( rank );
+		final int upper = Math.min( lower + 1, size - 1 );
+		final double fraction = rank - lower;
+		return reservoir[ lower ] + fraction * ( reservoir[ upper ] - reservoir[ lower ] );
+	}
+
+	public double[] quantiles( double... quantiles )
+	{
+		final double[] values = new double[ quantiles.length ];
+		for ( int i = 0; i < quantiles.length; i++ )
+			values[ i ] = quantile( quantiles[ i ] );
+		return values;
+	}
+
+	public long count()
+	{
+		return count;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public double min()
+	{
+		return min;
+	}
+
+	public double max()
+	{
+		return max;
+	}
+}
@@ -47,7 +47,9 @@ import org.embl.mobie.io.ImageDataOpener;
 import org.embl.mobie.io.OMEZarrWriter;
 import org.embl.mobie.io.imagedata.ImageData;
 import org.embl.mobie.io.util.IOHelper;
+import org.embl.mobie.lib.bdv.SamplingContrastEstimator;
 import org.embl.mobie.lib.color.ColorHelper;
+import org.embl.mobie.lib.contrast.IntensityStatistics;
 import org.embl.mobie.lib.source.SourceHelper;
 
 import javax.swing.*;
@@ -55,6 +57,7 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
@@ -163,6 +166,10 @@ public class ImagesCreator {
         if ( imageFile.exists() ) {
             if (imageType == ProjectCreator.ImageType.Image ) {
                 double[] contrastLimits = new double[]{imp.getDisplayRangeMin(), imp.getDisplayRangeMax()};
+                List< IntensityStatistics > statistics = createAndSaveIntensityStatistics( filePath );
+                if ( ! statistics.isEmpty() && statistics.get( 0 ).count > 0 ) {
+                    contrastLimits = statistics.get( 0 ).getContrastLimits( SamplingContrastEstimator.DEFAULT_SATURATED_FRACTION );
+                }
                 LUT lut = imp.getLuts()[ 0 ];
                 String colour = ColorHelper.getString( lut );
                 updateTableAndJsonsForNewImage( imageName, imageFile, datasetName, uiSelectionGroup, contrastLimits,
@@ -326,8 +333,16 @@ public class ImagesCreator {
         }
 
         if ( imageType == ProjectCreator.ImageType.Image ) {
+            double[] contrastLimits = new double[]{0.0, 255.0};
+            if ( addMethod.equals( ProjectCreator.AddMethod.Copy ) ) {
+                // only store statistics within images that are part of the project
+                List< IntensityStatistics > statistics = createAndSaveIntensityStatistics( newImageFile.getAbsolutePath() );
+                if ( ! statistics.isEmpty() && statistics.get( 0 ).count > 0 ) {
+                    contrastLimits = statistics.get( 0 ).getContrastLimits( SamplingContrastEstimator.DEFAULT_SATURATED_FRACTION );
+                }
+            }
             updateTableAndJsonsForNewImage( imageName, newImageFile, datasetName, uiSelectionGroup,
-                    new double[]{0.0, 255.0}, "white", exclusive, new AffineTransform3D() );
+                    contrastLimits, "white", exclusive, new AffineTransform3D() );
         } else {
             updateTableAndJsonsForNewSegmentation( imageName, newImageFile,
                     datasetName, uiSelectionGroup, exclusive, new AffineTransform3D() );
@@ -336,6 +351,20 @@ public class ImagesCreator {
         IJ.log(  imageName + " added to project" );
     }
 
+    // the statistics are optional, thus the image is added to the project even if they fail
+    private static List< IntensityStatistics > createAndSaveIntensityStatistics( String imageUri )
+    {
+        try
+        {
+            return IntensityStatisticsCreator.createAndSave( imageUri );
+        }
+        catch ( Exception e )
+        {
+            IJ.log( "[WARNING] Could not compute or save the intensity statistics of " + imageUri + ": " + e.getMessage() );
+            return Collections.emptyList();
+        }
+    }
+
     private File copyImage( String uri, File imagesDir, String imageName )
     {
         try
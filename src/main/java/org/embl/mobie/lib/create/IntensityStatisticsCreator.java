@@ -0,0 +1,137 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.create;
+
+import bdv.viewer.Source;
+import ij.IJ;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.view.Views;
+import org.embl.mobie.io.ImageDataOpener;
+import org.embl.mobie.io.imagedata.ImageData;
+import org.embl.mobie.lib.contrast.IntensityStatistics;
+import org.embl.mobie.lib.contrast.IntensityStatisticsIO;
+import org.embl.mobie.lib.contrast.QuantileSketch;
+import org.embl.mobie.lib.source.SourceHelper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Computes {@link IntensityStatistics} for each channel and timepoint of an image
+ * by scanning a low resolution level once, and stores them next to the image data,
+ * such that the viewer can set the contrast without fetching any voxels.
+ */
+public class IntensityStatisticsCreator
+{
+	public static final long MAX_NUM_VOXELS = 2_000_000;
+
+	public static final int NUM_BINS = 256;
+
+	public static final double[] QUANTILES = {
+			0.0, 0.001, 0.00175, 0.005, 0.01, 0.05, 0.1, 0.25, 0.5,
+			0.75, 0.9, 0.95, 0.99, 0.995, 0.99825, 0.999, 1.0 };
+
+	public static List< IntensityStatistics > createAndSave( String imageUri )
+	{
+		final long start = System.currentTimeMillis();
+		final List< IntensityStatistics > statistics = create( ImageDataOpener.open( imageUri ) );
+		try
+		{
+			IntensityStatisticsIO.write( imageUri, statistics );
+		}
+		catch ( IOException e )
+		{
+			throw new RuntimeException( e );
+		}
+		IJ.log( "Computed intensity statistics of " + statistics.size() + " channel(s) and timepoint(s) in " + ( System.currentTimeMillis() - start ) + " ms." );
+		return statistics;
+	}
+
+	public static List< IntensityStatistics > create( ImageData< ? > imageData )
+	{
+		final List< IntensityStatistics > statistics = new ArrayList<>();
+
+		for ( int channel = 0; channel < imageData.getNumDatasets(); channel++ )
+		{
+			final Source< ? > source = imageData.getSourcePair( channel ).getA();
+			if ( ! ( source.getType() instanceof RealType ) )
+				continue;
+
+			int level = SourceHelper.getLevel( source, MAX_NUM_VOXELS );
+			if ( level < 0 ) level = source.getNumMipmapLevels() - 1;
+
+			for ( Integer timepoint : SourceHelper.getTimePoints( source ) )
+			{
+				final RandomAccessibleInterval< ? extends RealType< ? > > rai =
+						( RandomAccessibleInterval< ? extends RealType< ? > > ) source.getSource( timepoint, level );
+
+				final IntensityStatistics intensityStatistics = create( rai );
+				intensityStatistics.channel = channel;
+				intensityStatistics.timepoint = timepoint;
+				intensityStatistics.level = level;
+				statistics.add( intensityStatistics );
+			}
+		}
+
+		return statistics;
+	}
+
+	public static IntensityStatistics create( RandomAccessibleInterval< ? extends RealType< ? > > rai )
+	{
+		// first pass: quantiles, minimum and maximum
+		final QuantileSketch sketch = new QuantileSketch();
+		for ( RealType< ? > type : Views.iterable( rai ) )
+			sketch.add( type.getRealDouble() );
+
+		final IntensityStatistics statistics = new IntensityStatistics();
+		statistics.count = sketch.count();
+		if ( statistics.count == 0 )
+			return statistics;
+
+		statistics.min = sketch.min();
+		statistics.max = sketch.max();
+		statistics.quantiles = QUANTILES.clone();
+		statistics.quantileValues = sketch.quantiles( QUANTILES );
+
+		// second pass: histogram between minimum and maximum
+		statistics.histogram = new long[ NUM_BINS ];
+		final double range = statistics.max - statistics.min;
+		for ( RealType< ? > type : Views.iterable( rai ) )
+		{
+			final double value = type.getRealDouble();
+			if ( Double.isNaN( value ) ) continue;
+			final int bin = range > 0 ? ( int ) ( ( value - statistics.min ) / range * ( NUM_BINS - 1 ) ) : 0;
+			statistics.histogram[ bin ]++;
+		}
+
+		return statistics;
+	}
+}
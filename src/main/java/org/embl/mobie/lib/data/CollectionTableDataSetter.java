@@ -1,11 +1,11 @@
 package org.embl.mobie.lib.data;
 
 import ij.IJ;
-import net.imglib2.type.numeric.ARGBType;
 import org.apache.commons.io.FilenameUtils;
 import org.embl.mobie.DataStore;
 import org.embl.mobie.io.ImageDataFormat;
 import org.embl.mobie.io.util.IOHelper;
+import org.embl.mobie.lib.ThreadHelper;
 import org.embl.mobie.lib.annotation.AnnotatedRegion;
 import org.embl.mobie.lib.bdv.blend.BlendingMode;
 import org.embl.mobie.lib.color.ColorHelper;
@@ -24,23 +24,42 @@ import org.embl.mobie.lib.table.TableSource;
 import org.embl.mobie.lib.table.columns.CollectionTableConstants;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import tech.tablesaw.api.Row;
+import tech.tablesaw.api.NumericColumn;
 import tech.tablesaw.api.StringColumn;
 import tech.tablesaw.api.Table;
+import tech.tablesaw.columns.Column;
 
 import java.util.*;
+import java.util.concurrent.Future;
 
 public class CollectionTableDataSetter
 {
+    // rows per task when creating the data sources
+    private static final int BATCH_SIZE = 1000;
+
     private final Table table;
     private final String rootPath;
 
-    private final Map< String, Display< ? > > gridToDisplay = new HashMap<>();
+    private final Map< String, Display< ? > > gridToDisplay = new LinkedHashMap<>();
     private final Map< String, List< Transformation > > gridToTransformations = new HashMap<>();
     private final Map< String, String > gridToView = new HashMap<>();
     private final Map< String, String > viewToGroup = new HashMap<>();
 
-
+    // the parsed columns, one entry per row
+    private int numRows;
+    private String[] uris;
+    private String[] names;
+    private boolean[] isLabels;
+    private int[] channels;
+    private String[] colors;
+    private BlendingMode[] blendingModes;
+    private double[] contrastLimits; // 2 per row, NaN if not specified
+    private double[] affines; // 12 per row, NaN if not specified
+    private String[] gridIds;
+    private String[] viewNames;
+    private String[] groupNames;
+    private TableSource[] labelTables;
+    private ImageDataFormat[] imageDataFormats; // set when creating the data sources
 
     public CollectionTableDataSetter( Table table, String rootPath )
     {
@@ -53,68 +72,51 @@ public class CollectionTableDataSetter
         if ( ! table.containsColumn( CollectionTableConstants.URI ) )
             throw new RuntimeException( "Column \"" + CollectionTableConstants.URI + "\" must be present in the collection table." );
 
+        // Parse the table column by column,
+        // such that per row only array look-ups remain.
+        parseColumns();
 
-        for ( Row row : table )
-        {
-            final StorageLocation storageLocation = new StorageLocation();
+        // Create the data sources in parallel.
+        final DataSource[] dataSources = createDataSources();
 
-            storageLocation.absolutePath = getUri( row );
-            if ( rootPath != null )
-                storageLocation.absolutePath = IOHelper.combinePath( rootPath, storageLocation.absolutePath );
+        // Create the displays and views in the order of the table rows.
+        final Map< ImageDataFormat, Integer > formatToCount = new LinkedHashMap<>();
+        int numLabels = 0;
+        for ( int row = 0; row < numRows; row++ )
+        {
+            final DataSource dataSource = dataSources[ row ];
+            dataset.putDataSource( dataSource );
+            formatToCount.merge( imageDataFormats[ row ], 1, Integer::sum );
 
-            ImageDataFormat imageDataFormat = ImageDataFormat.fromPath( storageLocation.absolutePath );
-            storageLocation.setChannel( getChannel( row ) ); // TODO: Fetch from table or URI? https://forum.image.sc/t/loading-only-one-channel-from-an-ome-zarr/97798
-            String imageName = getName( row );
-            String pixelType = getPixelType( row );
+            final String imageName = names[ row ];
 
-            Display< ? > display = null;
-            if ( pixelType.equals( CollectionTableConstants.LABELS )  )
+            Display< ? > display;
+            if ( isLabels[ row ] )
             {
-                TableSource tableSource = getTable( row, rootPath );
-
-                SegmentationDataSource segmentationDataSource =
-                        SegmentationDataSource.create(
-                                imageName,
-                                imageDataFormat,
-                                storageLocation,
-                                tableSource
-                        );
-
-                segmentationDataSource.preInit( false );
-                dataset.putDataSource( segmentationDataSource );
-
-                display = createSegmentationDisplay(
-                            imageName,
-                            row,
-                            tableSource != null );
+                numLabels++;
+                display = createSegmentationDisplay( imageName, row );
             }
             else // intensities
             {
-                final ImageDataSource imageDataSource = new ImageDataSource( imageName, imageDataFormat, storageLocation );
-                imageDataSource.preInit( false );
-                dataset.putDataSource( imageDataSource );
-
-                display = createImageDisplay(
-                    imageName,
-                    row );
+                display = createImageDisplay( imageName, row );
             }
 
-            String gridId = getGridId( row );
+            String viewName = viewNames[ row ] == null ? display.getName() : viewNames[ row ];
+            String gridId = gridIds[ row ];
 
             if ( gridId == null )
             {
                 addDisplayToViews(
-                        getViewName( display, row ),
-                        getGroupName( display, row ),
+                        viewName,
+                        groupNames[ row ],
                         display,
-                        getTransformations( display.getSources(), row ),
+                        getTransformations( Collections.singletonList( imageName ), row ),
                         dataset.views() );
             }
             else
             {
-                String viewName = getViewName( display, row );
                 gridToView.put( gridId, viewName );
-                viewToGroup.put( viewName, getGroupName( display, row ) );
+                viewToGroup.put( viewName, groupNames[ row ] );
 
                 // Add image to the grid display
 
@@ -128,16 +130,10 @@ public class CollectionTableDataSetter
                     gridToDisplay.put( gridId, display );
                 }
 
-                gridToTransformations
-                        .computeIfAbsent( gridId, k -> new ArrayList<>() )
-                        .addAll( getTransformations( Collections.singletonList( imageName ), row ) );
+                final List< Transformation > transformations = gridToTransformations.computeIfAbsent( gridId, k -> new ArrayList<>() );
+                if ( hasAffine( row ) )
+                    transformations.add( createAffine( Collections.singletonList( imageName ), row ) );
             }
-
-            IJ.log(" " );
-            IJ.log("Name: " + imageName );
-            IJ.log("URI: " + storageLocation.absolutePath );
-            IJ.log("Opener: " + imageDataFormat );
-            IJ.log("Type: " + pixelType );
         }
 
         // Create grid views
@@ -186,86 +182,219 @@ public class CollectionTableDataSetter
             dataset.views().get( gridToView.get( gridId ) ).displays().add( gridRegionDisplay );
         }
 
+        IJ.log( "Collection table: " + numRows + " images (" + numLabels + " labels), "
+                + gridToDisplay.size() + " grids, "
+                + dataset.views().size() + " views; "
+                + "openers: " + formatToCount );
     }
 
-    private static TableSource getTable( Row row, String rootPath )
+    private void parseColumns()
     {
-        try {
-            String tablePath = row.getString( CollectionTableConstants.LABEL_TABLE );
-            if ( rootPath != null )
-                tablePath = IOHelper.combinePath( rootPath, tablePath );
-            StorageLocation storageLocation = new StorageLocation();
-            storageLocation.absolutePath = IOHelper.getParentLocation( tablePath );
-            storageLocation.defaultChunk = IOHelper.getFileName( tablePath );
-            return new TableSource( TableDataFormat.fromPath( tablePath ), storageLocation );
+        numRows = table.rowCount();
+
+        uris = new String[ numRows ];
+        names = getStrings( CollectionTableConstants.NAME );
+        final Column< ? > uriColumn = table.column( CollectionTableConstants.URI );
+        for ( int row = 0; row < numRows; row++ )
+        {
+            final String uri = uriColumn.getString( row );
+            uris[ row ] = rootPath == null ? uri : IOHelper.combinePath( rootPath, uri );
+            if ( names[ row ] == null )
+                names[ row ] = FilenameUtils.removeExtension( IOHelper.getFileName( uri ) );
         }
-        catch ( Exception e )
+
+        isLabels = new boolean[ numRows ];
+        final String[] types = getStrings( CollectionTableConstants.TYPE );
+        for ( int row = 0; row < numRows; row++ )
+            isLabels[ row ] = CollectionTableConstants.LABELS.equals( types[ row ] );
+
+        channels = getChannels();
+        colors = getColors();
+        blendingModes = getBlendingModes();
+        contrastLimits = getDoubles( CollectionTableConstants.CONTRAST_LIMITS, 2 );
+        affines = getDoubles( CollectionTableConstants.AFFINE, 12 );
+        viewNames = getStrings( CollectionTableConstants.VIEW );
+        groupNames = getStrings( CollectionTableConstants.GROUP );
+        for ( int row = 0; row < numRows; row++ )
+            if ( groupNames[ row ] == null )
+                groupNames[ row ] = "views";
+
+        // an empty grid cell is a valid grid id,
+        // thus we do not use {@code getStrings()} here
+        gridIds = new String[ numRows ];
+        if ( table.containsColumn( CollectionTableConstants.GRID ) )
         {
-            return null;
+            final Column< ? > column = table.column( CollectionTableConstants.GRID );
+            for ( int row = 0; row < numRows; row++ )
+                gridIds[ row ] = column.getString( row );
         }
+
+        labelTables = getLabelTables();
     }
 
-    private static String getUri( Row row )
+    private DataSource[] createDataSources()
     {
-        return row.getString( CollectionTableConstants.URI );
+        final DataSource[] dataSources = new DataSource[ numRows ];
+        imageDataFormats = new ImageDataFormat[ numRows ];
+        final ArrayList< Future< ? > > futures = ThreadHelper.getFutures();
+        for ( int batchStart = 0; batchStart < numRows; batchStart += BATCH_SIZE )
+        {
+            final int start = batchStart;
+            final int end = Math.min( numRows, batchStart + BATCH_SIZE );
+            futures.add( ThreadHelper.ioExecutorService.submit( () -> {
+                for ( int row = start; row < end; row++ )
+                    dataSources[ row ] = createDataSource( row );
+            } ) );
+        }
+        ThreadHelper.waitUntilFinished( futures );
+        return dataSources;
     }
 
-    private static String getName( Row row )
+    private DataSource createDataSource( int row )
     {
-        try {
-            String string = row.getString( CollectionTableConstants.NAME );
-            if ( string.isEmpty() )
-                return getNameFromURI( row );
-            else
-                return string;
-        }
-        catch ( Exception e )
+        final StorageLocation storageLocation = new StorageLocation();
+        storageLocation.absolutePath = uris[ row ];
+        storageLocation.setChannel( channels[ row ] ); // TODO: Fetch from table or URI? https://forum.image.sc/t/loading-only-one-channel-from-an-ome-zarr/97798
+        ImageDataFormat imageDataFormat = ImageDataFormat.fromPath( storageLocation.absolutePath );
+        imageDataFormats[ row ] = imageDataFormat;
+
+        final ImageDataSource dataSource;
+        if ( isLabels[ row ] )
+            dataSource = SegmentationDataSource.create( names[ row ], imageDataFormat, storageLocation, labelTables[ row ] );
+        else
+            dataSource = new ImageDataSource( names[ row ], imageDataFormat, storageLocation );
+
+        dataSource.preInit( false );
+        return dataSource;
+    }
+
+    // Returns the cell values of a column, where empty cells
+    // and missing columns are {@code null}.
+    private String[] getStrings( String columnName )
+    {
+        final String[] strings = new String[ numRows ];
+        if ( ! table.containsColumn( columnName ) )
+            return strings;
+
+        final Column< ? > column = table.column( columnName );
+        for ( int row = 0; row < numRows; row++ )
         {
-            return getNameFromURI( row );
+            final String string = column.getString( row );
+            strings[ row ] = string.isEmpty() ? null : string;
         }
+        return strings;
     }
 
-    @Nullable
-    private static String getNameFromURI( Row row )
+    // Parses cells such as "(1.0,0.0,...)" into numValues doubles per row;
+    // rows with empty or invalid cells are NaN.
+    private double[] getDoubles( String columnName, int numValues )
     {
-        String uri = getUri( row );
-        return FilenameUtils.removeExtension( IOHelper.getFileName( uri ) );
+        final double[] doubles = new double[ numRows * numValues ];
+        Arrays.fill( doubles, Double.NaN );
+
+        final String[] strings = getStrings( columnName );
+        int numInvalid = 0;
+        for ( int row = 0; row < numRows; row++ )
+        {
+            if ( strings[ row ] == null )
+                continue;
+
+            final String[] values = strings[ row ].replace( "(", "" ).replace( ")", "" ).split( "," );
+            if ( values.length != numValues || ! parseDoubles( values, doubles, row * numValues ) )
+            {
+                Arrays.fill( doubles, row * numValues, ( row + 1 ) * numValues, Double.NaN );
+                numInvalid++;
+            }
+        }
+
+        if ( numInvalid > 0 )
+            IJ.log( "[WARNING] Ignoring " + numInvalid + " entries of the column \"" + columnName + "\" that do not consist of " + numValues + " numbers, e.g. (" + String.join( ",", Collections.nCopies( numValues, "0" ) ) + ")." );
+
+        return doubles;
     }
 
-    private static String getPixelType( Row row )
+    private static boolean parseDoubles( String[] values, double[] doubles, int offset )
     {
-        try {
-            return row.getString( CollectionTableConstants.TYPE );
+        try
+        {
+            for ( int i = 0; i < values.length; i++ )
+                doubles[ offset + i ] = Double.parseDouble( values[ i ].trim() );
+            return true;
         }
-        catch ( Exception e )
+        catch ( NumberFormatException e )
         {
-            return CollectionTableConstants.INTENSITIES;
+            return false;
         }
     }
 
-    private static String getGridId( Row row )
+    private int[] getChannels()
     {
-        try {
-            return row.getString( CollectionTableConstants.GRID );
-        }
-        catch ( Exception e )
+        final int[] channels = new int[ numRows ];
+        if ( ! table.containsColumn( CollectionTableConstants.CHANNEL ) )
+            return channels;
+
+        final Column< ? > column = table.column( CollectionTableConstants.CHANNEL );
+        if ( ! ( column instanceof NumericColumn ) )
+            return channels;
+
+        final NumericColumn< ? > numericColumn = ( NumericColumn< ? > ) column;
+        for ( int row = 0; row < numRows; row++ )
+            if ( ! numericColumn.isMissing( row ) )
+                channels[ row ] = ( int ) numericColumn.getDouble( row );
+
+        return channels;
+    }
+
+    private String[] getColors()
+    {
+        final String[] colors = getStrings( CollectionTableConstants.COLOR );
+        final Map< String, Boolean > colorToIsValid = new HashMap<>();
+        for ( int row = 0; row < numRows; row++ )
         {
-            return null;
+            if ( colors[ row ] == null
+                    || ! colorToIsValid.computeIfAbsent( colors[ row ], color -> ColorHelper.getARGBType( color ) != null ) )
+                colors[ row ] = "white";
         }
+        return colors;
     }
 
-    private static int getChannel( Row row )
+    private BlendingMode[] getBlendingModes()
+    {
+        final String[] strings = getStrings( CollectionTableConstants.BLEND );
+        final BlendingMode[] blendingModes = new BlendingMode[ numRows ];
+        for ( int row = 0; row < numRows; row++ )
+            if ( strings[ row ] != null && strings[ row ].toLowerCase().equals( "alpha" ) )
+                blendingModes[ row ] = BlendingMode.Alpha;
+        return blendingModes;
+    }
+
+    private TableSource[] getLabelTables()
+    {
+        final String[] tablePaths = getStrings( CollectionTableConstants.LABEL_TABLE );
+        final TableSource[] tableSources = new TableSource[ numRows ];
+        for ( int row = 0; row < numRows; row++ )
+            if ( isLabels[ row ] && tablePaths[ row ] != null )
+                tableSources[ row ] = getTable( tablePaths[ row ], rootPath );
+        return tableSources;
+    }
+
+    @Nullable
+    private static TableSource getTable( String tablePath, String rootPath )
     {
         try {
-            return row.getInt( CollectionTableConstants.CHANNEL );
+            if ( rootPath != null )
+                tablePath = IOHelper.combinePath( rootPath, tablePath );
+            StorageLocation storageLocation = new StorageLocation();
+            storageLocation.absolutePath = IOHelper.getParentLocation( tablePath );
+            storageLocation.defaultChunk = IOHelper.getFileName( tablePath );
+            return new TableSource( TableDataFormat.fromPath( tablePath ), storageLocation );
         }
         catch ( Exception e )
         {
-            return 0;
+            return null;
         }
     }
 
-
     @NotNull
     private static void addDisplayToViews( String viewName,
                                            String groupName,
@@ -302,45 +431,7 @@ public class CollectionTableDataSetter
     }
 
     @NotNull
-    private static String getGroupName( Display< ? > display, Row row )
-    {
-        try
-        {
-            String name = row.getString( CollectionTableConstants.GROUP );
-
-            if ( name.isEmpty() )
-                return "views";
-
-            return name;
-        }
-        catch ( Exception e )
-        {
-            return "views";
-        }
-    }
-
-    private static String getViewName( Display< ? > display, Row row )
-    {
-        try
-        {
-            String name = row.getString( CollectionTableConstants.VIEW );
-
-            if ( name.isEmpty() )
-                return display.getName();
-
-            return name;
-        }
-        catch ( Exception e )
-        {
-            return display.getName();
-        }
-    }
-
-    @NotNull
-    private static SegmentationDisplay< ? > createSegmentationDisplay(
-            String sourceName,
-            Row row,
-            boolean showTable )
+    private SegmentationDisplay< ? > createSegmentationDisplay( String sourceName, int row )
     {
         final SegmentationDisplay< ? > display =
                 new SegmentationDisplay<>(
@@ -348,122 +439,65 @@ public class CollectionTableDataSetter
                         new ArrayList<>( Arrays.asList( sourceName ) )
                 );
 
-        display.setBlendingMode( getBlendingMode( row ) );
-        display.showTable( showTable );
+        display.setBlendingMode( blendingModes[ row ] );
+        display.showTable( labelTables[ row ] != null );
 
         return display;
     }
 
     @NotNull
-    private static ImageDisplay< ? > createImageDisplay( String sourceName, Row row )
+    private ImageDisplay< ? > createImageDisplay( String sourceName, int row )
     {
         final ImageDisplay< ? > display = new ImageDisplay<>(
                 getDisplayName( row, sourceName ),
                 1.0,
                 new ArrayList<>( Arrays.asList( sourceName ) ),
-                getColor( row ), // ColorHelper.getString( metadata.getColor() ),
-                getContrastLimits( row ), //new double[]{ metadata.minIntensity(), metadata.minIntensity() }
-                getBlendingMode( row ),
+                colors[ row ],
+                getContrastLimits( row ),
+                blendingModes[ row ],
                 false
                 );
 
         return display;
     }
 
-    private static String getDisplayName( Row row, String sourceName )
+    private String getDisplayName( int row, String sourceName )
     {
-        if ( row.columnNames().contains( CollectionTableConstants.GRID  ) )
-            return row.getString( CollectionTableConstants.GRID );
+        if ( gridIds[ row ] != null )
+            return gridIds[ row ];
 
         return sourceName;
     }
 
-    private static double[] getContrastLimits( Row row )
+    @Nullable
+    private double[] getContrastLimits( int row )
     {
-        try
-        {
-            String string = row.getString( CollectionTableConstants.CONTRAST_LIMITS );
-            string = string.replace("(", "").replace(")", "");
-            String[] strings = string.split(",");
-            double[] doubles = new double[strings.length];
-            for (int i = 0; i < strings.length; i++) {
-                doubles[i] = Double.parseDouble(strings[i].trim());
-            }
-
-            if ( doubles.length != 2 )
-                throw new UnsupportedOperationException("Contrast limits must have exactly two values: (min, max).\n" +
-                        "This table cell entry does not adhere to this specification: " + string );
-
-            return doubles;
-        }
-        catch ( Exception e )
-        {
+        if ( Double.isNaN( contrastLimits[ 2 * row ] ) )
             return null;
-        }
+
+        return Arrays.copyOfRange( contrastLimits, 2 * row, 2 * row + 2 );
     }
 
-    private static BlendingMode getBlendingMode( Row row )
+    private boolean hasAffine( int row )
     {
-        try
-        {
-            String string = row.getString( CollectionTableConstants.BLEND );
-
-            if ( string.toLowerCase().equals( "alpha" ) )
-                return BlendingMode.Alpha;
+        return ! Double.isNaN( affines[ 12 * row ] );
+    }
 
-            return null;
-        }
-        catch ( Exception e )
-        {
-            return null;
-        }
+    private AffineTransformation createAffine( List< String > sources, int row )
+    {
+        return new AffineTransformation(
+                "Affine",
+                Arrays.copyOfRange( affines, 12 * row, 12 * row + 12 ),
+                sources );
     }
 
-    @Nullable
-    private static List< Transformation > getTransformations( List< String > sources, Row row )
+    private List< Transformation > getTransformations( List< String > sources, int row )
     {
         ArrayList< Transformation > transformations = new ArrayList<>();
 
-        try
-        {
-            String string = row.getString( CollectionTableConstants.AFFINE );
-            string = string.replace("(", "").replace(")", "");
-            String[] strings = string.split(",");
-            double[] doubles = new double[strings.length];
-            for (int i = 0; i < strings.length; i++) {
-                doubles[i] = Double.parseDouble(strings[i].trim());
-            }
-
-            AffineTransformation affine = new AffineTransformation(
-                    "Affine",
-                    doubles,
-                    sources );
-
-            transformations.add( affine );
-        }
-        catch ( Exception e )
-        {
-           // Do not add a transformation
-        }
+        if ( hasAffine( row ) )
+            transformations.add( createAffine( sources, row ) );
 
         return transformations;
     }
-
-    private static String getColor( Row row )
-    {
-        try
-        {
-            String colorString = row.getString( CollectionTableConstants.COLOR );
-            ARGBType argbType = ColorHelper.getARGBType( colorString );
-            if ( argbType == null )
-                return "white";
-
-            return colorString;
-        }
-        catch ( Exception e )
-        {
-            return "white";
-        }
-    }
-
 }
@@ -28,30 +28,27 @@
  */
 package org.embl.mobie.lib.data;
 
-import bdv.viewer.Source;
 import ij.IJ;
-import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.realtransform.AffineTransform3D;
-import net.imglib2.util.Intervals;
 import org.apache.commons.io.FilenameUtils;
-import org.embl.mobie.io.ImageDataOpener;
-import org.embl.mobie.io.imagedata.ImageData;
 import org.embl.mobie.io.util.IOHelper;
 import org.embl.mobie.lib.MoBIEHelper;
-import org.embl.mobie.lib.ThreadHelper;
 import org.embl.mobie.lib.source.Metadata;
-import org.embl.mobie.lib.source.SourceHelper;
+import org.embl.mobie.lib.source.MetadataCache;
 import org.embl.mobie.lib.table.ColumnNames;
 import org.embl.mobie.lib.table.TableDataFormat;
 import org.embl.mobie.lib.table.columns.SegmentColumnNames;
 import org.embl.mobie.lib.transform.GridType;
-import org.janelia.saalfeldlab.n5.universe.metadata.canonical.CanonicalDatasetMetadata;
 import tech.tablesaw.api.NumberColumn;
 import tech.tablesaw.api.StringColumn;
 import tech.tablesaw.api.Table;
+import tech.tablesaw.columns.Column;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class ImageGridSources
 {
@@ -79,6 +76,7 @@ public class ImageGridSources
 		else
 			paths = MoBIEHelper.getFullPaths( pathRegex, root );
 
+		nameToFullPath = new LinkedHashMap<>( 2 * paths.size() );
 		for ( String path : paths )
 		{
 			final String fileName = new File( path ).getName();
@@ -92,8 +90,8 @@ public class ImageGridSources
 
 		// TODO: move this out to a separate function
 		regionTable = Table.create( name + " table" );
-		regionTable.addColumns( StringColumn.create( ColumnNames.REGION_ID, new ArrayList<>( nameToFullPath.keySet() ) ) );
-		regionTable.addColumns( StringColumn.create( "source_path", new ArrayList<>( nameToFullPath.values() ) ) );
+		regionTable.addColumns( StringColumn.create( ColumnNames.REGION_ID, nameToFullPath.keySet().toArray( new String[ 0 ] ) ) );
+		regionTable.addColumns( StringColumn.create( "source_path", nameToFullPath.values().toArray( new String[ 0 ] ) ) );
 	}
 
 	public ImageGridSources( String name, Table table, String imageColumn, Integer channelIndex, String root, String pathMapping, GridType gridType )
@@ -102,21 +100,26 @@ public class ImageGridSources
 		this.channelIndex = channelIndex;
 		this.gridType = gridType;
 
-		nameToPath = new LinkedHashMap<>(); // needed for joining the tables below when creating the region table
-
 		int numRows = table.rowCount();
+		nameToFullPath = new LinkedHashMap<>( 2 * numRows );
+		nameToPath = new LinkedHashMap<>( 2 * numRows ); // needed for joining the tables below when creating the region table
+
+		final PathMapping mapping = new PathMapping( pathMapping );
+		final Column< ? > pathColumn = table.column( imageColumn );
 		if ( imageColumn.contains( "_IMG" )  ) // Automic table
 		{
+			final Column< ? > folderColumn = table.column( imageColumn.replace( "FileName_", "PathName_"  ) );
+			final boolean containsRotation = table.containsColumn( "Rotation_NUM" ); // TODO can we have this generic?
 			for ( int rowIndex = 0; rowIndex < numRows; rowIndex++ )
 			{
-				String fileName = table.getString( rowIndex, imageColumn );
-				String relativeFolderName = table.getString( rowIndex, imageColumn.replace( "FileName_", "PathName_"  ) );
+				String fileName = pathColumn.getString( rowIndex );
+				String relativeFolderName = folderColumn.getString( rowIndex );
 				String path = MoBIEHelper.createAbsolutePath( root, fileName, relativeFolderName );
 				String imageName = createImageName( channelIndex, fileName );
-				nameToFullPath.put( imageName, applyPathMapping( pathMapping, path ) );
+				nameToFullPath.put( imageName, mapping.apply( path ) );
 				nameToPath.put( imageName, fileName );
 
-				if ( table.columnNames().contains( "Rotation_NUM" ) ) // TODO can we have this generic?
+				if ( containsRotation )
 				{
 					double rotation = table.doubleColumn( "Rotation_NUM" ).get( rowIndex );
 					AffineTransform3D affineTransform3D = new AffineTransform3D();
@@ -128,15 +131,15 @@ public class ImageGridSources
 		else if ( isCellProfilerColumn( imageColumn, table ) )
 		{
 			String postfix = imageColumn.substring("FileName_".length());
-			String folderColumn = "PathName_" + postfix;
+			final Column< ? > folderColumn = table.column( "PathName_" + postfix );
 
 			for ( int rowIndex = 0; rowIndex < numRows; rowIndex++ )
 			{
-				String fileName = table.getString( rowIndex, imageColumn );
-				String folder = table.getString( rowIndex, folderColumn );
+				String fileName = pathColumn.getString( rowIndex );
+				String folder = folderColumn.getString( rowIndex );
 				String path = IOHelper.combinePath( folder, fileName );
 				String imageName = createImageName( channelIndex, fileName );
-				nameToFullPath.put( imageName, applyPathMapping( pathMapping, path ) );
+				nameToFullPath.put( imageName, mapping.apply( path ) );
 				nameToPath.put( imageName, fileName );
 			}
 		}
@@ -145,7 +148,7 @@ public class ImageGridSources
 			// Default table
 			for ( int rowIndex = 0; rowIndex < numRows; rowIndex++ )
 			{
-				String path = table.getString( rowIndex, imageColumn );
+				String path = pathColumn.getString( rowIndex );
 				String imageName = createImageName( channelIndex, IOHelper.getFileName( path ) );
 				if ( path.startsWith( "http" ) )
 				{
@@ -155,7 +158,7 @@ public class ImageGridSources
 				else
 				{
 					File file = root == null ? new File( path ) : new File( root, path );
-					nameToFullPath.put( imageName, applyPathMapping( pathMapping, file.getAbsolutePath() )  );
+					nameToFullPath.put( imageName, mapping.apply( file.getAbsolutePath() )  );
 					nameToPath.put( imageName, path );
 				}
 			}
@@ -183,46 +186,44 @@ public class ImageGridSources
 		long start = System.currentTimeMillis();
 		IJ.log( "Fetching metadata for " + name + ", channel " + channelIndex );
 		IJ.log( "Source: " + nameToFullPath.get( metadataSource ) );
-		// FIXME: Cache the image data, because for multiple channels it is now reloaded!
-		ImageData< ? > imageData = ImageDataOpener.open( nameToFullPath.get( metadataSource ), ThreadHelper.sharedQueue );
-		CanonicalDatasetMetadata canonicalDatasetMetadata = imageData.getMetadata( channelIndex );
-		metadata = new Metadata( canonicalDatasetMetadata );
-		Source< ? > source = imageData.getSourcePair( channelIndex ).getA();
-		RandomAccessibleInterval< ? > highResRAI = source.getSource( 0, 0 );
-		metadata.numZSlices = (int) highResRAI.dimension( 2 );
-		metadata.numTimePoints = SourceHelper.getNumTimePoints( source );
+		// The metadata is cached, because for multiple channels
+		// the same image would be opened for each channel.
+		metadata = MetadataCache.getMetadata( nameToFullPath.get( metadataSource ), getChannelIndex() );
 		IJ.log( "Slices: " + metadata.numZSlices );
 		IJ.log( "Frames: " + metadata.numTimePoints );
-
-		// determine contrast limits, if affordable
-		RandomAccessibleInterval< ? > lowResRAI = source.getSource( 0, source.getNumMipmapLevels() - 1 );
-		long numElements = Intervals.numElements( lowResRAI.dimensionsAsLongArray() );
-		if ( numElements < 1024 * 1024 )
-		{
-			IJ.log( "Computing contrast limits from image data..." );
-			metadata.contrastLimits = SourceHelper.estimateMinMax( ( RandomAccessibleInterval ) lowResRAI );
-		}
-		else
-		{
-			IJ.log( "Image is large, thus taking contrast limits from datatype range." );
-		}
-
 		IJ.log( "Contrast limits: " + Arrays.toString( metadata.contrastLimits ) );
 		IJ.log( "Fetched metadata in " + ( System.currentTimeMillis() - start ) + " ms." );
-
 	}
 
-	private static String applyPathMapping( String pathMapping, String path )
+	// Replaces all occurrences of "from" by "to", for a path mapping
+	// given as "from,to"; the mapping is parsed once for all paths.
+	private static class PathMapping
 	{
-		if ( pathMapping != null )
+		private final Pattern from;
+		private final String to;
+
+		PathMapping( @Nullable String pathMapping )
 		{
-			String[] fromTo = pathMapping.split( "," );
-			String from = fromTo[ 0 ];
-			String to = fromTo[ 1 ];
-			path = path.replace( from, to );
+			if ( pathMapping == null )
+			{
+				from = null;
+				to = null;
+			}
+			else
+			{
+				String[] fromTo = pathMapping.split( "," );
+				from = Pattern.compile( fromTo[ 0 ], Pattern.LITERAL );
+				to = Matcher.quoteReplacement( fromTo[ 1 ] );
+			}
 		}
 
-		return path;
+		String apply( String path )
+		{
+			if ( from == null )
+				return path;
+
+			return from.matcher( path ).replaceAll( to );
+		}
 	}
 
 	private void dealWithTimepointsInObjectTableIfNeeded( String name, Table table, String pathColumn )
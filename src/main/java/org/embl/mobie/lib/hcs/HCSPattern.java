@@ -28,6 +28,7 @@
  */
 package org.embl.mobie.lib.hcs;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.util.Collections;
 import java.util.List;
@@ -128,6 +129,7 @@ public enum HCSPattern
 
 	private Matcher matcher;
 	private List< String > channels;
+	private volatile Pattern pattern;
 
 	public static HCSPattern fromPath( String fileName )
 	{
@@ -141,26 +143,40 @@ public enum HCSPattern
 	}
 
 	private Matcher getMatcher( String path )
+	{
+		return getPattern().matcher( path );
+	}
+
+	private Pattern getPattern()
+	{
+		// compiled once, as this is called for each file of a plate
+		if ( pattern == null )
+			pattern = Pattern.compile( getRegex() );
+
+		return pattern;
+	}
+
+	private String getRegex()
 	{
 		switch( this )
 		{
 			case OMEZarr:
-				return Pattern.compile( OME_ZARR ).matcher( path );
+				return OME_ZARR;
 			case Operetta:
-				return Pattern.compile( OPERETTA ).matcher( path );
+				return OPERETTA;
 			case MolecularDevices:
-				return Pattern.compile( MOLDEV ).matcher( path );
+				return MOLDEV;
 			case InCell:
-				return Pattern.compile( INCELL ).matcher( path );
+				return INCELL;
 			case IncuCyteRaw:
-				return Pattern.compile( INCUCYTE_RAW ).matcher( path );
+				return INCUCYTE_RAW;
 			case YokogawaCQ1:
-				return Pattern.compile( YOKOGAWACQ1 ).matcher( path );
+				return YOKOGAWACQ1;
 			case InCarta:
-				return Pattern.compile( INCARTA ).matcher( path );
+				return INCARTA;
 			default:
 			case IncuCyte:
-				return Pattern.compile( INCUCYTE ).matcher( path );
+				return INCUCYTE;
 		}
 	}
 
@@ -174,6 +190,35 @@ public enum HCSPattern
 		return matcher.matches();
 	}
 
+	/**
+	 * In contrast to {@link #setMatcher(String)} this does not
+	 * modify the state of this pattern and can thus be called
+	 * concurrently for many files.
+	 *
+	 * @param path
+	 * 			the path of an image file
+	 * @return the parsed file, or null if the path does not match
+	 */
+	@Nullable
+	public PlateFile parse( String path )
+	{
+		if ( new File( path ).getName().startsWith( "." ) )
+			return null;
+
+		final Matcher matcher = getMatcher( path );
+
+		if ( ! matcher.matches() )
+			return null;
+
+		return new PlateFile(
+				path,
+				getChannels( matcher ),
+				matcher.group( HCSPattern.WELL ),
+				matcher.group( HCSPattern.SITE ),
+				getT( matcher ),
+				getZ( matcher ) );
+	}
+
 	public int[] decodeWellGridPosition( String well )
 	{
 		switch ( this )
@@ -291,6 +336,11 @@ public enum HCSPattern
 	}
 
 	public List< String > getChannels()
+	{
+		return getChannels( matcher );
+	}
+
+	private List< String > getChannels( Matcher matcher )
 	{
 		if ( hasChannels() )
 			if (this == OMEZarr)
@@ -312,6 +362,11 @@ public enum HCSPattern
 	}
 
 	public String getT()
+	{
+		return getT( matcher );
+	}
+
+	private String getT( Matcher matcher )
 	{
 		if ( hasT() )
 			return matcher.group( HCSPattern.TIME );
@@ -320,6 +375,11 @@ public enum HCSPattern
 	}
 
 	public String getZ()
+	{
+		return getZ( matcher );
+	}
+
+	private String getZ( Matcher matcher )
 	{
 		if ( hasZ() )
 			return matcher.group( HCSPattern.SLICE );
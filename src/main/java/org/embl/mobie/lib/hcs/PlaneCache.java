@@ -0,0 +1,176 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.hcs;
+
+import ij.process.ImageProcessor;
+import org.embl.mobie.lib.ThreadHelper;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * A process-wide, least-recently-used cache of decoded image planes,
+ * keyed by file path, bit depth and size (see {@link #key}),
+ * and bounded by the number of cached bytes.
+ *
+ * Concurrent requests for the same plane share one load,
+ * and planes can be prefetched in the background on the
+ * {@link ThreadHelper#ioExecutorService}.
+ *
+ * Callers receive a copy of the cached processor, which they may modify.
+ */
+public class PlaneCache
+{
+	public static final long MAX_NUM_BYTES = Math.min( Runtime.getRuntime().maxMemory() / 8, 1024L * 1024L * 1024L );
+
+	private static final LinkedHashMap< String, ImageProcessor > keyToPlane = new LinkedHashMap<>( 16, 0.75f, true );
+	private static final Map< String, Loading > keyToLoading = new ConcurrentHashMap<>();
+	private static long numBytes = 0;
+
+	/**
+	 * @return the key of a plane of the file at the path,
+	 * 			as converted to the given bit depth and size
+	 */
+	public static String key( String path, int bitDepth, int width, int height )
+	{
+		return path + "#" + bitDepth + "#" + width + "x" + height;
+	}
+
+	public static ImageProcessor get( String key, Function< String, ImageProcessor > loader )
+	{
+		final ImageProcessor cached = getCached( key );
+		if ( cached != null )
+			return cached.duplicate();
+
+		// loads in the calling thread, unless another thread has
+		// already started loading the plane; waiting for a prefetch
+		// that is still queued could deadlock callers that themselves
+		// run on the ioExecutorService
+		final Loading loading = keyToLoading.computeIfAbsent( key, k -> new Loading( k, loader ) );
+		loading.run();
+
+		try
+		{
+			return loading.future.get().duplicate();
+		}
+		catch ( InterruptedException | ExecutionException e )
+		{
+			throw new RuntimeException( e );
+		}
+	}
+
+	public static void prefetch( String key, Function< String, ImageProcessor > loader )
+	{
+		if ( contains( key ) )
+			return;
+
+		final Loading loading = new Loading( key, loader );
+		if ( keyToLoading.putIfAbsent( key, loading ) == null )
+			ThreadHelper.ioExecutorService.submit( loading::run );
+	}
+
+	public static synchronized void clear()
+	{
+		keyToPlane.clear();
+		numBytes = 0;
+	}
+
+	/**
+	 * A pending load of one plane, which is run by whichever
+	 * thread claims it first.
+	 */
+	private static class Loading
+	{
+		private final String key;
+		private final Function< String, ImageProcessor > loader;
+		private final AtomicBoolean isClaimed = new AtomicBoolean( false );
+		private final CompletableFuture< ImageProcessor > future = new CompletableFuture<>();
+
+		Loading( String key, Function< String, ImageProcessor > loader )
+		{
+			this.key = key;
+			this.loader = loader;
+			future.whenComplete( ( processor, throwable ) -> keyToLoading.remove( key, this ) );
+		}
+
+		void run()
+		{
+			if ( ! isClaimed.compareAndSet( false, true ) )
+				return;
+
+			try
+			{
+				final ImageProcessor processor = loader.apply( key );
+				put( key, processor );
+				future.complete( processor );
+			}
+			catch ( Throwable e )
+			{
+				future.completeExceptionally( e );
+			}
+		}
+	}
+
+	private static synchronized ImageProcessor getCached( String key )
+	{
+		return keyToPlane.get( key );
+	}
+
+	private static synchronized boolean contains( String key )
+	{
+		return keyToPlane.containsKey( key ) || keyToLoading.containsKey( key );
+	}
+
+	private static synchronized void put( String key, ImageProcessor processor )
+	{
+		final ImageProcessor previous = keyToPlane.put( key, processor );
+		if ( previous != null )
+			numBytes -= numBytes( previous );
+		numBytes += numBytes( processor );
+
+		// evict the least recently used planes
+		final Iterator< ImageProcessor > iterator = keyToPlane.values().iterator();
+		while ( numBytes > MAX_NUM_BYTES && keyToPlane.size() > 1 && iterator.hasNext() )
+		{
+			numBytes -= numBytes( iterator.next() );
+			iterator.remove();
+		}
+	}
+
+	private static long numBytes( ImageProcessor processor )
+	{
+		return ( long ) processor.getPixelCount() * Math.max( 1, processor.getBitDepth() / 8 );
+	}
+}
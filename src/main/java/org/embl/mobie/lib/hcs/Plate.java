@@ -55,8 +55,11 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static org.embl.mobie.lib.source.SourceHelper.computeMinMax;
 
@@ -70,6 +73,7 @@ public class Plate
 	private int sitesPerWell;
 	private int[] siteDimensions;
 	private VoxelDimensions voxelDimensions;
+	private VoxelDimensions metadataVoxelDimensions; // as found in the image files
 	private Set< TPosition > tPositions;
 	private Set< ZPosition > zPositions;
 	private int wellsPerPlate;
@@ -79,7 +83,9 @@ public class Plate
 	private boolean siteIDsAreOneBased = true;
 	private boolean is2d = true;
 	private int numSlices;
-	private boolean fetchSpatialMetadata = true;
+	private Map< String, Channel > nameToChannel;
+	private Map< String, int[] > siteGridPositions;
+	private Map< Site, Well > siteToWell;
 
 
 	public Plate( String hcsDirectory, @Nullable VoxelDimensions voxelDimensions ) throws IOException
@@ -87,9 +93,20 @@ public class Plate
 		this.hcsDirectory = hcsDirectory;
 		this.voxelDimensions = voxelDimensions;
 
+		final PlateIndex plateIndex = PlateIndex.read( hcsDirectory );
+		if ( plateIndex != null )
+		{
+			IJ.log( "Reading plate index: " + new File( hcsDirectory, PlateIndex.FILE_NAME ) );
+			initFromIndex( plateIndex );
+			return;
+		}
+
 		// TODO: fetch operetta paths from XML?!
 		// TODO: fetch OME-Zarr paths entry point JSON?!
 
+		// before the scan, such that changes during the scan outdate the index
+		final String fingerprint = PlateIndex.fingerprint( hcsDirectory );
+
 		IJ.log( "Looking for image files..." );
 		long start = System.currentTimeMillis();
 		List< String > imagePaths;
@@ -128,26 +145,17 @@ public class Plate
 			}
 			else
 			{
-				imagePaths = Files.walk( Paths.get( hcsDirectory ), 3 )
-						.map( Path::toString )
-						.collect( Collectors.toList() );
+				imagePaths = walk( Paths.get( hcsDirectory ), PlateIndex.MAX_DEPTH );
 				imageDataFormat = ImageDataFormat.BioFormats;
 			}
 
 			hcsPattern = determineHCSPattern( hcsDirectory, imagePaths );
-			imagePaths = imagePaths.stream()
-					.filter( path -> hcsPattern.setMatcher( path ) ) // skip files like .DS_Store a.s.o.
-					.collect( Collectors.toList() );
 
 			if ( hcsPattern.equals( HCSPattern.Operetta ) )
 			{
-				// only keep paths that are also in the XML
 				//final File xml = new File( hcsDirectory, "Index.idx.xml" );
 				final File xml = new File( hcsDirectory, "Index.xml" );
 				operettaMetadata = new OperettaMetadata( xml );
-				imagePaths = imagePaths.stream()
-						.filter( path -> operettaMetadata.contains( path ) ) // skip files like .DS_Store a.s.o.
-						.collect( Collectors.toList() );
 			}
 			else if ( hcsPattern.equals( HCSPattern.YokogawaCQ1 ) )
 			{
@@ -162,131 +170,299 @@ public class Plate
 				imageDataFormat = ImageDataFormat.Tiff;
 			}
 		}
-		IJ.log( "Found " + imagePaths.size() + " image file(s) in " + ( System.currentTimeMillis() - start ) + " ms." );
+		IJ.log( "Found " + imagePaths.size() + " file(s) in " + ( System.currentTimeMillis() - start ) + " ms." );
 		IJ.log( "HCS pattern: " + getHcsPattern() );
 		IJ.log( "Image data format: " + imageDataFormat );
 
-		buildPlateMap( imagePaths );
+		start = System.currentTimeMillis();
+		List< PlateFile > plateFiles = parse( imagePaths ); // skips files like .DS_Store a.s.o.
+		if ( operettaMetadata != null )
+		{
+			// only keep paths that are also in the XML
+			plateFiles = plateFiles.stream()
+					.filter( plateFile -> operettaMetadata.contains( plateFile.getPath() ) )
+					.collect( Collectors.toList() );
+		}
+		IJ.log( "Parsed " + plateFiles.size() + " image file(s) in " + ( System.currentTimeMillis() - start ) + " ms." );
+
+		fetchMetadata( plateFiles );
+		buildPlateMap( plateFiles );
+		writeIndex( plateFiles, fingerprint );
 	}
 
-	private void buildPlateMap( List< String > imagePaths )
+	private void initFromIndex( PlateIndex plateIndex )
 	{
-		channelWellSites = new HashMap<>();
-		tPositions = new HashSet<>();
-		zPositions = new HashSet<>();
+		hcsPattern = plateIndex.hcsPattern;
+		if ( plateIndex.omeZarrChannelNames != null )
+			hcsPattern.setChannelNames( plateIndex.omeZarrChannelNames );
+		imageDataFormat = plateIndex.imageDataFormat;
+		if ( imageDataFormat.equals( ImageDataFormat.OmeZarrS3 ) || imageDataFormat.equals( ImageDataFormat.BioFormatsS3 ) )
+			ThreadHelper.setNumIoThreads( Math.max( 16, ThreadHelper.getNumIoThreads() ) );
+		metadataVoxelDimensions = new FinalVoxelDimensions( plateIndex.voxelUnit, plateIndex.voxelSize );
+		if ( voxelDimensions == null )
+			voxelDimensions = metadataVoxelDimensions;
+		siteDimensions = plateIndex.siteDimensions;
+		siteRealDimensions = getSiteRealDimensions( siteDimensions, voxelDimensions );
+		numSlices = plateIndex.numSlices;
+		nameToChannel = new LinkedHashMap<>();
+		for ( Channel channel : plateIndex.channels )
+			nameToChannel.put( channel.getName(), channel );
+		siteGridPositions = plateIndex.siteGridPositions;
+
+		buildPlateMap( plateIndex.files );
+	}
 
-		IJ.log("Parsing metadata...");
+	private void writeIndex( List< PlateFile > plateFiles, String subDirectoriesFingerprint )
+	{
+		if ( imageDataFormat.equals( ImageDataFormat.SpimData ) )
+			return;
+
+		final PlateIndex plateIndex = new PlateIndex();
+		plateIndex.hcsPattern = hcsPattern;
+		plateIndex.imageDataFormat = imageDataFormat;
+		if ( hcsPattern.equals( HCSPattern.OMEZarr ) )
+			plateIndex.omeZarrChannelNames = hcsPattern.getChannels();
+		plateIndex.voxelUnit = metadataVoxelDimensions.unit();
+		plateIndex.voxelSize = metadataVoxelDimensions.dimensionsAsDoubleArray();
+		plateIndex.siteDimensions = siteDimensions;
+		plateIndex.numSlices = numSlices;
+		plateIndex.channels = new ArrayList<>( nameToChannel.values() );
+		plateIndex.files = plateFiles;
+		plateIndex.siteGridPositions = new HashMap<>();
+		for ( Channel channel : getChannels() )
+			for ( Well well : getWells( channel ) )
+				for ( Site site : getSites( channel, well ) )
+					plateIndex.siteGridPositions.put( PlateIndex.siteKey( well.getName(), site.getId() ), getGridPosition( site ) );
+		plateIndex.subDirectoriesFingerprint = subDirectoriesFingerprint;
 
-		for ( String imagePath : imagePaths )
+		try
 		{
-			hcsPattern.setMatcher( imagePath );
+			PlateIndex.write( hcsDirectory, plateIndex );
+		}
+		catch ( Exception e )
+		{
+			IJ.log( "Could not write the plate index: " + e.getMessage() );
+		}
+	}
 
-			// some formats contain multiple channels in one file
-			List< String > channelNames = hcsPattern.getChannels();
+	/**
+	 * Walks the sub-folders of the root folder in parallel.
+	 * For plates with one folder per well or time point
+	 * this is considerably faster than one sequential walk.
+	 */
+	private static List< String > walk( Path root, int maxDepth ) throws IOException
+	{
+		final List< Path > children;
+		try ( Stream< Path > stream = Files.list( root ) )
+		{
+			children = stream.sorted().collect( Collectors.toList() );
+		}
 
-			for ( String channelName : channelNames )
+		final List< Future< List< String > > > futures = new ArrayList<>();
+		for ( Path child : children )
+		{
+			futures.add( ThreadHelper.ioExecutorService.submit( () ->
 			{
-				Channel channel = getChannel( channelWellSites, channelName );
+				if ( ! Files.isDirectory( child ) || maxDepth < 2 )
+					return Collections.singletonList( child.toString() );
 
-				if ( channel == null )
+				try ( Stream< Path > stream = Files.walk( child, maxDepth - 1 ) )
 				{
-					// configure channel properties
-					//
-					channel = new Channel( channelName, channelNames.indexOf( channelName ) );
-					channelWellSites.put( channel, new HashMap<>() );
+					return stream.map( Path::toString ).collect( Collectors.toList() );
+				}
+			} ) );
+		}
 
-					// Open for metadata only
-					ImageData< ? > imageData = ImageDataOpener.open( imagePath, imageDataFormat, ThreadHelper.sharedQueue );
+		final List< String > paths = new ArrayList<>();
+		paths.add( root.toString() );
+		for ( Future< List< String > > future : futures )
+		{
+			try
+			{
+				paths.addAll( future.get() );
+			}
+			catch ( InterruptedException | ExecutionException e )
+			{
+				throw new IOException( e );
+			}
+		}
 
-					// set channel metadata
-					//
-					if ( operettaMetadata != null ) // Do we still want to support the operetta stuff at all?
-					{
-						final String color = operettaMetadata.getColor( imagePath );
-						channel.setColor( color );
-
-						// TODO: There does not always seem to be enough metadata for the
-						//   contrast limits, thus opening one image may be worth it
-						//   then convert to imagePlus and run once auto contrast on it
-						final double[] contrastLimits = operettaMetadata.getContrastLimits( imagePath );
-						channel.setContrastLimits( contrastLimits );
-					}
-					else // from image file
-					{
-						int datasetIndex = channel.getIndex();
-
-						IJ.log( "Fetching metadata for " + channelName + " from " + imagePath );
-						Source< ? > source = imageData.getSourcePair( datasetIndex ).getA();
-						int numMipmapLevels = source.getNumMipmapLevels();
-						numSlices = ( int ) source.getSource( 0, 0 ).dimension( 2 );
-						RandomAccessibleInterval< ? > rai = source.getSource( 0, numMipmapLevels - 1 );
-						double[] minMax = computeMinMax( ( RandomAccessibleInterval ) rai );
-						IJ.log( "Min, max: " + Arrays.toString( minMax ) );
-						channel.setColor( ColorHelper.getString( imageData.getMetadata( datasetIndex ).getColor() ) );
-						// This currently does not do any auto-contrast, but just returns the datatype's range
-//						double[] contrastLimits = {
-//								imageData.getMetadata( datasetIndex ).minIntensity(),
-//								imageData.getMetadata( datasetIndex ).maxIntensity()
-//						};
-						channel.setContrastLimits( minMax );
-					}
+		return paths;
+	}
+
+	// the matching of the regular expressions is stateless
+	// and can thus be run in parallel
+	private List< PlateFile > parse( List< String > imagePaths )
+	{
+		return imagePaths.parallelStream()
+				.map( hcsPattern::parse )
+				.filter( Objects::nonNull )
+				.collect( Collectors.toList() );
+	}
+
+	/*
+	 * Fetches the channel and the spatial metadata.
+	 * Only one image per channel is opened, and
+	 * the images of the different channels are opened in parallel.
+	 */
+	private void fetchMetadata( List< PlateFile > plateFiles )
+	{
+		IJ.log("Fetching metadata...");
+
+		nameToChannel = new LinkedHashMap<>();
+		final Map< Channel, String > channelToPath = new LinkedHashMap<>();
+		for ( PlateFile plateFile : plateFiles )
+		{
+			// some formats contain multiple channels in one file
+			final List< String > channelNames = plateFile.getChannels();
+			for ( String channelName : channelNames )
+			{
+				if ( nameToChannel.containsKey( channelName ) )
+					continue;
+
+				final Channel channel = new Channel( channelName, channelNames.indexOf( channelName ) );
+				nameToChannel.put( channelName, channel );
+				channelToPath.put( channel, plateFile.getPath() );
+			}
+		}
+
+		if ( channelToPath.isEmpty() )
+			throw new RuntimeException( "Could not find any image files in " + hcsDirectory );
 
-					if ( fetchSpatialMetadata )
+		final Channel firstChannel = channelToPath.keySet().iterator().next();
+
+		if ( operettaMetadata != null ) // Do we still want to support the operetta stuff at all?
+		{
+			for ( Map.Entry< Channel, String > entry : channelToPath.entrySet() )
+			{
+				final String imagePath = entry.getValue();
+				entry.getKey().setColor( operettaMetadata.getColor( imagePath ) );
+
+				// TODO: There does not always seem to be enough metadata for the
+				//   contrast limits, thus opening one image may be worth it
+				//   then convert to imagePlus and run once auto contrast on it
+				entry.getKey().setContrastLimits( operettaMetadata.getContrastLimits( imagePath ) );
+			}
+
+			final String imagePath = channelToPath.get( firstChannel );
+			metadataVoxelDimensions = operettaMetadata.getVoxelDimensions( imagePath );
+			siteDimensions = operettaMetadata.getSiteDimensions( imagePath );
+		}
+		else // from image files
+		{
+			final ArrayList< Future< ? > > futures = ThreadHelper.getFutures();
+			for ( Map.Entry< Channel, String > entry : channelToPath.entrySet() )
+			{
+				final Channel channel = entry.getKey();
+				final String imagePath = entry.getValue();
+				futures.add( ThreadHelper.ioExecutorService.submit( () ->
+				{
+					IJ.log( "Fetching metadata for " + channel.getName() + " from " + imagePath );
+					final ImageData< ? > imageData = ImageDataOpener.open( imagePath, imageDataFormat, ThreadHelper.sharedQueue );
+					int datasetIndex = channel.getIndex();
+					Source< ? > source = imageData.getSourcePair( datasetIndex ).getA();
+					int numMipmapLevels = source.getNumMipmapLevels();
+					RandomAccessibleInterval< ? > rai = source.getSource( 0, numMipmapLevels - 1 );
+					double[] minMax = computeMinMax( ( RandomAccessibleInterval ) rai );
+					IJ.log( channel.getName() + " min, max: " + Arrays.toString( minMax ) );
+					channel.setColor( ColorHelper.getString( imageData.getMetadata( datasetIndex ).getColor() ) );
+					// This currently does not do any auto-contrast, but just returns the datatype's range
+//					double[] contrastLimits = {
+//							imageData.getMetadata( datasetIndex ).minIntensity(),
+//							imageData.getMetadata( datasetIndex ).maxIntensity()
+//					};
+					channel.setContrastLimits( minMax );
+
+					if ( channel == firstChannel )
 					{
-						fetchSpatialMetadata= false; // should be the same for all files and channels
-
-						if ( operettaMetadata != null )
-						{
-							voxelDimensions = operettaMetadata.getVoxelDimensions( imagePath );
-							siteDimensions = operettaMetadata.getSiteDimensions( imagePath );
-						}
-						else // from image file
-						{
-							Source< ? > source = imageData.getSourcePair( channel.getIndex() ).getA();
-
-							voxelDimensions = source.getVoxelDimensions();
-
-							if ( voxelDimensions == null )
-							{
-								/*
-								If the z-positions are distributed over multiple files
-								typically the z-calibration metadata in the individual files is wrong.
-								We thus just put something sensible here such that browsing in BDV along the
-								z-axis is convenient
-								 */
-								voxelDimensions = new FinalVoxelDimensions(
-										voxelDimensions.unit(),
-										voxelDimensions.dimension( 0 ),
-										voxelDimensions.dimension( 1 ),
-										10 * voxelDimensions.dimension( 1 )
-								);
-							}
-
-							long width = source.getSource( 0, 0 ).dimension( 0 );
-							long height = source.getSource( 0, 0 ).dimension( 1 );
-							siteDimensions = new int[]{ ( int ) width, ( int ) height };
-						}
-
-						// compute derived spatial metadata
-						//
-						siteRealDimensions = new double[]{
-								siteDimensions[ 0 ] * voxelDimensions.dimension( 0 ),
-								siteDimensions[ 1 ] * voxelDimensions.dimension( 1 ) };
-
-						siteRealDimensions = new double[]{
-								siteDimensions[ 0 ] * voxelDimensions.dimension( 0 ),
-								siteDimensions[ 1 ] * voxelDimensions.dimension( 1 ) };
+						// should be the same for all files and channels
+						fetchSpatialMetadata( source );
 					}
-				}
+				} ) );
+			}
+			ThreadHelper.waitUntilFinished( futures );
+		}
+
+		// the voxel dimensions that were given take precedence
+		if ( voxelDimensions == null )
+			voxelDimensions = metadataVoxelDimensions;
+
+		// compute derived spatial metadata
+		//
+		siteRealDimensions = getSiteRealDimensions( siteDimensions, voxelDimensions );
+	}
+
+	private void fetchSpatialMetadata( Source< ? > source )
+	{
+		numSlices = ( int ) source.getSource( 0, 0 ).dimension( 2 );
+
+		metadataVoxelDimensions = source.getVoxelDimensions();
+
+		if ( metadataVoxelDimensions == null )
+		{
+			/*
+			If the z-positions are distributed over multiple files
+			typically the z-calibration metadata in the individual files is wrong.
+			We thus just put something sensible here such that browsing in BDV along the
+			z-axis is convenient
+			 */
+			metadataVoxelDimensions = new FinalVoxelDimensions(
+					metadataVoxelDimensions.unit(),
+					metadataVoxelDimensions.dimension( 0 ),
+					metadataVoxelDimensions.dimension( 1 ),
+					10 * metadataVoxelDimensions.dimension( 1 )
+			);
+		}
+
+		long width = source.getSource( 0, 0 ).dimension( 0 );
+		long height = source.getSource( 0, 0 ).dimension( 1 );
+		siteDimensions = new int[]{ ( int ) width, ( int ) height };
+	}
+
+	private static double[] getSiteRealDimensions( int[] siteDimensions, VoxelDimensions voxelDimensions )
+	{
+		return new double[]{
+				siteDimensions[ 0 ] * voxelDimensions.dimension( 0 ),
+				siteDimensions[ 1 ] * voxelDimensions.dimension( 1 ) };
+	}
+
+	private void buildPlateMap( List< PlateFile > plateFiles )
+	{
+		channelWellSites = new LinkedHashMap<>();
+		tPositions = new HashSet<>();
+		zPositions = new HashSet<>();
+		siteToWell = new HashMap<>();
+
+		IJ.log("Parsing metadata...");
+
+		// hash indices for finding the
+		// wells and sites in constant time
+		final Map< Channel, Map< String, Well > > channelToWells = new HashMap<>();
+		final Map< Well, Map< String, Site > > wellToSites = new HashMap<>();
+		for ( Channel channel : nameToChannel.values() )
+		{
+			channelWellSites.put( channel, new LinkedHashMap<>() );
+			channelToWells.put( channel, new HashMap<>() );
+		}
+
+		for ( PlateFile plateFile : plateFiles )
+		{
+			final String imagePath = plateFile.getPath();
+
+			for ( String channelName : plateFile.getChannels() )
+			{
+				final Channel channel = nameToChannel.get( channelName );
 
 				// well
 				//
-				String wellGroup = hcsPattern.getWellGroup();
-				Well well = getWell( channelWellSites, channel, wellGroup );
+				String wellGroup = plateFile.getWell();
+				Well well = channelToWells.get( channel ).get( wellGroup );
 				if ( well == null )
 				{
 					well = new Well( wellGroup );
-					channelWellSites.get( channel ).put( well, new HashSet<>() );
+					channelToWells.get( channel ).put( wellGroup, well );
+					wellToSites.put( well, new HashMap<>() );
+					channelWellSites.get( channel ).put( well, new LinkedHashSet<>() );
 					final int numWells = channelWellSites.get( channel ).size();
 					if ( numWells > wellsPerPlate )
 						wellsPerPlate = numWells;
@@ -294,8 +470,8 @@ public class Plate
 
 				// site
 				//
-				final String siteGroup = hcsPattern.getSiteGroup();
-				Site site = getSite( channelWellSites, channel, well, siteGroup );
+				final String siteGroup = plateFile.getSite();
+				Site site = wellToSites.get( well ).get( siteGroup );
 				if ( site == null )
 				{
 					if ( imageDataFormat.equals( ImageDataFormat.SpimData ) )
@@ -316,6 +492,8 @@ public class Plate
 					}
 					site.setDimensions( siteDimensions );
 					site.setVoxelDimensions( voxelDimensions );
+					wellToSites.get( well ).put( siteGroup, site );
+					siteToWell.put( site, well );
 					channelWellSites.get( channel ).get( well ).add( site );
 					if ( Integer.parseInt( site.getId() ) == 0 )
 						siteIDsAreOneBased = false; // zero based
@@ -331,8 +509,8 @@ public class Plate
 				}
 				else
 				{
-					final String t = hcsPattern.getT();
-					final String z = hcsPattern.getZ();
+					final String t = plateFile.getT();
+					final String z = plateFile.getZ();
 					site.addPath( t, z, imagePath );
 					tPositions.add( new TPosition( t ) );
 					numSlices = Math.max( numSlices, site.getZPositions().size() );
@@ -351,44 +529,6 @@ public class Plate
 			is2d = false;
 	}
 
-
-	private Channel getChannel( HashMap< Channel, Map< Well, Set< Site > > > channelWellSites, String channelName )
-	{
-		try
-		{
-			return channelWellSites.keySet().stream().filter( c -> c.getName().equals( channelName ) ).findFirst().get();
-		}
-		catch ( NoSuchElementException e )
-		{
-			return null;
-		}
-
-	}
-
-	private Well getWell( HashMap< Channel, Map< Well, Set< Site > > > channelWellSites, Channel channel, String wellName )
-	{
-		try
-		{
-			return channelWellSites.get( channel ).keySet().stream().filter( w -> w.getName().equals( wellName ) ).findFirst().get();
-		}
-		catch ( NoSuchElementException e )
-		{
-			return null;
-		}
-	}
-
-	private Site getSite( HashMap< Channel, Map< Well, Set< Site > > > channelWellSites, Channel channel, Well well, String siteName )
-	{
-		try
-		{
-			return channelWellSites.get( channel ).get( well ).stream().filter( s -> s.getId().equals( siteName ) ).findFirst().get();
-		}
-		catch ( NoSuchElementException e )
-		{
-			return null;
-		}
-	}
-
 	private HCSPattern determineHCSPattern( String hcsDirectory, List< String > paths )
 	{
 		for ( String path : paths )
@@ -426,6 +566,14 @@ public class Plate
 
 	public int[] getGridPosition( Site site )
 	{
+		if ( siteGridPositions != null )
+		{
+			// from the plate index
+			final int[] gridPosition = siteGridPositions.get( PlateIndex.siteKey( siteToWell.get( site ).getName(), site.getId() ) );
+			if ( gridPosition != null )
+				return gridPosition;
+		}
+
 		switch ( hcsPattern )
 		{
 			case Operetta:
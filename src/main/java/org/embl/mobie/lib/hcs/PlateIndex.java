@@ -0,0 +1,245 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.hcs;
+
+import com.google.gson.Gson;
+import org.embl.mobie.io.ImageDataFormat;
+import org.embl.mobie.io.util.IOHelper;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The outcome of scanning a plate directory: all image files with
+ * the information that is encoded in their paths, the grid positions of
+ * the sites, the channel metadata and the spatial metadata.
+ *
+ * The index is stored as a JSON file in the plate directory,
+ * such that reopening the plate does not need to scan the
+ * directory and open any image.
+ * The index is considered outdated if files were added to or removed from
+ * the plate directory, or from any of the sub-directories in which
+ * the image files are searched, after the index was written;
+ * to force a new scan simply delete the file.
+ */
+public class PlateIndex
+{
+	public static final String FILE_NAME = "mobie-plate-index.json";
+	public static final int VERSION = 2;
+
+	/**
+	 * The maximal depth of the image files below the plate directory.
+	 */
+	public static final int MAX_DEPTH = 3;
+
+	public int version = VERSION;
+	public HCSPattern hcsPattern;
+	public ImageDataFormat imageDataFormat;
+	public List< String > omeZarrChannelNames;
+	public String voxelUnit;
+	public double[] voxelSize;
+	public int[] siteDimensions;
+	public int numSlices;
+	public List< Channel > channels;
+	public List< PlateFile > files;
+	// key: well name + "/" + site id
+	public Map< String, int[] > siteGridPositions;
+	// must be computed with {@link #fingerprint} before the plate directory is scanned,
+	// such that files that are added during the scan outdate the index
+	public String subDirectoriesFingerprint;
+
+	/**
+	 * @param hcsDirectory
+	 * 			the plate directory
+	 * @return the index, or null if there is no index or if it is outdated
+	 */
+	@Nullable
+	public static PlateIndex read( String hcsDirectory )
+	{
+		if ( ! isSupported( hcsDirectory ) )
+			return null;
+
+		// writing the index itself modifies the plate directory,
+		// thus its modification time is compared to the one of the index
+		final File file = new File( hcsDirectory, FILE_NAME );
+		if ( ! file.exists() || file.lastModified() < new File( hcsDirectory ).lastModified() )
+			return null;
+
+		try
+		{
+			final PlateIndex index = new Gson().fromJson( IOHelper.read( file.getAbsolutePath() ), PlateIndex.class );
+			if ( index == null || index.version != VERSION )
+				return null;
+
+			if ( ! fingerprintSubDirectories( hcsDirectory ).equals( index.subDirectoriesFingerprint ) )
+				return null;
+
+			// paths are stored relative to the plate directory
+			final ArrayList< PlateFile > files = new ArrayList<>( index.files.size() );
+			for ( PlateFile plateFile : index.files )
+				files.add( new PlateFile(
+						resolve( hcsDirectory, plateFile.getPath() ),
+						plateFile.getChannels(),
+						plateFile.getWell(),
+						plateFile.getSite(),
+						plateFile.getT(),
+						plateFile.getZ() ) );
+			index.files = files;
+
+			return index;
+		}
+		catch ( Exception e )
+		{
+			return null;
+		}
+	}
+
+	public static void write( String hcsDirectory, PlateIndex index ) throws IOException
+	{
+		if ( ! isSupported( hcsDirectory ) || index.subDirectoriesFingerprint == null )
+			return;
+
+		final ArrayList< PlateFile > files = new ArrayList<>( index.files.size() );
+		for ( PlateFile plateFile : index.files )
+			files.add( new PlateFile(
+					relativize( hcsDirectory, plateFile.getPath() ),
+					plateFile.getChannels(),
+					plateFile.getWell(),
+					plateFile.getSite(),
+					plateFile.getT(),
+					plateFile.getZ() ) );
+
+		final PlateIndex relativeIndex = new PlateIndex();
+		relativeIndex.hcsPattern = index.hcsPattern;
+		relativeIndex.imageDataFormat = index.imageDataFormat;
+		relativeIndex.omeZarrChannelNames = index.omeZarrChannelNames;
+		relativeIndex.voxelUnit = index.voxelUnit;
+		relativeIndex.voxelSize = index.voxelSize;
+		relativeIndex.siteDimensions = index.siteDimensions;
+		relativeIndex.numSlices = index.numSlices;
+		relativeIndex.channels = index.channels;
+		relativeIndex.files = files;
+		relativeIndex.siteGridPositions = index.siteGridPositions;
+		relativeIndex.subDirectoriesFingerprint = index.subDirectoriesFingerprint;
+
+		final File file = new File( hcsDirectory, FILE_NAME );
+		Files.write( file.toPath(), new Gson().toJson( relativeIndex ).getBytes( StandardCharsets.UTF_8 ) );
+	}
+
+	public static String siteKey( String well, String site )
+	{
+		return well + "/" + site;
+	}
+
+	/**
+	 * @param hcsDirectory
+	 * 			the plate directory
+	 * @return the fingerprint of the sub-directories of the plate,
+	 * 			or null if the index is not supported for this plate
+	 */
+	@Nullable
+	public static String fingerprint( String hcsDirectory )
+	{
+		if ( ! isSupported( hcsDirectory ) )
+			return null;
+
+		try
+		{
+			return fingerprintSubDirectories( hcsDirectory );
+		}
+		catch ( IOException e )
+		{
+			return null;
+		}
+	}
+
+	/*
+	 * Hashes the relative paths and the modification times of the
+	 * sub-directories that may contain image files. Adding, removing
+	 * or renaming a file changes the modification time of its directory,
+	 * thus this is much cheaper than listing all files.
+	 */
+	private static String fingerprintSubDirectories( String hcsDirectory ) throws IOException
+	{
+		final Path root = Paths.get( hcsDirectory );
+		final List< Path > directories;
+		try ( Stream< Path > stream = Files.walk( root, MAX_DEPTH - 1 ) )
+		{
+			directories = stream
+					.filter( path -> ! path.equals( root ) )
+					.filter( Files::isDirectory )
+					.sorted()
+					.collect( Collectors.toList() );
+		}
+
+		long hash = 17;
+		for ( Path directory : directories )
+		{
+			hash = 31 * hash + root.relativize( directory ).toString().hashCode();
+			hash = 31 * hash + Files.getLastModifiedTime( directory ).toMillis();
+		}
+
+		return directories.size() + "-" + Long.toHexString( hash );
+	}
+
+	// the index is only stored for plates on the local file system
+	private static boolean isSupported( String hcsDirectory )
+	{
+		return ! IOHelper.getType( hcsDirectory ).equals( IOHelper.ResourceType.S3 )
+				&& new File( hcsDirectory ).isDirectory();
+	}
+
+	private static String relativize( String hcsDirectory, String path )
+	{
+		final String directory = new File( hcsDirectory ).getAbsolutePath() + File.separator;
+		final String absolutePath = new File( path ).getAbsolutePath();
+		if ( absolutePath.startsWith( directory ) )
+			return absolutePath.substring( directory.length() );
+		else
+			return path;
+	}
+
+	private static String resolve( String hcsDirectory, String path )
+	{
+		if ( new File( path ).isAbsolute() )
+			return path;
+		else
+			return new File( hcsDirectory, path ).getPath();
+	}
+}
@@ -0,0 +1,152 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.hcs;
+
+import ij.io.FileInfo;
+import ij.io.ImageReader;
+import ij.io.TiffDecoder;
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the first plane of a TIFF file directly into an {@link ImageProcessor}.
+ *
+ * The file is memory-mapped and the strips are decoded by ImageJ's
+ * {@link ImageReader}, which avoids creating an {@code ImagePlus},
+ * parsing its metadata and copying the file through buffered streams.
+ */
+public class TiffPlaneReader
+{
+	/**
+	 * @return the plane, or null if the file cannot be read this way,
+	 * 			in which case the caller should fall back to opening the file
+	 * 			as an {@code ImagePlus}
+	 */
+	@Nullable
+	public static ImageProcessor read( String path )
+	{
+		try
+		{
+			final File file = new File( path );
+			final FileInfo[] infos = new TiffDecoder( file.getParent() + File.separator, file.getName() ).getTiffInfo();
+			if ( infos == null || infos.length == 0 )
+				return null;
+
+			final FileInfo info = infos[ 0 ];
+			if ( info.compression == FileInfo.JPEG )
+				return null;
+
+			try ( FileChannel channel = FileChannel.open( Paths.get( path ), StandardOpenOption.READ ) )
+			{
+				final MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+				final Object pixels = new ImageReader( info ).readPixels( new ByteBufferInputStream( buffer ) );
+				if ( pixels == null )
+					return null;
+
+				return createProcessor( info, pixels );
+			}
+		}
+		catch ( Exception e )
+		{
+			return null;
+		}
+	}
+
+	@Nullable
+	private static ImageProcessor createProcessor( FileInfo info, Object pixels )
+	{
+		switch ( info.fileType )
+		{
+			case FileInfo.GRAY8:
+				return new ByteProcessor( info.width, info.height, ( byte[] ) pixels );
+			case FileInfo.GRAY16_UNSIGNED:
+				return new ShortProcessor( info.width, info.height, ( short[] ) pixels, null );
+			case FileInfo.GRAY32_FLOAT:
+				return new FloatProcessor( info.width, info.height, ( float[] ) pixels );
+			case FileInfo.RGB:
+				return new ColorProcessor( info.width, info.height, ( int[] ) pixels );
+			default:
+				// e.g. signed or LUT images need the calibration of the ImagePlus
+				return null;
+		}
+	}
+
+	private static class ByteBufferInputStream extends InputStream
+	{
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream( ByteBuffer buffer )
+		{
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read()
+		{
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read( byte[] bytes, int offset, int length )
+		{
+			if ( ! buffer.hasRemaining() )
+				return -1;
+
+			length = Math.min( length, buffer.remaining() );
+			buffer.get( bytes, offset, length );
+			return length;
+		}
+
+		@Override
+		public long skip( long n )
+		{
+			final int skip = ( int ) Math.max( 0, Math.min( n, buffer.remaining() ) );
+			buffer.position( buffer.position() + skip );
+			return skip;
+		}
+
+		@Override
+		public int available()
+		{
+			return buffer.remaining();
+		}
+	}
+}
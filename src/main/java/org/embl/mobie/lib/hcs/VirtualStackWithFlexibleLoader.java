@@ -55,6 +55,7 @@ public class VirtualStackWithFlexibleLoader extends ImageStack
     private Properties properties;
     private boolean generateData;
     private int[] indexes;  // used to translate non-CZT hyperstack slice numbers
+    private int slicesPerFrame = 1;
 
 
     public VirtualStackWithFlexibleLoader() { }
@@ -177,7 +178,60 @@ public class VirtualStackWithFlexibleLoader extends ImageStack
             return ip;
         }
         n = translate(n);  // update n for hyperstacks not in the default CZT order
+        final int index = n;
+        ImageProcessor ip = PlaneCache.get( planeKey( n ), key -> openProcessor( index ) );
+        if (cTable!=null)
+            ip.setCalibrationTable(cTable);
+        prefetch( n );
+        return ip;
+    }
+
+    /*
+     * Loads the neighbouring planes along z and t in the background,
+     * such that scrolling through the stack does not wait for the file system.
+     */
+    private void prefetch(int n) {
+        final int[] neighbours = { n + 1, n - 1, n + slicesPerFrame, n - slicesPerFrame };
+        for (int neighbour : neighbours) {
+            if (neighbour < 1 || neighbour > nSlices || neighbour == n)
+                continue;
+            final int index = neighbour;
+            PlaneCache.prefetch( planeKey( neighbour ), key -> openProcessor( index ) );
+        }
+    }
+
+    private String planeKey(int n) {
+        return PlaneCache.key( getFileName( n ), bitDepth, getWidth(), getHeight() );
+    }
+
+    private ImageProcessor openProcessor(int n) {
         String path = getFileName( n );
+        ImageProcessor ip = null;
+        if ( imageDataFormat.equals( ImageDataFormat.Tiff ) )
+        {
+            ip = TiffPlaneReader.read( path );
+        }
+        if ( ip == null )
+        {
+            ip = openProcessorFromImagePlus( n, path );
+        }
+        if (ip.getBitDepth()!=bitDepth) {
+            switch (bitDepth) {
+                case 8: ip=ip.convertToByte(true); break;
+                case 16: ip=ip.convertToShort(true); break;
+                case 24:  ip=ip.convertToRGB(); break;
+                case 32: ip=ip.convertToFloat(); break;
+            }
+        }
+        if (ip.getWidth()!=getWidth() || ip.getHeight()!=getHeight()) {
+            ImageProcessor ip2 = ip.createProcessor(getWidth(), getHeight());
+            ip2.insert(ip, 0, 0);
+            ip = ip2;
+        }
+        return ip;
+    }
+
+    private ImageProcessor openProcessorFromImagePlus(int n, String path) {
         // Open the image
         ImagePlus imp;
         if ( imageDataFormat.equals( ImageDataFormat.BioFormats ) )
@@ -194,7 +248,6 @@ public class VirtualStackWithFlexibleLoader extends ImageStack
             throw new RuntimeException( "Opening files with " + imageDataFormat + " into a VirtualStack is currently not supported");
         }
         ImageProcessor ip = null;
-        int depthThisImage = 0;
         if (imp!=null) {
             int w = imp.getWidth();
             int h = imp.getHeight();
@@ -209,7 +262,6 @@ public class VirtualStackWithFlexibleLoader extends ImageStack
                 if (FolderOpener.useInfo(sliceLabel))
                     labels[n-1] = "Label: "+sliceLabel;
             }
-            depthThisImage = imp.getBitDepth();
             ip = imp.getProcessor();
             ip.setOverlay(imp.getOverlay());
             properties = imp.getProperty("FHT")!=null?imp.getProperties():null;
@@ -219,23 +271,7 @@ public class VirtualStackWithFlexibleLoader extends ImageStack
             ip = new ByteProcessor(getWidth(), getHeight());
             ip.invert();
             label(ip, msg+names[n-1], Color.black);
-            depthThisImage = 8;
         }
-        if (depthThisImage!=bitDepth) {
-            switch (bitDepth) {
-                case 8: ip=ip.convertToByte(true); break;
-                case 16: ip=ip.convertToShort(true); break;
-                case 24:  ip=ip.convertToRGB(); break;
-                case 32: ip=ip.convertToFloat(); break;
-            }
-        }
-        if (ip.getWidth()!=getWidth() || ip.getHeight()!=getHeight()) {
-            ImageProcessor ip2 = ip.createProcessor(getWidth(), getHeight());
-            ip2.insert(ip, 0, 0);
-            ip = ip2;
-        }
-        if (cTable!=null)
-            ip.setCalibrationTable(cTable);
         return ip;
     }
 
@@ -297,6 +333,11 @@ public class VirtualStackWithFlexibleLoader extends ImageStack
         return names[n-1];
     }
 
+    // used for prefetching the planes of the neighbouring time points
+    public void setSlicesPerFrame(int slicesPerFrame) {
+        this.slicesPerFrame = slicesPerFrame;
+    }
+
     public void setBitDepth(int bitDepth) {
         this.bitDepth = bitDepth;
     }
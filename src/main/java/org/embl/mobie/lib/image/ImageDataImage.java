@@ -37,10 +37,12 @@ import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.roi.RealMaskRealInterval;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.NumericType;
+import net.imglib2.type.numeric.RealType;
 import org.embl.mobie.io.ImageDataFormat;
 import org.embl.mobie.DataStore;
 import org.embl.mobie.io.imagedata.ImageData;
 import org.embl.mobie.lib.hcs.Site;
+import org.embl.mobie.lib.source.LazyPyramid;
 import org.embl.mobie.lib.source.SourceHelper;
 
 import javax.annotation.Nullable;
@@ -173,7 +175,7 @@ public class ImageDataImage< T extends NumericType< T > & NativeType< T > > impl
 
 	private void createSourcePair( ImageData< T > imageData, int setupId, String name )
 	{
-		final Source< T > source = imageData.getSourcePair( setupId ).getA();
+		Source< T > source = imageData.getSourcePair( setupId ).getA();
 		Source< ? extends Volatile< T > > volatileSource = imageData.getSourcePair( setupId ).getB();
 
 		if ( voxelDimensions != null  )
@@ -190,6 +192,17 @@ public class ImageDataImage< T extends NumericType< T > & NativeType< T > > impl
 			SourceHelper.setVoxelDimensions( volatileSource, voxelDimensions );
 		}
 
+		if ( site != null && source.getNumMipmapLevels() == 1 && source.getType() instanceof RealType )
+		{
+			// The files of HCS sites typically only contain
+			// one resolution level; a lazy pyramid avoids
+			// reading all full resolution data
+			// for rendering an overview of a whole plate.
+			final SourcePair< T > pyramid = LazyPyramid.createSourcePair( ( Source ) source, ( Source ) volatileSource, sharedQueue );
+			source = pyramid.getSource();
+			volatileSource = pyramid.getVolatileSource();
+		}
+
 		transformedSource = new TransformedSource<>( source, name );
 		transformedSource.setFixedTransform( currentTransform );
 
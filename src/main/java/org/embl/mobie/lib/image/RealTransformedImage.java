@@ -30,13 +30,16 @@ package org.embl.mobie.lib.image;
 
 import bdv.tools.transformation.TransformedSource;
 import bdv.viewer.Source;
+import net.imglib2.RealInterval;
 import net.imglib2.Volatile;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.realtransform.RealTransform;
 import net.imglib2.roi.RealMaskRealInterval;
+import net.imglib2.roi.geom.GeomMasks;
 import org.embl.mobie.lib.serialize.transformation.InterpolatedAffineTransformation;
 import org.embl.mobie.lib.serialize.transformation.Transformation;
 import org.embl.mobie.lib.source.RealTransformedSource;
+import org.embl.mobie.lib.transform.InterpolatedAffineRealTransform;
 
 public class RealTransformedImage< T > implements Image< T >, TransformedImage
 {
@@ -87,7 +90,12 @@ public class RealTransformedImage< T > implements Image< T >, TransformedImage
 	@Override
 	public RealMaskRealInterval getMask()
 	{
-		if ( mask == null )
+		if ( mask == null && realTransform instanceof InterpolatedAffineRealTransform )
+		{
+			final RealInterval bounds = ( ( InterpolatedAffineRealTransform ) realTransform ).estimateInverseBounds( image.getMask() );
+			return GeomMasks.closedBox( bounds.minAsDoubleArray(), bounds.maxAsDoubleArray() ).transform( affineTransform3D.inverse() );
+		}
+		else if ( mask == null )
 		{
 			// TODO: this should be something like
 			//   image.getMask().transform( realTransform.inverse() )
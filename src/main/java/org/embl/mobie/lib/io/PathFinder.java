@@ -0,0 +1,222 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.io;
+
+import org.embl.mobie.lib.ThreadHelper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the files and folders whose name matches a regular expression,
+ * within a folder and its sub-folders up to a maximal depth.
+ *
+ * The entries of the folder are checked in batches on the
+ * {@code ThreadHelper.ioExecutorService}, each batch walking its
+ * sub-folders. The calling thread also processes batches, such that
+ * this does not block if it is called from within the IO pool.
+ *
+ * The result is the same as for {@code Files.find( folder, maxDepth, ... )},
+ * matching the file names, and sorted.
+ */
+public class PathFinder
+{
+	// entries of the folder that are checked by one task
+	private static final int BATCH_SIZE = 512;
+
+	private final Path folder;
+	private final Pattern pattern;
+	private final int maxDepth;
+
+	/**
+	 * @param folder
+	 * 			the folder in which to search
+	 * @param fileNameRegex
+	 * 			the regular expression that the file names must match
+	 * @param maxDepth
+	 * 			the maximal depth of the matched paths, where 1 are the
+	 * 			entries of the folder
+	 */
+	public PathFinder( String folder, String fileNameRegex, int maxDepth )
+	{
+		this.folder = Paths.get( folder );
+		this.pattern = Pattern.compile( fileNameRegex );
+		this.maxDepth = maxDepth;
+	}
+
+	public List< String > find() throws IOException
+	{
+		final List< Path > paths = new ArrayList<>();
+
+		// like {@code Files.find()}, consider the folder itself
+		if ( matches( folder ) )
+			paths.add( folder );
+
+		if ( maxDepth > 0 )
+		{
+			final List< Path > entries = list( folder );
+			final List< Batch > batches = new ArrayList<>();
+			for ( int start = 0; start < entries.size(); start += BATCH_SIZE )
+				batches.add( new Batch( entries.subList( start, Math.min( entries.size(), start + BATCH_SIZE ) ) ) );
+
+			final List< Future< ? > > futures = new ArrayList<>();
+			for ( int i = 1; i < batches.size(); i++ )
+				futures.add( ThreadHelper.ioExecutorService.submit( batches.get( i ) ) );
+
+			// process batches that have not been started
+			// by the executor in this thread
+			try
+			{
+				for ( Batch batch : batches )
+					batch.run();
+			}
+			catch ( UncheckedIOException e )
+			{
+				throw e.getCause();
+			}
+
+			for ( Future< ? > future : futures )
+				waitFor( future );
+
+			for ( Batch batch : batches )
+				paths.addAll( batch.getPaths() );
+		}
+
+		Collections.sort( paths );
+
+		final List< String > strings = new ArrayList<>( paths.size() );
+		for ( Path path : paths )
+			strings.add( path.toString() );
+
+		return strings;
+	}
+
+	private boolean matches( Path path )
+	{
+		final Path fileName = path.getFileName();
+		return fileName != null && pattern.matcher( fileName.toString() ).matches();
+	}
+
+	// Adds the matching paths within the sub-folder, which has the given depth
+	private void walk( Path subFolder, int depth, List< Path > paths ) throws IOException
+	{
+		for ( Path entry : list( subFolder ) )
+		{
+			if ( matches( entry ) )
+				paths.add( entry );
+
+			if ( depth + 1 < maxDepth && Files.isDirectory( entry, LinkOption.NOFOLLOW_LINKS ) )
+				walk( entry, depth + 1, paths );
+		}
+	}
+
+	private static List< Path > list( Path folder ) throws IOException
+	{
+		final List< Path > entries = new ArrayList<>();
+		try ( DirectoryStream< Path > stream = Files.newDirectoryStream( folder ) )
+		{
+			for ( Path entry : stream )
+				entries.add( entry );
+		}
+		return entries;
+	}
+
+	private static void waitFor( Future< ? > future ) throws IOException
+	{
+		try
+		{
+			future.get();
+		}
+		catch ( InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException( e );
+		}
+		catch ( ExecutionException e )
+		{
+			if ( e.getCause() instanceof UncheckedIOException )
+				throw ( ( UncheckedIOException ) e.getCause() ).getCause();
+			throw new RuntimeException( e.getCause() );
+		}
+	}
+
+	private class Batch implements Runnable
+	{
+		private final List< Path > entries;
+		private final AtomicBoolean started = new AtomicBoolean( false );
+		private final List< Path > paths = new ArrayList<>();
+
+		Batch( List< Path > entries )
+		{
+			this.entries = entries;
+		}
+
+		@Override
+		public void run()
+		{
+			// each batch is processed only once,
+			// either by the executor or by the calling thread
+			if ( started.getAndSet( true ) )
+				return;
+
+			try
+			{
+				for ( Path entry : entries )
+				{
+					if ( matches( entry ) )
+						paths.add( entry );
+
+					if ( maxDepth > 1 && Files.isDirectory( entry, LinkOption.NOFOLLOW_LINKS ) )
+						walk( entry, 1, paths );
+				}
+			}
+			catch ( IOException e )
+			{
+				throw new UncheckedIOException( e );
+			}
+		}
+
+		List< Path > getPaths()
+		{
+			return paths;
+		}
+	}
+}
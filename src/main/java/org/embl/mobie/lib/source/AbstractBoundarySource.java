@@ -48,6 +48,8 @@ public abstract class AbstractBoundarySource< T > implements Source< T >, Source
     protected double boundaryWidth;
     protected ArrayList< Integer > boundaryDimensions;
     protected RealInterval bounds;
+    @Nullable
+    protected BoundaryMasks< ? > boundaryMasks;
 
     public AbstractBoundarySource( final Source< T > source, boolean showAsBoundaries, float boundaryWidth, @Nullable RealInterval bounds )
     {
@@ -105,7 +107,7 @@ public abstract class AbstractBoundarySource< T > implements Source< T >, Source
             // However, it feels like we could stay longer
             // in physical units here to make this less confusing.
             final double[] pixelUnitsBoundaryWidth = pixelBoundaryWidth( t, level );
-            return createBoundaryRealRandomAccessible( rra, boundaryDimensions, pixelUnitsBoundaryWidth );
+            return createBoundaryRealRandomAccessible( rra, t, level, boundaryDimensions, pixelUnitsBoundaryWidth );
         }
         else
         {
@@ -120,7 +122,20 @@ public abstract class AbstractBoundarySource< T > implements Source< T >, Source
     // the values could be directly created in real space without
     // any backing of a voxel grid. This is in fact the case for the
     // ImageAnnotationLabelImage, which is one use-case of the BoundarySource.
-    protected abstract RealRandomAccessible< T > createBoundaryRealRandomAccessible( RealRandomAccessible< T > rra, ArrayList< Integer > dimensions, double[] pixelUnitsBoundaryWidth );
+    protected abstract RealRandomAccessible< T > createBoundaryRealRandomAccessible( RealRandomAccessible< T > rra, int t, int level, ArrayList< Integer > dimensions, double[] pixelUnitsBoundaryWidth );
+
+    /**
+     * Use precomputed, cached boundary masks, rather than
+     * checking the neighbours of each sample on the fly.
+     * This is only sensible for voxel based label sources.
+     *
+     * @param boundaryMasks
+     *          masks that are computed from the non-volatile labels
+     */
+    public void setBoundaryMasks( @Nullable BoundaryMasks< ? > boundaryMasks )
+    {
+        this.boundaryMasks = boundaryMasks;
+    }
 
     protected ArrayList< Integer > boundaryDimensions()
     {
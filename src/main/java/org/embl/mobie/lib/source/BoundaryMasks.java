@@ -0,0 +1,176 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.source;
+
+import bdv.util.volatiles.VolatileViews;
+import bdv.viewer.Source;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.img.CellLoader;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgFactory;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgOptions;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.type.Type;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.volatiles.VolatileUnsignedByteType;
+import net.imglib2.view.Views;
+import org.embl.mobie.lib.ThreadHelper;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lazily computed, cached masks of the boundary voxels of a label source.
+ *
+ * The masks are computed cell by cell, at most once per timepoint,
+ * resolution level and boundary width, and are kept in a cache
+ * alongside the label data. A volatile view of each mask is provided,
+ * such that the computation happens on the fetcher threads,
+ * as the loading of the label data.
+ *
+ * A voxel is a boundary voxel if it is not background and if, along any
+ * of the boundary dimensions, the voxel at the boundary width in front
+ * or behind has a different value. As for a nearest neighbour
+ * interpolated access at the voxel center, the pixel widths
+ * are rounded to the closest voxel.
+ */
+public class BoundaryMasks< T extends Type< T > >
+{
+	private static final int[] CELL_DIMENSIONS_3D = { 64, 64, 64 };
+	private static final int[] CELL_DIMENSIONS_2D = { 256, 256, 1 };
+
+	private final Source< T > labels;
+
+	private final Map< String, RandomAccessibleInterval< UnsignedByteType > > keyToMask = new ConcurrentHashMap<>();
+	private final Map< String, RandomAccessibleInterval< VolatileUnsignedByteType > > keyToVolatileMask = new ConcurrentHashMap<>();
+
+	public BoundaryMasks( Source< T > labels )
+	{
+		this.labels = labels;
+	}
+
+	public RandomAccessibleInterval< UnsignedByteType > getMask( int t, int level, List< Integer > dimensions, double[] pixelUnitsBoundaryWidth )
+	{
+		final long[][] offsets = offsets( dimensions, pixelUnitsBoundaryWidth );
+		return keyToMask.computeIfAbsent( key( t, level, offsets ), key -> createMask( t, level, offsets ) );
+	}
+
+	public RandomAccessibleInterval< VolatileUnsignedByteType > getVolatileMask( int t, int level, List< Integer > dimensions, double[] pixelUnitsBoundaryWidth )
+	{
+		final long[][] offsets = offsets( dimensions, pixelUnitsBoundaryWidth );
+		return keyToVolatileMask.computeIfAbsent( key( t, level, offsets ), key ->
+		{
+			final RandomAccessibleInterval< UnsignedByteType > mask = keyToMask.computeIfAbsent( key, k -> createMask( t, level, offsets ) );
+			return VolatileViews.wrapAsVolatile( mask, ThreadHelper.sharedQueue );
+		} );
+	}
+
+	/**
+	 * @return for each dimension, the offsets to the neighbour behind and in front,
+	 * or null if the dimension is not a boundary dimension
+	 */
+	static long[][] offsets( List< Integer > dimensions, double[] pixelUnitsBoundaryWidth )
+	{
+		final long[][] offsets = new long[ 3 ][];
+		for ( Integer d : dimensions )
+		{
+			// nearest neighbour of a voxel center moved by -width and +width
+			offsets[ d ] = new long[]{
+					( long ) Math.floor( - pixelUnitsBoundaryWidth[ d ] + 0.5 ),
+					( long ) Math.floor( pixelUnitsBoundaryWidth[ d ] + 0.5 ) };
+		}
+		return offsets;
+	}
+
+	private static String key( int t, int level, long[][] offsets )
+	{
+		return t + "-" + level + "-" + Arrays.deepToString( offsets );
+	}
+
+	private RandomAccessibleInterval< UnsignedByteType > createMask( int t, int level, long[][] offsets )
+	{
+		final RandomAccessibleInterval< T > rai = labels.getSource( t, level );
+		final long[] min = rai.minAsLongArray();
+		final long[] dimensions = rai.dimensionsAsLongArray();
+		final int[] cellDimensions = dimensions[ 2 ] == 1 ? CELL_DIMENSIONS_2D : CELL_DIMENSIONS_3D;
+
+		final T background = labels.getType().createVariable();
+		final RandomAccessible< T > extended = Views.extendValue( rai, background );
+
+		final CellLoader< UnsignedByteType > loader = cell ->
+		{
+			final RandomAccess< T > centerAccess = extended.randomAccess();
+			final RandomAccess< T > neighbourAccess = extended.randomAccess();
+			final Cursor< UnsignedByteType > cursor = cell.localizingCursor();
+			final long[] position = new long[ 3 ];
+
+			while ( cursor.hasNext() )
+			{
+				cursor.fwd();
+				cursor.localize( position );
+				for ( int d = 0; d < 3; d++ )
+					position[ d ] += min[ d ];
+
+				final T center = centerAccess.setPositionAndGet( position );
+				cursor.get().set( isBoundary( center, background, position, neighbourAccess, offsets ) ? 1 : 0 );
+			}
+		};
+
+		final CachedCellImg< UnsignedByteType, ? > mask = new ReadOnlyCachedCellImgFactory(
+				ReadOnlyCachedCellImgOptions.options().cellDimensions( cellDimensions ) )
+				.create( dimensions, new UnsignedByteType(), loader );
+
+		return Views.translate( mask, min );
+	}
+
+	private static < T extends Type< T > > boolean isBoundary( T center, T background, long[] position, RandomAccess< T > neighbourAccess, long[][] offsets )
+	{
+		if ( center.valueEquals( background ) )
+			return false;
+
+		for ( int d = 0; d < 3; d++ )
+		{
+			if ( offsets[ d ] == null ) continue;
+
+			for ( long offset : offsets[ d ] )
+			{
+				neighbourAccess.setPosition( position );
+				neighbourAccess.move( offset, d );
+				if ( ! neighbourAccess.get().valueEquals( center ) )
+					return true;
+			}
+		}
+
+		return false;
+	}
+}
@@ -33,12 +33,16 @@ import net.imglib2.RealInterval;
 import net.imglib2.RealLocalizable;
 import net.imglib2.RealRandomAccess;
 import net.imglib2.RealRandomAccessible;
+import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory;
 import net.imglib2.position.FunctionRealRandomAccessible;
 import net.imglib2.type.Type;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.view.Views;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 
 public class BoundarySource< T extends Type< T > > extends AbstractBoundarySource< T >
 {
@@ -47,41 +51,75 @@ public class BoundarySource< T extends Type< T > > extends AbstractBoundarySourc
         super( source, showAsBoundaries, boundaryWidth, bounds );
     }
 
-    protected RealRandomAccessible< T > createBoundaryRealRandomAccessible( RealRandomAccessible< T > rra, ArrayList< Integer > dimensions, double[] pixelUnitsBoundaryWidth )
+    protected RealRandomAccessible< T > createBoundaryRealRandomAccessible( RealRandomAccessible< T > rra, int t, int level, ArrayList< Integer > dimensions, double[] pixelUnitsBoundaryWidth )
     {
-        BiConsumer< RealLocalizable, T > biConsumer = ( l, output ) ->
+        if ( boundaryMasks != null )
+            return createMaskedRealRandomAccessible( rra, t, level, dimensions, pixelUnitsBoundaryWidth );
+
+        // one function per access, such that the
+        // evaluation of the samples does not allocate
+        Supplier< BiConsumer< RealLocalizable, ? super T > > boundaries = () ->
         {
             final RealRandomAccess< T > access = rra.realRandomAccess();
-            final T pixelValue = access.setPositionAndGet( l ).copy();
+            final T pixelValue = getType().createVariable();
             // assumes that the default variable is the background value
-            final T background = pixelValue.createVariable();
+            final T background = getType().createVariable();
+
+            return ( l, output ) ->
+            {
+                pixelValue.set( access.setPositionAndGet( l ) );
 
-            // set to background
-            output.set( background );
+                // set to background
+                output.set( background );
 
-            if ( pixelValue.valueEquals( background ) )
-                return;
+                if ( pixelValue.valueEquals( background ) )
+                    return;
 
-            // check whether input is a boundary pixel
-            for ( Integer d : dimensions )
-            {
-                for ( int signum = -1; signum <= +1; signum+=2 ) // back and forth
+                // check whether input is a boundary pixel
+                for ( Integer d : dimensions )
                 {
-                    access.move( signum * pixelUnitsBoundaryWidth[ d ], d );
-                    final T neighbourValue = access.get();
-                    if ( ! neighbourValue.valueEquals( pixelValue )  )
+                    for ( int signum = -1; signum <= +1; signum+=2 ) // back and forth
                     {
-                        // input is a non-background boundary pixel...
-                        // ...thus it keeps its value
-                        output.set( pixelValue );
-                        return;
+                        access.move( signum * pixelUnitsBoundaryWidth[ d ], d );
+                        final T neighbourValue = access.get();
+                        if ( ! neighbourValue.valueEquals( pixelValue )  )
+                        {
+                            // input is a non-background boundary pixel...
+                            // ...thus it keeps its value
+                            output.set( pixelValue );
+                            return;
+                        }
+                        // move back to center
+                        access.move( - signum * pixelUnitsBoundaryWidth[ d ], d );
                     }
-                    // move back to center
-                    access.move( - signum * pixelUnitsBoundaryWidth[ d ], d );
                 }
-            }
+            };
+        };
+
+        return new FunctionRealRandomAccessible<>( 3, boundaries, () -> getType().createVariable() );
+    }
+
+    private RealRandomAccessible< T > createMaskedRealRandomAccessible( RealRandomAccessible< T > rra, int t, int level, ArrayList< Integer > dimensions, double[] pixelUnitsBoundaryWidth )
+    {
+        final RealRandomAccessible< UnsignedByteType > mask = Views.interpolate(
+                Views.extendZero( boundaryMasks.getMask( t, level, dimensions, pixelUnitsBoundaryWidth ) ),
+                new NearestNeighborInterpolatorFactory<>() );
+
+        Supplier< BiConsumer< RealLocalizable, ? super T > > boundaries = () ->
+        {
+            final RealRandomAccess< T > access = rra.realRandomAccess();
+            final RealRandomAccess< UnsignedByteType > maskAccess = mask.realRandomAccess();
+            final T background = getType().createVariable();
+
+            return ( l, output ) ->
+            {
+                if ( maskAccess.setPositionAndGet( l ).get() == 0 )
+                    output.set( background );
+                else
+                    output.set( access.setPositionAndGet( l ) );
+            };
         };
 
-        return new FunctionRealRandomAccessible( 3, biConsumer, () -> getType().createVariable() );
+        return new FunctionRealRandomAccessible<>( 3, boundaries, () -> getType().createVariable() );
     }
 }
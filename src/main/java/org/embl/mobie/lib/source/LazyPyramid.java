@@ -0,0 +1,230 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.source;
+
+import bdv.cache.SharedQueue;
+import bdv.util.volatiles.VolatileViews;
+import bdv.viewer.Source;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.Volatile;
+import net.imglib2.cache.img.CellLoader;
+import net.imglib2.cache.img.DiskCachedCellImgFactory;
+import net.imglib2.cache.img.DiskCachedCellImgOptions;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.view.Views;
+import org.embl.mobie.lib.image.DefaultSourcePair;
+import org.embl.mobie.lib.image.SourcePair;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * Lazily computed downsampling pyramid for sources that only
+ * have a single resolution level, such as the sites of
+ * a high content screening plate that are stored as plain TIFF files.
+ *
+ * Each level is downsampled by a factor of two in x and y
+ * with respect to the previous level, averaging 2x2 voxels.
+ * The cells of each level are computed on first access, from the
+ * previous level, and kept in a disk-backed cell cache; evicted cells are
+ * thus read back from disk rather than being recomputed from the image files.
+ * Consequently, an overview of many sites only touches the full resolution
+ * data once per site.
+ *
+ * The disk caches of all pyramids of the process are stored in one temporary
+ * root directory, in a directory per source (site), time point and level.
+ */
+public class LazyPyramid< T extends RealType< T > & NativeType< T > >
+{
+	public static final int MAX_THUMBNAIL_SIZE = 128;
+	public static final int MAX_NUM_LEVELS = 8;
+
+	private static final int[] CELL_DIMENSIONS = { 256, 256, 1 };
+
+	private static Path cacheRoot;
+
+	private final Source< T > source;
+	private final int numMipmapLevels;
+	private final Map< String, RandomAccessibleInterval< T > > keyToLevel = new HashMap<>();
+
+	public LazyPyramid( Source< T > source )
+	{
+		this.source = source;
+		this.numMipmapLevels = getNumMipmapLevels( source.getSource( 0, 0 ).dimensionsAsLongArray() );
+	}
+
+	/**
+	 * @param source
+	 * 			a source with a single resolution level
+	 * @param volatileSource
+	 * 			the volatile version of the source
+	 * @param sharedQueue
+	 * 			the queue on which the volatile levels are loaded
+	 * @return the multi-resolution sources, or the input sources if
+	 * 			the input is small enough to not need a pyramid
+	 */
+	public static < T extends RealType< T > & NativeType< T >, V extends Volatile< T > > SourcePair< T > createSourcePair(
+			Source< T > source,
+			Source< V > volatileSource,
+			SharedQueue sharedQueue )
+	{
+		final LazyPyramid< T > pyramid = new LazyPyramid<>( source );
+
+		if ( source.getNumMipmapLevels() > 1 || pyramid.numMipmapLevels == 1 )
+			return new DefaultSourcePair<>( source, volatileSource );
+
+		final LazyPyramidSource< T > pyramidSource = new LazyPyramidSource<>( source, pyramid.numMipmapLevels, pyramid::getLevel );
+
+		final BiFunction< Integer, Integer, RandomAccessibleInterval > volatileLevels =
+				( t, level ) -> VolatileViews.wrapAsVolatile( pyramid.getLevel( t, level ), sharedQueue );
+		final LazyPyramidSource volatilePyramidSource = new LazyPyramidSource( volatileSource, pyramid.numMipmapLevels, volatileLevels );
+
+		return new DefaultSourcePair<>( pyramidSource, volatilePyramidSource );
+	}
+
+	public static int getNumMipmapLevels( long[] dimensions )
+	{
+		int numLevels = 1;
+		long size = Math.max( dimensions[ 0 ], dimensions[ 1 ] );
+		while ( size > MAX_THUMBNAIL_SIZE && numLevels < MAX_NUM_LEVELS )
+		{
+			size = ( size + 1 ) / 2;
+			numLevels++;
+		}
+		return numLevels;
+	}
+
+	/**
+	 * The transformation from the voxel grid of the given level
+	 * to the voxel grid of the full resolution level.
+	 * The voxel centres of a downsampled level lie in the centres of the
+	 * voxels that have been averaged.
+	 */
+	public static AffineTransform3D getDownsamplingTransform( int level )
+	{
+		final double factor = 1 << level;
+		final AffineTransform3D transform = new AffineTransform3D();
+		transform.scale( factor, factor, 1.0 );
+		transform.translate( 0.5 * ( factor - 1 ), 0.5 * ( factor - 1 ), 0.0 );
+		return transform;
+	}
+
+	public int getNumMipmapLevels()
+	{
+		return numMipmapLevels;
+	}
+
+	public synchronized RandomAccessibleInterval< T > getLevel( int t, int level )
+	{
+		if ( level == 0 )
+			return source.getSource( t, 0 );
+
+		final String key = t + "-" + level;
+		if ( ! keyToLevel.containsKey( key ) )
+			keyToLevel.put( key, downsample( getLevel( t, level - 1 ), "t" + t + "-s" + level ) );
+
+		return keyToLevel.get( key );
+	}
+
+	private RandomAccessibleInterval< T > downsample( RandomAccessibleInterval< T > input, String levelKey )
+	{
+		final long[] min = input.minAsLongArray();
+		final long[] dimensions = input.dimensionsAsLongArray();
+		dimensions[ 0 ] = ( dimensions[ 0 ] + 1 ) / 2;
+		dimensions[ 1 ] = ( dimensions[ 1 ] + 1 ) / 2;
+
+		// for odd dimensions, the last voxel is averaged with itself
+		final RandomAccessible< T > extended = Views.extendBorder( input );
+
+		final CellLoader< T > loader = cell ->
+		{
+			final RandomAccess< T > access = extended.randomAccess();
+			final Cursor< T > cursor = cell.localizingCursor();
+			final long[] position = new long[ 3 ];
+
+			while ( cursor.hasNext() )
+			{
+				cursor.fwd();
+				position[ 0 ] = min[ 0 ] + 2 * cursor.getLongPosition( 0 );
+				position[ 1 ] = min[ 1 ] + 2 * cursor.getLongPosition( 1 );
+				position[ 2 ] = min[ 2 ] + cursor.getLongPosition( 2 );
+
+				access.setPosition( position );
+				double sum = access.get().getRealDouble();
+				access.fwd( 0 );
+				sum += access.get().getRealDouble();
+				access.fwd( 1 );
+				sum += access.get().getRealDouble();
+				access.bck( 0 );
+				sum += access.get().getRealDouble();
+
+				cursor.get().setReal( 0.25 * sum );
+			}
+		};
+
+		// the factory creates a unique directory with this prefix in the cache root
+		final String prefix = source.getName().replaceAll( "[^A-Za-z0-9_.-]", "_" ) + "-" + levelKey + "-";
+
+		return new DiskCachedCellImgFactory<>(
+				source.getType().createVariable(),
+				DiskCachedCellImgOptions.options()
+						.cellDimensions( CELL_DIMENSIONS )
+						.tempDirectory( getCacheRoot() )
+						.tempDirectoryPrefix( prefix ) )
+				.create( dimensions, loader );
+	}
+
+	private static synchronized Path getCacheRoot()
+	{
+		if ( cacheRoot == null )
+		{
+			try
+			{
+				cacheRoot = Files.createTempDirectory( "mobie-lazy-pyramids-" );
+				// deleted after the cache directories within it
+				cacheRoot.toFile().deleteOnExit();
+			}
+			catch ( IOException e )
+			{
+				throw new RuntimeException( e );
+			}
+		}
+
+		return cacheRoot;
+	}
+}
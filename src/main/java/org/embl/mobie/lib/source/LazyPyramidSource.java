@@ -0,0 +1,133 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.source;
+
+import bdv.util.DefaultInterpolators;
+import bdv.viewer.Interpolation;
+import bdv.viewer.Source;
+import mpicbg.spim.data.sequence.VoxelDimensions;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealRandomAccessible;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.NumericType;
+import net.imglib2.view.Views;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * A multi-resolution source on top of the full resolution level
+ * of another source.
+ *
+ * The lower resolution levels are provided by a function of
+ * the timepoint and the level, which is called at most once
+ * per timepoint and level. Each level is downsampled by a factor of two
+ * in x and y with respect to the previous level, see {@link LazyPyramid}.
+ */
+public class LazyPyramidSource< T extends NumericType< T > > implements Source< T >
+{
+	private final Source< T > source;
+	private final int numMipmapLevels;
+	private final BiFunction< Integer, Integer, RandomAccessibleInterval< T > > levelSupplier;
+	private final Map< String, RandomAccessibleInterval< T > > keyToLevel = new ConcurrentHashMap<>();
+	private final DefaultInterpolators< T > interpolators = new DefaultInterpolators<>();
+
+	public LazyPyramidSource( Source< T > source, int numMipmapLevels, BiFunction< Integer, Integer, RandomAccessibleInterval< T > > levelSupplier )
+	{
+		this.source = source;
+		this.numMipmapLevels = numMipmapLevels;
+		this.levelSupplier = levelSupplier;
+	}
+
+	@Override
+	public boolean isPresent( int t )
+	{
+		return source.isPresent( t );
+	}
+
+	@Override
+	public RandomAccessibleInterval< T > getSource( int t, int level )
+	{
+		if ( level == 0 )
+			return source.getSource( t, 0 );
+
+		return keyToLevel.computeIfAbsent( t + "-" + level, key -> levelSupplier.apply( t, level ) );
+	}
+
+	@Override
+	public RealRandomAccessible< T > getInterpolatedSource( int t, int level, Interpolation method )
+	{
+		if ( level == 0 )
+			return source.getInterpolatedSource( t, 0, method );
+
+		return Views.interpolate( Views.extendZero( getSource( t, level ) ), interpolators.get( method ) );
+	}
+
+	@Override
+	public void getSourceTransform( int t, int level, AffineTransform3D transform )
+	{
+		source.getSourceTransform( t, 0, transform );
+
+		if ( level == 0 )
+			return;
+
+		transform.concatenate( LazyPyramid.getDownsamplingTransform( level ) );
+	}
+
+	@Override
+	public T getType()
+	{
+		return source.getType();
+	}
+
+	@Override
+	public String getName()
+	{
+		return source.getName();
+	}
+
+	@Override
+	public VoxelDimensions getVoxelDimensions()
+	{
+		return source.getVoxelDimensions();
+	}
+
+	@Override
+	public int getNumMipmapLevels()
+	{
+		return numMipmapLevels;
+	}
+
+	@Override
+	public boolean doBoundingBoxCulling()
+	{
+		return source.doBoundingBoxCulling();
+	}
+}
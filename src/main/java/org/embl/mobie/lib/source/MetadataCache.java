@@ -0,0 +1,265 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.source;
+
+import bdv.viewer.Source;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.util.Intervals;
+import org.embl.mobie.io.ImageDataOpener;
+import org.embl.mobie.io.imagedata.ImageData;
+import org.embl.mobie.lib.ThreadHelper;
+import org.janelia.saalfeldlab.n5.universe.metadata.canonical.CanonicalDatasetMetadata;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide cache of the {@code Metadata} of image files,
+ * such that the channels of one file, or the repeated
+ * opening of the same files, only open the file once.
+ *
+ * Files are identified by their canonical path and their
+ * modification time, thus a file that is modified
+ * is opened again. For remote images only the URI is used.
+ */
+public class MetadataCache
+{
+	// the opened images are only kept for the most recent files,
+	// as they may hold on to a lot of memory
+	public static final int MAX_NUM_IMAGE_DATA = 8;
+
+	// contrast limits are only computed from the lowest resolution
+	// level if it has fewer voxels than this
+	public static final long MAX_NUM_ELEMENTS_FOR_CONTRAST_LIMITS = 1024 * 1024;
+
+	private static final Map< Key, Map< Integer, Metadata > > keyToChannelMetadata = new ConcurrentHashMap<>();
+
+	private static final Map< Key, ImageData< ? > > keyToImageData = new LinkedHashMap< Key, ImageData< ? > >( 16, 0.75f, true )
+	{
+		@Override
+		protected boolean removeEldestEntry( Map.Entry< Key, ImageData< ? > > eldest )
+		{
+			return size() > MAX_NUM_IMAGE_DATA;
+		}
+	};
+
+	private static final AtomicLong numHits = new AtomicLong();
+	private static final AtomicLong numMisses = new AtomicLong();
+	private static final AtomicLong numOpened = new AtomicLong();
+
+	/**
+	 * @param path
+	 * 			file path or URI of the image
+	 * @param channel
+	 * 			the channel within the image
+	 * @return a copy of the cached metadata, which the caller may modify
+	 */
+	public static Metadata getMetadata( String path, int channel )
+	{
+		final Key key = Key.of( path );
+		final Map< Integer, Metadata > channelToMetadata = keyToChannelMetadata.computeIfAbsent( key, k -> new ConcurrentHashMap<>() );
+
+		Metadata metadata = channelToMetadata.get( channel );
+		if ( metadata != null )
+		{
+			numHits.incrementAndGet();
+			return copy( metadata );
+		}
+
+		// Different channels of the same image are
+		// fetched one after the other, such that the image
+		// is only opened once.
+		synchronized ( channelToMetadata )
+		{
+			metadata = channelToMetadata.get( channel );
+			if ( metadata != null )
+			{
+				numHits.incrementAndGet();
+				return copy( metadata );
+			}
+
+			numMisses.incrementAndGet();
+			metadata = fetchMetadata( getImageData( key ), channel );
+			channelToMetadata.put( channel, metadata );
+			return copy( metadata );
+		}
+	}
+
+	/**
+	 * @return the opened image; the same instance is returned for
+	 * 			repeated calls, as long as the file is not modified
+	 * 			and has not been evicted from the cache.
+	 */
+	public static ImageData< ? > getImageData( String path )
+	{
+		return getImageData( Key.of( path ) );
+	}
+
+	private static ImageData< ? > getImageData( Key key )
+	{
+		synchronized ( keyToImageData )
+		{
+			final ImageData< ? > imageData = keyToImageData.get( key );
+			if ( imageData != null )
+				return imageData;
+		}
+
+		// open outside the lock, such that different files can be opened in parallel
+		final ImageData< ? > imageData = ImageDataOpener.open( key.path, ThreadHelper.sharedQueue );
+		numOpened.incrementAndGet();
+
+		synchronized ( keyToImageData )
+		{
+			keyToImageData.put( key, imageData );
+		}
+
+		return imageData;
+	}
+
+	private static Metadata fetchMetadata( ImageData< ? > imageData, int channel )
+	{
+		CanonicalDatasetMetadata canonicalDatasetMetadata = imageData.getMetadata( channel );
+		Metadata metadata = new Metadata( canonicalDatasetMetadata );
+		Source< ? > source = imageData.getSourcePair( channel ).getA();
+		RandomAccessibleInterval< ? > highResRAI = source.getSource( 0, 0 );
+		metadata.numZSlices = ( int ) highResRAI.dimension( 2 );
+		metadata.numTimePoints = SourceHelper.getNumTimePoints( source );
+
+		// determine contrast limits, if affordable
+		RandomAccessibleInterval< ? > lowResRAI = source.getSource( 0, source.getNumMipmapLevels() - 1 );
+		long numElements = Intervals.numElements( lowResRAI.dimensionsAsLongArray() );
+		if ( numElements < MAX_NUM_ELEMENTS_FOR_CONTRAST_LIMITS )
+			metadata.contrastLimits = SourceHelper.estimateMinMax( ( RandomAccessibleInterval ) lowResRAI );
+
+		return metadata;
+	}
+
+	private static Metadata copy( Metadata metadata )
+	{
+		final Metadata copy = new Metadata();
+		copy.color = metadata.color;
+		copy.contrastLimits = metadata.contrastLimits == null ? null : metadata.contrastLimits.clone();
+		copy.numTimePoints = metadata.numTimePoints;
+		copy.numZSlices = metadata.numZSlices;
+		copy.numChannelsContainer = metadata.numChannelsContainer;
+		return copy;
+	}
+
+	/**
+	 * @return the number of metadata requests that were served from the cache
+	 */
+	public static long getNumHits()
+	{
+		return numHits.get();
+	}
+
+	/**
+	 * @return the number of metadata requests for which the image had to be read
+	 */
+	public static long getNumMisses()
+	{
+		return numMisses.get();
+	}
+
+	/**
+	 * @return the number of times that an image was opened
+	 */
+	public static long getNumOpened()
+	{
+		return numOpened.get();
+	}
+
+	public static void clear()
+	{
+		keyToChannelMetadata.clear();
+		synchronized ( keyToImageData )
+		{
+			keyToImageData.clear();
+		}
+		numHits.set( 0 );
+		numMisses.set( 0 );
+		numOpened.set( 0 );
+	}
+
+	static class Key
+	{
+		final String path;
+		final String canonicalPath;
+		final long lastModified;
+
+		private Key( String path, String canonicalPath, long lastModified )
+		{
+			this.path = path;
+			this.canonicalPath = canonicalPath;
+			this.lastModified = lastModified;
+		}
+
+		static Key of( String path )
+		{
+			final File file = new File( path );
+			if ( ! file.exists() )
+			{
+				// e.g. a URI of a remote image
+				return new Key( path, path, 0 );
+			}
+
+			String canonicalPath;
+			try
+			{
+				canonicalPath = file.getCanonicalPath();
+			}
+			catch ( IOException e )
+			{
+				canonicalPath = file.getAbsolutePath();
+			}
+
+			return new Key( path, canonicalPath, file.lastModified() );
+		}
+
+		@Override
+		public boolean equals( Object o )
+		{
+			if ( this == o ) return true;
+			if ( ! ( o instanceof Key ) ) return false;
+			final Key key = ( Key ) o;
+			return lastModified == key.lastModified && canonicalPath.equals( key.canonicalPath );
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return Objects.hash( canonicalPath, lastModified );
+		}
+	}
+}
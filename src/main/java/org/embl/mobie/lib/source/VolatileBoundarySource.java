@@ -34,12 +34,16 @@ import net.imglib2.RealLocalizable;
 import net.imglib2.RealRandomAccess;
 import net.imglib2.RealRandomAccessible;
 import net.imglib2.Volatile;
+import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory;
 import net.imglib2.position.FunctionRealRandomAccessible;
 import net.imglib2.type.Type;
+import net.imglib2.type.volatiles.VolatileUnsignedByteType;
+import net.imglib2.view.Views;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 
 public class VolatileBoundarySource< T extends Type< T >, V extends Volatile< T > & Type< V > > extends AbstractBoundarySource< V >
 {
@@ -49,61 +53,115 @@ public class VolatileBoundarySource< T extends Type< T >, V extends Volatile< T
     }
 
     @Override
-    protected RealRandomAccessible< V > createBoundaryRealRandomAccessible( RealRandomAccessible< V > rra, ArrayList< Integer > boundaryDimensions, double[] pixelUnitsBoundaryWidth )
+    protected RealRandomAccessible< V > createBoundaryRealRandomAccessible( RealRandomAccessible< V > rra, int t, int level, ArrayList< Integer > boundaryDimensions, double[] pixelUnitsBoundaryWidth )
     {
-        BiConsumer< RealLocalizable, V > boundaries = ( l, output ) ->
+        final V type = getType().createVariable();
+
+        if ( boundaryMasks != null )
+            return createMaskedRealRandomAccessible( rra, type, t, level, boundaryDimensions, pixelUnitsBoundaryWidth );
+
+        // one function per access, such that the
+        // evaluation of the samples does not allocate
+        Supplier< BiConsumer< RealLocalizable, ? super V > > boundaries = () ->
         {
             final RealRandomAccess< V > access = rra.realRandomAccess();
-            final V input = access.setPositionAndGet( l ).copy();
-            if ( ! input.isValid() )
-            {
-                output.setValid( false );
-                return;
-            }
-
+            final V input = type.createVariable();
             // assumes that the default variable is the background value
-            final V background = input.createVariable();
+            final V background = type.createVariable();
 
-            // set to valid background
-            output.set( background );
-            output.setValid( true );
-
-            if ( input.valueEquals( background )  )
-                return;
-
-            // ...unless it is a boundary pixel
-            for ( Integer d : boundaryDimensions )
+            return ( l, output ) ->
             {
-                for ( int signum = -1; signum <= +1; signum +=2  ) // back and forth
+                input.set( access.setPositionAndGet( l ) );
+                if ( ! input.isValid() )
                 {
-                    access.move( signum * pixelUnitsBoundaryWidth[ d ], d );
+                    output.setValid( false );
+                    return;
+                }
 
-                    if ( ! access.get().isValid() )
-                    {
-                        // a pixel around the input is not valid
-                        // thus we cannot yet determine whether
-                        // it is a boundary pixel
-                        output.setValid( false );
-                        return;
-                    }
+                // set to valid background
+                output.set( background );
+                output.setValid( true );
+
+                if ( input.valueEquals( background )  )
+                    return;
 
-                    if ( ! access.get().valueEquals( input )  )
+                // ...unless it is a boundary pixel
+                for ( Integer d : boundaryDimensions )
+                {
+                    for ( int signum = -1; signum <= +1; signum +=2  ) // back and forth
                     {
-                        // a pixel around the input
-                        // has a different value,
-                        // thus the input is a boundary pixel,
-                        // thus it keeps its value
-                        output.set( input );
-                        return;
+                        access.move( signum * pixelUnitsBoundaryWidth[ d ], d );
+
+                        if ( ! access.get().isValid() )
+                        {
+                            // a pixel around the input is not valid
+                            // thus we cannot yet determine whether
+                            // it is a boundary pixel
+                            output.setValid( false );
+                            return;
+                        }
+
+                        if ( ! access.get().valueEquals( input )  )
+                        {
+                            // a pixel around the input
+                            // has a different value,
+                            // thus the input is a boundary pixel,
+                            // thus it keeps its value
+                            output.set( input );
+                            return;
+                        }
+
+                        access.move( - signum * pixelUnitsBoundaryWidth[ d ], d ); // move back to center
                     }
+                }
+            };
+        };
 
-                    access.move( - signum * pixelUnitsBoundaryWidth[ d ], d ); // move back to center
+        return new FunctionRealRandomAccessible<>( 3, boundaries, type::createVariable );
+    }
+
+    private RealRandomAccessible< V > createMaskedRealRandomAccessible( RealRandomAccessible< V > rra, V type, int t, int level, ArrayList< Integer > boundaryDimensions, double[] pixelUnitsBoundaryWidth )
+    {
+        final RealRandomAccessible< VolatileUnsignedByteType > mask = Views.interpolate(
+                Views.extendValue( boundaryMasks.getVolatileMask( t, level, boundaryDimensions, pixelUnitsBoundaryWidth ), new VolatileUnsignedByteType( 0 ) ),
+                new NearestNeighborInterpolatorFactory<>() );
+
+        Supplier< BiConsumer< RealLocalizable, ? super V > > boundaries = () ->
+        {
+            final RealRandomAccess< V > access = rra.realRandomAccess();
+            final RealRandomAccess< VolatileUnsignedByteType > maskAccess = mask.realRandomAccess();
+            final V background = type.createVariable();
+
+            return ( l, output ) ->
+            {
+                final V input = access.setPositionAndGet( l );
+                if ( ! input.isValid() )
+                {
+                    output.setValid( false );
+                    return;
+                }
+
+                if ( input.valueEquals( background ) )
+                {
+                    output.set( background );
+                    output.setValid( true );
+                    return;
                 }
-            }
+
+                // the mask is computed from the non-volatile labels,
+                // thus it might not be available yet
+                final VolatileUnsignedByteType isBoundary = maskAccess.setPositionAndGet( l );
+                if ( ! isBoundary.isValid() )
+                {
+                    output.setValid( false );
+                    return;
+                }
+
+                output.set( isBoundary.get().get() == 0 ? background : input );
+                output.setValid( true );
+            };
         };
 
-        final V type = rra.realRandomAccess().get();
-        final FunctionRealRandomAccessible< V > randomAccessible = new FunctionRealRandomAccessible( 3, boundaries, () -> type.createVariable() );
-        return randomAccessible;
+        return new FunctionRealRandomAccessible<>( 3, boundaries, type::createVariable );
     }
 }
@@ -42,6 +42,9 @@ import org.embl.mobie.lib.table.saw.TableSawAnnotationCreator;
 import org.embl.mobie.lib.table.saw.TableSawAnnotationTableModel;
 import tech.tablesaw.api.StringColumn;
 import tech.tablesaw.api.Table;
+import tech.tablesaw.columns.Column;
+import tech.tablesaw.selection.BitmapBackedSelection;
+import tech.tablesaw.selection.Selection;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -86,22 +89,34 @@ public class RegionDisplayAnnDataCreator
 		final RegionTableSource regionTableSource = ( RegionTableSource ) DataStore.getRawData( regionDisplay.tableSource );
 		tableLocation = moBIE.getTableLocation( regionTableSource.tableData );
 		tableFormat = moBIE.getTableDataFormat( regionTableSource.tableData );
-		table = TableOpener.open( tableLocation, tableFormat );
+
+		// the table has typically been loaded already,
+		// when the region table source was initialised
+		if ( regionTableSource.table == null )
+			regionTableSource.table = TableOpener.open( tableLocation, tableFormat );
 
 		// only keep the subset of rows (regions)
-		// that are actually referred to in regionDisplay
-		final Set< String > regionIDs = regionDisplay.sources.keySet();
-		final ArrayList< Integer > dropRows = new ArrayList<>();
-		final int rowCount = table.rowCount();
+		// that are actually referred to in regionDisplay;
+		// this creates a new table, such that the shared
+		// table of the data source is not modified
+		table = regionTableSource.table.where( selectRegions( regionTableSource.table, regionDisplay.sources.keySet() ) );
+	}
+
+	private static Selection selectRegions( Table table, Set< String > regionIDs )
+	{
+		final Column< ? > column = table.column( ColumnNames.REGION_ID );
+
+		if ( column instanceof StringColumn )
+			return ( ( StringColumn ) column ).isIn( regionIDs );
+
+		// e.g., numeric region ids
+		final Selection selection = new BitmapBackedSelection();
+		final int rowCount = column.size();
 		for ( int rowIndex = 0; rowIndex < rowCount; rowIndex++ )
-		{
-			final String regionId = table.row( rowIndex ).getObject( ColumnNames.REGION_ID ).toString();
-			if ( ! regionIDs.contains( regionId ) )
-				dropRows.add( rowIndex );
-		}
+			if ( regionIDs.contains( column.get( rowIndex ).toString() ) )
+				selection.add( rowIndex );
 
-		if ( dropRows.size() > 0 )
-			table = table.dropRows( dropRows.stream().mapToInt( i -> i ).toArray() );
+		return selection;
 	}
 
 	private void createTable()
@@ -29,6 +29,7 @@
 package org.embl.mobie.lib.table.saw;
 
 import org.embl.mobie.lib.annotation.Annotation;
+import tech.tablesaw.api.Table;
 
 public abstract class AbstractTableSawAnnotation implements Annotation
 {
@@ -51,7 +52,8 @@ public abstract class AbstractTableSawAnnotation implements Annotation
 	{
 		try
 		{
-            return model.getTable().get( rowIndex, model.getTable().columnIndex( feature ) );
+            final Table table = model.getTable();
+            return table.get( rowIndex, table.columnIndex( feature ) );
 		}
 		catch ( Exception e )
 		{
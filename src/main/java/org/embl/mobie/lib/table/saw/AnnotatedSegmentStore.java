@@ -0,0 +1,289 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.table.saw;
+
+import net.imglib2.FinalRealInterval;
+import net.imglib2.RealInterval;
+import net.imglib2.realtransform.AffineTransform3D;
+import org.embl.mobie.lib.volume.MeshTransformer;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Columnar storage of the coordinates and ids of the rows of a segment table.
+ *
+ * The {@code TableSawAnnotatedSegment}s only reference their row in this store,
+ * which avoids several objects per row for tables with millions of segments.
+ *
+ * Transformations of all rows are composed into one affine transformation,
+ * which is applied when the coordinates are read.
+ *
+ * Different rows may be written concurrently.
+ */
+public class AnnotatedSegmentStore
+{
+	private final int numRows;
+	private final int[] labelIds;
+	private final int[] timePoints;
+	private final String[] sources; // interned, i.e. one String object per source
+	private final double[] positions; // x,y,z per row
+	private volatile double[] boundingBoxes; // min x,y,z and max x,y,z per row; NaN if missing
+	private final Map< Integer, float[] > meshes = new ConcurrentHashMap<>(); // only few segments have a mesh
+	private final Map< String, String > sourcePool = new ConcurrentHashMap<>();
+
+	// The transformation of the stored coordinates.
+	// Published instances are not modified.
+	private volatile ComposedTransform composedTransform = new ComposedTransform( null );
+
+	public AnnotatedSegmentStore( int numRows, boolean hasBoundingBoxes )
+	{
+		this.numRows = numRows;
+		labelIds = new int[ numRows ];
+		timePoints = new int[ numRows ];
+		sources = new String[ numRows ];
+		positions = new double[ 3 * numRows ];
+		if ( hasBoundingBoxes )
+			boundingBoxes = new double[ 6 * numRows ];
+	}
+
+	public int numRows()
+	{
+		return numRows;
+	}
+
+	// Must be called before any transformation
+	void set( int row, String source, int labelId, int timePoint, double[] position )
+	{
+		sources[ row ] = sourcePool.computeIfAbsent( source, s -> s );
+		labelIds[ row ] = labelId;
+		timePoints[ row ] = timePoint;
+		System.arraycopy( position, 0, positions, 3 * row, 3 );
+	}
+
+	int labelId( int row )
+	{
+		return labelIds[ row ];
+	}
+
+	int timePoint( int row )
+	{
+		return timePoints[ row ];
+	}
+
+	String source( int row )
+	{
+		return sources[ row ];
+	}
+
+	double position( int row, int d )
+	{
+		final double[] m = composedTransform.matrix;
+		final int i = 3 * row;
+		if ( m == null )
+			return positions[ i + d ];
+
+		final int o = 4 * d;
+		return m[ o ] * positions[ i ] + m[ o + 1 ] * positions[ i + 1 ] + m[ o + 2 ] * positions[ i + 2 ] + m[ o + 3 ];
+	}
+
+	double[] position( int row )
+	{
+		final double[] position = Arrays.copyOfRange( positions, 3 * row, 3 * row + 3 );
+		final AffineTransform3D transform = composedTransform.transform;
+		if ( transform != null )
+			transform.apply( position, position );
+		return position;
+	}
+
+	RealInterval boundingBox( int row )
+	{
+		final RealInterval boundingBox = storedBoundingBox( row );
+		final AffineTransform3D transform = composedTransform.transform;
+		if ( boundingBox == null || transform == null )
+			return boundingBox;
+
+		return transform.estimateBounds( boundingBox );
+	}
+
+	private RealInterval storedBoundingBox( int row )
+	{
+		final double[] boundingBoxes = this.boundingBoxes;
+		if ( boundingBoxes == null || Double.isNaN( boundingBoxes[ 6 * row ] ) )
+			return null;
+
+		return new FinalRealInterval(
+				Arrays.copyOfRange( boundingBoxes, 6 * row, 6 * row + 3 ),
+				Arrays.copyOfRange( boundingBoxes, 6 * row + 3, 6 * row + 6 ) );
+	}
+
+	void setBoundingBox( int row, RealInterval boundingBox )
+	{
+		final AffineTransform3D transform = composedTransform.transform;
+		if ( boundingBox != null && transform != null )
+			boundingBox = transform.inverse().estimateBounds( boundingBox );
+
+		setStoredBoundingBox( row, boundingBox );
+	}
+
+	private void setStoredBoundingBox( int row, RealInterval boundingBox )
+	{
+		double[] boundingBoxes = this.boundingBoxes;
+		if ( boundingBoxes == null )
+		{
+			if ( boundingBox == null ) return;
+
+			synchronized ( this )
+			{
+				if ( this.boundingBoxes == null )
+				{
+					final double[] missing = new double[ 6 * numRows ];
+					Arrays.fill( missing, Double.NaN );
+					this.boundingBoxes = missing;
+				}
+				boundingBoxes = this.boundingBoxes;
+			}
+		}
+
+		if ( boundingBox == null )
+		{
+			Arrays.fill( boundingBoxes, 6 * row, 6 * row + 6, Double.NaN );
+			return;
+		}
+
+		for ( int d = 0; d < 3; d++ )
+		{
+			boundingBoxes[ 6 * row + d ] = d < boundingBox.numDimensions() ? boundingBox.realMin( d ) : 0;
+			boundingBoxes[ 6 * row + 3 + d ] = d < boundingBox.numDimensions() ? boundingBox.realMax( d ) : 0;
+		}
+	}
+
+	float[] mesh( int row )
+	{
+		final ComposedTransform composedTransform = this.composedTransform;
+		if ( composedTransform.transform == null )
+			return meshes.get( row );
+
+		final float[] mesh = meshes.get( row );
+		if ( mesh == null )
+			return null;
+
+		return composedTransform.meshes.computeIfAbsent( row, r -> MeshTransformer.transform( mesh, composedTransform.transform ) );
+	}
+
+	void setMesh( int row, float[] mesh )
+	{
+		final ComposedTransform composedTransform = this.composedTransform;
+		composedTransform.meshes.remove( row );
+
+		if ( mesh == null )
+		{
+			meshes.remove( row );
+			return;
+		}
+
+		if ( composedTransform.transform == null )
+		{
+			meshes.put( row, mesh );
+		}
+		else
+		{
+			meshes.put( row, MeshTransformer.transform( mesh, composedTransform.transform.inverse() ) );
+			composedTransform.meshes.put( row, mesh );
+		}
+	}
+
+	// Transforms a single row
+	synchronized void transform( int row, AffineTransform3D affineTransform3D )
+	{
+		final double[] position = position( row );
+		affineTransform3D.apply( position, position );
+		final AffineTransform3D transform = composedTransform.transform;
+		if ( transform != null )
+			transform.applyInverse( position, position );
+		System.arraycopy( position, 0, positions, 3 * row, 3 );
+
+		final RealInterval boundingBox = boundingBox( row );
+		if ( boundingBox != null )
+			setBoundingBox( row, affineTransform3D.estimateBounds( boundingBox ) );
+
+		final float[] mesh = mesh( row );
+		if ( mesh != null )
+			setMesh( row, MeshTransformer.transform( mesh, affineTransform3D ) );
+	}
+
+	/**
+	 * Concatenates the transformation to the transformation of
+	 * all rows; this does not touch the stored coordinates.
+	 *
+	 * @param affineTransform3D
+	 * 			the transformation that is applied after the current one
+	 */
+	public synchronized void transform( AffineTransform3D affineTransform3D )
+	{
+		final AffineTransform3D transform = composedTransform.transform;
+		final AffineTransform3D composed = transform == null ? new AffineTransform3D() : transform.copy();
+		composed.preConcatenate( affineTransform3D );
+		composedTransform = new ComposedTransform( composed );
+	}
+
+	/**
+	 * @return an estimate of the memory that is used by this store, in bytes
+	 */
+	public long estimateBytes()
+	{
+		long bytes = 4L * numRows * 3 + 8L * positions.length;
+		if ( boundingBoxes != null )
+			bytes += 8L * boundingBoxes.length;
+		for ( float[] mesh : meshes.values() )
+			bytes += 4L * mesh.length;
+		return bytes;
+	}
+
+	/*
+	 * The transformation of all rows, null if identity, together with its
+	 * row packed matrix and the meshes that have been transformed by it.
+	 * The instance is replaced rather than modified if the transformation
+	 * changes, such that readers always see a consistent transformation
+	 * and a mesh that is computed with a previous transformation is never cached.
+	 */
+	private static class ComposedTransform
+	{
+		private final AffineTransform3D transform;
+		private final double[] matrix;
+		private final Map< Integer, float[] > meshes = new ConcurrentHashMap<>();
+
+		private ComposedTransform( AffineTransform3D transform )
+		{
+			this.transform = transform;
+			this.matrix = transform == null ? null : transform.getRowPackedCopy();
+		}
+	}
+}
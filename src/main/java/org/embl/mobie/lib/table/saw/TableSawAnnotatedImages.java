@@ -35,6 +35,7 @@ import org.embl.mobie.DataStore;
 import org.embl.mobie.lib.annotation.AnnotatedRegion;
 import org.embl.mobie.lib.image.Image;
 import org.embl.mobie.lib.image.ImageListener;
+import org.embl.mobie.lib.transform.BoxUnionMask;
 import org.embl.mobie.lib.transform.TransformHelper;
 
 import java.util.List;
@@ -49,7 +50,7 @@ public class TableSawAnnotatedImages extends AbstractTableSawAnnotation implemen
 	private final Integer timePoint;
 	private double[] position;
 	private String source;
-	private RealMaskRealInterval mask;
+	private volatile RealMaskRealInterval mask;
 	private Set< Image< ? > > images;
 	private final double relativeDilation;
 
@@ -134,6 +135,8 @@ public class TableSawAnnotatedImages extends AbstractTableSawAnnotation implemen
 	@Override
 	public RealMaskRealInterval getMask()
 	{
+		// the mask is cached until one of the images changes
+		RealMaskRealInterval mask = this.mask;
 		if ( mask == null )
 		{
 			// Compute the mask of the images
@@ -152,13 +155,23 @@ public class TableSawAnnotatedImages extends AbstractTableSawAnnotation implemen
 			if ( relativeDilation > 0 )
 			{
 				double scale = 1 + relativeDilation;
-				AffineGet transform = TransformHelper.getEnlargementTransform( unionMask, scale );
-				mask = unionMask.transform( transform );
+				if ( unionMask instanceof BoxUnionMask )
+				{
+					// keep the flat union of boxes
+					mask = ( ( BoxUnionMask ) unionMask ).scale( scale );
+				}
+				else
+				{
+					AffineGet transform = TransformHelper.getEnlargementTransform( unionMask, scale );
+					mask = unionMask.transform( transform );
+				}
 			}
 			else
 			{
 				mask = unionMask;
 			}
+
+			this.mask = mask;
 		}
 
 		return mask;
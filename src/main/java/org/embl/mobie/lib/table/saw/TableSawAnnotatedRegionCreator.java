@@ -82,4 +82,11 @@ public class TableSawAnnotatedRegionCreator implements TableSawAnnotationCreator
 	{
 		return idColumns;
 	}
+
+	@Override
+	public boolean isThreadSafe()
+	{
+		// only reads from the table and the image names
+		return true;
+	}
 }
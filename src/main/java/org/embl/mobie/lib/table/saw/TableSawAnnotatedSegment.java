@@ -30,42 +30,26 @@ package org.embl.mobie.lib.table.saw;
 
 import net.imglib2.realtransform.AffineTransform3D;
 import org.embl.mobie.lib.annotation.AnnotatedSegment;
-import net.imglib2.FinalRealInterval;
 import net.imglib2.RealInterval;
 import org.embl.mobie.lib.table.ColumnNames;
-import org.embl.mobie.lib.volume.MeshTransformer;
 
 public class TableSawAnnotatedSegment extends AbstractTableSawAnnotation implements AnnotatedSegment
 {
 	private static final String[] idColumns = new String[]{ ColumnNames.LABEL_ID, ColumnNames.TIMEPOINT };
 
-	private final int timePoint;
-	private final int labelId;
-	private final double[] position;
-	private RealInterval boundingBox;
-	private float[] mesh;
-	private String source;
-	private String uuid;
+	// all data is in the columnar store, such that
+	// this object only costs a few bytes per row
+	private final AnnotatedSegmentStore store;
 
 	// TODO only the model is TableSaw specific
 	//   all the other code is generic and could be reused to open other tables
 	public TableSawAnnotatedSegment(
 			TableSawAnnotationTableModel< TableSawAnnotatedSegment > model,
 			int rowIndex,
-			String source,
-			String uuid,
-			Integer labelId,
-			int timePoint,
-			double[] position,
-			FinalRealInterval boundingBox )
+			AnnotatedSegmentStore store )
 	{
 		super( model, rowIndex );
-		this.source = source;
-		this.uuid = uuid;
-		this.labelId = labelId;
-		this.timePoint = timePoint;
-		this.position = position;
-		this.boundingBox = boundingBox;
+		this.store = store;
 	}
 
 	@Override
@@ -77,79 +61,72 @@ public class TableSawAnnotatedSegment extends AbstractTableSawAnnotation impleme
 	@Override
 	public int label()
 	{
-		return labelId;
+		return store.labelId( rowIndex );
 	}
 
 	@Override
 	public Integer timePoint()
 	{
-		return timePoint;
+		return store.timePoint( rowIndex );
 	}
 
 	@Override
 	public double[] positionAsDoubleArray()
 	{
-		return position;
+		return store.position( rowIndex );
 	}
 
 	@Override
 	public double getDoublePosition( int d )
 	{
-		return position[ d ];
+		return store.position( rowIndex, d );
 	}
 
 	@Override
 	public RealInterval boundingBox()
 	{
-		return boundingBox;
+		return store.boundingBox( rowIndex );
 	}
 
 	@Override
 	public void setBoundingBox( RealInterval boundingBox )
 	{
-		this.boundingBox = boundingBox;
+		store.setBoundingBox( rowIndex, boundingBox );
 	}
 
 	@Override
 	public float[] mesh()
 	{
-		return mesh;
+		return store.mesh( rowIndex );
 	}
 
 	@Override
 	public void setMesh( float[] mesh )
 	{
-		this.mesh = mesh;
+		store.setMesh( rowIndex, mesh );
 	}
 
 	@Override
 	public String uuid()
 	{
-		return uuid;
+		return source() + ";" + timePoint() + ";" + label();
 	}
 
 	@Override
 	public String source()
 	{
-		return source;
+		return store.source( rowIndex );
 	}
 
 	@Override
 	public void transform( AffineTransform3D affineTransform3D )
 	{
-		if ( position != null )
-			affineTransform3D.apply( position, position );
-
-		if ( boundingBox != null )
-			boundingBox = affineTransform3D.estimateBounds( boundingBox );
-
-		if ( mesh != null )
-			mesh = MeshTransformer.transform( mesh, affineTransform3D );
+		store.transform( rowIndex, affineTransform3D );
 	}
 
 	@Override
 	public int numDimensions()
 	{
-		return positionAsDoubleArray().length;
+		return 3;
 	}
 }
@@ -29,6 +29,7 @@
 package org.embl.mobie.lib.table.saw;
 
 import net.imglib2.FinalRealInterval;
+import net.imglib2.realtransform.AffineTransform3D;
 import org.embl.mobie.lib.table.TableDataFormat;
 import org.embl.mobie.lib.table.columns.MicrogliaSegmentColumnNames;
 import org.embl.mobie.lib.table.columns.SegmentColumnNames;
@@ -54,6 +55,8 @@ public class TableSawAnnotatedSegmentCreator implements TableSawAnnotationCreato
 	private boolean is3D;
 	private boolean hasBoundingBox;
 	private ArrayList< String > idColumns;
+	// one creator is used per table model
+	private volatile AnnotatedSegmentStore store;
 
 	public TableSawAnnotatedSegmentCreator( @Nullable Table table )
 	{
@@ -117,8 +120,6 @@ public class TableSawAnnotatedSegmentCreator implements TableSawAnnotationCreato
 		if ( timePointColumnIndex > -1 && segmentColumnNames.timePointsAreOneBased()  )
 			timePoint -= 1;
 
-		final FinalRealInterval boundingBox = boundingBox( table, rowIndex );
-
 		// TODO do we want to support missing anchor columns?
 		double[] position = new double[]{
 				table.numberColumn( anchorColumnIndices[ 0 ] ).getDouble( rowIndex ),
@@ -126,9 +127,38 @@ public class TableSawAnnotatedSegmentCreator implements TableSawAnnotationCreato
 				is3D ? table.numberColumn( anchorColumnIndices[ 2 ] ).getDouble( rowIndex ) : 0
 		};
 
-		final String uuid = source + ";" + timePoint + ";" + labelId;
+		final AnnotatedSegmentStore store = getStore( model );
+		store.set( rowIndex, source, labelId, timePoint, position );
+		if ( hasBoundingBox )
+			store.setBoundingBox( rowIndex, boundingBox( table, rowIndex ) );
+
+		return new TableSawAnnotatedSegment( model, rowIndex, store );
+	}
+
+	private AnnotatedSegmentStore getStore( TableSawAnnotationTableModel< TableSawAnnotatedSegment > model )
+	{
+		AnnotatedSegmentStore store = this.store;
+		if ( store == null )
+		{
+			synchronized ( this )
+			{
+				if ( this.store == null )
+					this.store = new AnnotatedSegmentStore( model.getTable().rowCount(), hasBoundingBox );
+				store = this.store;
+			}
+		}
+		return store;
+	}
+
+	@Override
+	public boolean transformAll( AffineTransform3D affineTransform3D )
+	{
+		final AnnotatedSegmentStore store = this.store;
+		if ( store == null )
+			return false; // no annotations have been created
 
-		return new TableSawAnnotatedSegment( model, rowIndex, source, uuid, labelId, timePoint, position, boundingBox );
+		store.transform( affineTransform3D );
+		return true;
 	}
 
 	@Override
@@ -28,6 +28,7 @@
  */
 package org.embl.mobie.lib.table.saw;
 
+import net.imglib2.realtransform.AffineTransform3D;
 import org.embl.mobie.lib.annotation.Annotation;
 
 import java.util.List;
@@ -40,4 +41,25 @@ public interface TableSawAnnotationCreator< A extends Annotation >
 	int[] removeColumns();
 
 	List< String > getIDColumns();
+
+	/**
+	 * @return whether {@link #create} may be called
+	 * 			concurrently for different rows
+	 */
+	default boolean isThreadSafe()
+	{
+		return false;
+	}
+
+	/**
+	 * Transforms all annotations that have been created for the
+	 * table model at once, e.g. by composing the transformation
+	 * with the current one and applying it when the coordinates are read.
+	 *
+	 * @return false if the annotations need to be transformed one by one
+	 */
+	default boolean transformAll( AffineTransform3D affineTransform3D )
+	{
+		return false;
+	}
 }
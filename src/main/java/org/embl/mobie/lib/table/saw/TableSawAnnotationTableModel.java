@@ -32,6 +32,7 @@ import ij.IJ;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.util.Pair;
 import org.embl.mobie.io.util.IOHelper;
+import org.embl.mobie.lib.ThreadHelper;
 import org.embl.mobie.lib.annotation.Annotation;
 import org.embl.mobie.lib.io.Status;
 import org.embl.mobie.lib.io.StorageLocation;
@@ -43,31 +44,44 @@ import tech.tablesaw.api.ColumnType;
 import tech.tablesaw.api.DoubleColumn;
 import tech.tablesaw.api.StringColumn;
 import tech.tablesaw.api.Table;
+import tech.tablesaw.columns.Column;
 
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class TableSawAnnotationTableModel< A extends Annotation > extends AbstractAnnotationTableModel< A >
 {
+	private static final int MIN_ROWS_FOR_PARALLELISATION = 1000;
+
 	private final String dataSourceName;
 	private final TableSawAnnotationCreator< A > annotationCreator;
-	private ArrayList< A > annotations = new ArrayList<>();
 
 	private Set< String > availableTableChunks;
-	private LinkedHashMap< String, Status > chunkToStatus = new LinkedHashMap<>();
-	private LinkedHashMap< StorageLocation, Status > externalChunkToStatus = new LinkedHashMap<>();
+	private final Map< String, Status > chunkToStatus = Collections.synchronizedMap( new LinkedHashMap<>() );
+	private final Map< StorageLocation, Status > externalChunkToStatus = Collections.synchronizedMap( new LinkedHashMap<>() );
+	private volatile boolean chunksPending = false;
+
+	// The annotations, the table and the column metadata are published
+	// together as an immutable snapshot, such that readers do not need to lock.
+	// A new snapshot is built (while holding the lock of this model)
+	// whenever table chunks are joined or columns are added.
+	private volatile Snapshot< A > snapshot;
+	// the table of which the annotations are currently being created
+	private Table creationTable;
 
-	private Table table;
 	private AffineTransform3D affineTransform3D = new AffineTransform3D();
-	private boolean updateTransforms = false;
+	private volatile boolean updateTransforms = false;
 	private final StorageLocation storageLocation;
 	private final TableDataFormat tableDataFormat;
 
@@ -94,60 +108,114 @@ public class TableSawAnnotationTableModel< A extends Annotation > extends Abstra
 		return dataSourceName;
 	}
 
-	private synchronized void update()
+	// Returns the current snapshot, only blocking
+	// if the table has not been opened yet
+	// or a transformation is pending.
+	private Snapshot< A > snapshot()
 	{
-		if ( table == null )
-		{
-			initTable( openTableChunk( storageLocation.defaultChunk ) );
-		}
+		final Snapshot< A > snapshot = this.snapshot;
+		if ( snapshot != null && ! updateTransforms )
+			return snapshot;
 
-		// load and join internal table chunks
-		//
-		boolean columnsAdded = false;
+		update();
+		return this.snapshot;
+	}
 
-		final List< String > tableChunks = chunkToStatus.entrySet().stream()
-				.filter( chunk -> chunk.getValue().equals( Status.Closed ) )
-				.map( chunk -> chunk.getKey() )
-				.collect( Collectors.toList() );
+	// Returns a snapshot that includes all requested table chunks;
+	// used by methods that are concerned with the columns of the table.
+	private Snapshot< A > columnSnapshot()
+	{
+		if ( chunksPending )
+			update();
 
-		for ( String tableChunk : tableChunks )
-		{
-			joinTable( openTableChunk( tableChunk ) );
-			columnsAdded = true;
-		}
+		return snapshot();
+	}
 
-		// load and join external table chunks
-		//
-		final List< StorageLocation > storageLocations = externalChunkToStatus
-				.entrySet().stream()
-				.filter( chunk -> chunk.getValue().equals( Status.Closed ) )
-				.map( chunk -> chunk.getKey() )
-				.collect( Collectors.toList() );
+	private void update()
+	{
+		final boolean columnsAdded;
 
-		for ( StorageLocation storageLocation : storageLocations )
+		synchronized ( this )
 		{
-			joinTable( openExternalTableChunk( storageLocation ) );
-			columnsAdded = true;
+			if ( snapshot == null )
+			{
+				initTable( openTableChunk( storageLocation.defaultChunk ) );
+			}
+
+			columnsAdded = joinPendingChunks();
+
+			synchronized ( affineTransform3D )
+			{
+				if ( updateTransforms )
+				{
+					//System.out.println( "Table Model " + IOHelper.getFileName( dataStore ) + ": applying " + affineTransform3D );
+					final AffineTransform3D transform = affineTransform3D;
+					if ( ! annotationCreator.transformAll( transform ) )
+					{
+						if ( snapshot.annotations.size() < MIN_ROWS_FOR_PARALLELISATION )
+							snapshot.annotations.forEach( annotation -> annotation.transform( transform ) );
+						else
+							snapshot.annotations.parallelStream().forEach( annotation -> annotation.transform( transform ) );
+					}
+					// reset the transform as it has been applied
+					affineTransform3D = new AffineTransform3D();
+					updateTransforms = false;
+				}
+			}
 		}
 
+		// notify outside the lock, because listeners
+		// may access this model from other threads
 		if ( columnsAdded )
 		{
 			for ( AnnotationListener< A > listener : listeners.list )
 				listener.columnsAdded( null );
 		}
+	}
+
+	// Must be called while holding the lock of this model
+	private boolean joinPendingChunks()
+	{
+		chunksPending = false;
+
+		// load and join internal table chunks
+		//
+		final List< String > tableChunks;
+		synchronized ( chunkToStatus )
+		{
+			tableChunks = chunkToStatus.entrySet().stream()
+					.filter( chunk -> chunk.getValue().equals( Status.Closed ) )
+					.map( chunk -> chunk.getKey() )
+					.collect( Collectors.toList() );
+		}
 
-		synchronized ( affineTransform3D )
+		// load and join external table chunks
+		//
+		final List< StorageLocation > storageLocations;
+		synchronized ( externalChunkToStatus )
 		{
-			if ( updateTransforms )
-			{
-				//System.out.println( "Table Model " + IOHelper.getFileName( dataStore ) + ": applying " + affineTransform3D );
-				for ( A annotation : annotations )
-					annotation.transform( affineTransform3D );
-				updateTransforms = false;
-				// reset the transform as it has been applied
-				affineTransform3D = new AffineTransform3D();
-			}
+			storageLocations = externalChunkToStatus
+					.entrySet().stream()
+					.filter( chunk -> chunk.getValue().equals( Status.Closed ) )
+					.map( chunk -> chunk.getKey() )
+					.collect( Collectors.toList() );
 		}
+
+		if ( tableChunks.isEmpty() && storageLocations.isEmpty() )
+			return false;
+
+		// join into a new table, such that the table
+		// of the current snapshot remains unchanged
+		Table table = snapshot.table;
+		for ( String tableChunk : tableChunks )
+			table = joinTable( table, openTableChunk( tableChunk ) );
+
+		for ( StorageLocation storageLocation : storageLocations )
+			table = joinTable( table, openExternalTableChunk( storageLocation ) );
+
+		snapshot = new Snapshot<>( table, snapshot.annotations );
+
+		return true;
 	}
 
 	private Table openTableChunk( String tableChunk )
@@ -168,7 +236,7 @@ public class TableSawAnnotationTableModel< A extends Annotation > extends Abstra
 		return table;
 	}
 
-	private void joinTable( Table additionalTable )
+	private Table joinTable( Table table, Table additionalTable )
 	{
 		// join additional table
 		// some columns, e.g. timepoint, are optional and thus
@@ -179,7 +247,7 @@ public class TableSawAnnotationTableModel< A extends Annotation > extends Abstra
 		final List< String > idColumns = annotationCreator.getIDColumns();
 		final List< String > mergeByColumnNames = idColumns.stream().filter( column -> columnNames.contains( column ) ).collect( Collectors.toList() );
 
-		// the below table merging changes the table object,
+		// the below table merging creates a new table object,
 		// thus other classes that need that table object
 		// need to retrieve the new table using {@code getTable()}
 		try
@@ -191,9 +259,10 @@ public class TableSawAnnotationTableModel< A extends Annotation > extends Abstra
 				final String[] duplicateColumnsArray = duplicateColumnNames.toArray( new String[ 0 ] );
 				IJ.log( "There are duplicate columns: " + Arrays.toString( duplicateColumnsArray ) );
 				IJ.log( "Those columns will be replaced by the columns in the newly loaded table." );
+				table = shallowCopy( table );
 				table.removeColumns( duplicateColumnsArray );
 			}
-			table = table.joinOn( mergeByColumnNames.toArray( new String[ 0 ] ) ).leftOuter( additionalTable  );
+			return table.joinOn( mergeByColumnNames.toArray( new String[ 0 ] ) ).leftOuter( additionalTable  );
 		}
 		catch ( Exception e )
 		{
@@ -201,9 +270,15 @@ public class TableSawAnnotationTableModel< A extends Annotation > extends Abstra
 		}
 	}
 
-	private void initTable( Table rows )
+	// A new table object that shares the column objects
+	private static Table shallowCopy( Table table )
+	{
+		return Table.create( table.name(), table.columns().toArray( new Column< ? >[ 0 ] ) );
+	}
+
+	private synchronized void initTable( Table rows )
 	{
-		table = rows;
+		final Table table = rows;
 		table.setName( dataSourceName );
 		final int rowCount = table.rowCount();
 		if ( ! table.containsColumn( "source" ) )
@@ -214,12 +289,9 @@ public class TableSawAnnotationTableModel< A extends Annotation > extends Abstra
 			table.addColumns( source );
 		}
 
-		annotations = new ArrayList<>( rowCount );
-		for ( int rowIndex = 0; rowIndex < rowCount; rowIndex++ )
-			annotations.add( annotationCreator.create( this, rowIndex ) );
-
-		for ( AnnotationListener< A > listener : listeners.list )
-			listener.annotationsAdded( annotations );
+		creationTable = table;
+		final ArrayList< A > annotations = createAnnotations( rowCount );
+		creationTable = null;
 
 		// Some columns are needed to create the annotations,
 		// but then we don't want to keep them, to save
@@ -227,35 +299,61 @@ public class TableSawAnnotationTableModel< A extends Annotation > extends Abstra
 		// view them in the table.
 		// Currently, this only concerns the SpotAnnotations.
 		table.removeColumns( annotationCreator.removeColumns() );
+
+		snapshot = new Snapshot<>( table, annotations );
+
+		for ( AnnotationListener< A > listener : listeners.list )
+			listener.annotationsAdded( annotations );
+	}
+
+	private ArrayList< A > createAnnotations( int rowCount )
+	{
+		if ( ! annotationCreator.isThreadSafe() || rowCount < MIN_ROWS_FOR_PARALLELISATION )
+		{
+			final ArrayList< A > annotations = new ArrayList<>( rowCount );
+			for ( int rowIndex = 0; rowIndex < rowCount; rowIndex++ )
+				annotations.add( annotationCreator.create( this, rowIndex ) );
+			return annotations;
+		}
+
+		// the common fork-join pool is used, rather than the
+		// ThreadHelper executors, because this may be called
+		// from within tasks that run on those executors
+		final A[] annotations = ( A[] ) new Annotation[ rowCount ];
+		IntStream.range( 0, rowCount ).parallel().forEach( rowIndex ->
+				annotations[ rowIndex ] = annotationCreator.create( this, rowIndex ) );
+
+		return new ArrayList<>( Arrays.asList( annotations ) );
 	}
 
+	// The annotations read their values from this table;
+	// it is the table of the last published snapshot, such that
+	// reading values does not wait for pending table chunks.
 	public Table getTable()
 	{
-		return table;
+		final Snapshot< A > snapshot = this.snapshot;
+		if ( snapshot == null )
+			return creationTable;
+
+		return snapshot.table;
 	}
 
 	@Override
 	public List< String > columnNames()
 	{
-		update();
-
-		return table.columnNames();
+		return columnSnapshot().columnNames;
 	}
 
 	@Override
 	public List< String > numericColumnNames()
 	{
-		update();
-
-		return table.numericColumns().stream().map( c -> c.name() ).collect( Collectors.toList() );
+		return columnSnapshot().numericColumnNames;
 	}
 
 	@Override
-	public synchronized Class< ? > columnClass( String columnName )
+	public Class< ? > columnClass( String columnName )
 	{
-		update();
-		final ColumnType type = table.column( columnName ).type();
-		final Class< ? > columnClass = TableSawColumnTypes.typeToClass.get( type );
+		final Class< ? > columnClass = columnSnapshot().columnClasses.get( columnName );
 		if ( columnClass == null )
 			throw new RuntimeException("Could determine the class of column " + columnName );
 		return columnClass;
@@ -264,15 +362,19 @@ public class TableSawAnnotationTableModel< A extends Annotation > extends Abstra
 	@Override
 	public int numAnnotations()
 	{
-		update();
-
-		return annotations.size();
+		return snapshot().annotations.size();
 	}
 
 	@Override
-	public synchronized int rowIndexOf( A annotation )
+	public int rowIndexOf( A annotation )
 	{
-		update();
+		final Snapshot< A > snapshot = snapshot();
+
+		// The annotations are created in the order of the rows
+		// and know their row
+		if ( annotation instanceof AbstractTableSawAnnotation
+				&& ( ( AbstractTableSawAnnotation ) annotation ).model == this )
+			return ( ( AbstractTableSawAnnotation ) annotation ).rowIndex;
 
 		// TODO a Map may be more efficient, but
 		//   since this method is not called very frequently
@@ -285,26 +387,39 @@ public class TableSawAnnotationTableModel< A extends Annotation > extends Abstra
 		//   map, if needed. This would also avoid having this method here
 		//   at all.
 
-		return annotations.indexOf( annotation );
+		return snapshot.annotations.indexOf( annotation );
 	}
 
 	@Override
-	public synchronized A annotation( int rowIndex )
+	public A annotation( int rowIndex )
 	{
-		update();
-		return  annotations.get( rowIndex );
+		return snapshot().annotations.get( rowIndex );
 	}
 
 	@Override
 	public void loadTableChunk( String tableChunk )
 	{
 		chunkToStatus.put( tableChunk, Status.Closed );
+		loadPendingChunks();
 	}
 
 	@Override
 	public void loadExternalTableChunk( StorageLocation location )
 	{
 		externalChunkToStatus.put( location, Status.Closed );
+		loadPendingChunks();
+	}
+
+	// Readers of the annotations continue to see the current
+	// snapshot while the chunks are loaded; readers of the columns
+	// wait for the chunks (see {@code columnSnapshot()}).
+	private void loadPendingChunks()
+	{
+		chunksPending = true;
+		ThreadHelper.ioExecutorService.submit( () -> {
+			if ( chunksPending )
+				update();
+		} );
 	}
 
 	@Override
@@ -319,35 +434,39 @@ public class TableSawAnnotationTableModel< A extends Annotation > extends Abstra
 	@Override
 	public LinkedHashSet< String > getLoadedTableChunks()
 	{
-		return new LinkedHashSet<>( chunkToStatus.keySet() );
+		synchronized ( chunkToStatus )
+		{
+			return new LinkedHashSet<>( chunkToStatus.keySet() );
+		}
 	}
 
 	@Override
 	public Pair< Double, Double > getMinMax( String columnName )
 	{
-		return getColumnMinMax( columnName, annotations() );
+		return getColumnMinMax( columnName, columnSnapshot().annotations );
 	}
 
 	@Override
-	public synchronized ArrayList< A > annotations()
+	public ArrayList< A > annotations()
 	{
-		update();
-
-		return annotations;
+		return snapshot().annotations;
 	}
 
 	@Override
 	public void addStringColumn( String columnName )
 	{
-		update();
+		synchronized ( this )
+		{
+			final Table table = columnSnapshot().table;
 
-		if ( table.containsColumn( columnName ) )
-			throw new UnsupportedOperationException("Column " + columnName + " exists already.");
+			if ( table.containsColumn( columnName ) )
+				throw new UnsupportedOperationException("Column " + columnName + " exists already.");
 
-		final String[] strings = new String[ table.rowCount() ];
-		Arrays.fill( strings, DefaultValues.NONE );
-		final StringColumn stringColumn = StringColumn.create( columnName, strings );
-		table.addColumns( stringColumn );
+			final String[] strings = new String[ table.rowCount() ];
+			Arrays.fill( strings, DefaultValues.NONE );
+			final StringColumn stringColumn = StringColumn.create( columnName, strings );
+			addColumn( table, stringColumn );
+		}
 
 		for ( AnnotationListener< A > listener : listeners.list )
 			listener.columnsAdded( Collections.singleton( columnName ) );
@@ -356,20 +475,31 @@ public class TableSawAnnotationTableModel< A extends Annotation > extends Abstra
 	@Override
 	public void addNumericColumn( String columnName )
 	{
-		update();
+		synchronized ( this )
+		{
+			final Table table = columnSnapshot().table;
 
-		if ( table.containsColumn( columnName ) )
-			throw new UnsupportedOperationException("Column " + columnName + " exists already.");
+			if ( table.containsColumn( columnName ) )
+				throw new UnsupportedOperationException("Column " + columnName + " exists already.");
 
-		final double[] doubles = new double[ table.rowCount() ];
-		Arrays.fill( doubles, 0.0 );
-		final DoubleColumn doubleColumn = DoubleColumn.create( columnName, doubles );
-		table.addColumns( doubleColumn );
+			final double[] doubles = new double[ table.rowCount() ];
+			Arrays.fill( doubles, 0.0 );
+			final DoubleColumn doubleColumn = DoubleColumn.create( columnName, doubles );
+			addColumn( table, doubleColumn );
+		}
 
 		for ( AnnotationListener< A > listener : listeners.list )
 			listener.columnsAdded( Collections.singleton( columnName ) );
 	}
 
+	// Must be called while holding the lock of this model
+	private void addColumn( Table table, Column< ? > column )
+	{
+		final Table newTable = shallowCopy( table );
+		newTable.addColumns( column );
+		snapshot = new Snapshot<>( newTable, snapshot.annotations );
+	}
+
 	@Override
 	public StorageLocation getStorageLocation()
 	{
@@ -382,8 +512,8 @@ public class TableSawAnnotationTableModel< A extends Annotation > extends Abstra
 		synchronized ( this.affineTransform3D )
 		{
 			//System.out.println( "Table Model " + IOHelper.getFileName( dataStore ) + ": adding " + affineTransform3D );
-			this.updateTransforms = true;
 			this.affineTransform3D.preConcatenate( affineTransform3D );
+			this.updateTransforms = true;
 		}
 	}
 
@@ -391,7 +521,32 @@ public class TableSawAnnotationTableModel< A extends Annotation > extends Abstra
 	public void addAnnotationListener( AnnotationListener< A > listener )
 	{
 		listeners.add( listener );
-		if ( table != null )
+		if ( snapshot != null )
 			listener.annotationsAdded( annotations() );
 	}
+
+	private static class Snapshot< A >
+	{
+		private final Table table;
+		// not to be modified, as it is shared with readers
+		private final ArrayList< A > annotations;
+		private final List< String > columnNames;
+		private final List< String > numericColumnNames;
+		private final Map< String, Class< ? > > columnClasses;
+
+		Snapshot( Table table, ArrayList< A > annotations )
+		{
+			this.table = table;
+			this.annotations = annotations;
+			this.columnNames = Collections.unmodifiableList( table.columnNames() );
+			this.numericColumnNames = Collections.unmodifiableList( table.numericColumns().stream().map( c -> c.name() ).collect( Collectors.toList() ) );
+			final Map< String, Class< ? > > columnClasses = new HashMap<>();
+			for ( Column< ? > column : table.columns() )
+			{
+				final ColumnType type = column.type();
+				columnClasses.put( column.name(), TableSawColumnTypes.typeToClass.get( type ) );
+			}
+			this.columnClasses = columnClasses;
+		}
+	}
 }
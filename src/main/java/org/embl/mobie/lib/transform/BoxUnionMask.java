@@ -0,0 +1,402 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.transform;
+
+import net.imglib2.RealInterval;
+import net.imglib2.RealLocalizable;
+import net.imglib2.realtransform.AffineGet;
+import net.imglib2.realtransform.RealTransform;
+import net.imglib2.roi.BoundaryType;
+import net.imglib2.roi.Operators;
+import net.imglib2.roi.RealMaskRealInterval;
+import net.imglib2.roi.composite.UnaryCompositeMaskPredicate;
+import net.imglib2.roi.geom.GeomMasks;
+import net.imglib2.roi.geom.real.Box;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A flat union of closed, axis-aligned boxes.
+ *
+ * In contrast to folding {@code union.or( mask )} over many masks,
+ * which yields a nested tree that is walked for every test,
+ * the boxes are stored in arrays and indexed by a regular
+ * grid in the first two dimensions, such that a test only
+ * checks the few boxes that overlap the grid cell of the location.
+ *
+ * If the boxes fully cover their bounding box, which is typical for the
+ * sites of a well, {@link #create} returns the bounding box instead.
+ */
+public class BoxUnionMask implements RealMaskRealInterval
+{
+	private static final int MAX_GRID_SIZE = 64;
+	private static final long MAX_NUM_COVERAGE_CELLS = 1 << 20;
+
+	private final int numDimensions;
+	private final double[][] mins; // [box][d]
+	private final double[][] maxs;
+	private final double[] min;
+	private final double[] max;
+	private final int[] gridSize;
+	private final double[] cellSize;
+	private final int[][] cellToBoxes;
+
+	private BoxUnionMask( double[][] mins, double[][] maxs )
+	{
+		this.mins = mins;
+		this.maxs = maxs;
+		numDimensions = mins[ 0 ].length;
+		min = boundsMin( mins );
+		max = boundsMax( maxs );
+
+		// index the boxes in the first two dimensions
+		final int numGridDimensions = Math.min( 2, numDimensions );
+		gridSize = new int[ numGridDimensions ];
+		cellSize = new double[ numGridDimensions ];
+		final int size = Math.max( 1, Math.min( MAX_GRID_SIZE, ( int ) Math.ceil( Math.sqrt( mins.length ) ) ) );
+		for ( int d = 0; d < numGridDimensions; d++ )
+		{
+			gridSize[ d ] = size;
+			cellSize[ d ] = Math.max( ( max[ d ] - min[ d ] ) / size, Double.MIN_NORMAL );
+		}
+
+		final List< List< Integer > > cells = new ArrayList<>();
+		final int numCells = numGridDimensions == 1 ? gridSize[ 0 ] : gridSize[ 0 ] * gridSize[ 1 ];
+		for ( int i = 0; i < numCells; i++ )
+			cells.add( new ArrayList<>() );
+
+		for ( int box = 0; box < mins.length; box++ )
+		{
+			final int[] cellMin = new int[ numGridDimensions ];
+			final int[] cellMax = new int[ numGridDimensions ];
+			for ( int d = 0; d < numGridDimensions; d++ )
+			{
+				cellMin[ d ] = cell( mins[ box ][ d ], d );
+				cellMax[ d ] = cell( maxs[ box ][ d ], d );
+			}
+
+			if ( numGridDimensions == 1 )
+			{
+				for ( int x = cellMin[ 0 ]; x <= cellMax[ 0 ]; x++ )
+					cells.get( x ).add( box );
+			}
+			else
+			{
+				for ( int y = cellMin[ 1 ]; y <= cellMax[ 1 ]; y++ )
+					for ( int x = cellMin[ 0 ]; x <= cellMax[ 0 ]; x++ )
+						cells.get( y * gridSize[ 0 ] + x ).add( box );
+			}
+		}
+
+		cellToBoxes = new int[ numCells ][];
+		for ( int i = 0; i < numCells; i++ )
+			cellToBoxes[ i ] = cells.get( i ).stream().mapToInt( Integer::intValue ).toArray();
+	}
+
+	/**
+	 * @param masks
+	 * 			masks of which the union is needed
+	 * @return the union of the masks, or null if not all masks are axis-aligned boxes
+	 */
+	@Nullable
+	public static RealMaskRealInterval union( List< ? extends RealMaskRealInterval > masks )
+	{
+		final List< double[] > mins = new ArrayList<>();
+		final List< double[] > maxs = new ArrayList<>();
+
+		for ( RealMaskRealInterval mask : masks )
+		{
+			if ( mask instanceof BoxUnionMask )
+			{
+				final BoxUnionMask union = ( BoxUnionMask ) mask;
+				mins.addAll( Arrays.asList( union.mins ) );
+				maxs.addAll( Arrays.asList( union.maxs ) );
+			}
+			else if ( isAxisAlignedBox( mask ) )
+			{
+				mins.add( mask.minAsDoubleArray() );
+				maxs.add( mask.maxAsDoubleArray() );
+			}
+			else
+			{
+				return null;
+			}
+		}
+
+		return create( mins.toArray( new double[ 0 ][] ), maxs.toArray( new double[ 0 ][] ) );
+	}
+
+	/**
+	 * @return a closed box if the boxes cover their bounding box,
+	 * 			otherwise a {@code BoxUnionMask}
+	 */
+	public static RealMaskRealInterval create( double[][] mins, double[][] maxs )
+	{
+		if ( mins.length == 0 )
+			throw new RuntimeException("Cannot create union of empty list of masks.");
+
+		// remove the boxes that are contained in other boxes
+		final List< Integer > keep = new ArrayList<>();
+		for ( int i = 0; i < mins.length; i++ )
+		{
+			boolean contained = false;
+			for ( int j = 0; j < mins.length && ! contained; j++ )
+			{
+				if ( i == j ) continue;
+				// for identical boxes only keep the first one
+				if ( contains( mins[ j ], maxs[ j ], mins[ i ], maxs[ i ] )
+						&& ( j < i || ! contains( mins[ i ], maxs[ i ], mins[ j ], maxs[ j ] ) ) )
+					contained = true;
+			}
+			if ( ! contained )
+				keep.add( i );
+		}
+
+		final double[][] keptMins = keep.stream().map( i -> mins[ i ] ).toArray( double[][]::new );
+		final double[][] keptMaxs = keep.stream().map( i -> maxs[ i ] ).toArray( double[][]::new );
+
+		if ( keptMins.length == 1 || coversBounds( keptMins, keptMaxs ) )
+			return GeomMasks.closedBox( boundsMin( keptMins ), boundsMax( keptMaxs ) );
+
+		return new BoxUnionMask( keptMins, keptMaxs );
+	}
+
+	/**
+	 * @return a copy of this union in which each box has been scaled
+	 * 			around the center of the bounding box of the union
+	 */
+	public BoxUnionMask scale( double scale )
+	{
+		final double[][] scaledMins = new double[ mins.length ][ numDimensions ];
+		final double[][] scaledMaxs = new double[ mins.length ][ numDimensions ];
+		for ( int box = 0; box < mins.length; box++ )
+			for ( int d = 0; d < numDimensions; d++ )
+			{
+				final double center = ( min[ d ] + max[ d ] ) / 2.0;
+				scaledMins[ box ][ d ] = center + scale * ( mins[ box ][ d ] - center );
+				scaledMaxs[ box ][ d ] = center + scale * ( maxs[ box ][ d ] - center );
+			}
+		return new BoxUnionMask( scaledMins, scaledMaxs );
+	}
+
+	public int numBoxes()
+	{
+		return mins.length;
+	}
+
+	@Override
+	public boolean test( RealLocalizable location )
+	{
+		for ( int d = 0; d < numDimensions; d++ )
+		{
+			final double position = location.getDoublePosition( d );
+			if ( position < min[ d ] || position > max[ d ] )
+				return false;
+		}
+
+		final int[] boxes;
+		if ( gridSize.length == 1 )
+			boxes = cellToBoxes[ cell( location.getDoublePosition( 0 ), 0 ) ];
+		else
+			boxes = cellToBoxes[ cell( location.getDoublePosition( 1 ), 1 ) * gridSize[ 0 ] + cell( location.getDoublePosition( 0 ), 0 ) ];
+
+		for ( int box : boxes )
+			if ( contains( mins[ box ], maxs[ box ], location ) )
+				return true;
+
+		return false;
+	}
+
+	@Override
+	public BoundaryType boundaryType()
+	{
+		return BoundaryType.CLOSED;
+	}
+
+	@Override
+	public double realMin( int d )
+	{
+		return min[ d ];
+	}
+
+	@Override
+	public double realMax( int d )
+	{
+		return max[ d ];
+	}
+
+	@Override
+	public int numDimensions()
+	{
+		return numDimensions;
+	}
+
+	private int cell( double position, int d )
+	{
+		final int cell = ( int ) ( ( position - min[ d ] ) / cellSize[ d ] );
+		return Math.max( 0, Math.min( gridSize[ d ] - 1, cell ) );
+	}
+
+	/*
+	 * Whether the mask is guaranteed to be equal to its bounding box,
+	 * i.e. it is a box, or a box that has been transformed by an
+	 * affine transformation without rotation or shear, such as the masks
+	 * of images. Other masks, which may be non-convex, are not checked.
+	 */
+	private static boolean isAxisAlignedBox( RealMaskRealInterval mask )
+	{
+		if ( mask instanceof Box )
+			return true;
+
+		if ( ! ( mask instanceof UnaryCompositeMaskPredicate ) )
+			return false;
+
+		final UnaryCompositeMaskPredicate< ? > composite = ( UnaryCompositeMaskPredicate< ? > ) mask;
+		if ( ! ( composite.operator() instanceof Operators.RealTransformMaskOperator ) )
+			return false;
+
+		final RealTransform transform = ( ( Operators.RealTransformMaskOperator ) composite.operator() ).getTransformToSource();
+		if ( ! ( transform instanceof AffineGet ) )
+			return false;
+
+		final AffineGet affine = ( AffineGet ) transform;
+		final int numDimensions = affine.numDimensions();
+		for ( int row = 0; row < numDimensions; row++ )
+			for ( int column = 0; column < numDimensions; column++ )
+				if ( row != column && affine.get( row, column ) != 0 )
+					return false;
+
+		final Object source = composite.arg0();
+		return source instanceof RealMaskRealInterval && isAxisAlignedBox( ( RealMaskRealInterval ) source );
+	}
+
+	/*
+	 * Whether the union of the boxes is equal to their bounding box.
+	 * The bounding box is divided into the cells that are formed by
+	 * all box boundaries and each cell is checked to be covered.
+	 * Only implemented for boxes that share their extent beyond the
+	 * first two dimensions.
+	 */
+	private static boolean coversBounds( double[][] mins, double[][] maxs )
+	{
+		final int numDimensions = mins[ 0 ].length;
+		for ( int box = 1; box < mins.length; box++ )
+			for ( int d = 2; d < numDimensions; d++ )
+				if ( mins[ box ][ d ] != mins[ 0 ][ d ] || maxs[ box ][ d ] != maxs[ 0 ][ d ] )
+					return false;
+
+		final int numGridDimensions = Math.min( 2, numDimensions );
+		final double[][] coordinates = new double[ numGridDimensions ][];
+		long numCells = 1;
+		for ( int d = 0; d < numGridDimensions; d++ )
+		{
+			final int dimension = d;
+			coordinates[ d ] = Arrays.stream( mins ).mapToDouble( m -> m[ dimension ] ).toArray();
+			coordinates[ d ] = concat( coordinates[ d ], Arrays.stream( maxs ).mapToDouble( m -> m[ dimension ] ).toArray() );
+			coordinates[ d ] = Arrays.stream( coordinates[ d ] ).sorted().distinct().toArray();
+			numCells *= Math.max( 1, coordinates[ d ].length - 1 );
+		}
+
+		if ( numCells > MAX_NUM_COVERAGE_CELLS )
+			return false;
+
+		final int numX = Math.max( 1, coordinates[ 0 ].length - 1 );
+		final int numY = numGridDimensions == 1 ? 1 : Math.max( 1, coordinates[ 1 ].length - 1 );
+		final boolean[] covered = new boolean[ numX * numY ];
+		for ( int box = 0; box < mins.length; box++ )
+		{
+			final int[] from = new int[ 2 ];
+			final int[] to = { 1, 1 };
+			for ( int d = 0; d < numGridDimensions; d++ )
+			{
+				// a dimension in which all boxes are flat consists of one cell
+				if ( coordinates[ d ].length == 1 ) continue;
+				from[ d ] = Arrays.binarySearch( coordinates[ d ], mins[ box ][ d ] );
+				to[ d ] = Arrays.binarySearch( coordinates[ d ], maxs[ box ][ d ] );
+			}
+
+			for ( int y = from[ 1 ]; y < to[ 1 ]; y++ )
+				for ( int x = from[ 0 ]; x < to[ 0 ]; x++ )
+					covered[ y * numX + x ] = true;
+		}
+
+		for ( boolean cell : covered )
+			if ( ! cell )
+				return false;
+
+		return true;
+	}
+
+	private static boolean contains( double[] outerMin, double[] outerMax, double[] innerMin, double[] innerMax )
+	{
+		for ( int d = 0; d < outerMin.length; d++ )
+			if ( innerMin[ d ] < outerMin[ d ] || innerMax[ d ] > outerMax[ d ] )
+				return false;
+		return true;
+	}
+
+	private static boolean contains( double[] min, double[] max, RealLocalizable location )
+	{
+		for ( int d = 0; d < min.length; d++ )
+		{
+			final double position = location.getDoublePosition( d );
+			if ( position < min[ d ] || position > max[ d ] )
+				return false;
+		}
+		return true;
+	}
+
+	private static double[] boundsMin( double[][] mins )
+	{
+		final double[] min = mins[ 0 ].clone();
+		for ( double[] boxMin : mins )
+			for ( int d = 0; d < min.length; d++ )
+				min[ d ] = Math.min( min[ d ], boxMin[ d ] );
+		return min;
+	}
+
+	private static double[] boundsMax( double[][] maxs )
+	{
+		final double[] max = maxs[ 0 ].clone();
+		for ( double[] boxMax : maxs )
+			for ( int d = 0; d < max.length; d++ )
+				max[ d ] = Math.max( max[ d ], boxMax[ d ] );
+		return max;
+	}
+
+	private static double[] concat( double[] a, double[] b )
+	{
+		final double[] concat = Arrays.copyOf( a, a.length + b.length );
+		System.arraycopy( b, 0, concat, a.length, b.length );
+		return concat;
+	}
+}
@@ -29,22 +29,24 @@
 package org.embl.mobie.lib.transform;
 
 import com.google.gson.Gson;
+import net.imglib2.FinalRealInterval;
+import net.imglib2.RealInterval;
 import net.imglib2.RealLocalizable;
 import net.imglib2.RealPositionable;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.realtransform.RealTransform;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Map;
+import java.util.Arrays;
 import java.util.TreeMap;
 import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentHashMap;
 
 public class InterpolatedAffineRealTransform implements RealTransform {
     private final String name;
     private final AffineTransform3D globalToSource;
     private TreeMap<Double, double[]> transforms;
-    private transient final Map<Integer, AffineTransform3D> cache;
+    // Immutable once built, thus shared between copies
+    private transient volatile SliceAffines sliceAffines;
 
     public InterpolatedAffineRealTransform( String name, AffineTransform3D globalToSource ) {
         this.name = name;
@@ -53,16 +55,17 @@ public class InterpolatedAffineRealTransform implements RealTransform {
         // because the z-position in the source is the key in the {@code transforms} map
         this.globalToSource = globalToSource;
         transforms = new TreeMap<>();
-        cache = new ConcurrentHashMap<>();
     }
 
     public void addTransform( double z, double[] transform ) {
         transforms.put( z, transform );
+        sliceAffines = null;
     }
 
     public void addTransforms( TreeMap< Double, double[] > transforms )
     {
         this.transforms.putAll( transforms );
+        sliceAffines = null;
     }
     
     @Override
@@ -76,42 +79,85 @@ public class InterpolatedAffineRealTransform implements RealTransform {
     }
 
     /*
-    Interpolates the stored transformations along the z coordinate of the source.
+    Applies the transformation of the source z-slice that contains the given position;
+    the transformations of the slices are interpolated from the stored transformations.
      */
     @Override
     public void apply( double[] source, double[] target ) {
-        if (transforms.isEmpty()) throw new IllegalStateException("No transforms added.");
-        final double[] voxelPositionInSource = getVoxelPositionInSource( source );
-        final AffineTransform3D interpolatedTransform = getInterpolatedTransform( voxelPositionInSource[2] );
-        interpolatedTransform.apply(source, target);
+        final double x = source[ 0 ], y = source[ 1 ], z = source[ 2 ];
+        final SliceAffines sliceAffines = getSliceAffines();
+        final double[] m = sliceAffines.affines;
+        final int o = sliceAffines.offset( x, y, z );
+        target[ 0 ] = m[ o ] * x + m[ o + 1 ] * y + m[ o + 2 ] * z + m[ o + 3 ];
+        target[ 1 ] = m[ o + 4 ] * x + m[ o + 5 ] * y + m[ o + 6 ] * z + m[ o + 7 ];
+        target[ 2 ] = m[ o + 8 ] * x + m[ o + 9 ] * y + m[ o + 10 ] * z + m[ o + 11 ];
     }
 
     @Override
     public void apply( RealLocalizable source, RealPositionable target )
     {
-        if (transforms.isEmpty()) throw new IllegalStateException("No transforms added.");
-        final double[] voxelPositionInSource = getVoxelPositionInSource( source.positionAsDoubleArray() );
-        final AffineTransform3D interpolatedTransform = getInterpolatedTransform( voxelPositionInSource[ 2 ] );
-        interpolatedTransform.apply(source, target);
+        final double x = source.getDoublePosition( 0 ), y = source.getDoublePosition( 1 ), z = source.getDoublePosition( 2 );
+        final SliceAffines sliceAffines = getSliceAffines();
+        final double[] m = sliceAffines.affines;
+        final int o = sliceAffines.offset( x, y, z );
+        target.setPosition( m[ o ] * x + m[ o + 1 ] * y + m[ o + 2 ] * z + m[ o + 3 ], 0 );
+        target.setPosition( m[ o + 4 ] * x + m[ o + 5 ] * y + m[ o + 6 ] * z + m[ o + 7 ], 1 );
+        target.setPosition( m[ o + 8 ] * x + m[ o + 9 ] * y + m[ o + 10 ] * z + m[ o + 11 ], 2 );
     }
 
-    @NotNull
-    private double[] getVoxelPositionInSource( double[] source )
+    /**
+     * Estimates the region that is mapped into the given interval,
+     * using the inverse of the transformation of each slice.
+     *
+     * As the region of a slice is not clipped to its z-extent,
+     * the estimate may be larger than the exact bounds.
+     *
+     * @param interval
+     * 			an interval in the target space of {@code apply}, e.g. the bounds of an image
+     * @return the bounding box in the source space of {@code apply}
+     */
+    public RealInterval estimateInverseBounds( RealInterval interval )
+    {
+        final SliceAffines sliceAffines = getSliceAffines();
+        final double[] min = new double[ 3 ];
+        final double[] max = new double[ 3 ];
+        Arrays.fill( min, Double.POSITIVE_INFINITY );
+        Arrays.fill( max, Double.NEGATIVE_INFINITY );
+        final AffineTransform3D inverse = new AffineTransform3D();
+        for ( int slice = 0; slice < sliceAffines.numSlices; slice++ )
+        {
+            sliceAffines.getInverse( slice, inverse );
+            final RealInterval bounds = inverse.estimateBounds( interval );
+            for ( int d = 0; d < 3; d++ )
+            {
+                min[ d ] = Math.min( min[ d ], bounds.realMin( d ) );
+                max[ d ] = Math.max( max[ d ], bounds.realMax( d ) );
+            }
+        }
+
+        return new FinalRealInterval( min, max );
+    }
+
+    /**
+     * @param z
+     * 			the z-position in the source
+     * @return the (interpolated) transformation that is applied to the slice containing z
+     */
+    public AffineTransform3D getSliceTransform( double z )
     {
-        final double[] voxelPositionInSource = new double[ 3 ];
-        globalToSource.apply( source, voxelPositionInSource );
-        return voxelPositionInSource;
+        final SliceAffines sliceAffines = getSliceAffines();
+        final AffineTransform3D transform = new AffineTransform3D();
+        final int offset = sliceAffines.offset( z );
+        transform.set( Arrays.copyOfRange( sliceAffines.affines, offset, offset + 12 ) );
+        return transform;
     }
 
     @Override
     public RealTransform copy()
     {
         InterpolatedAffineRealTransform copy = new InterpolatedAffineRealTransform( name, globalToSource.copy() );
-        for (Entry<Double, double[]> entry : transforms.entrySet())
-        {
-            copy.addTransform( entry.getKey(), entry.getValue() );
-        }
-
+        copy.transforms.putAll( transforms );
+        copy.sliceAffines = sliceAffines;
         return copy;
     }
 
@@ -121,9 +167,19 @@ public class InterpolatedAffineRealTransform implements RealTransform {
         return false;
     }
 
-    private AffineTransform3D getInterpolatedTransform( double z )
+    private SliceAffines getSliceAffines()
     {
-        return cache.computeIfAbsent( (int) z, k -> computeInterpolatedAffineTransform3D( z ) );
+        SliceAffines sliceAffines = this.sliceAffines;
+        if ( sliceAffines == null )
+        {
+            synchronized ( this )
+            {
+                if ( this.sliceAffines == null )
+                    this.sliceAffines = new SliceAffines();
+                sliceAffines = this.sliceAffines;
+            }
+        }
+        return sliceAffines;
     }
 
     @NotNull
@@ -175,5 +231,60 @@ public class InterpolatedAffineRealTransform implements RealTransform {
     {
         return name;
     }
-}
 
+    /*
+    Dense, row-packed affines of all source z-slices between the
+    first and the last stored transformation; positions outside
+    this range use the affine of the closest slice.
+     */
+    private class SliceAffines
+    {
+        private final int minSlice;
+        private final int numSlices;
+        private final double[] affines;
+        private final double[] inverses;
+        // the row of globalToSource that yields the z-position in the source
+        private final double gz0, gz1, gz2, gz3;
+
+        SliceAffines()
+        {
+            if ( transforms.isEmpty() ) throw new IllegalStateException("No transforms added.");
+
+            minSlice = ( int ) Math.floor( transforms.firstKey() );
+            numSlices = ( int ) Math.ceil( transforms.lastKey() ) - minSlice + 1;
+            affines = new double[ 12 * numSlices ];
+            inverses = new double[ 12 * numSlices ];
+            for ( int slice = 0; slice < numSlices; slice++ )
+            {
+                final AffineTransform3D affine = computeInterpolatedAffineTransform3D( minSlice + slice );
+                System.arraycopy( affine.getRowPackedCopy(), 0, affines, 12 * slice, 12 );
+                System.arraycopy( affine.inverse().getRowPackedCopy(), 0, inverses, 12 * slice, 12 );
+            }
+
+            gz0 = globalToSource.get( 2, 0 );
+            gz1 = globalToSource.get( 2, 1 );
+            gz2 = globalToSource.get( 2, 2 );
+            gz3 = globalToSource.get( 2, 3 );
+        }
+
+        int offset( double x, double y, double z )
+        {
+            return offset( gz0 * x + gz1 * y + gz2 * z + gz3 );
+        }
+
+        // voxel centers are at integer positions,
+        // thus a slice spans [ slice - 0.5, slice + 0.5 )
+        int offset( double sourceZ )
+        {
+            final int slice = ( int ) Math.floor( sourceZ + 0.5 ) - minSlice;
+            if ( slice <= 0 ) return 0;
+            if ( slice >= numSlices ) return 12 * ( numSlices - 1 );
+            return 12 * slice;
+        }
+
+        void getInverse( int slice, AffineTransform3D inverse )
+        {
+            inverse.set( Arrays.copyOfRange( inverses, 12 * slice, 12 * slice + 12 ) );
+        }
+    }
+}
@@ -291,12 +291,20 @@ public class TransformHelper
 		if ( maskedCollection.isEmpty() )
 			throw new RuntimeException("Cannot create union of empty list of masks.");
 
+		final List< RealMaskRealInterval > masks = maskedCollection.stream()
+				.map( Masked::getMask )
+				.collect( Collectors.toList() );
+
+		// fast path for the common case of
+		// the masks being axis-aligned boxes
+		final RealMaskRealInterval boxUnion = BoxUnionMask.union( masks );
+		if ( boxUnion != null )
+			return boxUnion;
+
 		RealMaskRealInterval union = null;
 
-		for ( Masked masked : maskedCollection )
+		for ( RealMaskRealInterval mask : masks )
 		{
-			final RealMaskRealInterval mask = masked.getMask();
-
 			if ( union == null )
 			{
 				union = mask;
@@ -0,0 +1,433 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.transform;
+
+import ij.IJ;
+import net.imglib2.roi.RealMaskRealInterval;
+import org.embl.mobie.DataStore;
+import org.embl.mobie.lib.annotation.Annotation;
+import org.embl.mobie.lib.image.AnnotationImage;
+import org.embl.mobie.lib.image.CroppedImage;
+import org.embl.mobie.lib.image.Image;
+import org.embl.mobie.lib.image.StitchedAnnotationImage;
+import org.embl.mobie.lib.image.StitchedImage;
+import org.embl.mobie.lib.serialize.transformation.AbstractImageTransformation;
+import org.embl.mobie.lib.serialize.transformation.AffineTransformation;
+import org.embl.mobie.lib.serialize.transformation.CropTransformation;
+import org.embl.mobie.lib.serialize.transformation.GridTransformation;
+import org.embl.mobie.lib.serialize.transformation.ImageTransformation;
+import org.embl.mobie.lib.serialize.transformation.InterpolatedAffineTransformation;
+import org.embl.mobie.lib.serialize.transformation.MergedGridTransformation;
+import org.embl.mobie.lib.serialize.transformation.TimepointsTransformation;
+import org.embl.mobie.lib.serialize.transformation.Transformation;
+import org.embl.mobie.lib.table.ConcatenatedAnnotationTableModel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Applies the transformations of a view.
+ *
+ * The transformations refer to each other via the names of the images
+ * that they read and create. Walking the list in order, a transformation
+ * is put into a later stage than every preceding transformation
+ * that writes one of its inputs, that writes one of its outputs,
+ * or that reads one of its outputs. Thus, the result is the same as
+ * applying the transformations one after the other, while the
+ * transformations within one stage, as well as the images within one
+ * transformation, are processed in parallel.
+ */
+public class TransformationPipeline
+{
+	private final List< Transformation > transformations;
+	private final List< List< Integer > > stages;
+	private final long[] durationsMillis;
+
+	public TransformationPipeline( List< Transformation > transformations )
+	{
+		this.transformations = transformations;
+		this.stages = createStages( transformations );
+		this.durationsMillis = new long[ transformations.size() ];
+	}
+
+	public void run()
+	{
+		final long start = System.currentTimeMillis();
+
+		for ( List< Integer > stage : stages )
+		{
+			// Parallel streams run on the common pool,
+			// such that the transformations can themselves
+			// block on the ThreadHelper executors (e.g., gridTransform)
+			stage.parallelStream().forEach( index ->
+			{
+				final long transformationStart = System.currentTimeMillis();
+				apply( transformations.get( index ) );
+				durationsMillis[ index ] = System.currentTimeMillis() - transformationStart;
+			} );
+		}
+
+		if ( transformations.size() > 1 )
+		{
+			final int slowest = IntStream.range( 0, durationsMillis.length )
+					.reduce( ( i, j ) -> durationsMillis[ j ] > durationsMillis[ i ] ? j : i )
+					.getAsInt();
+
+			IJ.log( "Applied " + transformations.size() + " transformations in " + stages.size() + " stage(s) in "
+					+ ( System.currentTimeMillis() - start ) + " ms; slowest: "
+					+ getName( transformations.get( slowest ) ) + " (" + durationsMillis[ slowest ] + " ms)." );
+		}
+	}
+
+	/**
+	 * @return the indices of the transformations, grouped into stages
+	 * 		that must be applied one after the other
+	 */
+	public List< List< Integer > > getStages()
+	{
+		return stages;
+	}
+
+	/**
+	 * @return the time it took to apply each transformation,
+	 * 		in the order of the transformations; only valid after {@link #run()}
+	 */
+	public long[] getDurationsMillis()
+	{
+		return durationsMillis;
+	}
+
+	public static List< List< Integer > > createStages( List< Transformation > transformations )
+	{
+		// the last stage in which an image was written or read
+		final Map< String, Integer > lastWrite = new HashMap<>();
+		final Map< String, Integer > lastRead = new HashMap<>();
+
+		// the tiles of the merged grids of the preceding transformations
+		final Map< String, Set< String > > mergedGridToTiles = new HashMap<>();
+		final Function< String, Set< String > > tileNames = name ->
+				mergedGridToTiles.containsKey( name ) ? mergedGridToTiles.get( name ) : getTileNamesOfStitchedImage( name );
+
+		final List< List< Integer > > stages = new ArrayList<>();
+		for ( int index = 0; index < transformations.size(); index++ )
+		{
+			final Transformation transformation = transformations.get( index );
+			final Set< String > inputs = getInputNames( transformation );
+			final Set< String > outputs = getOutputNames( transformation, tileNames );
+
+			if ( transformation instanceof MergedGridTransformation )
+			{
+				final Set< String > tiles = new LinkedHashSet<>( outputs );
+				tiles.remove( ( ( MergedGridTransformation ) transformation ).getName() );
+				mergedGridToTiles.put( ( ( MergedGridTransformation ) transformation ).getName(), tiles );
+			}
+
+			int stage = 0;
+			for ( String input : inputs )
+				stage = Math.max( stage, lastWrite.getOrDefault( input, -1 ) + 1 );
+			for ( String output : outputs )
+			{
+				stage = Math.max( stage, lastWrite.getOrDefault( output, -1 ) + 1 );
+				stage = Math.max( stage, lastRead.getOrDefault( output, -1 ) + 1 );
+			}
+
+			for ( String input : inputs )
+				lastRead.merge( input, stage, Math::max );
+			for ( String output : outputs )
+				lastWrite.put( output, stage );
+
+			if ( stage == stages.size() )
+				stages.add( new ArrayList<>() );
+			stages.get( stage ).add( index );
+		}
+
+		return stages;
+	}
+
+	public static Set< String > getInputNames( Transformation transformation )
+	{
+		final Set< String > names = new LinkedHashSet<>( transformation.getSources() );
+
+		if ( transformation instanceof MergedGridTransformation
+				&& ( ( MergedGridTransformation ) transformation ).metadataSource != null )
+			names.add( ( ( MergedGridTransformation ) transformation ).metadataSource );
+
+		return names;
+	}
+
+	public static Set< String > getOutputNames( Transformation transformation )
+	{
+		return getOutputNames( transformation, TransformationPipeline::getTileNamesOfStitchedImage );
+	}
+
+	/**
+	 * @param tileNames
+	 * 			returns the names of the tiles of an image, if it is a stitched image,
+	 * 			and an empty set otherwise
+	 */
+	public static Set< String > getOutputNames( Transformation transformation, Function< String, Set< String > > tileNames )
+	{
+		final Set< String > names = new LinkedHashSet<>();
+
+		if ( transformation instanceof ImageTransformation )
+		{
+			final ImageTransformation imageTransformation = ( ImageTransformation ) transformation;
+			for ( String source : transformation.getSources() )
+			{
+				final String transformedName = imageTransformation.getTransformedImageName( source );
+				if ( transformedName == null )
+				{
+					// a stitched image that is transformed
+					// in place also moves its tiles
+					names.add( source );
+					names.addAll( tileNames.apply( source ) );
+				}
+				else
+				{
+					names.add( transformedName );
+				}
+			}
+		}
+		else if ( transformation instanceof MergedGridTransformation )
+		{
+			names.add( ( ( MergedGridTransformation ) transformation ).getName() );
+
+			// the StitchedImage transforms its tiles,
+			// and the tiles of nested stitched images, in place
+			for ( String source : transformation.getSources() )
+			{
+				names.add( source );
+				names.addAll( tileNames.apply( source ) );
+			}
+		}
+		else if ( transformation instanceof GridTransformation )
+		{
+			final GridTransformation gridTransformation = ( GridTransformation ) transformation;
+			if ( gridTransformation.transformedNames == null )
+			{
+				// in place
+				for ( String source : gridTransformation.getSources() )
+				{
+					names.add( source );
+					names.addAll( tileNames.apply( source ) );
+				}
+			}
+			else
+				gridTransformation.transformedNames.forEach( names::addAll );
+		}
+		else
+		{
+			names.addAll( transformation.getSources() );
+		}
+
+		return names;
+	}
+
+	private static Set< String > getTileNamesOfStitchedImage( String name )
+	{
+		final Set< String > names = new LinkedHashSet<>();
+		if ( ! DataStore.containsImage( name ) )
+			return names;
+
+		final Image< ? > image = DataStore.getImage( name );
+		if ( image instanceof StitchedImage )
+		{
+			for ( Image< ? > tileImage : ( ( StitchedImage< ?, ? > ) image ).getTileImages() )
+			{
+				names.add( tileImage.getName() );
+				names.addAll( getTileNamesOfStitchedImage( tileImage.getName() ) );
+			}
+		}
+
+		return names;
+	}
+
+	private static String getName( Transformation transformation )
+	{
+		String name = null;
+		if ( transformation instanceof AbstractImageTransformation )
+			name = ( ( AbstractImageTransformation ) transformation ).getName();
+		else if ( transformation instanceof MergedGridTransformation )
+			name = ( ( MergedGridTransformation ) transformation ).getName();
+
+		return name == null ? transformation.getClass().getSimpleName() : name;
+	}
+
+	private static void apply( Transformation transformation )
+	{
+		if ( transformation instanceof ImageTransformation )
+		{
+			final List< ? extends Image< ? > > images = DataStore.getImageList( transformation.getSources() );
+
+			final List< ? extends Image< ? > > transformedImages = images.parallelStream()
+					.map( image -> transform( image, ( ImageTransformation ) transformation ) )
+					.collect( Collectors.toList() );
+
+			for ( Image< ? > transformedImage : transformedImages )
+				DataStore.addImage( transformedImage );
+		}
+		else if ( transformation instanceof MergedGridTransformation )
+		{
+			applyMergedGrid( ( MergedGridTransformation ) transformation );
+		}
+		else if ( transformation instanceof GridTransformation )
+		{
+			applyGrid( ( GridTransformation ) transformation );
+		}
+		else
+		{
+			throw new UnsupportedOperationException( "Transformations of type " + transformation.getClass().getName() + " are not yet implemented.");
+		}
+	}
+
+	private static Image< ? > transform( Image< ? > image, ImageTransformation transformation )
+	{
+		if ( transformation instanceof AffineTransformation )
+		{
+			return ImageTransformer.affineTransform( image, ( AffineTransformation ) transformation );
+		}
+		else if ( transformation instanceof CropTransformation )
+		{
+			final CropTransformation cropTransformation = ( CropTransformation ) transformation;
+
+			// TODO: move this into the ImageTransformer class
+			return new CroppedImage<>(
+					image,
+					cropTransformation.getTransformedImageName( image.getName() ),
+					cropTransformation.min,
+					cropTransformation.max,
+					cropTransformation.centerAtOrigin );
+		}
+		else if ( transformation instanceof TimepointsTransformation )
+		{
+			return ImageTransformer.timeTransform( image, ( TimepointsTransformation ) transformation );
+		}
+		else if ( transformation instanceof InterpolatedAffineTransformation )
+		{
+			return ImageTransformer.interpolatedAffineTransform( image, ( InterpolatedAffineTransformation ) transformation );
+		}
+		else
+		{
+			throw new UnsupportedOperationException( "Transformations of type " + transformation.getClass().getName() + " are not yet implemented.");
+		}
+	}
+
+	private static void applyMergedGrid( MergedGridTransformation mergedGridTransformation )
+	{
+		// TODO: move this into the ImageTransformer class
+		List< ? extends Image< ? > > images = DataStore.getImageList( mergedGridTransformation.getSources() );
+
+		// Fetch grid metadata image
+		Image< ? > metadataImage = ( mergedGridTransformation.metadataSource == null ) ? images.get( 0 ) : DataStore.getImage( mergedGridTransformation.metadataSource );
+
+		// Create the stitched grid image
+		//
+		if ( images.get( 0 ) instanceof AnnotationImage )
+		{
+			final StitchedAnnotationImage< ? extends Annotation > annotatedStitchedImage
+					= new StitchedAnnotationImage<>(
+							( List ) images,
+							( Image ) metadataImage,
+							mergedGridTransformation.positions,
+							mergedGridTransformation.getName(),
+							mergedGridTransformation.margin );
+
+			if ( ! mergedGridTransformation.lazyLoadTables
+					&& annotatedStitchedImage.getAnnData().getTable() instanceof ConcatenatedAnnotationTableModel )
+			{
+				// force loading of all tables to enable meaningful
+				// row sorting and creating a meaningful scatterplot
+				final ConcatenatedAnnotationTableModel< ? extends Annotation > concatenatedTableModel = ( ConcatenatedAnnotationTableModel ) annotatedStitchedImage.getAnnData().getTable();
+				concatenatedTableModel.loadAllTables();
+			}
+
+			DataStore.addImage( annotatedStitchedImage );
+		}
+		else
+		{
+			DataStore.addImage( new StitchedImage<>(
+					( List ) images,
+					( Image ) metadataImage,
+					mergedGridTransformation.positions,
+					mergedGridTransformation.getName(),
+					mergedGridTransformation.margin )
+			 );
+		}
+	}
+
+	private static void applyGrid( GridTransformation gridTransformation )
+	{
+		final List< List< String > > nestedSources = gridTransformation.nestedSources;
+		final List< List< ? extends Image< ? > > > nestedImages = new ArrayList<>();
+		for ( List< String > sources : nestedSources )
+		{
+			final List< ? extends Image< ? > > images = DataStore.getImageList( sources );
+			nestedImages.add( images );
+		}
+
+		// The size of the tile of the grid is the size of the
+		// largest union mask of the images at
+		// the grid positions.
+		double[] tileRealDimensions = new double[ 2 ];
+		for ( List< ? extends Image< ? > > images : nestedImages )
+		{
+			final RealMaskRealInterval unionMask = TransformHelper.union( images );
+			final double[] realDimensions = TransformHelper.getRealDimensions( unionMask );
+			for ( int d = 0; d < 2; d++ )
+				tileRealDimensions[ d ] = Math.max( realDimensions[ d ], tileRealDimensions[ d ] );
+		}
+
+		// Add a margin to the tiles
+		for ( int d = 0; d < 2; d++ )
+		{
+			tileRealDimensions[ d ] = tileRealDimensions[ d ] * ( 1.0 + 2 * gridTransformation.margin );
+		}
+
+		// Compute the corresponding offset of where to place
+		// the images within the tile
+		final double[] offset = new double[ 2 ];
+		for ( int d = 0; d < 2; d++ )
+		{
+			offset[ d ] = tileRealDimensions[ d ] * gridTransformation.margin;
+		}
+
+		final List< int[] > gridPositions = gridTransformation.positions == null ? TransformHelper.createGridPositions( nestedSources.size() ) : gridTransformation.positions;
+
+		final List< ? extends Image< ? > > transformedImages = ImageTransformer.gridTransform( nestedImages, gridTransformation.transformedNames, gridPositions, tileRealDimensions, gridTransformation.centerAtOrigin, offset );
+
+		DataStore.putImages( transformedImages );
+	}
+}
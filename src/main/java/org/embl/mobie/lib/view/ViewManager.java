@@ -37,6 +37,7 @@ import net.imglib2.type.numeric.ARGBType;
 import org.apache.commons.lang.ArrayUtils;
 import org.embl.mobie.MoBIE;
 import org.embl.mobie.DataStore;
+import org.embl.mobie.lib.BenchmarkRecorder;
 import org.embl.mobie.lib.annotation.AnnotatedRegion;
 import org.embl.mobie.lib.annotation.AnnotatedSegment;
 import org.embl.mobie.lib.annotation.Annotation;
@@ -58,7 +59,7 @@ import org.embl.mobie.lib.serialize.transformation.*;
 import org.embl.mobie.lib.source.AnnotationType;
 import org.embl.mobie.lib.table.*;
 import org.embl.mobie.lib.transform.TransformHelper;
-import org.embl.mobie.lib.transform.ImageTransformer;
+import org.embl.mobie.lib.transform.TransformationPipeline;
 import org.embl.mobie.lib.transform.viewer.*;
 import org.embl.mobie.ui.UserInterface;
 import org.embl.mobie.ui.WindowArrangementHelper;
@@ -317,6 +318,14 @@ public class ViewManager
 	// initialize and transform
 	public void initData( View view )
 	{
+		initData( moBIE, view );
+	}
+
+	// does not need a UI, thus is also used in headless mode
+	public static void initData( MoBIE moBIE, View view )
+	{
+		final BenchmarkRecorder benchmarkRecorder = moBIE.getSettings().values.getBenchmarkRecorder();
+
 		// fetch names of all data sources that are
 		// either to be shown directly or to be transformed
 		final Map< String, Object > sourceToTransformOrDisplay = view.getSources();
@@ -360,202 +369,78 @@ public class ViewManager
 		}
 
 		if ( ! dataSources.isEmpty() )
-			moBIE.initDataSources( dataSources );
+		{
+			try ( BenchmarkRecorder.Phase phase = BenchmarkRecorder.phase( benchmarkRecorder, "initDataSources" ) )
+			{
+				moBIE.initDataSources( dataSources );
+			}
+		}
 
 		// transform images
 		// this may create new images with new names
-
-		// TODO factor this out int an image transformer class
+		// FIXME: the issue here is that then an image may exist already and a transformation is applied twice (see above)
 		final List< Transformation > transformations = view.transformations();
 		if ( transformations != null )
 		{
-			// FIXME: the issue here is that then an image may exist already and a transformation is applied twice (see above)
-			for ( Transformation transformation : transformations )
+			try ( BenchmarkRecorder.Phase phase = BenchmarkRecorder.phase( benchmarkRecorder, "transformations" ) )
 			{
-				if ( transformation instanceof ImageTransformation )
-				{
-					final List< ? extends Image< ? > > images = DataStore.getImageList( transformation.getSources() );
-
-					if ( transformation instanceof AffineTransformation )
-					{
-						final AffineTransformation affineTransformation = ( AffineTransformation ) transformation;
-
-						for ( Image< ? > image : images )
-						{
-							DataStore.addImage( ImageTransformer.affineTransform( image, affineTransformation ) );
-						}
-					}
-					else if ( transformation instanceof CropTransformation )
-					{
-						final CropTransformation cropTransformation = ( CropTransformation ) transformation;
-
-						for ( Image< ? > image : images )
-						{
-							// TODO: move this into the ImageTransformer class
-							final CroppedImage< ? > croppedImage = new CroppedImage<>(
-									image,
-									cropTransformation.getTransformedImageName( image.getName() ),
-									cropTransformation.min,
-									cropTransformation.max,
-									cropTransformation.centerAtOrigin );
-							DataStore.addImage( croppedImage );
-						}
-					}
-					else if ( transformation instanceof TimepointsTransformation )
-					{
-						final TimepointsTransformation timepointsTransformation = ( TimepointsTransformation ) transformation;
-
-						for ( Image< ? > image : images )
-						{
-							DataStore.addImage( ImageTransformer.timeTransform( image, timepointsTransformation ) );
-						}
-					}
-					else if ( transformation instanceof InterpolatedAffineTransformation )
-					{
-						InterpolatedAffineTransformation interpolatedAffineTransformation = ( InterpolatedAffineTransformation ) transformation;
-
-						for ( Image< ? > image : images )
-						{
-							DataStore.addImage( ImageTransformer.interpolatedAffineTransform( image, interpolatedAffineTransformation ) );
-						}
-					}
-					else
-					{
-						throw new UnsupportedOperationException( "Transformations of type " + transformation.getClass().getName() + " are not yet implemented.");
-					}
-				}
-				else // not an ImageTransformation
-				{
-					if ( transformation instanceof MergedGridTransformation )
-					{
-						// TODO: move this into the ImageTransformer class
-						final MergedGridTransformation mergedGridTransformation = ( MergedGridTransformation ) transformation;
-
-						List< ? extends Image< ? > > images = DataStore.getImageList( mergedGridTransformation.getSources() );
-
-//						if ( images.size() == 1 )
-//						{
-//							DataStore.addImage( images.get( 0 ) );
-//							continue;
-//						}
-
-						// Fetch grid metadata image
-						Image< ? > metadataImage = ( mergedGridTransformation.metadataSource == null ) ? images.get( 0 ) : DataStore.getImage( mergedGridTransformation.metadataSource );
-
-						// Create the stitched grid image
-						//
-						if ( images.get( 0 ) instanceof AnnotationImage )
-						{
-							final StitchedAnnotationImage< ? extends Annotation > annotatedStitchedImage
-									= new StitchedAnnotationImage<>(
-											( List ) images,
-											( Image ) metadataImage,
-											mergedGridTransformation.positions,
-											mergedGridTransformation.getName(),
-											mergedGridTransformation.margin );
-
-							if ( ! mergedGridTransformation.lazyLoadTables
-									&& annotatedStitchedImage.getAnnData().getTable() instanceof ConcatenatedAnnotationTableModel )
-							{
-								// force loading of all tables to enable meaningful
-								// row sorting and creating a meaningful scatterplot
-								final ConcatenatedAnnotationTableModel< ? extends Annotation > concatenatedTableModel = ( ConcatenatedAnnotationTableModel ) annotatedStitchedImage.getAnnData().getTable();
-								concatenatedTableModel.loadAllTables();
-							}
-
-							DataStore.addImage( annotatedStitchedImage );
-						}
-						else
-						{
-							DataStore.addImage( new StitchedImage<>(
-									( List ) images,
-									( Image ) metadataImage,
-									mergedGridTransformation.positions,
-									mergedGridTransformation.getName(),
-									mergedGridTransformation.margin )
-							 );
-						}
-					}
-					else if ( transformation instanceof GridTransformation )
-					{
-						// FIXME: move this into the ImageTransformer class
-						final GridTransformation gridTransformation = ( GridTransformation ) transformation;
-
-						final List< List< String > > nestedSources = gridTransformation.nestedSources;
-						final List< List< ? extends Image< ? > > > nestedImages = new ArrayList<>();
-						for ( List< String > sources : nestedSources )
-						{
-							final List< ? extends Image< ? > > images = DataStore.getImageList( sources );
-							nestedImages.add( images );
-						}
-
-						// The size of the tile of the grid is the size of the
-						// largest union mask of the images at
-						// the grid positions.
-						double[] tileRealDimensions = new double[ 2 ];
-						for ( List< ? extends Image< ? > > images : nestedImages )
-						{
-							final RealMaskRealInterval unionMask = TransformHelper.union( images );
-							final double[] realDimensions = TransformHelper.getRealDimensions( unionMask );
-							for ( int d = 0; d < 2; d++ )
-								tileRealDimensions[ d ] = Math.max( realDimensions[ d ], tileRealDimensions[ d ] );
-						}
-
-						// Add a margin to the tiles
-						for ( int d = 0; d < 2; d++ )
-						{
-							tileRealDimensions[ d ] = tileRealDimensions[ d ] * ( 1.0 + 2 * gridTransformation.margin );
-						}
-
-						// Compute the corresponding offset of where to place
-						// the images within the tile
-						final double[] offset = new double[ 2 ];
-						for ( int d = 0; d < 2; d++ )
-						{
-							offset[ d ] = tileRealDimensions[ d ] * gridTransformation.margin;
-						}
-
-						final List< int[] > gridPositions = gridTransformation.positions == null ? TransformHelper.createGridPositions( nestedSources.size() ) : gridTransformation.positions;
-
-						final List< ? extends Image< ? > > transformedImages = ImageTransformer.gridTransform( nestedImages, gridTransformation.transformedNames, gridPositions, tileRealDimensions, gridTransformation.centerAtOrigin, offset );
-
-						DataStore.putImages( transformedImages );
-					}
-					else
-					{
-						throw new UnsupportedOperationException( "Transformations of type " + transformation.getClass().getName() + " are not yet implemented.");
-					}
-				}
+				new TransformationPipeline( transformations ).run();
 			}
 		}
 
 		// Instantiate {@code RegionDisplay}s
 		// This cannot be done already in MoBIE.initData()
 		// because we need to wait until all images are initialised
-		for ( Display< ? > display : view.displays() )
+		try ( BenchmarkRecorder.Phase phase = BenchmarkRecorder.phase( benchmarkRecorder, "regionDisplays" ) )
 		{
-			if ( display instanceof RegionDisplay )
+			for ( Display< ? > display : view.displays() )
 			{
-				// Build the image that visualises this RegionDisplay
-				// The logic here is not ideal:
-				// https://github.com/mobie/mobie-viewer-fiji/issues/818
-				// ...as normally a display should visualise an existing image
-				// here however the display creates the image
-				// The imageNames that are referred to here must exist in this view.
-				// Thus the {@code RegionAnnotationImage} must be build
-				// *after* the above transformations,
-				// which may create new images
-				// that could be referred to here.
-				AnnData< AnnotatedRegion > annData = new RegionDisplayAnnDataCreator( moBIE, ( RegionDisplay< ? > ) display ).createAnnData();
-				final RegionAnnotationImage< AnnotatedRegion > regionAnnotationImage = new RegionAnnotationImage( ( RegionDisplay< ? > ) display, annData );
-				// The region image has the same name as the display,
-				// thus it can be identified later to be the image that
-				// will be shown by this display (via {@code regionDisplay.getSources()})
-				DataStore.addImage( regionAnnotationImage );
+				if ( display instanceof RegionDisplay )
+				{
+					// Build the image that visualises this RegionDisplay
+					// The logic here is not ideal:
+					// https://github.com/mobie/mobie-viewer-fiji/issues/818
+					// ...as normally a display should visualise an existing image
+					// here however the display creates the image
+					// The imageNames that are referred to here must exist in this view.
+					// Thus the {@code RegionAnnotationImage} must be build
+					// *after* the above transformations,
+					// which may create new images
+					// that could be referred to here.
+					AnnData< AnnotatedRegion > annData = new RegionDisplayAnnDataCreator( moBIE, ( RegionDisplay< ? > ) display ).createAnnData();
+					final RegionAnnotationImage< AnnotatedRegion > regionAnnotationImage = new RegionAnnotationImage( ( RegionDisplay< ? > ) display, annData );
+					// The region image has the same name as the display,
+					// thus it can be identified later to be the image that
+					// will be shown by this display (via {@code regionDisplay.getSources()})
+					DataStore.addImage( regionAnnotationImage );
+				}
 			}
 		}
 	}
 
+	// does not need a UI, thus is also used in headless mode
+	public static < A extends Annotation > void initAnnotationData( AbstractAnnotationDisplay< A > annotationDisplay )
+	{
+		// create combined AnnData (table)
+		// from all sources that are shown
+		for ( String name : annotationDisplay.getSources() )
+		{
+			// all sources are modelled as images
+			final Image< ? > image = DataStore.getImage( name );
+			annotationDisplay.images().add( ( Image< AnnotationType< A > > ) image );
+		}
+		annotationDisplay.combineAnnData();
+
+		// load additional tables (to be merged)
+		final List< String > requestedTableChunks = annotationDisplay.getRequestedTableChunks();
+		if ( requestedTableChunks != null )
+			for ( String tableChunk : requestedTableChunks )
+			{
+				final AnnotationTableModel< A > tableModel = annotationDisplay.getAnnData().getTable();
+				tableModel.loadTableChunk( tableChunk );
+			}
+	}
+
 	public synchronized < A extends Annotation > void show( Display< ? > display )
 	{
 		if ( currentDisplays.contains( display ) ) return;
@@ -576,24 +461,7 @@ public class ViewManager
 		{
 			final AbstractAnnotationDisplay< A > annotationDisplay = ( AbstractAnnotationDisplay ) display;
 
-			// create combined AnnData (table)
-			// from all sources that are shown
-			for ( String name : display.getSources() )
-			{
-				// all sources are modelled as images
-				final Image< ? > image = DataStore.getImage( name );
-				annotationDisplay.images().add( ( Image< AnnotationType< A > > ) image );
-			}
-			annotationDisplay.combineAnnData();
-
-			// load additional tables (to be merged)
-			final List< String > requestedTableChunks = annotationDisplay.getRequestedTableChunks();
-			if ( requestedTableChunks != null )
-				for ( String tableChunk : requestedTableChunks )
-				{
-					final AnnotationTableModel< A > tableModel = annotationDisplay.getAnnData().getTable();
-					tableModel.loadTableChunk( tableChunk );
-				}
+			initAnnotationData( annotationDisplay );
 
 			// set selected segments
 			//
@@ -791,7 +659,7 @@ public class ViewManager
 	{
 		IJ.log( "Closing BDV..." );
 		removeAllSourceDisplays( true );
-		sliceViewer.getBdvHandle().close();
+		sliceViewer.close();
 		IJ.log( "Closing 3D Viewer..." );
 		universeManager.close();
 		IJ.log( "Closing UI..." );
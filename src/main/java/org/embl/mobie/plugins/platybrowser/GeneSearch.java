@@ -28,31 +28,39 @@
  */
 package org.embl.mobie.plugins.platybrowser;
 
+import bdv.util.Affine3DHelpers;
+import bdv.viewer.Source;
 import bdv.viewer.SourceAndConverter;
 import de.embl.cba.tables.TableUIs;
 import ij.IJ;
 import org.embl.mobie.DataStore;
 import org.embl.mobie.MoBIE;
+import org.embl.mobie.lib.MoBIEHelper;
 import org.embl.mobie.lib.ThreadHelper;
 import org.embl.mobie.lib.serialize.DataSource;
 import org.embl.mobie.lib.serialize.Dataset;
 import org.embl.mobie.lib.serialize.ImageDataSource;
 import org.embl.mobie.lib.image.Image;
 import org.embl.mobie.lib.serialize.View;
-import mpicbg.spim.data.sequence.VoxelDimensions;
 import net.imglib2.Cursor;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.algorithm.neighborhood.HyperSphereShape;
 import net.imglib2.algorithm.neighborhood.Neighborhood;
+import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.RealType;
 import org.embl.mobie.io.ImageDataFormat;
 
+import javax.annotation.Nullable;
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -79,6 +87,25 @@ public class GeneSearch
 	private Set< String > prosprSourceNames;
 	private static HashMap< String, Image< ? > > prosprSources;
 
+	// brute force search regions have at most this radius in voxels;
+	// larger regions are searched at a lower resolution level
+	public static final int MAX_BRUTE_FORCE_RADIUS = 16;
+	public static final int MAX_NUM_CACHED_SEARCHES = 1000;
+
+	// the keys contain the URIs of the images, because
+	// different projects may contain the same gene names
+	private static final Map< String, NonZeroVoxelIndex > imageToIndex = new ConcurrentHashMap<>();
+	private static final Set< String > indexedImages = ConcurrentHashMap.newKeySet();
+	private static final Map< String, Map< String, Double > > searchToExpressionLevels = Collections.synchronizedMap(
+			new LinkedHashMap< String, Map< String, Double > >( 16, 0.75f, true )
+			{
+				@Override
+				protected boolean removeEldestEntry( Map.Entry< String, Map< String, Double > > eldest )
+				{
+					return size() > MAX_NUM_CACHED_SEARCHES;
+				}
+			} );
+
 	public GeneSearch( double micrometerRadius,
 					   double[] micrometerPosition,
 					   MoBIE moBIE )
@@ -105,7 +132,16 @@ public class GeneSearch
 				prosprSources.put( prosprSourceName, DataStore.getImage( prosprSourceName ) );
 		}
 
-		final Map< String, Double > geneExpressionLevels = runSearchAndGetLocalExpression( prosprSources );
+		final String search = Arrays.toString( micrometerPosition ) + ";" + micrometerRadius + ";" + getImagesKey( prosprSources );
+		Map< String, Double > geneExpressionLevels = searchToExpressionLevels.get( search );
+		if ( geneExpressionLevels == null )
+		{
+			geneExpressionLevels = runSearchAndGetLocalExpression( prosprSources );
+			searchToExpressionLevels.put( search, geneExpressionLevels );
+		}
+
+		// subsequent searches can use the index
+		createIndices( prosprSources );
 
 		GeneSearchUtils.addRowToGeneExpressionTable( micrometerPosition, micrometerRadius, geneExpressionLevels );
 
@@ -135,7 +171,7 @@ public class GeneSearch
 		{
 			futures.add(
 				ThreadHelper.executorService.submit( () -> {
-					searchGene( images.get( gene ) );
+					searchGene( gene, images.get( gene ) );
 			}));
 		}
 		ThreadHelper.waitUntilFinished( futures );
@@ -143,25 +179,253 @@ public class GeneSearch
 		return localExpression;
 	}
 
-	private void searchGene( Image< ? > image )
+	private void searchGene( String gene, Image< ? > image )
 	{
-		final bdv.viewer.Source source = image.getSourcePair().getSource();
+		final Source< ? > source = image.getSourcePair().getSource();
+
+		final double calibration = source.getVoxelDimensions().dimension( 0 );
 
-		final RandomAccessibleInterval< ? > rai = source.getSource( 0, 0 );
+		// search at the finest level at which the search region is not too large,
+		// or at the level of the index, if that is finer
+		final int indexLevel = NonZeroVoxelIndex.getIndexLevel( source );
+		final int searchLevel = getSearchLevel( source, calibration );
+		final int level = indexLevel < 0 ? searchLevel : Math.min( searchLevel, indexLevel );
 
-		final VoxelDimensions voxelDimensions = source.getVoxelDimensions();
+		final double levelCalibration = calibration * getDownsampling( source, level );
+		final long[] voxelPosition = getVoxelPosition( source, level );
+		final int voxelRadius = ( int ) Math.ceil( micrometerRadius / levelCalibration );
 
-		final double fractionOfNonZeroVoxels = getFractionOfNonZeroVoxels(
-				( RandomAccessibleInterval ) rai,
-				micrometerPosition,
-				micrometerRadius,
-				voxelDimensions.dimension( 0 ) );
+		final NonZeroVoxelIndex index = imageToIndex.get( getImageKey( gene, image ) );
+
+		final double fractionOfNonZeroVoxels;
+		if ( index != null && index.getLevel() == level )
+		{
+			fractionOfNonZeroVoxels = index.getFractionOfNonZeroVoxels( voxelPosition, voxelRadius );
+		}
+		else
+		{
+			fractionOfNonZeroVoxels = getFractionOfNonZeroVoxels(
+					( RandomAccessibleInterval ) source.getSource( 0, level ),
+					voxelPosition,
+					voxelRadius );
+		}
 
 		localExpression.put( source.getName(), fractionOfNonZeroVoxels );
 
 		IJ.log( "Gene Search: Fraction of non-zero voxels in search region: " + source.getName() + ": " + fractionOfNonZeroVoxels );
 	}
 
+	// the voxel of the given resolution level that contains the search center
+	private long[] getVoxelPosition( Source< ? > source, int level )
+	{
+		final AffineTransform3D sourceTransform = new AffineTransform3D();
+		source.getSourceTransform( 0, level, sourceTransform );
+		final double[] position = new double[ 3 ];
+		sourceTransform.inverse().apply( micrometerPosition, position );
+
+		final long[] voxelPosition = new long[ 3 ];
+		for ( int d = 0; d < 3; d++ )
+			voxelPosition[ d ] = Math.round( position[ d ] );
+		return voxelPosition;
+	}
+
+	private int getSearchLevel( Source< ? > source, double calibration )
+	{
+		for ( int level = 0; level < source.getNumMipmapLevels(); level++ )
+		{
+			final double radius = micrometerRadius / ( calibration * getDownsampling( source, level ) );
+			if ( Math.ceil( radius ) <= MAX_BRUTE_FORCE_RADIUS )
+				return level;
+		}
+
+		return source.getNumMipmapLevels() - 1;
+	}
+
+	private static double getDownsampling( Source< ? > source, int level )
+	{
+		final AffineTransform3D transform = new AffineTransform3D();
+		source.getSourceTransform( 0, 0, transform );
+		final double scale = Affine3DHelpers.extractScale( transform, 0 );
+		source.getSourceTransform( 0, level, transform );
+		return Affine3DHelpers.extractScale( transform, 0 ) / scale;
+	}
+
+	// Loads or computes the indices in the background
+	private static void createIndices( Map< String, Image< ? > > images )
+	{
+		for ( String gene : images.keySet() )
+		{
+			final String imageKey = getImageKey( gene, images.get( gene ) );
+			if ( ! indexedImages.add( imageKey ) )
+				continue;
+
+			ThreadHelper.ioExecutorService.submit( () -> {
+				try
+				{
+					final NonZeroVoxelIndex index = loadOrCreateIndex( gene, images.get( gene ) );
+					if ( index != null )
+						imageToIndex.put( imageKey, index );
+				}
+				catch ( Exception e )
+				{
+					IJ.log( "[WARNING] Gene search: Could not create index for " + gene + ": " + e.getMessage() );
+				}
+			} );
+		}
+	}
+
+	// returns null if all resolution levels are too large to be indexed,
+	// in which case the search is done without an index
+	@Nullable
+	private static NonZeroVoxelIndex loadOrCreateIndex( String gene, Image< ? > image ) throws IOException
+	{
+		final Source< ? > source = image.getSourcePair().getSource();
+		final int level = NonZeroVoxelIndex.getIndexLevel( source );
+		if ( level < 0 )
+			return null;
+		final RandomAccessibleInterval rai = source.getSource( 0, level );
+		final String uri = getUri( image );
+		final String dataVersion = uri == null ? null : getDataVersion( uri );
+		if ( dataVersion == null )
+			return NonZeroVoxelIndex.create( rai, level ); // cannot be persisted
+
+		final File file = new File( getIndexDirectory(),
+				gene.replaceAll( "[^A-Za-z0-9_.-]", "_" ) + "-" + Integer.toHexString( uri.hashCode() ) + "-s" + level + ".nzi" );
+
+		if ( file.exists() )
+		{
+			try
+			{
+				final NonZeroVoxelIndex index = NonZeroVoxelIndex.load( file );
+				if ( index.getDataVersion() == hash( dataVersion ) )
+					return index;
+			}
+			catch ( IOException e )
+			{
+				// e.g. written by an older version, thus it is replaced below
+			}
+		}
+
+		final NonZeroVoxelIndex index = NonZeroVoxelIndex.create( rai, level, hash( dataVersion ) );
+		try
+		{
+			index.save( file );
+			// use the memory mapped file rather than the heap
+			return NonZeroVoxelIndex.load( file );
+		}
+		catch ( IOException e )
+		{
+			IJ.log( "[WARNING] Gene search: Could not save index to " + file + ": " + e.getMessage() );
+			return index;
+		}
+	}
+
+	@Nullable
+	private static String getUri( Image< ? > image )
+	{
+		final String uri = MoBIEHelper.fetchImageDataInfo( image ).uri;
+		if ( uri == null || uri.startsWith( "Could not determine" ) )
+			return null;
+		return uri;
+	}
+
+	private static String getImageKey( String gene, Image< ? > image )
+	{
+		final String uri = getUri( image );
+		return gene + "@" + ( uri == null ? image.getClass().getName() + "@" + System.identityHashCode( image ) : uri );
+	}
+
+	private static String getImagesKey( Map< String, Image< ? > > images )
+	{
+		final ArrayList< String > imageKeys = new ArrayList<>();
+		for ( String gene : images.keySet() )
+			imageKeys.add( getImageKey( gene, images.get( gene ) ) );
+		Collections.sort( imageKeys );
+		return Long.toHexString( hash( String.join( ";", imageKeys ) ) );
+	}
+
+	/**
+	 * Identifies the version of the image data, such that an index is rebuilt if the data changes.
+	 * For a local image these are the sizes and modification times of the file or directory and
+	 * of its direct children, e.g. the metadata and resolution levels of an OME-Zarr or N5.
+	 * For a remote image these are the ETag, modification time and size that the server reports
+	 * for the image or, for an OME-Zarr or N5, for its metadata.
+	 *
+	 * @return the version, or null if it cannot be determined
+	 */
+	@Nullable
+	static String getDataVersion( String uri )
+	{
+		final File file = new File( uri );
+		if ( file.exists() )
+		{
+			final StringBuilder version = new StringBuilder( file.length() + ":" + file.lastModified() );
+			final File[] children = file.listFiles();
+			if ( children != null )
+			{
+				Arrays.sort( children );
+				for ( File child : children )
+					version.append( ";" ).append( child.getName() ).append( ":" ).append( child.length() ).append( ":" ).append( child.lastModified() );
+			}
+			return version.toString();
+		}
+
+		if ( ! uri.startsWith( "http://" ) && ! uri.startsWith( "https://" ) )
+			return null;
+
+		final String base = uri.endsWith( "/" ) ? uri.substring( 0, uri.length() - 1 ) : uri;
+		for ( String candidate : new String[]{ base, base + "/.zattrs", base + "/zarr.json", base + "/attributes.json" } )
+		{
+			try
+			{
+				final HttpURLConnection connection = ( HttpURLConnection ) new URL( candidate ).openConnection();
+				connection.setRequestMethod( "HEAD" );
+				connection.setConnectTimeout( 5000 );
+				connection.setReadTimeout( 5000 );
+				try
+				{
+					if ( connection.getResponseCode() != HttpURLConnection.HTTP_OK )
+						continue;
+
+					final String eTag = connection.getHeaderField( "ETag" );
+					final long lastModified = connection.getLastModified();
+					final long length = connection.getContentLengthLong();
+					if ( eTag == null && lastModified == 0 )
+						continue;
+
+					return candidate + ":" + eTag + ":" + lastModified + ":" + length;
+				}
+				finally
+				{
+					connection.disconnect();
+				}
+			}
+			catch ( IOException e )
+			{
+				// try the next candidate
+			}
+		}
+
+		return null;
+	}
+
+	private static long hash( String string )
+	{
+		long hash = 1125899906842597L;
+		for ( int i = 0; i < string.length(); i++ )
+			hash = 31 * hash + string.charAt( i );
+		return hash;
+	}
+
+	/**
+	 * The indices are stored per user rather than next to the
+	 * project, because projects are typically read-only or remote.
+	 */
+	public static File getIndexDirectory()
+	{
+		return new File( System.getProperty( "user.home" ), ".mobie" + File.separator + "gene-search" );
+	}
+
 	private void removeGenesWithZeroExpression( Map< String, Double > localSortedExpression)
 	{
 		ArrayList< String > sortedNames = new ArrayList( localSortedExpression.keySet() );
@@ -298,12 +562,18 @@ public class GeneSearch
 
 		public static < T extends RealType< T > & NativeType< T > >
 		double getFractionOfNonZeroVoxels( final RandomAccessibleInterval< T > rai, double[] position, double radius, double calibration )
+		{
+			return getFractionOfNonZeroVoxels( rai, getPixelPosition( position, calibration ), ( int ) Math.ceil( radius / calibration ) );
+		}
+
+		public static < T extends RealType< T > & NativeType< T > >
+		double getFractionOfNonZeroVoxels( final RandomAccessibleInterval< T > rai, long[] voxelPosition, int voxelRadius )
 		{
 			// TODO: add out-of-bounds strategy or is this handled by the Neighborhood?
-			final HyperSphereShape sphereShape = new HyperSphereShape( ( int ) Math.ceil( radius / calibration ) );
+			final HyperSphereShape sphereShape = new HyperSphereShape( voxelRadius );
 			final RandomAccessible< Neighborhood< T > > nra = sphereShape.neighborhoodsRandomAccessible( rai );
 			final RandomAccess< Neighborhood< T > > neighborhoodRandomAccess = nra.randomAccess();
-			neighborhoodRandomAccess.setPosition( getPixelPosition( position, calibration ) );
+			neighborhoodRandomAccess.setPosition( voxelPosition );
 
 			final Neighborhood< T > neighborhood = neighborhoodRandomAccess.get();
 			final Cursor< T > cursor = neighborhood.cursor();
@@ -326,7 +596,7 @@ public class GeneSearch
 			return 1.0 * numberOfNonZeroVoxels / numberOfVoxels;
 		}
 
-		private static long[] getPixelPosition( double[] position, double calibration )
+		static long[] getPixelPosition( double[] position, double calibration )
 		{
 			long[] pixelPosition = new long[ position.length ];
 			for ( int d = 0; d < position.length; ++d )
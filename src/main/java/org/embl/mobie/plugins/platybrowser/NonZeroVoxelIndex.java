@@ -0,0 +1,293 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.plugins.platybrowser;
+
+import bdv.viewer.Source;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Summed-volume table (3D integral image) of the non-zero voxels
+ * of one resolution level of an image.
+ *
+ * The number of non-zero voxels within a box is computed from
+ * 8 entries of the table. A sphere is decomposed into boxes,
+ * one for each run of rows (along y) that have the same extent
+ * along x, such that a spherical search region of radius r
+ * needs O(r^2) rather than O(r^3) operations.
+ *
+ * The table can be saved to a file, which is memory mapped
+ * when it is loaded. The file stores a version of the image
+ * data, such that outdated files can be recognised.
+ */
+public class NonZeroVoxelIndex
+{
+	// the index is computed for the finest resolution level with
+	// at most this number of voxels (the table needs 4 bytes per voxel)
+	public static final long MAX_NUM_VOXELS = 8 * 1024 * 1024;
+
+	private static final int MAGIC = 0x4D4E5A32; // "MNZ2"
+	private static final int HEADER_BYTES = 5 * Integer.BYTES + Long.BYTES;
+
+	private final long dataVersion;
+	private final int level;
+	private final int nx;
+	private final int ny;
+	private final int nz;
+	private final IntBuffer sums; // ( nx + 1 ) * ( ny + 1 ) * ( nz + 1 ), with zeros at index 0 of each dimension
+
+	private NonZeroVoxelIndex( long dataVersion, int level, int nx, int ny, int nz, IntBuffer sums )
+	{
+		this.dataVersion = dataVersion;
+		this.level = level;
+		this.nx = nx;
+		this.ny = ny;
+		this.nz = nz;
+		this.sums = sums;
+	}
+
+	/**
+	 * @return the finest resolution level with at most {@code MAX_NUM_VOXELS} voxels,
+	 * 			or -1 if all levels are larger, in which case no index should be created
+	 */
+	public static int getIndexLevel( Source< ? > source )
+	{
+		for ( int level = 0; level < source.getNumMipmapLevels(); level++ )
+			if ( Intervals.numElements( source.getSource( 0, level ) ) <= MAX_NUM_VOXELS )
+				return level;
+
+		return -1;
+	}
+
+	public static < T extends RealType< T > > NonZeroVoxelIndex create( RandomAccessibleInterval< T > rai, int level )
+	{
+		return create( rai, level, 0 );
+	}
+
+	/**
+	 * @param dataVersion
+	 * 			identifies the version of the image data, e.g. a hash of its modification time
+	 */
+	public static < T extends RealType< T > > NonZeroVoxelIndex create( RandomAccessibleInterval< T > rai, int level, long dataVersion )
+	{
+		if ( rai.numDimensions() != 3 )
+			throw new IllegalArgumentException( "Only 3D images are supported, but the image has " + rai.numDimensions() + " dimensions." );
+
+		// the voxel positions of the queries are used as indices into the table
+		for ( int d = 0; d < 3; d++ )
+			if ( rai.min( d ) != 0 )
+				throw new IllegalArgumentException( "Only images that start at zero are supported, but the image starts at " + rai.min( d ) + " in dimension " + d + "." );
+
+		final int nx = ( int ) rai.dimension( 0 );
+		final int ny = ( int ) rai.dimension( 1 );
+		final int nz = ( int ) rai.dimension( 2 );
+		final int sx = 1;
+		final int sy = nx + 1;
+		final int sz = ( nx + 1 ) * ( ny + 1 );
+		final int[] sums = new int[ sz * ( nz + 1 ) ];
+
+		// the cursor iterates x fastest, such that all
+		// entries of the recurrence have been computed already
+		final Cursor< T > cursor = Views.flatIterable( rai ).cursor();
+		for ( int z = 1; z <= nz; z++ )
+			for ( int y = 1; y <= ny; y++ )
+				for ( int x = 1; x <= nx; x++ )
+				{
+					final int value = cursor.next().getRealDouble() != 0 ? 1 : 0;
+					final int i = x * sx + y * sy + z * sz;
+					sums[ i ] = value
+							+ sums[ i - sx ] + sums[ i - sy ] + sums[ i - sz ]
+							- sums[ i - sx - sy ] - sums[ i - sx - sz ] - sums[ i - sy - sz ]
+							+ sums[ i - sx - sy - sz ];
+				}
+
+		return new NonZeroVoxelIndex( dataVersion, level, nx, ny, nz, IntBuffer.wrap( sums ) );
+	}
+
+	public void save( File file ) throws IOException
+	{
+		file.getParentFile().mkdirs();
+
+		// write to a temporary file first, such that
+		// other processes never load an incomplete file
+		final File tmp = new File( file.getPath() + ".tmp" );
+		try ( RandomAccessFile randomAccessFile = new RandomAccessFile( tmp, "rw" );
+			  FileChannel channel = randomAccessFile.getChannel() )
+		{
+			final ByteBuffer header = ByteBuffer.allocate( HEADER_BYTES ).order( ByteOrder.LITTLE_ENDIAN );
+			header.putInt( MAGIC ).putLong( dataVersion ).putInt( level ).putInt( nx ).putInt( ny ).putInt( nz ).flip();
+			channel.write( header );
+
+			final int numSums = sums.capacity();
+			final ByteBuffer data = ByteBuffer.allocate( numSums * Integer.BYTES ).order( ByteOrder.LITTLE_ENDIAN );
+			for ( int i = 0; i < numSums; i++ )
+				data.putInt( sums.get( i ) );
+			data.flip();
+			while ( data.hasRemaining() )
+				channel.write( data );
+		}
+
+		Files.move( tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+	}
+
+	public static NonZeroVoxelIndex load( File file ) throws IOException
+	{
+		try ( RandomAccessFile randomAccessFile = new RandomAccessFile( file, "r" );
+			  FileChannel channel = randomAccessFile.getChannel() )
+		{
+			final ByteBuffer header = channel.map( FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES ).order( ByteOrder.LITTLE_ENDIAN );
+			if ( header.getInt() != MAGIC )
+				throw new IOException( "Not a non-zero voxel index: " + file );
+
+			final long dataVersion = header.getLong();
+			final int level = header.getInt();
+			final int nx = header.getInt();
+			final int ny = header.getInt();
+			final int nz = header.getInt();
+			final long numBytes = ( long ) ( nx + 1 ) * ( ny + 1 ) * ( nz + 1 ) * Integer.BYTES;
+			if ( channel.size() != HEADER_BYTES + numBytes )
+				throw new IOException( "Incomplete non-zero voxel index: " + file );
+
+			// the mapping stays valid after closing the channel
+			final IntBuffer sums = channel.map( FileChannel.MapMode.READ_ONLY, HEADER_BYTES, numBytes ).order( ByteOrder.LITTLE_ENDIAN ).asIntBuffer();
+			return new NonZeroVoxelIndex( dataVersion, level, nx, ny, nz, sums );
+		}
+	}
+
+	public long getDataVersion()
+	{
+		return dataVersion;
+	}
+
+	public int getLevel()
+	{
+		return level;
+	}
+
+	public long[] getDimensions()
+	{
+		return new long[]{ nx, ny, nz };
+	}
+
+	/**
+	 * @return the number of non-zero voxels in the box from min to max (inclusive);
+	 * 			voxels outside the image are zero
+	 */
+	public long getNumNonZeroVoxels( long[] min, long[] max )
+	{
+		final int x0 = clamp( min[ 0 ], nx );
+		final int y0 = clamp( min[ 1 ], ny );
+		final int z0 = clamp( min[ 2 ], nz );
+		final int x1 = clamp( max[ 0 ] + 1, nx );
+		final int y1 = clamp( max[ 1 ] + 1, ny );
+		final int z1 = clamp( max[ 2 ] + 1, nz );
+
+		if ( x0 >= x1 || y0 >= y1 || z0 >= z1 )
+			return 0;
+
+		return ( long ) sum( x1, y1, z1 )
+				- sum( x0, y1, z1 ) - sum( x1, y0, z1 ) - sum( x1, y1, z0 )
+				+ sum( x0, y0, z1 ) + sum( x0, y1, z0 ) + sum( x1, y0, z0 )
+				- sum( x0, y0, z0 );
+	}
+
+	/**
+	 * Computes the same as {@code GeneSearchUtils.getFractionOfNonZeroVoxels}
+	 * for the voxels within the sphere, i.e. the voxels whose squared
+	 * distance to the center is at most radius^2.
+	 */
+	public double getFractionOfNonZeroVoxels( long[] center, int radius )
+	{
+		final long radius2 = ( long ) radius * radius;
+		final long[] min = new long[ 3 ];
+		final long[] max = new long[ 3 ];
+
+		long numNonZeroVoxels = 0;
+		long numVoxels = 0;
+		for ( int dz = -radius; dz <= radius; dz++ )
+		{
+			final long remainderZ = radius2 - ( long ) dz * dz;
+			min[ 2 ] = max[ 2 ] = center[ 2 ] + dz;
+
+			// rows of the disc with the same half width form one box
+			final int radiusY = floorSqrt( remainderZ );
+			int dy = - radiusY;
+			while ( dy <= radiusY )
+			{
+				final int halfWidth = floorSqrt( remainderZ - ( long ) dy * dy );
+				int dyEnd = dy;
+				while ( dyEnd < radiusY && floorSqrt( remainderZ - ( long ) ( dyEnd + 1 ) * ( dyEnd + 1 ) ) == halfWidth )
+					dyEnd++;
+
+				min[ 0 ] = center[ 0 ] - halfWidth;
+				max[ 0 ] = center[ 0 ] + halfWidth;
+				min[ 1 ] = center[ 1 ] + dy;
+				max[ 1 ] = center[ 1 ] + dyEnd;
+				numNonZeroVoxels += getNumNonZeroVoxels( min, max );
+				numVoxels += ( 2L * halfWidth + 1 ) * ( dyEnd - dy + 1 );
+
+				dy = dyEnd + 1;
+			}
+		}
+
+		return 1.0 * numNonZeroVoxels / numVoxels;
+	}
+
+	private int sum( int x, int y, int z )
+	{
+		return sums.get( x + ( nx + 1 ) * ( y + ( ny + 1 ) * z ) );
+	}
+
+	// clamps a voxel coordinate to a coordinate of the summed-volume table
+	private static int clamp( long value, int max )
+	{
+		return ( int ) Math.max( 0, Math.min( max, value ) );
+	}
+
+	private static int floorSqrt( long value )
+	{
+		int root = ( int ) Math.sqrt( value );
+		while ( ( long ) root * root > value ) root--;
+		while ( ( long ) ( root + 1 ) * ( root + 1 ) <= value ) root++;
+		return root;
+	}
+}
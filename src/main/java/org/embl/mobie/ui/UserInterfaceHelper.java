@@ -45,6 +45,7 @@ import org.embl.mobie.command.context.ConfigureSegmentRenderingCommand;
 import org.embl.mobie.io.util.IOHelper;
 import org.embl.mobie.MoBIE;
 import org.embl.mobie.lib.bdv.AutoContrastAdjuster;
+import org.embl.mobie.lib.bdv.blend.AccumulateAlphaBlendingProjectorARGB;
 import org.embl.mobie.lib.bdv.blend.BlendingMode;
 import org.embl.mobie.lib.io.FileLocation;
 import org.embl.mobie.lib.MoBIEInfo;
@@ -567,6 +568,7 @@ public class UserInterfaceHelper
 						BlendingMode.class.getName(),
 						blendingModeComboBox.getSelectedItem() );
 			}
+			AccumulateAlphaBlendingProjectorARGB.blendingSettingsChanged();
 			bdvHandle.getViewerPanel().requestRepaint();
 		} );
 		blendingPanel.add( blendingModeComboBox );
@@ -0,0 +1,151 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package develop;
+
+import net.imglib2.FinalRealInterval;
+import org.embl.mobie.lib.table.ColumnNames;
+import org.embl.mobie.lib.table.saw.TableSawAnnotatedSegment;
+import org.embl.mobie.lib.table.saw.TableSawAnnotatedSegmentCreator;
+import org.embl.mobie.lib.table.saw.TableSawAnnotationTableModel;
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.IntColumn;
+import tech.tablesaw.api.Table;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the heap that is needed for the annotations of a table
+ * with 2 million 3D segments (not counting the table itself).
+ * Compares one object graph per row (as previously used by
+ * {@code TableSawAnnotatedSegment}) to the columnar store.
+ *
+ * Run with e.g. -Xmx8g.
+ */
+public class BenchmarkAnnotatedSegmentMemory
+{
+	public static final int NUM_ROWS = 2_000_000;
+
+	public static void main( String[] args )
+	{
+		final Table table = createTable();
+
+		long before = usedHeap();
+		final List< PerRowSegment > perRowSegments = new ArrayList<>( NUM_ROWS );
+		for ( int row = 0; row < NUM_ROWS; row++ )
+			perRowSegments.add( new PerRowSegment( table, row ) );
+		long perRowBytes = usedHeap() - before;
+		System.out.println( "Per row objects: " + perRowBytes / NUM_ROWS + " bytes per segment" );
+		perRowSegments.clear();
+
+		before = usedHeap();
+		final TableSawAnnotationTableModel< TableSawAnnotatedSegment > model =
+				new TableSawAnnotationTableModel<>( table.name(), new TableSawAnnotatedSegmentCreator( table ), null, null, table );
+		long storeBytes = usedHeap() - before;
+		System.out.println( "Columnar store:  " + storeBytes / model.numAnnotations() + " bytes per segment" );
+		System.out.println( "Saving: " + ( perRowBytes - storeBytes ) / ( 1024 * 1024 ) + " MiB" );
+	}
+
+	private static Table createTable()
+	{
+		final Random random = new Random( 42 );
+		final Table table = Table.create( "segments" );
+		final int[] labels = new int[ NUM_ROWS ];
+		for ( int row = 0; row < NUM_ROWS; row++ )
+			labels[ row ] = row + 1;
+		table.addColumns( IntColumn.create( ColumnNames.LABEL_ID, labels ) );
+
+		final String[] dims = { "x", "y", "z" };
+		for ( String dim : dims )
+		{
+			final double[] anchor = new double[ NUM_ROWS ];
+			final double[] min = new double[ NUM_ROWS ];
+			final double[] max = new double[ NUM_ROWS ];
+			for ( int row = 0; row < NUM_ROWS; row++ )
+			{
+				anchor[ row ] = 1000 * random.nextDouble();
+				min[ row ] = anchor[ row ] - 5;
+				max[ row ] = anchor[ row ] + 5;
+			}
+			table.addColumns(
+					DoubleColumn.create( "anchor_" + dim, anchor ),
+					DoubleColumn.create( "bb_min_" + dim, min ),
+					DoubleColumn.create( "bb_max_" + dim, max ) );
+		}
+		return table;
+	}
+
+	private static long usedHeap()
+	{
+		final Runtime runtime = Runtime.getRuntime();
+		for ( int i = 0; i < 3; i++ )
+			System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * The fields of the previous {@code TableSawAnnotatedSegment}.
+	 */
+	static class PerRowSegment
+	{
+		final Table table;
+		final int rowIndex;
+		final int timePoint;
+		final int labelId;
+		final double[] position;
+		final FinalRealInterval boundingBox;
+		float[] mesh;
+		final String source;
+		final String uuid;
+
+		PerRowSegment( Table table, int rowIndex )
+		{
+			this.table = table;
+			this.rowIndex = rowIndex;
+			this.timePoint = 0;
+			this.labelId = table.intColumn( ColumnNames.LABEL_ID ).get( rowIndex );
+			this.position = new double[]{
+					table.doubleColumn( "anchor_x" ).get( rowIndex ),
+					table.doubleColumn( "anchor_y" ).get( rowIndex ),
+					table.doubleColumn( "anchor_z" ).get( rowIndex ) };
+			this.boundingBox = new FinalRealInterval(
+					new double[]{
+							table.doubleColumn( "bb_min_x" ).get( rowIndex ),
+							table.doubleColumn( "bb_min_y" ).get( rowIndex ),
+							table.doubleColumn( "bb_min_z" ).get( rowIndex ) },
+					new double[]{
+							table.doubleColumn( "bb_max_x" ).get( rowIndex ),
+							table.doubleColumn( "bb_max_y" ).get( rowIndex ),
+							table.doubleColumn( "bb_max_z" ).get( rowIndex ) } );
+			this.source = table.name();
+			this.uuid = source + ";" + timePoint + ";" + labelId;
+		}
+	}
+}
@@ -0,0 +1,197 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package develop;
+
+import net.imglib2.RealLocalizable;
+import net.imglib2.RealPoint;
+import net.imglib2.RealPositionable;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.realtransform.RealTransform;
+import org.embl.mobie.lib.transform.InterpolatedAffineRealTransform;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Renders 1000 x 1000 pixel planes through a serial section stack of
+ * 200 slices with 50 registered key slices, as done by a
+ * RealTransformRealRandomAccessible (one copy of the transform per plane).
+ * Compares the previous hash map cached interpolation to the
+ * per-slice lookup table of {@code InterpolatedAffineRealTransform}.
+ */
+public class BenchmarkInterpolatedAffineRealTransform
+{
+	public static final int SIZE = 1000;
+	public static final int NUM_SLICES = 200;
+	public static final int NUM_PLANES = 50;
+
+	public static void main( String[] args )
+	{
+		final Random random = new Random( 42 );
+		final TreeMap< Double, double[] > transforms = new TreeMap<>();
+		for ( int z = 0; z < NUM_SLICES; z += 4 )
+		{
+			final AffineTransform3D affine = new AffineTransform3D();
+			affine.rotate( 2, 0.1 * random.nextGaussian() );
+			affine.translate( 10 * random.nextGaussian(), 10 * random.nextGaussian(), 0 );
+			transforms.put( ( double ) z, affine.getRowPackedCopy() );
+		}
+
+		final AffineTransform3D globalToSource = new AffineTransform3D();
+		globalToSource.scale( 2.0, 2.0, 0.5 );
+
+		final InterpolatedAffineRealTransform lookupTransform = new InterpolatedAffineRealTransform( "lut", globalToSource );
+		lookupTransform.addTransforms( transforms );
+		final CachedInterpolatedAffineRealTransform cachedTransform = new CachedInterpolatedAffineRealTransform( globalToSource, transforms );
+
+		// the two agree at the slice centers
+		double maxDifference = 0;
+		final double[] a = new double[ 3 ], b = new double[ 3 ];
+		for ( int slice = 0; slice < NUM_SLICES; slice++ )
+		{
+			final double[] position = { random.nextDouble() * SIZE, random.nextDouble() * SIZE, slice / 0.5 };
+			lookupTransform.apply( position, a );
+			cachedTransform.copy().apply( position, b );
+			for ( int d = 0; d < 3; d++ )
+				maxDifference = Math.max( maxDifference, Math.abs( a[ d ] - b[ d ] ) );
+		}
+		System.out.println( "Max. difference at slice centers: " + maxDifference );
+
+		for ( int iteration = 0; iteration < 5; iteration++ )
+		{
+			System.out.println( "Hash map cache: " + render( cachedTransform ) + " ms" );
+			System.out.println( "Lookup table:   " + render( lookupTransform ) + " ms" );
+		}
+	}
+
+	private static long render( RealTransform transform )
+	{
+		final long start = System.currentTimeMillis();
+		final RealPoint source = new RealPoint( 3 );
+		final RealPoint target = new RealPoint( 3 );
+		double sum = 0;
+		for ( int plane = 0; plane < NUM_PLANES; plane++ )
+		{
+			final RealTransform copy = transform.copy();
+			source.setPosition( plane * 4.0 * NUM_SLICES / NUM_PLANES, 2 );
+			for ( int y = 0; y < SIZE; y++ )
+			{
+				source.setPosition( y, 1 );
+				for ( int x = 0; x < SIZE; x++ )
+				{
+					source.setPosition( x, 0 );
+					copy.apply( source, target );
+					sum += target.getDoublePosition( 0 );
+				}
+			}
+		}
+		if ( sum == 42 ) System.out.println( sum );
+		return System.currentTimeMillis() - start;
+	}
+
+	/**
+	 * The previous implementation, which interpolates on demand
+	 * and caches the interpolated transforms per (truncated) source z.
+	 */
+	static class CachedInterpolatedAffineRealTransform implements RealTransform
+	{
+		private final AffineTransform3D globalToSource;
+		private final TreeMap< Double, double[] > transforms;
+		private final Map< Integer, AffineTransform3D > cache = new ConcurrentHashMap<>();
+
+		CachedInterpolatedAffineRealTransform( AffineTransform3D globalToSource, TreeMap< Double, double[] > transforms )
+		{
+			this.globalToSource = globalToSource;
+			this.transforms = transforms;
+		}
+
+		@Override
+		public int numSourceDimensions()
+		{
+			return 3;
+		}
+
+		@Override
+		public int numTargetDimensions()
+		{
+			return 3;
+		}
+
+		@Override
+		public void apply( double[] source, double[] target )
+		{
+			final double[] voxelPositionInSource = new double[ 3 ];
+			globalToSource.apply( source, voxelPositionInSource );
+			getInterpolatedTransform( voxelPositionInSource[ 2 ] ).apply( source, target );
+		}
+
+		@Override
+		public void apply( RealLocalizable source, RealPositionable target )
+		{
+			final double[] voxelPositionInSource = new double[ 3 ];
+			globalToSource.apply( source.positionAsDoubleArray(), voxelPositionInSource );
+			getInterpolatedTransform( voxelPositionInSource[ 2 ] ).apply( source, target );
+		}
+
+		private AffineTransform3D getInterpolatedTransform( double z )
+		{
+			return cache.computeIfAbsent( ( int ) z, k ->
+			{
+				final Map.Entry< Double, double[] > floor = transforms.floorEntry( z );
+				final Map.Entry< Double, double[] > ceil = transforms.ceilingEntry( z );
+				final AffineTransform3D affine = new AffineTransform3D();
+				if ( floor == null || ceil == null || floor.getKey().equals( ceil.getKey() ) )
+				{
+					affine.set( floor != null ? floor.getValue() : ceil.getValue() );
+					return affine;
+				}
+				final double t = ( z - floor.getKey() ) / ( ceil.getKey() - floor.getKey() );
+				final double[] interpolated = new double[ 12 ];
+				for ( int i = 0; i < 12; i++ )
+					interpolated[ i ] = floor.getValue()[ i ] * ( 1 - t ) + ceil.getValue()[ i ] * t;
+				affine.set( interpolated );
+				return affine;
+			} );
+		}
+
+		@Override
+		public RealTransform copy()
+		{
+			return new CachedInterpolatedAffineRealTransform( globalToSource.copy(), new TreeMap<>( transforms ) );
+		}
+
+		@Override
+		public boolean isIdentity()
+		{
+			return false;
+		}
+	}
+}
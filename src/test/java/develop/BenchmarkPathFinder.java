@@ -0,0 +1,85 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package develop;
+
+import org.embl.mobie.io.util.IOHelper;
+import org.embl.mobie.lib.io.PathFinder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Finds 100k TIFF files (in a folder with 100 sub-folders
+ * and some other files) by a regular expression.
+ * Compares the sequential {@code IOHelper.getPaths}
+ * to the parallel {@code PathFinder}.
+ */
+public class BenchmarkPathFinder
+{
+	public static final int NUM_FILES = 100_000;
+	public static final int NUM_FOLDERS = 100;
+
+	public static void main( String[] args ) throws IOException
+	{
+		final Path folder = Files.createTempDirectory( "mobie-path-finder" );
+		System.out.println( "Creating " + NUM_FILES + " files in " + folder );
+		for ( int i = 0; i < NUM_FILES; i++ )
+		{
+			Files.createFile( folder.resolve( String.format( "image_%06d.tif", i ) ) );
+			if ( i % 10 == 0 )
+				Files.createFile( folder.resolve( String.format( "image_%06d.txt", i ) ) );
+		}
+		for ( int i = 0; i < NUM_FOLDERS; i++ )
+		{
+			final Path subFolder = Files.createDirectory( folder.resolve( String.format( "folder_%03d", i ) ) );
+			Files.createFile( subFolder.resolve( "image.tif" ) );
+		}
+
+		final String regex = new File( folder.toFile(), "image_.*\\.tif" ).getAbsolutePath();
+
+		for ( int iteration = 0; iteration < 5; iteration++ )
+		{
+			long start = System.currentTimeMillis();
+			final List< String > sequential = IOHelper.getPaths( regex, 2 );
+			System.out.println( "IOHelper.getPaths: " + ( System.currentTimeMillis() - start ) + " ms" );
+
+			start = System.currentTimeMillis();
+			final List< String > parallel = new PathFinder( folder.toString(), "image_.*\\.tif", 2 ).find();
+			System.out.println( "PathFinder:        " + ( System.currentTimeMillis() - start ) + " ms" );
+
+			if ( ! sequential.equals( parallel ) )
+				throw new RuntimeException( "Found different paths: " + sequential.size() + " vs. " + parallel.size() );
+		}
+
+		System.exit( 0 );
+	}
+}
@@ -0,0 +1,113 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package develop;
+
+import bdv.util.RandomAccessibleIntervalSource;
+import bdv.viewer.SourceAndConverter;
+import net.imglib2.RealPoint;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import org.embl.mobie.lib.bdv.SourceBoundsIndex;
+import sc.fiji.bdvpg.sourceandconverter.SourceAndConverterHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Finds the sources at 100k random positions within a grid of 10k
+ * sources (e.g. the sites of a plate). Compares testing all sources
+ * with {@code SourceAndConverterHelper.isPositionWithinSourceInterval}
+ * to querying the {@code SourceBoundsIndex}.
+ */
+public class BenchmarkSourceBoundsIndex
+{
+	public static final int NUM_SOURCES_PER_DIMENSION = 100;
+	public static final int NUM_QUERIES = 100_000;
+
+	public static void main( String[] args )
+	{
+		final ArrayImg< UnsignedByteType, ByteArray > img = ArrayImgs.unsignedBytes( 512, 512, 1 );
+		final List< SourceAndConverter< ? > > sourceAndConverters = new ArrayList<>();
+		for ( int x = 0; x < NUM_SOURCES_PER_DIMENSION; x++ )
+		{
+			for ( int y = 0; y < NUM_SOURCES_PER_DIMENSION; y++ )
+			{
+				final AffineTransform3D transform = new AffineTransform3D();
+				transform.translate( 600 * x, 600 * y, 0 );
+				final RandomAccessibleIntervalSource< UnsignedByteType > source =
+						new RandomAccessibleIntervalSource<>( img, new UnsignedByteType(), transform, "source" );
+				sourceAndConverters.add( new SourceAndConverter<>( source, null ) );
+			}
+		}
+
+		final Random random = new Random( 42 );
+		final List< RealPoint > positions = new ArrayList<>();
+		for ( int i = 0; i < NUM_QUERIES; i++ )
+			positions.add( new RealPoint(
+					600 * NUM_SOURCES_PER_DIMENSION * random.nextDouble(),
+					600 * NUM_SOURCES_PER_DIMENSION * random.nextDouble(),
+					0 ) );
+
+		final SourceBoundsIndex index = new SourceBoundsIndex( () -> sourceAndConverters, true );
+
+		for ( int iteration = 0; iteration < 5; iteration++ )
+		{
+			long start = System.currentTimeMillis();
+			long numBruteForce = 0;
+			for ( int i = 0; i < NUM_QUERIES / 100; i++ ) // brute force is slow
+				for ( SourceAndConverter< ? > sourceAndConverter : sourceAndConverters )
+					if ( SourceAndConverterHelper.isPositionWithinSourceInterval( sourceAndConverter, positions.get( i ), 0, true ) )
+						numBruteForce++;
+			System.out.println( "Brute force: " + 100.0 * ( System.currentTimeMillis() - start ) / NUM_QUERIES + " ms per query" );
+
+			start = System.currentTimeMillis();
+			index.invalidate();
+			index.getSourcesAt( positions.get( 0 ), 0 );
+			System.out.println( "Index refresh: " + ( System.currentTimeMillis() - start ) + " ms" );
+
+			start = System.currentTimeMillis();
+			long numIndexed = 0;
+			long numIndexedOfBruteForce = 0;
+			for ( int i = 0; i < NUM_QUERIES; i++ )
+			{
+				final int numSources = index.getSourcesAt( positions.get( i ), 0 ).size();
+				numIndexed += numSources;
+				if ( i < NUM_QUERIES / 100 ) numIndexedOfBruteForce += numSources;
+			}
+			System.out.println( "Index: " + 1.0 * ( System.currentTimeMillis() - start ) / NUM_QUERIES + " ms per query (" + numIndexed + " hits)" );
+
+			if ( numIndexedOfBruteForce != numBruteForce )
+				throw new RuntimeException( "Found different sources: " + numIndexedOfBruteForce + " vs. " + numBruteForce );
+		}
+	}
+}
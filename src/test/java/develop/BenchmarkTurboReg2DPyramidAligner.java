@@ -0,0 +1,88 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package develop;
+
+import ij.ImagePlus;
+import ij.plugin.filter.GaussianBlur;
+import ij.process.FloatProcessor;
+import net.imglib2.realtransform.AffineTransform3D;
+import org.embl.mobie.lib.align.TurboReg2DAligner;
+import org.embl.mobie.lib.align.TurboReg2DPyramidAligner;
+import org.embl.mobie.lib.transform.Transform;
+
+import java.util.Random;
+
+/**
+ * Aligns a rotated and translated copy of a 1024 x 1024 image to the
+ * original image. Compares a single TurboReg run at full resolution to
+ * the {@code TurboReg2DPyramidAligner}, which starts on a downsampled level.
+ */
+public class BenchmarkTurboReg2DPyramidAligner
+{
+	static { net.imagej.patcher.LegacyInjector.preinit(); }
+
+	public static void main( String[] args )
+	{
+		final FloatProcessor sourceProcessor = new FloatProcessor( 1024, 1024 );
+		final Random random = new Random( 7 );
+		final float[] pixels = ( float[] ) sourceProcessor.getPixels();
+		for ( int i = 0; i < pixels.length; i++ )
+			pixels[ i ] = random.nextFloat();
+		new GaussianBlur().blurGaussian( sourceProcessor, 4.0 );
+		sourceProcessor.resetMinAndMax();
+
+		final FloatProcessor targetProcessor = ( FloatProcessor ) sourceProcessor.duplicate();
+		targetProcessor.setInterpolationMethod( FloatProcessor.BILINEAR );
+		targetProcessor.rotate( 3.0 );
+		targetProcessor.translate( 12, -7 );
+		final ImagePlus source = new ImagePlus( "source", sourceProcessor );
+		final ImagePlus target = new ImagePlus( "target", targetProcessor );
+
+		for ( int iteration = 0; iteration < 5; iteration++ )
+		{
+			long start = System.currentTimeMillis();
+			final TurboReg2DAligner singleShotAligner = new TurboReg2DAligner( source, target, Transform.Rigid );
+			if ( ! singleShotAligner.run( false ) )
+				throw new RuntimeException( "Single shot alignment failed." );
+			System.out.println( "Single shot: " + ( System.currentTimeMillis() - start ) + " ms" );
+
+			start = System.currentTimeMillis();
+			final TurboReg2DPyramidAligner pyramidAligner = new TurboReg2DPyramidAligner( source, target, Transform.Rigid );
+			if ( ! pyramidAligner.run() )
+				throw new RuntimeException( "Pyramid alignment failed." );
+			System.out.println( "Pyramid: " + ( System.currentTimeMillis() - start ) + " ms" );
+
+			final AffineTransform3D singleShot = singleShotAligner.getAlignmentTransform();
+			final AffineTransform3D pyramid = pyramidAligner.getAlignmentTransform();
+			System.out.println( "Translation difference: "
+					+ ( pyramid.get( 0, 3 ) - singleShot.get( 0, 3 ) ) + ", "
+					+ ( pyramid.get( 1, 3 ) - singleShot.get( 1, 3 ) ) + " px" );
+		}
+	}
+}
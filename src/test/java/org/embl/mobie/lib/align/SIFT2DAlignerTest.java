@@ -0,0 +1,135 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.align;
+
+import ij.ImagePlus;
+import ij.plugin.filter.GaussianBlur;
+import ij.process.FloatProcessor;
+import mpicbg.ij.FeatureTransform;
+import mpicbg.imagefeatures.Feature;
+import mpicbg.models.PointMatch;
+import org.embl.mobie.lib.transform.Transform;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SIFT2DAlignerTest
+{
+	static { net.imagej.patcher.LegacyInjector.preinit(); }
+
+	static FloatProcessor createImage( int width, int height, long seed )
+	{
+		final FloatProcessor processor = new FloatProcessor( width, height );
+		final Random random = new Random( seed );
+		final float[] pixels = ( float[] ) processor.getPixels();
+		for ( int i = 0; i < pixels.length; i++ )
+			pixels[ i ] = random.nextFloat();
+		new GaussianBlur().blurGaussian( processor, 4.0 );
+		processor.resetMinAndMax();
+		return processor;
+	}
+
+	@Test
+	void translationIsFound()
+	{
+		final FloatProcessor processorA = createImage( 2048, 2048, 42 );
+		final FloatProcessor processorB = ( FloatProcessor ) processorA.duplicate();
+		processorB.translate( 40, -25 );
+
+		final SIFT2DAligner aligner = new SIFT2DAligner(
+				new ImagePlus( "A", processorA ),
+				new ImagePlus( "B", processorB ),
+				Transform.Translation );
+		final SIFT2DAligner.Result result = aligner.align();
+
+		assertTrue( result.modelFound, result.toString() );
+		assertTrue( result.numInliers >= 7 );
+		assertTrue( result.totalMillis >= result.extractionMillis );
+
+		// the transform maps B onto A
+		assertEquals( -40, result.transform.get( 0, 3 ), 1.0 );
+		assertEquals( 25, result.transform.get( 1, 3 ), 1.0 );
+		assertEquals( result.transform.get( 0, 3 ), aligner.getAlignmentTransform().get( 0, 3 ) );
+	}
+
+	@Test
+	void sameMatchesAsFeatureTransform()
+	{
+		final Random random = new Random( 7 );
+		final List< Feature > fs1 = new ArrayList<>();
+		final List< Feature > fs2 = new ArrayList<>();
+		for ( int i = 0; i < 500; i++ )
+		{
+			final float[] descriptor = new float[ 32 ];
+			for ( int d = 0; d < descriptor.length; d++ )
+				descriptor[ d ] = random.nextFloat();
+
+			// a noisy copy of some of the features
+			if ( i % 3 != 0 )
+			{
+				final float[] noisyDescriptor = descriptor.clone();
+				for ( int d = 0; d < descriptor.length; d++ )
+					noisyDescriptor[ d ] += 0.2f * ( float ) random.nextGaussian();
+				fs2.add( new Feature( 1.0, 0.0, new double[]{ i, 1000 + i }, noisyDescriptor ) );
+			}
+
+			fs1.add( new Feature( 1.0, 0.0, new double[]{ i, i }, descriptor ) );
+
+			// an ambiguous feature, which is closest to the same target
+			if ( i % 10 == 0 )
+			{
+				final float[] similarDescriptor = descriptor.clone();
+				similarDescriptor[ 0 ] += 0.01f;
+				fs1.add( new Feature( 1.0, 0.0, new double[]{ i, -i }, similarDescriptor ) );
+			}
+		}
+
+		final List< PointMatch > expected = new ArrayList<>();
+		FeatureTransform.matchFeatures( fs1, fs2, expected, 0.92 );
+		final List< PointMatch > matches = SIFT2DAligner.matchFeatures( fs1, fs2, 0.92 );
+
+		assertFalse( matches.isEmpty() );
+		assertEquals( toStrings( expected ), toStrings( matches ) );
+	}
+
+	private static List< String > toStrings( List< PointMatch > matches )
+	{
+		final List< String > strings = new ArrayList<>();
+		for ( PointMatch match : matches )
+			strings.add( Arrays.toString( match.getP1().getL() ) + " -> " + Arrays.toString( match.getP2().getL() ) );
+		Collections.sort( strings );
+		return strings;
+	}
+}
@@ -0,0 +1,91 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.align;
+
+import ij.ImagePlus;
+import ij.process.FloatProcessor;
+import net.imglib2.realtransform.AffineTransform3D;
+import org.embl.mobie.lib.transform.Transform;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TurboReg2DPyramidAlignerTest
+{
+	static { net.imagej.patcher.LegacyInjector.preinit(); }
+
+	@Test
+	void pyramidAgreesWithSingleShot()
+	{
+		final FloatProcessor sourceProcessor = SIFT2DAlignerTest.createImage( 1024, 1024, 7 );
+		final FloatProcessor targetProcessor = ( FloatProcessor ) sourceProcessor.duplicate();
+		targetProcessor.setInterpolationMethod( FloatProcessor.BILINEAR );
+		targetProcessor.rotate( 3.0 );
+		targetProcessor.translate( 12, -7 );
+		final ImagePlus source = new ImagePlus( "source", sourceProcessor );
+		final ImagePlus target = new ImagePlus( "target", targetProcessor );
+
+		final TurboReg2DAligner singleShotAligner = new TurboReg2DAligner( source, target, Transform.Rigid );
+		assertTrue( singleShotAligner.run( false ) );
+
+		final TurboReg2DPyramidAligner pyramidAligner = new TurboReg2DPyramidAligner( source, target, Transform.Rigid );
+		assertTrue( pyramidAligner.run() );
+
+		assertEquals( 1, pyramidAligner.getDownsampling() );
+
+		final AffineTransform3D expected = singleShotAligner.getAlignmentTransform();
+		final AffineTransform3D actual = pyramidAligner.getAlignmentTransform();
+		for ( int row = 0; row < 2; row++ )
+		{
+			for ( int column = 0; column < 2; column++ )
+				assertEquals( expected.get( row, column ), actual.get( row, column ), 0.005 );
+			assertEquals( expected.get( row, 3 ), actual.get( row, 3 ), 1.0 );
+		}
+	}
+
+	@Test
+	void timeBudgetKeepsCoarseTransformation()
+	{
+		final FloatProcessor sourceProcessor = SIFT2DAlignerTest.createImage( 1024, 1024, 9 );
+		final FloatProcessor targetProcessor = ( FloatProcessor ) sourceProcessor.duplicate();
+		targetProcessor.translate( 20, 10 );
+
+		final TurboReg2DPyramidAligner aligner = new TurboReg2DPyramidAligner(
+				new ImagePlus( "source", sourceProcessor ),
+				new ImagePlus( "target", targetProcessor ),
+				Transform.Translation );
+		aligner.setTimeBudgetMillis( 0 );
+		assertTrue( aligner.run() );
+
+		assertEquals( 4, aligner.getDownsampling() );
+		// the transformation maps target onto source coordinates
+		assertEquals( -20, aligner.getAlignmentTransform().get( 0, 3 ), 4.0 );
+		assertEquals( -10, aligner.getAlignmentTransform().get( 1, 3 ), 4.0 );
+	}
+}
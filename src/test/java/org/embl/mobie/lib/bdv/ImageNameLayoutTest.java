@@ -0,0 +1,134 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.bdv;
+
+import net.imglib2.FinalRealInterval;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageNameLayoutTest
+{
+	// 10 px per character, 20 px line height at font size 20
+	private static final FontMetrics fontMetrics = new FontMetrics( new Font( "Monospaced", Font.PLAIN, 20 ) )
+	{
+		@Override
+		public int stringWidth( String str )
+		{
+			return 10 * str.length();
+		}
+
+		@Override
+		public int getHeight()
+		{
+			return 20;
+		}
+
+		@Override
+		public int getDescent()
+		{
+			return 4;
+		}
+	};
+
+	private static FinalRealInterval bounds( double minX, double minY, double maxX, double maxY )
+	{
+		return new FinalRealInterval( new double[]{ minX, minY, 0 }, new double[]{ maxX, maxY, 0 } );
+	}
+
+	@Test
+	void fontIsShrunkToImageWidth()
+	{
+		final List< ImageNameLayout.Label > labels = ImageNameLayout.layout(
+				Arrays.asList( "large", "small" ),
+				Arrays.asList( bounds( 0, 0, 200, 100 ), bounds( 300, 0, 325, 100 ) ),
+				fontMetrics, 800, 600, 100 );
+
+		assertEquals( 2, labels.size() );
+		assertEquals( "large", labels.get( 0 ).name );
+		assertEquals( 20, labels.get( 0 ).fontSize, 1e-6 );
+		assertEquals( 75, labels.get( 0 ).x );
+		assertEquals( "small", labels.get( 1 ).name );
+		assertEquals( 10, labels.get( 1 ).fontSize, 1e-6 );
+	}
+
+	@Test
+	void namesOutsideTheScreenAreCulled()
+	{
+		final List< ImageNameLayout.Label > labels = ImageNameLayout.layout(
+				Arrays.asList( "inside", "right", "below" ),
+				Arrays.asList( bounds( 0, 0, 100, 100 ), bounds( 1000, 0, 1100, 100 ), bounds( 0, 700, 100, 800 ) ),
+				fontMetrics, 800, 600, 100 );
+
+		assertEquals( 1, labels.size() );
+		assertEquals( "inside", labels.get( 0 ).name );
+	}
+
+	@Test
+	void overlappingNamesAreRejected()
+	{
+		final List< ImageNameLayout.Label > labels = ImageNameLayout.layout(
+				Arrays.asList( "b", "a", "c" ),
+				Arrays.asList( bounds( 0, 0, 100, 100 ), bounds( 0, 0, 100, 100 ), bounds( 0, 5, 100, 105 ) ),
+				fontMetrics, 800, 600, 100 );
+
+		// same font size => alphabetical
+		assertEquals( 1, labels.size() );
+		assertEquals( "a", labels.get( 0 ).name );
+	}
+
+	@Test
+	void numberOfNamesIsCapped()
+	{
+		final List< String > names = new ArrayList<>();
+		final List< FinalRealInterval > screenBounds = new ArrayList<>();
+		for ( int x = 0; x < 20; x++ )
+			for ( int y = 0; y < 20; y++ )
+			{
+				names.add( "i" + x + "-" + y );
+				screenBounds.add( bounds( 40 * x, 30 * y, 40 * x + 30, 30 * y + 10 ) );
+			}
+
+		final List< ImageNameLayout.Label > labels = ImageNameLayout.layout( names, screenBounds, fontMetrics, 800, 600, 50 );
+		assertEquals( 50, labels.size() );
+
+		for ( int i = 0; i < labels.size(); i++ )
+			for ( int j = i + 1; j < labels.size(); j++ )
+				assertFalse( labels.get( i ).background.intersects( labels.get( j ).background ) );
+
+		assertTrue( ImageNameLayout.layout( Collections.emptyList(), Collections.emptyList(), fontMetrics, 800, 600, 50 ).isEmpty() );
+	}
+}
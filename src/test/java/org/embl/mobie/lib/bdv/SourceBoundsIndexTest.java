@@ -0,0 +1,183 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.bdv;
+
+import bdv.tools.transformation.TransformedSource;
+import bdv.util.RandomAccessibleIntervalSource;
+import bdv.viewer.BasicViewerState;
+import bdv.viewer.DisplayMode;
+import bdv.viewer.SourceAndConverter;
+import bdv.viewer.SynchronizedViewerState;
+import bdv.viewer.TransformListener;
+import bdv.viewer.ViewerState;
+import net.imglib2.RealPoint;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import org.embl.mobie.command.MoBIEManualTransformationEditor;
+import org.embl.mobie.lib.image.Image;
+import org.junit.jupiter.api.Test;
+import org.scijava.listeners.Listeners;
+import org.scijava.ui.behaviour.util.InputActionBindings;
+import sc.fiji.bdvpg.sourceandconverter.SourceAndConverterHelper;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SourceBoundsIndexTest
+{
+	/**
+	 * Creates a grid of rotated and scaled sources.
+	 */
+	static List< SourceAndConverter< ? > > createSources( int numSourcesPerDimension, long seed )
+	{
+		final Random random = new Random( seed );
+		final List< SourceAndConverter< ? > > sourceAndConverters = new ArrayList<>();
+		for ( int x = 0; x < numSourcesPerDimension; x++ )
+		{
+			for ( int y = 0; y < numSourcesPerDimension; y++ )
+			{
+				final AffineTransform3D transform = new AffineTransform3D();
+				transform.scale( 0.5 + random.nextDouble(), 0.5 + random.nextDouble(), 1.0 );
+				transform.rotate( 2, random.nextDouble() );
+				transform.translate( 100 * x, 100 * y, 0 );
+				final RandomAccessibleIntervalSource< UnsignedByteType > source = new RandomAccessibleIntervalSource<>(
+						ArrayImgs.unsignedBytes( 64, 48, 3 ),
+						new UnsignedByteType(),
+						transform,
+						"source-" + x + "-" + y );
+				sourceAndConverters.add( new SourceAndConverter<>( source, null ) );
+			}
+		}
+		return sourceAndConverters;
+	}
+
+	@Test
+	void sameSourcesAsBruteForce()
+	{
+		final List< SourceAndConverter< ? > > sourceAndConverters = createSources( 10, 1 );
+		final Random random = new Random( 2 );
+
+		for ( boolean is2D : new boolean[]{ true, false } )
+		{
+			final SourceBoundsIndex index = new SourceBoundsIndex( () -> sourceAndConverters, is2D );
+			for ( int i = 0; i < 2000; i++ )
+			{
+				final RealPoint position = new RealPoint(
+						-50 + 1100 * random.nextDouble(),
+						-50 + 1100 * random.nextDouble(),
+						-2 + 6 * random.nextDouble() );
+
+				final Set< SourceAndConverter< ? > > expected = new HashSet<>();
+				for ( SourceAndConverter< ? > sourceAndConverter : sourceAndConverters )
+					if ( SourceAndConverterHelper.isPositionWithinSourceInterval( sourceAndConverter, position, 0, is2D ) )
+						expected.add( sourceAndConverter );
+
+				assertEquals( expected, new HashSet<>( index.getSourcesAt( position, 0 ) ), position.toString() );
+			}
+		}
+	}
+
+	@Test
+	void changesAreNoticed()
+	{
+		final TransformedSource< UnsignedByteType > source = new TransformedSource<>( new RandomAccessibleIntervalSource<>(
+				ArrayImgs.unsignedBytes( 10, 10, 1 ),
+				new UnsignedByteType(),
+				new AffineTransform3D(),
+				"source" ) );
+		final List< SourceAndConverter< ? > > sourceAndConverters = new ArrayList<>();
+		sourceAndConverters.add( new SourceAndConverter<>( source, null ) );
+		final SourceBoundsIndex index = new SourceBoundsIndex( () -> sourceAndConverters, true );
+
+		assertEquals( 1, index.getSourcesAt( new RealPoint( 5, 5, 0 ), 0 ).size() );
+
+		// the source is moved away, without invalidating the index
+		final AffineTransform3D translation = new AffineTransform3D();
+		translation.translate( 100, 0, 0 );
+		source.setFixedTransform( translation );
+		assertEquals( 0, index.getSourcesAt( new RealPoint( 5, 5, 0 ), 0 ).size() );
+		assertEquals( 1, index.getSourcesAt( new RealPoint( 105, 5, 0 ), 0 ).size() );
+
+		// a source is added
+		sourceAndConverters.add( new SourceAndConverter<>( new RandomAccessibleIntervalSource<>(
+				ArrayImgs.unsignedBytes( 10, 10, 1 ),
+				new UnsignedByteType(),
+				translation,
+				"other" ), null ) );
+		index.invalidate();
+		assertEquals( 2, index.getSourcesAt( new RealPoint( 105, 5, 0 ), 0 ).size() );
+	}
+
+	@Test
+	void manuallyTransformedSourcesAreFoundAtTheirNewPosition()
+	{
+		final TransformedSource< UnsignedByteType > source = new TransformedSource<>( new RandomAccessibleIntervalSource<>(
+				ArrayImgs.unsignedBytes( 10, 10, 1 ),
+				new UnsignedByteType(),
+				new AffineTransform3D(),
+				"source" ) );
+		final SourceAndConverter< UnsignedByteType > sourceAndConverter = new SourceAndConverter<>( source, null );
+
+		final ViewerState viewerState = new SynchronizedViewerState( new BasicViewerState() );
+		viewerState.addSource( sourceAndConverter );
+		viewerState.setDisplayMode( DisplayMode.FUSED );
+		final Listeners.List< TransformListener< AffineTransform3D > > viewerTransformListeners = new Listeners.SynchronizedList<>();
+		final SourceBoundsIndex index = new SourceBoundsIndex( viewerState, viewerTransformListeners, true );
+		assertEquals( 1, index.getSourcesAt( new RealPoint( 5, 5, 0 ), 0 ).size() );
+
+		// the editor moves all but the transformable sources against the viewer transform,
+		// without notifying anyone but its own listeners
+		final MoBIEManualTransformationEditor editor = new MoBIEManualTransformationEditor(
+				viewerTransformListeners, viewerState, message -> {}, new InputActionBindings() );
+		editor.setTransformableSources( new ArrayList<>() );
+		editor.manualTransformActiveListeners().add( index );
+		editor.setActive( true );
+
+		final AffineTransform3D viewerTransform = new AffineTransform3D();
+		viewerTransform.translate( -100, 0, 0 );
+		viewerState.setViewerTransform( viewerTransform );
+		viewerTransformListeners.list.forEach( listener -> listener.transformChanged( viewerTransform ) );
+
+		// only the new position is queried, thus the index cannot
+		// notice the move by checking the sources at the old position
+		assertEquals( 1, index.getSourcesAt( new RealPoint( 105, 5, 0 ), 0 ).size() );
+
+		editor.setActive( false );
+		assertTrue( viewerTransformListeners.list.isEmpty() );
+
+		index.close();
+		assertFalse( Image.listeners.list.contains( index ) );
+	}
+}
@@ -0,0 +1,102 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.contrast;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuantileSketchTest
+{
+	@Test
+	void quantilesOfUniformStream()
+	{
+		final QuantileSketch sketch = new QuantileSketch();
+		for ( int i = 0; i < 1_000_000; i++ )
+			sketch.add( i % 1000 );
+
+		assertEquals( 1_000_000, sketch.count() );
+		assertEquals( QuantileSketch.DEFAULT_CAPACITY, sketch.size() );
+		assertEquals( 0, sketch.min() );
+		assertEquals( 999, sketch.max() );
+		assertEquals( 500, sketch.quantile( 0.5 ), 30 );
+		assertEquals( 10, sketch.quantile( 0.01 ), 10 );
+		assertEquals( 990, sketch.quantile( 0.99 ), 10 );
+	}
+
+	@Test
+	void mergeIsWeightedByCount()
+	{
+		// 90% of the values are 0 and 10% are 1
+		final QuantileSketch zeros = new QuantileSketch( 1000, 1 );
+		for ( int i = 0; i < 90_000; i++ )
+			zeros.add( 0 );
+
+		final QuantileSketch ones = new QuantileSketch( 1000, 2 );
+		for ( int i = 0; i < 10_000; i++ )
+			ones.add( 1 );
+
+		zeros.merge( ones );
+
+		assertEquals( 100_000, zeros.count() );
+		assertEquals( 1000, zeros.size() );
+		assertEquals( 0, zeros.quantile( 0.8 ) );
+		assertEquals( 1, zeros.quantile( 0.95 ) );
+	}
+
+	@Test
+	void mergeOfUnequalSamplesIsWeightedByCount()
+	{
+		// a sample of 1,000,000 uniform values in [0, 1)
+		final QuantileSketch uniform = new QuantileSketch( 4096, 1 );
+		for ( int i = 0; i < 1_000_000; i++ )
+			uniform.add( i / 1_000_000.0 );
+
+		// all of 4096 values, which are 10
+		final QuantileSketch tens = new QuantileSketch( 4096, 2 );
+		for ( int i = 0; i < 4096; i++ )
+			tens.add( 10 );
+
+		// the combined samples fit into the reservoir, but less than 1% of the values are 10
+		final QuantileSketch merged = new QuantileSketch( 8192, 3 );
+		merged.merge( uniform );
+		merged.merge( tens );
+
+		assertEquals( 1_004_096, merged.count() );
+		assertEquals( 0.5, merged.quantile( 0.5 ), 0.05 );
+		assertEquals( 0.9, merged.quantile( 0.9 ), 0.05 );
+		assertEquals( 10, merged.max() );
+
+		// values that are added after the merge are sampled with the same weight
+		for ( int i = 0; i < 4096; i++ )
+			merged.add( 10 );
+
+		assertEquals( 0.9, merged.quantile( 0.9 ), 0.05 );
+	}
+}
@@ -0,0 +1,99 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.hcs;
+
+import org.embl.mobie.io.ImageDataFormat;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlateIndexTest
+{
+	static { net.imagej.patcher.LegacyInjector.preinit(); }
+
+	@Test
+	void addingFilesToAWellDirectoryOutdatesTheIndex( @TempDir Path plateDirectory ) throws IOException
+	{
+		final Path wellDirectory = Files.createDirectories( plateDirectory.resolve( "A01" ) );
+		final Path imageFile = Files.createFile( wellDirectory.resolve( "t1_A01_s1_w1_z1.tif" ) );
+
+		final PlateIndex index = createIndex( imageFile );
+		index.subDirectoriesFingerprint = PlateIndex.fingerprint( plateDirectory.toString() );
+		PlateIndex.write( plateDirectory.toString(), index );
+
+		final PlateIndex readIndex = PlateIndex.read( plateDirectory.toString() );
+		assertNotNull( readIndex );
+		assertEquals( imageFile.toString(), readIndex.files.get( 0 ).getPath() );
+
+		// the plate directory itself is not modified
+		Files.createFile( wellDirectory.resolve( "t1_A01_s2_w1_z1.tif" ) );
+		Files.setLastModifiedTime( wellDirectory, FileTime.fromMillis( Files.getLastModifiedTime( wellDirectory ).toMillis() + 10_000 ) );
+		assertNull( PlateIndex.read( plateDirectory.toString() ) );
+	}
+
+	@Test
+	void filesAddedDuringTheScanOutdateTheIndex( @TempDir Path plateDirectory ) throws IOException
+	{
+		final Path wellDirectory = Files.createDirectories( plateDirectory.resolve( "A01" ) );
+		final Path imageFile = Files.createFile( wellDirectory.resolve( "t1_A01_s1_w1_z1.tif" ) );
+
+		final PlateIndex index = createIndex( imageFile );
+		index.subDirectoriesFingerprint = PlateIndex.fingerprint( plateDirectory.toString() );
+
+		// a file is added after the fingerprint was taken, but before the index is written
+		Files.createFile( wellDirectory.resolve( "t1_A01_s2_w1_z1.tif" ) );
+		Files.setLastModifiedTime( wellDirectory, FileTime.fromMillis( Files.getLastModifiedTime( wellDirectory ).toMillis() + 10_000 ) );
+		PlateIndex.write( plateDirectory.toString(), index );
+
+		assertNull( PlateIndex.read( plateDirectory.toString() ) );
+	}
+
+	private static PlateIndex createIndex( Path imageFile )
+	{
+		final PlateIndex index = new PlateIndex();
+		index.hcsPattern = HCSPattern.InCarta;
+		index.imageDataFormat = ImageDataFormat.Tiff;
+		index.channels = new ArrayList<>();
+		index.siteGridPositions = new HashMap<>();
+		final List< PlateFile > files = new ArrayList<>();
+		files.add( new PlateFile( imageFile.toString(), Collections.singletonList( "1" ), "A01", "1", "1", "1" ) );
+		index.files = files;
+		return index;
+	}
+}
@@ -0,0 +1,78 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PathFinderTest
+{
+	@Test
+	void findsTheSamePathsAsFilesFind( @TempDir Path folder ) throws IOException
+	{
+		// more entries than in one batch
+		for ( int i = 0; i < 1500; i++ )
+			Files.createFile( folder.resolve( "image_" + i + ".tif" ) );
+		Files.createFile( folder.resolve( "image.txt" ) );
+
+		// matches at depth 2 and 3
+		final Path subFolder = Files.createDirectory( folder.resolve( "sub" ) );
+		Files.createFile( subFolder.resolve( "image_a.tif" ) );
+		final Path subSubFolder = Files.createDirectory( subFolder.resolve( "image_b.tif" ) );
+		Files.createFile( subSubFolder.resolve( "image_c.tif" ) );
+
+		for ( int maxDepth = 0; maxDepth <= 3; maxDepth++ )
+		{
+			final List< String > paths = new PathFinder( folder.toString(), "image_.*\\.tif", maxDepth ).find();
+			assertEquals( filesFind( folder, "image_.*\\.tif", maxDepth ), paths );
+		}
+
+		assertEquals( 1502, new PathFinder( folder.toString(), "image_.*\\.tif", 2 ).find().size() );
+	}
+
+	private static List< String > filesFind( Path folder, String regex, int maxDepth ) throws IOException
+	{
+		final Pattern pattern = Pattern.compile( regex );
+		try ( Stream< Path > stream = Files.find( folder, maxDepth,
+				( path, attributes ) -> path.getFileName() != null && pattern.matcher( path.getFileName().toString() ).matches() ) )
+		{
+			return stream.sorted().map( Path::toString ).collect( Collectors.toList() );
+		}
+	}
+}
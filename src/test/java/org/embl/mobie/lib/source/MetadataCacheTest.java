@@ -0,0 +1,94 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.source;
+
+import ij.IJ;
+import ij.ImagePlus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetadataCacheTest
+{
+	static { net.imagej.patcher.LegacyInjector.preinit(); }
+
+	private String path;
+
+	@BeforeEach
+	void setUp( @TempDir Path tempDir )
+	{
+		MetadataCache.clear();
+
+		// 2 channels, 3 slices
+		final ImagePlus imagePlus = IJ.createImage( "image", "8-bit ramp", 64, 64, 2, 3, 1 );
+		path = new File( tempDir.toFile(), "image.tif" ).getAbsolutePath();
+		IJ.saveAsTiff( imagePlus, path );
+	}
+
+	@Test
+	void channelsOfOneFileAreOpenedOnce()
+	{
+		final Metadata channel0 = MetadataCache.getMetadata( path, 0 );
+		final Metadata channel1 = MetadataCache.getMetadata( path, 1 );
+		final Metadata channel0Again = MetadataCache.getMetadata( path, 0 );
+
+		assertEquals( 1, MetadataCache.getNumOpened() );
+		assertEquals( 2, MetadataCache.getNumMisses() );
+		assertEquals( 1, MetadataCache.getNumHits() );
+
+		assertEquals( 3, channel0.numZSlices );
+		assertEquals( 3, channel1.numZSlices );
+		assertEquals( 1, channel0Again.numTimePoints );
+		assertArrayEquals( channel0.contrastLimits, channel0Again.contrastLimits );
+	}
+
+	@Test
+	void returnedMetadataCanBeModified()
+	{
+		MetadataCache.getMetadata( path, 0 ).numTimePoints = 10;
+
+		assertEquals( 1, MetadataCache.getMetadata( path, 0 ).numTimePoints );
+	}
+
+	@Test
+	void modifiedFilesAreOpenedAgain()
+	{
+		MetadataCache.getMetadata( path, 0 );
+		assertTrue( new File( path ).setLastModified( System.currentTimeMillis() + 10_000 ) );
+		MetadataCache.getMetadata( path, 0 );
+
+		assertEquals( 2, MetadataCache.getNumOpened() );
+		assertEquals( 0, MetadataCache.getNumHits() );
+	}
+}
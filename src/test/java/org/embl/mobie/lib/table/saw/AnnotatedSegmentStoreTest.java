@@ -0,0 +1,89 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.table.saw;
+
+import net.imglib2.FinalRealInterval;
+import net.imglib2.RealInterval;
+import net.imglib2.realtransform.AffineTransform3D;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnnotatedSegmentStoreTest
+{
+	@Test
+	void composedTransformsAreAppliedOnRead()
+	{
+		final AnnotatedSegmentStore store = createStore();
+
+		final AffineTransform3D translation = new AffineTransform3D();
+		translation.translate( 10, 0, 0 );
+		final AffineTransform3D scaling = new AffineTransform3D();
+		scaling.scale( 2 );
+		store.transform( translation );
+		store.transform( scaling );
+
+		// ( 1, 2, 3 ) => ( 11, 2, 3 ) => ( 22, 4, 6 )
+		assertArrayEquals( new double[]{ 22, 4, 6 }, store.position( 0 ), 1e-9 );
+		assertEquals( 22, store.position( 0, 0 ), 1e-9 );
+		assertEquals( 6, store.position( 0, 2 ), 1e-9 );
+
+		final RealInterval boundingBox = store.boundingBox( 0 );
+		assertArrayEquals( new double[]{ 20, 2, 4 }, boundingBox.minAsDoubleArray(), 1e-9 );
+		assertArrayEquals( new double[]{ 24, 6, 8 }, boundingBox.maxAsDoubleArray(), 1e-9 );
+		assertEquals( 2 * ( 4 + 10 ), store.position( 1, 0 ), 1e-9 );
+	}
+
+	@Test
+	void singleRowsCanBeTransformedOnTopOfTheComposedTransform()
+	{
+		final AnnotatedSegmentStore store = createStore();
+
+		final AffineTransform3D scaling = new AffineTransform3D();
+		scaling.scale( 2 );
+		store.transform( scaling );
+
+		final AffineTransform3D translation = new AffineTransform3D();
+		translation.translate( 1, 0, 0 );
+		store.transform( 1, translation );
+
+		assertArrayEquals( new double[]{ 2, 4, 6 }, store.position( 0 ), 1e-9 );
+		assertArrayEquals( new double[]{ 9, 10, 12 }, store.position( 1 ), 1e-9 );
+	}
+
+	private static AnnotatedSegmentStore createStore()
+	{
+		final AnnotatedSegmentStore store = new AnnotatedSegmentStore( 2, true );
+		store.set( 0, "image", 1, 0, new double[]{ 1, 2, 3 } );
+		store.setBoundingBox( 0, new FinalRealInterval( new double[]{ 0, 1, 2 }, new double[]{ 2, 3, 4 } ) );
+		store.set( 1, "image", 2, 0, new double[]{ 4, 5, 6 } );
+		store.setBoundingBox( 1, new FinalRealInterval( new double[]{ 3, 4, 5 }, new double[]{ 5, 6, 7 } ) );
+		return store;
+	}
+}
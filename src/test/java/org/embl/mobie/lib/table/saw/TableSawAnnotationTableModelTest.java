@@ -0,0 +1,91 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.table.saw;
+
+import org.embl.mobie.lib.io.StorageLocation;
+import org.embl.mobie.lib.table.TableDataFormat;
+import org.junit.jupiter.api.Test;
+import tech.tablesaw.api.DoubleColumn;
+import tech.tablesaw.api.FloatColumn;
+import tech.tablesaw.api.IntColumn;
+import tech.tablesaw.api.Table;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TableSawAnnotationTableModelTest
+{
+	@Test
+	void valuesCanBeReadWhileATableChunkIsLoading() throws Exception
+	{
+		final Table defaultTable = Table.create( "spots",
+				IntColumn.create( "spot_id", 1, 2 ),
+				FloatColumn.create( "x", 1, 2 ),
+				FloatColumn.create( "y", 3, 4 ),
+				FloatColumn.create( "z", 5, 6 ),
+				DoubleColumn.create( "intensity", 10, 20 ) );
+
+		final StorageLocation storageLocation = new StorageLocation();
+		storageLocation.data = Table.create( "chunk",
+				IntColumn.create( "spot_id", 1, 2 ),
+				DoubleColumn.create( "area", 100, 200 ) );
+
+		final TableSawAnnotationTableModel< TableSawAnnotatedSpot > model = new TableSawAnnotationTableModel<>(
+				"spots",
+				new TableSawAnnotatedSpotCreator( defaultTable ),
+				storageLocation,
+				TableDataFormat.Table,
+				defaultTable );
+
+		final ExecutorService reader = Executors.newSingleThreadExecutor();
+		try
+		{
+			// holding the lock of the model keeps the chunk load open
+			synchronized ( model )
+			{
+				model.loadTableChunk( "chunk" );
+
+				final Future< Double > value = reader.submit( () -> model.annotation( 1 ).getNumber( "intensity" ) );
+				assertEquals( 20, value.get( 10, TimeUnit.SECONDS ), 1e-9 );
+			}
+
+			// the column metadata waits for the chunk
+			assertTrue( model.columnNames().contains( "area" ) );
+			assertEquals( 200, model.annotation( 1 ).getNumber( "area" ), 1e-9 );
+		}
+		finally
+		{
+			reader.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.transform;
+
+import net.imglib2.RealPoint;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.roi.RealMaskRealInterval;
+import net.imglib2.roi.geom.GeomMasks;
+import net.imglib2.roi.geom.real.Box;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoxUnionMaskTest
+{
+	@Test
+	void adjacentTilesAreMergedIntoTheirBoundingBox()
+	{
+		final List< RealMaskRealInterval > tiles = new ArrayList<>();
+		for ( int y = 0; y < 5; y++ )
+			for ( int x = 0; x < 5; x++ )
+				tiles.add( GeomMasks.closedBox( new double[]{ x * 10, y * 10, 0 }, new double[]{ x * 10 + 10, y * 10 + 10, 1 } ) );
+
+		final RealMaskRealInterval union = BoxUnionMask.union( tiles );
+
+		assertTrue( union instanceof Box );
+		assertArrayEquals( new double[]{ 0, 0, 0 }, union.minAsDoubleArray() );
+		assertArrayEquals( new double[]{ 50, 50, 1 }, union.maxAsDoubleArray() );
+	}
+
+	@Test
+	void unionOfTilesWithGapsEqualsNestedUnion()
+	{
+		final List< RealMaskRealInterval > tiles = new ArrayList<>();
+		for ( int y = 0; y < 6; y++ )
+			for ( int x = 0; x < 6; x++ )
+				if ( x != 3 || y != 0 ) // one missing tile at the border
+					tiles.add( GeomMasks.closedBox( new double[]{ x * 12, y * 12, 0 }, new double[]{ x * 12 + 10, y * 12 + 10, 1 } ) );
+
+		final RealMaskRealInterval union = BoxUnionMask.union( tiles );
+		assertTrue( union instanceof BoxUnionMask );
+
+		RealMaskRealInterval nested = tiles.get( 0 );
+		for ( int i = 1; i < tiles.size(); i++ )
+			nested = nested.or( tiles.get( i ) );
+
+		assertSameMask( nested, union, 100_000 );
+
+		// a union of unions is still flat
+		final List< RealMaskRealInterval > unions = new ArrayList<>();
+		unions.add( union );
+		unions.add( GeomMasks.closedBox( new double[]{ 100, 100, 0 }, new double[]{ 110, 110, 1 } ) );
+		final RealMaskRealInterval unionOfUnions = BoxUnionMask.union( unions );
+		assertTrue( unionOfUnions instanceof BoxUnionMask );
+		assertEquals( tiles.size() + 1, ( ( BoxUnionMask ) unionOfUnions ).numBoxes() );
+	}
+
+	@Test
+	void rotatedMasksAreNotTreatedAsBoxes()
+	{
+		final RealMaskRealInterval box = GeomMasks.closedBox( new double[]{ 0, 0, 0 }, new double[]{ 10, 10, 1 } );
+		final AffineTransform3D rotation = new AffineTransform3D();
+		rotation.rotate( 2, Math.PI / 4 );
+		final List< RealMaskRealInterval > masks = new ArrayList<>();
+		masks.add( box );
+		masks.add( box.transform( rotation ) );
+
+		assertNull( BoxUnionMask.union( masks ) );
+	}
+
+	@Test
+	void hollowMasksAreNotTreatedAsBoxes()
+	{
+		final RealMaskRealInterval outer = GeomMasks.closedBox( new double[]{ 0, 0, 0 }, new double[]{ 10, 10, 1 } );
+		final RealMaskRealInterval inner = GeomMasks.openBox( new double[]{ 2, 2, -1 }, new double[]{ 8, 8, 2 } );
+		final RealMaskRealInterval frame = outer.minus( inner );
+		final List< RealMaskRealInterval > masks = new ArrayList<>();
+		masks.add( frame );
+		masks.add( GeomMasks.closedBox( new double[]{ 10, 0, 0 }, new double[]{ 20, 10, 1 } ) );
+
+		assertNull( BoxUnionMask.union( masks ) );
+	}
+
+	@Test
+	void scaledAndTranslatedBoxesAreTreatedAsBoxes()
+	{
+		final RealMaskRealInterval box = GeomMasks.closedBox( new double[]{ 0, 0, 0 }, new double[]{ 10, 10, 1 } );
+		final AffineTransform3D transform = new AffineTransform3D();
+		transform.scale( 2 );
+		transform.translate( 20, 0, 0 );
+		final List< RealMaskRealInterval > masks = new ArrayList<>();
+		masks.add( GeomMasks.closedBox( new double[]{ 0, 0, 0 }, new double[]{ 20, 20, 2 } ) );
+		masks.add( box.transform( transform.inverse() ) );
+
+		final RealMaskRealInterval union = BoxUnionMask.union( masks );
+		assertTrue( union instanceof Box );
+		assertArrayEquals( new double[]{ 40, 20, 2 }, union.maxAsDoubleArray(), 1e-9 );
+	}
+
+	private static void assertSameMask( RealMaskRealInterval expected, RealMaskRealInterval actual, int numPoints )
+	{
+		assertArrayEquals( expected.minAsDoubleArray(), actual.minAsDoubleArray(), 1e-9 );
+		assertArrayEquals( expected.maxAsDoubleArray(), actual.maxAsDoubleArray(), 1e-9 );
+
+		final Random random = new Random( 42 );
+		final RealPoint point = new RealPoint( 3 );
+		for ( int i = 0; i < numPoints; i++ )
+		{
+			for ( int d = 0; d < 3; d++ )
+			{
+				final double min = expected.realMin( d ) - 1;
+				final double max = expected.realMax( d ) + 1;
+				point.setPosition( min + random.nextDouble() * ( max - min ), d );
+			}
+			assertEquals( expected.test( point ), actual.test( point ), point.toString() );
+		}
+	}
+}
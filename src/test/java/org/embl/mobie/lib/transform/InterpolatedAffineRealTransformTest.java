@@ -0,0 +1,86 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.transform;
+
+import net.imglib2.FinalRealInterval;
+import net.imglib2.RealInterval;
+import net.imglib2.realtransform.AffineTransform3D;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InterpolatedAffineRealTransformTest
+{
+	@Test
+	void slicesBetweenKeysAreInterpolated()
+	{
+		final InterpolatedAffineRealTransform transform = createTransform();
+
+		final double[] target = new double[ 3 ];
+		transform.apply( new double[]{ 1, 2, 5 }, target );
+		assertArrayEquals( new double[]{ 6, 2, 5 }, target, 1e-9 );
+
+		// positions within a slice use the affine of the slice center
+		transform.apply( new double[]{ 1, 2, 5.4 }, target );
+		assertArrayEquals( new double[]{ 6, 2, 5.4 }, target, 1e-9 );
+
+		// beyond the keys the closest key is used
+		transform.apply( new double[]{ 1, 2, 20 }, target );
+		assertArrayEquals( new double[]{ 11, 2, 20 }, target, 1e-9 );
+
+		// copies evaluate the same
+		transform.copy().apply( new double[]{ 1, 2, 5 }, target );
+		assertArrayEquals( new double[]{ 6, 2, 5 }, target, 1e-9 );
+	}
+
+	@Test
+	void inverseBoundsContainTheMappedRegion()
+	{
+		final InterpolatedAffineRealTransform transform = createTransform();
+
+		final RealInterval bounds = transform.estimateInverseBounds( new FinalRealInterval( new double[]{ 0, 0, 0 }, new double[]{ 100, 100, 10 } ) );
+
+		assertEquals( -10, bounds.realMin( 0 ), 1e-9 );
+		assertEquals( 100, bounds.realMax( 0 ), 1e-9 );
+		assertEquals( 0, bounds.realMin( 1 ), 1e-9 );
+		assertEquals( 100, bounds.realMax( 1 ), 1e-9 );
+	}
+
+	// translation along x, from 0 at z = 0 to 10 at z = 10
+	private static InterpolatedAffineRealTransform createTransform()
+	{
+		final InterpolatedAffineRealTransform transform = new InterpolatedAffineRealTransform( "test", new AffineTransform3D() );
+		final AffineTransform3D first = new AffineTransform3D();
+		final AffineTransform3D last = new AffineTransform3D();
+		last.translate( 10, 0, 0 );
+		transform.addTransform( 0, first.getRowPackedCopy() );
+		transform.addTransform( 10, last.getRowPackedCopy() );
+		return transform;
+	}
+}
@@ -0,0 +1,139 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.lib.transform;
+
+import net.imglib2.realtransform.AffineTransform3D;
+import org.embl.mobie.lib.serialize.transformation.AffineTransformation;
+import org.embl.mobie.lib.serialize.transformation.GridTransformation;
+import org.embl.mobie.lib.serialize.transformation.MergedGridTransformation;
+import org.embl.mobie.lib.serialize.transformation.Transformation;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransformationPipelineTest
+{
+	@Test
+	void independentTransformationsShareOneStage()
+	{
+		final List< Transformation > transformations = new ArrayList<>();
+		for ( int i = 0; i < 100; i++ )
+			transformations.add( affine( "image" + i, "image" + i + "-transformed" ) );
+
+		final List< List< Integer > > stages = TransformationPipeline.createStages( transformations );
+
+		assertEquals( 1, stages.size() );
+		assertEquals( 100, stages.get( 0 ).size() );
+	}
+
+	@Test
+	void dependentTransformationsKeepTheirOrder()
+	{
+		final List< Transformation > transformations = Arrays.asList(
+				affine( "a", "b" ),        // 0
+				affine( "b", "c" ),        // 1: reads the output of 0
+				affine( "x", "y" ),        // 2: independent
+				affine( "c", null ),       // 3: transforms the output of 1 in place
+				affine( "y", "b" ),        // 4: overwrites "b", which 1 reads
+				new GridTransformation( Arrays.asList( "c", "y" ) ) // 5: in place grid of 3 and 2
+		);
+
+		final List< List< Integer > > stages = TransformationPipeline.createStages( transformations );
+
+		assertEquals( Arrays.asList(
+				Arrays.asList( 0, 2 ),
+				Arrays.asList( 1 ),
+				Arrays.asList( 3, 4 ),
+				Arrays.asList( 5 ) ), stages );
+	}
+
+	@Test
+	void tilesOfMergedGridsAreTransformedInPlace()
+	{
+		final MergedGridTransformation innerGrid = new MergedGridTransformation( "inner" );
+		innerGrid.sources = Arrays.asList( "t1", "t2" );
+		final MergedGridTransformation outerGrid = new MergedGridTransformation( "outer" );
+		outerGrid.sources = Arrays.asList( "inner", "t3" );
+
+		final List< Transformation > transformations = Arrays.asList(
+				innerGrid,                 // 0: moves t1 and t2
+				affine( "t1", "t1-moved" ), // 1: reads a tile that 0 moved
+				outerGrid,                 // 2: moves inner, t3, and the tiles of inner, which 1 reads
+				affine( "t2", "t2-moved" ), // 3: reads a nested tile that 2 moved
+				affine( "t4", "t4-moved" )  // 4: independent
+		);
+
+		final List< List< Integer > > stages = TransformationPipeline.createStages( transformations );
+
+		assertEquals( Arrays.asList(
+				Arrays.asList( 0, 4 ),
+				Arrays.asList( 1 ),
+				Arrays.asList( 2 ),
+				Arrays.asList( 3 ) ), stages );
+	}
+
+	@Test
+	void tilesOfMergedGridsAreMovedByInPlaceTransformations()
+	{
+		final MergedGridTransformation mergedGrid = new MergedGridTransformation( "merged" );
+		mergedGrid.sources = Arrays.asList( "t1", "t2" );
+
+		final List< Transformation > transformations = Arrays.asList(
+				mergedGrid,                 // 0: moves t1 and t2
+				affine( "merged", null ),   // 1: moves merged, t1 and t2 in place
+				affine( "t1", "t1-moved" ), // 2: reads a tile that 1 moved
+				new GridTransformation( Arrays.asList( "merged", "t3" ) ), // 3: moves merged and its tiles, which 2 reads, in place
+				affine( "t2", "t2-moved" ), // 4: reads a tile that 3 moved
+				affine( "t4", "t4-moved" )  // 5: independent
+		);
+
+		final List< List< Integer > > stages = TransformationPipeline.createStages( transformations );
+
+		assertEquals( Arrays.asList(
+				Arrays.asList( 0, 5 ),
+				Arrays.asList( 1 ),
+				Arrays.asList( 2 ),
+				Arrays.asList( 3 ),
+				Arrays.asList( 4 ) ), stages );
+	}
+
+	private static AffineTransformation affine( String source, String target )
+	{
+		return new AffineTransformation(
+				"affine",
+				new AffineTransform3D().getRowPackedCopy(),
+				Collections.singletonList( source ),
+				target == null ? null : Collections.singletonList( target ) );
+	}
+}
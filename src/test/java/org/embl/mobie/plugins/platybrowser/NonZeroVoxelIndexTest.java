@@ -0,0 +1,138 @@
+/*-
+ * #%L
+ * Fiji viewer for MoBIE projects
+ * %%
+ * Copyright (C) 2018 - 2024 EMBL
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.embl.mobie.plugins.platybrowser;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.view.Views;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NonZeroVoxelIndexTest
+{
+	private static ArrayImg< UnsignedByteType, ByteArray > createImage( long seed )
+	{
+		final ArrayImg< UnsignedByteType, ByteArray > img = ArrayImgs.unsignedBytes( 61, 53, 47 );
+		final Random random = new Random( seed );
+		final Cursor< UnsignedByteType > cursor = img.cursor();
+		while ( cursor.hasNext() )
+			cursor.next().set( random.nextInt( 3 ) == 0 ? 1 + random.nextInt( 255 ) : 0 );
+		return img;
+	}
+
+	@Test
+	void sphereEqualsBruteForce()
+	{
+		final ArrayImg< UnsignedByteType, ByteArray > img = createImage( 42 );
+		final NonZeroVoxelIndex index = NonZeroVoxelIndex.create( img, 0 );
+		final Random random = new Random( 7 );
+
+		for ( int radius = 0; radius <= 12; radius++ )
+		{
+			for ( int i = 0; i < 5; i++ )
+			{
+				// the brute force search does not handle the image borders
+				final double[] position = new double[ 3 ];
+				for ( int d = 0; d < 3; d++ )
+					position[ d ] = radius + random.nextInt( ( int ) img.dimension( d ) - 2 * radius );
+
+				final double expected = GeneSearch.GeneSearchUtils.getFractionOfNonZeroVoxels( img, position, radius, 1.0 );
+				final double actual = index.getFractionOfNonZeroVoxels( GeneSearch.GeneSearchUtils.getPixelPosition( position, 1.0 ), radius );
+				assertEquals( expected, actual, 1e-12, "radius " + radius );
+			}
+		}
+	}
+
+	@Test
+	void boxCountsNonZeroVoxels()
+	{
+		final ArrayImg< UnsignedByteType, ByteArray > img = createImage( 3 );
+		final NonZeroVoxelIndex index = NonZeroVoxelIndex.create( img, 0 );
+
+		long numNonZeroVoxels = 0;
+		for ( UnsignedByteType value : img )
+			if ( value.get() != 0 ) numNonZeroVoxels++;
+
+		// boxes that extend beyond the image are clamped
+		assertEquals( numNonZeroVoxels, index.getNumNonZeroVoxels( new long[]{ -5, -5, -5 }, new long[]{ 100, 100, 100 } ) );
+		assertEquals( 0, index.getNumNonZeroVoxels( new long[]{ 70, 0, 0 }, new long[]{ 80, 10, 10 } ) );
+	}
+
+	@Test
+	void imagesThatDoNotStartAtZeroAreRejected()
+	{
+		final ArrayImg< UnsignedByteType, ByteArray > img = createImage( 42 );
+		assertThrows( IllegalArgumentException.class, () -> NonZeroVoxelIndex.create( Views.translate( img, 1, 0, 0 ), 0 ) );
+	}
+
+	@Test
+	void savedIndexCanBeLoaded( @TempDir Path tempDir ) throws IOException
+	{
+		final NonZeroVoxelIndex index = NonZeroVoxelIndex.create( createImage( 5 ), 2, 0x1234567890L );
+		final File file = new File( tempDir.toFile(), "index.nzi" );
+		index.save( file );
+
+		final NonZeroVoxelIndex loaded = NonZeroVoxelIndex.load( file );
+		assertEquals( 0x1234567890L, loaded.getDataVersion() );
+		assertEquals( 2, loaded.getLevel() );
+		assertArrayEquals( index.getDimensions(), loaded.getDimensions() );
+
+		final long[] center = { 30, 26, 23 };
+		for ( int radius = 1; radius < 20; radius += 3 )
+			assertEquals( index.getFractionOfNonZeroVoxels( center, radius ), loaded.getFractionOfNonZeroVoxels( center, radius ) );
+	}
+
+	@Test
+	void dataVersionChangesWithTheData( @TempDir Path tempDir ) throws IOException
+	{
+		// e.g. the resolution level of an OME-Zarr
+		final File level = tempDir.resolve( "image.ome.zarr" ).resolve( "s0" ).toFile();
+		assertTrue( level.mkdirs() );
+		final String uri = level.getParent();
+
+		final String version = GeneSearch.getDataVersion( uri );
+		assertNotNull( version );
+		assertEquals( version, GeneSearch.getDataVersion( uri ) );
+
+		assertTrue( level.setLastModified( level.lastModified() + 10_000 ) );
+		assertNotEquals( version, GeneSearch.getDataVersion( uri ) );
+
+		assertNull( GeneSearch.getDataVersion( tempDir.resolve( "missing.ome.zarr" ).toString() ) );
+	}
+}